@@ -4,12 +4,8 @@
  * To run, type 'java Main'.
  */
 import java.io.File;
-import java.util.ArrayList;
-import java.util.List;
 import java.util.Map;
-import java.util.Timer;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.regex.Pattern;
 
 import javax.swing.UIManager;
 import javax.swing.WindowConstants;
@@ -20,7 +16,8 @@ import map.LoadMap;
 import map.MainFrame;
 import map.MapData;
 import map.MapPanel;
-import search.CellSearch;
+import map.SheetCatalog;
+import search.RTreeSearch;
 import search.Search;
 
 /*
@@ -54,7 +51,7 @@ public class Main {
 	 */
 	public static void main(final String[] args) throws Exception {
 		final Map<String, MapData> maps = new ConcurrentHashMap<String, MapData>();
-		final Search search = new CellSearch(2000, 1500);
+		final Search search = new RTreeSearch();
 		final MapPanel panel = new MapPanel(maps);
 		panel.setFocusable(true);
 		UIManager.setLookAndFeel(UIManager.getSystemLookAndFeelClassName());
@@ -66,28 +63,21 @@ public class Main {
 		frame.setVisible(true);
 		panel.addMessage("地図を読み込んでいます。");
 		panel.init();
-		final List<String> list = new ArrayList<String>();
 		final String baseDir = args.length > 0 ? args[0] : "data";
 		if (new File(baseDir).isDirectory()) {
-			final String[] files = new File(baseDir).list();
-			final Pattern pattern = Pattern.compile("[0-9][0-9][a-zA-Z][a-zA-Z][0-9][0-9][0-9]");
-			for (int i = 0; i < files.length; i++) {
-				if (pattern.matcher(files[i]).matches()) {
-					list.add(files[i].toLowerCase());
-				}
+			// since 6.3.0 図葉の目録から地図の領域を読み込む
+			final SheetCatalog catalog = SheetCatalog.open(baseDir);
+			for (final String mapName : catalog.getMapNames()) {
+				final MapData map = catalog.createMapData(mapName);
+				maps.put(mapName, map);
+				search.insert(map.getBounds(), mapName);
 			}
 		}
-		for (final String mapName : list) {
-			final MapData map = new MapData(baseDir, mapName);
-			maps.put(mapName, map);
-			search.insert(map.getBounds(), mapName);
-		}
 		panel.setSearch(search);
 		panel.calcMinMaxXY();
 		panel.zoomAutomaticaly();
 		panel.moveToCenter();
-		final Timer timer = new Timer();
-		timer.schedule(new BackgroundThread(maps, panel, loadMap), 0, 200);
+		new BackgroundThread(maps, panel, loadMap).start();
 		panel.removeMessage();
 	}
 }
@@ -0,0 +1,179 @@
+package benchmark;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+
+/**
+ * ベンチマークの基準値を記録し、計測結果と比較するクラスです。
+ * 基準値は「計測の名前.指標の名前=値」の形式でプロパティファイルに保存します。
+ * アクセス回数と所要時間は別々の閾値で比較します。
+ * @author zenjiro
+ * @since 6.3.0
+ */
+public class Baseline {
+	/**
+	 * 1秒あたりの処理回数を表す指標の名前
+	 */
+	public static final String THROUGHPUT = "ops";
+
+	/**
+	 * 所要時間の中央値を表す指標の名前
+	 */
+	public static final String P50 = "p50";
+
+	/**
+	 * 所要時間の90パーセンタイルを表す指標の名前
+	 */
+	public static final String P90 = "p90";
+
+	/**
+	 * 所要時間の99パーセンタイルを表す指標の名前
+	 */
+	public static final String P99 = "p99";
+
+	/**
+	 * ノードへのアクセス回数を表す指標の名前
+	 */
+	public static final String NODE_ACCESS = "node";
+
+	/**
+	 * ポリゴンへのアクセス回数を表す指標の名前
+	 */
+	public static final String SHAPE_ACCESS = "shape";
+
+	/**
+	 * 基準値
+	 */
+	private final Properties properties;
+
+	/**
+	 * 基準値を初期化します。
+	 */
+	public Baseline() {
+		this.properties = new Properties();
+	}
+
+	/**
+	 * ファイルから基準値を読み込みます。
+	 * ファイルがなければ空の基準値を返します。
+	 * @param file ファイル
+	 * @return 基準値
+	 * @throws IOException 入出力例外
+	 */
+	public static Baseline load(final File file) throws IOException {
+		final Baseline ret = new Baseline();
+		if (file.exists()) {
+			final InputStream in = new FileInputStream(file);
+			try {
+				ret.properties.load(in);
+			} finally {
+				in.close();
+			}
+		}
+		return ret;
+	}
+
+	/**
+	 * 基準値をファイルに保存します。
+	 * @param file ファイル
+	 * @param comment ファイルの先頭に書くコメント
+	 * @throws IOException 入出力例外
+	 */
+	public void save(final File file, final String comment) throws IOException {
+		if (file.getParentFile() != null) {
+			file.getParentFile().mkdirs();
+		}
+		// 差分が読みやすいように、キーの順に並べて書き出す
+		final PrintWriter out = new PrintWriter(new OutputStreamWriter(new FileOutputStream(file), "ISO-8859-1"));
+		out.println("# " + comment);
+		for (final Map.Entry<String, String> entry : new TreeMap<String, String>(this.toMap()).entrySet()) {
+			out.println(entry.getKey() + "=" + entry.getValue());
+		}
+		out.close();
+		if (out.checkError()) {
+			throw new IOException("failed to write " + file);
+		}
+	}
+
+	/**
+	 * @return キーと基準値の対応表
+	 */
+	private Map<String, String> toMap() {
+		final Map<String, String> ret = new HashMap<String, String>();
+		for (final String key : this.properties.stringPropertyNames()) {
+			ret.put(key, this.properties.getProperty(key));
+		}
+		return ret;
+	}
+
+	/**
+	 * 計測結果を基準値として記録します。
+	 * @param measurement 計測結果
+	 */
+	public void put(final Measurement measurement) {
+		for (final Map.Entry<String, Double> entry : measurement.getMetrics().entrySet()) {
+			this.properties.setProperty(measurement.getName() + "." + entry.getKey(), String.format(Locale.ENGLISH, "%.3f", entry
+					.getValue()));
+		}
+	}
+
+	/**
+	 * Measurement で表せない指標を記録します。
+	 * @param name 計測の名前
+	 * @param metric 指標の名前
+	 * @param value 値
+	 */
+	public void put(final String name, final String metric, final double value) {
+		this.properties.setProperty(name + "." + metric, String.format(Locale.ENGLISH, "%.3f", value));
+	}
+
+	/**
+	 * 計測結果を基準値と比較し、閾値を超えて悪化した指標の一覧を取得します。
+	 * 基準値が記録されていない指標は比較しません。
+	 * @param measurement 計測結果
+	 * @param threshold アクセス回数の閾値（0.1なら10%まで許容）
+	 * @param latencyThreshold 所要時間とスループットの閾値（負なら比較しない）
+	 * @return 悪化した指標の説明の一覧
+	 */
+	public List<String> compare(final Measurement measurement, final double threshold,
+			final double latencyThreshold) {
+		final List<String> ret = new ArrayList<String>();
+		for (final Map.Entry<String, Double> entry : measurement.getMetrics().entrySet()) {
+			final String key = measurement.getName() + "." + entry.getKey();
+			final String value = this.properties.getProperty(key);
+			if (value == null) {
+				continue;
+			}
+			final double base = Double.parseDouble(value);
+			final double current = entry.getValue();
+			final boolean isCount = entry.getKey().equals(Baseline.NODE_ACCESS)
+					|| entry.getKey().equals(Baseline.SHAPE_ACCESS);
+			final double limit = isCount ? threshold : latencyThreshold;
+			if (limit < 0) {
+				continue;
+			}
+			final boolean isWorse;
+			if (entry.getKey().equals(Baseline.THROUGHPUT)) {
+				isWorse = current * (1 + limit) < base;
+			} else {
+				isWorse = current > base * (1 + limit) && current - base > 1e-3;
+			}
+			if (isWorse) {
+				ret.add(String.format("%s: %.3f -> %.3f", key, base, current));
+			}
+		}
+		return ret;
+	}
+}
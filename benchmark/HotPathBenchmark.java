@@ -0,0 +1,761 @@
+package benchmark;
+
+import java.awt.Dimension;
+import java.awt.Graphics2D;
+import java.awt.Shape;
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+import javax.swing.JLabel;
+
+import ksj.ShapeIO;
+import map.Const;
+import map.JasmineUtil;
+import map.LoadMap;
+import map.MapData;
+import map.MapPanel;
+import map.Prefecture;
+import map.UTMUtil;
+import route.RoadGraph;
+import route.Route;
+import search.CellSearch;
+import search.Search;
+
+/**
+ * 地図の表示で時間のかかる処理のベンチマークを行うプログラムです。
+ * JMH と同じように、処理ごとに空回しをしてから1回ごとの所要時間を計測し、
+ * スループットと所要時間の百分位数を出力します。
+ * 計測する処理は次のとおりです。図葉のディレクトリが指定されていないときは、図葉を使う処理を省略します。
+ * <ul>
+ * <li>projection: JasmineUtil.toLatLong、UTMUtil.toUTM</li>
+ * <li>shapeio: 同梱の市区町村界の ShapeIO.readShapes</li>
+ * <li>search: 同梱の市区町村界に対する CellSearch の点検索、矩形検索</li>
+ * <li>route: 同梱の道路データから作ったグラフに対する Route.calcRoute</li>
+ * <li>sheet: 図葉ごとの MapData.loadArc（道路）、MapData.loadPolygon（丁目）</li>
+ * <li>tyome: PaintTyome による丁目の塗り分け</li>
+ * <li>join: JoinPolygon による図葉にまたがるポリゴンの結合</li>
+ * <li>tile: MapPanel.drawMap による1枚のビットマップキャッシュの描画</li>
+ * </ul>
+ * 計測結果は SearchBenchmark と同じ「計測の名前.指標の名前=値」の形式でファイルに書き出すので、
+ * 以前の結果のファイルを benchmark.baseline に指定すれば、実行どうしを比較できます。
+ * <p>
+ * 使い方: java -Djava.awt.headless=true benchmark.HotPathBenchmark [データのディレクトリ [図葉のディレクトリ]]
+ * <p>
+ * 次のシステムプロパティで動作を変えられます。
+ * <ul>
+ * <li>benchmark.baseline 基準値のファイル（既定値は benchmark/hotpath.properties）</li>
+ * <li>benchmark.result 計測結果を書き出すファイル（既定値は build/benchmark/hotpath-result.properties）</li>
+ * <li>benchmark.update true なら比較せずに基準値を書き出す</li>
+ * <li>benchmark.threshold アクセス回数の閾値（既定値は0.1）</li>
+ * <li>benchmark.latencyThreshold 所要時間とスループットの閾値、負なら比較しない（既定値は-1）</li>
+ * <li>benchmark.suites 計測する処理の名前のカンマ区切り（既定値はすべて）</li>
+ * <li>benchmark.projections 座標変換の回数（既定値は100000）</li>
+ * <li>benchmark.queries 検索の回数（既定値は10000）</li>
+ * <li>benchmark.prefecture 経路探索に使う都道府県コード（既定値は28）</li>
+ * <li>benchmark.routes 経路探索の回数（既定値は50）</li>
+ * <li>benchmark.routeDistance 経路探索の始点と終点の距離の上限（既定値は20000）</li>
+ * <li>benchmark.iterations 図葉、塗り分け、結合、描画の計測回数（既定値は10）</li>
+ * <li>map.paint.dir 塗り分け情報を保存するディレクトリ（既定値は build/benchmark/paint）</li>
+ * </ul>
+ * 同梱の図葉は benchmark/fixture にあります。
+ * JMH はこのリポジトリに含まれていないので、JMH の考え方（空回し、1回ごとの計測、結果の保存）だけを取り入れています。
+ * パッケージの外から呼び出せない処理は、リフレクションで呼び出します。
+ * @author zenjiro
+ * @since 6.3.0
+ */
+public class HotPathBenchmark {
+	/**
+	 * 乱数の種
+	 */
+	private static final long SEED = 20041213;
+
+	/**
+	 * 計測の前に行う空回しの回数
+	 */
+	private static final int WARMUP = 2;
+
+	/**
+	 * 座標変換に使う平面直角座標系
+	 */
+	private static final int KEI = 9;
+
+	/**
+	 * 座標変換する点の範囲（平面直角座標系の原点からの距離[m]）
+	 */
+	private static final double PROJECTION_RANGE = 100000;
+
+	/**
+	 * 矩形検索の大きさ
+	 */
+	private static final double WINDOW = 2000;
+
+	/**
+	 * 1回分の処理を表すインターフェイスです。
+	 * @author zenjiro
+	 * @since 6.3.0
+	 */
+	private interface Operation {
+		/**
+		 * 処理を1回行います。
+		 * @param index 何回目か
+		 * @throws Exception 例外
+		 */
+		void run(int index) throws Exception;
+	}
+
+	/**
+	 * 計測結果を集めて、基準値と比較するクラスです。
+	 * @author zenjiro
+	 * @since 6.3.0
+	 */
+	private static class Recorder {
+		/**
+		 * 基準値
+		 */
+		final Baseline baseline;
+
+		/**
+		 * 今回の計測結果
+		 */
+		final Baseline result;
+
+		/**
+		 * 基準値を書き換えるかどうか
+		 */
+		final boolean isUpdate;
+
+		/**
+		 * アクセス回数の閾値
+		 */
+		final double threshold;
+
+		/**
+		 * 所要時間とスループットの閾値
+		 */
+		final double latencyThreshold;
+
+		/**
+		 * 悪化した指標の説明の一覧
+		 */
+		final List<String> errors;
+
+		/**
+		 * 計測結果を集めるオブジェクトを初期化します。
+		 * @param baseline 基準値
+		 * @param isUpdate 基準値を書き換えるかどうか
+		 * @param threshold アクセス回数の閾値
+		 * @param latencyThreshold 所要時間とスループットの閾値
+		 */
+		Recorder(final Baseline baseline, final boolean isUpdate, final double threshold,
+				final double latencyThreshold) {
+			this.baseline = baseline;
+			this.result = new Baseline();
+			this.isUpdate = isUpdate;
+			this.threshold = threshold;
+			this.latencyThreshold = latencyThreshold;
+			this.errors = new ArrayList<String>();
+		}
+
+		/**
+		 * 計測結果を記録します。
+		 * @param measurement 計測結果
+		 */
+		void add(final Measurement measurement) {
+			System.out.println(measurement);
+			this.result.put(measurement);
+			if (this.isUpdate) {
+				this.baseline.put(measurement);
+			} else {
+				this.errors.addAll(this.baseline.compare(measurement, this.threshold, this.latencyThreshold));
+			}
+		}
+	}
+
+	/**
+	 * メインメソッドです。
+	 * @param args コマンドライン引数
+	 * @throws Exception 例外
+	 */
+	public static void main(final String[] args) throws Exception {
+		// 利用者の塗り分け情報を読み書きしないように、作業用のディレクトリに保存させる
+		if (System.getProperty("map.paint.dir") == null) {
+			System.setProperty("map.paint.dir", "build/benchmark/paint");
+		}
+		final String dataDir = args.length > 0 ? args[0] : "data";
+		final File baselineFile = new File(System.getProperty("benchmark.baseline", "benchmark/hotpath.properties"));
+		final File resultFile = new File(System.getProperty("benchmark.result",
+				"build/benchmark/hotpath-result.properties"));
+		final boolean isUpdate = Boolean.getBoolean("benchmark.update");
+		final double threshold = Double.parseDouble(System.getProperty("benchmark.threshold", "0.1"));
+		final double latencyThreshold = Double.parseDouble(System.getProperty("benchmark.latencyThreshold", "-1"));
+		final String suites = "," + System.getProperty("benchmark.suites",
+				"projection,shapeio,search,route,sheet,tyome,join,tile") + ",";
+		final int iterations = Integer.getInteger("benchmark.iterations", 10);
+		final Recorder recorder = new Recorder(isUpdate ? new Baseline() : Baseline.load(baselineFile), isUpdate,
+				threshold, latencyThreshold);
+		final List<byte[]> cities = HotPathBenchmark.readFiles(dataDir, "cities_");
+		if (suites.contains(",projection,")) {
+			HotPathBenchmark.benchmarkProjection(recorder, Integer.getInteger("benchmark.projections", 100000));
+		}
+		if (suites.contains(",shapeio,")) {
+			HotPathBenchmark.benchmarkShapeIO(recorder, cities);
+		}
+		if (suites.contains(",search,")) {
+			HotPathBenchmark.benchmarkSearch(recorder, cities, Integer.getInteger("benchmark.queries", 10000));
+		}
+		if (suites.contains(",route,")) {
+			HotPathBenchmark.benchmarkRoute(recorder, System.getProperty("benchmark.prefecture", "28"), Integer
+					.getInteger("benchmark.routes", 50), Double.parseDouble(System.getProperty(
+					"benchmark.routeDistance", "20000")));
+		}
+		final Map<String, MapData> maps = new ConcurrentHashMap<String, MapData>();
+		if (args.length > 1) {
+			HotPathBenchmark.loadSheets(args[1], maps);
+			if (maps.isEmpty()) {
+				System.out.println("WARNING: 図葉がありません。" + args[1]);
+			}
+		}
+		if (!maps.isEmpty()) {
+			if (suites.contains(",sheet,")) {
+				HotPathBenchmark.benchmarkSheets(recorder, maps, iterations);
+			}
+			if (suites.contains(",tyome,")) {
+				HotPathBenchmark.benchmarkPaintTyome(recorder, HotPathBenchmark.loadTyome(args[1]), iterations);
+			}
+			if (suites.contains(",join,")) {
+				HotPathBenchmark.benchmarkJoinPolygon(recorder, HotPathBenchmark.loadTyome(args[1]), iterations);
+			}
+		}
+		if (suites.contains(",tile,")) {
+			HotPathBenchmark.benchmarkTile(recorder, maps, System.getProperty("benchmark.prefecture", "28"),
+					iterations);
+		}
+		recorder.result.save(resultFile, "HotPathBenchmark");
+		System.out.println("wrote " + resultFile);
+		if (isUpdate) {
+			recorder.baseline.save(baselineFile, "HotPathBenchmark");
+			System.out.println("wrote " + baselineFile);
+		}
+		if (!recorder.errors.isEmpty()) {
+			for (final String error : recorder.errors) {
+				System.out.println("REGRESSION: " + error);
+			}
+			System.exit(1);
+		}
+		// 経路探索のスレッドプールが残っていても終わるようにする
+		System.exit(0);
+	}
+
+	/**
+	 * 空回しをしてから、処理を指定した回数だけ計測します。
+	 * @param name 計測の名前
+	 * @param count 1回の計測で処理を行う回数
+	 * @param operation 処理
+	 * @return 計測結果
+	 * @throws Exception 例外
+	 */
+	private static Measurement measure(final String name, final int count, final Operation operation)
+			throws Exception {
+		return HotPathBenchmark.measure(name, count, null, operation);
+	}
+
+	/**
+	 * 空回しをしてから、処理を指定した回数だけ計測します。
+	 * 毎回、処理の前に準備を行います。準備にかかった時間は計測しません。
+	 * @param name 計測の名前
+	 * @param count 1回の計測で処理を行う回数
+	 * @param setup 準備、null なら何もしない
+	 * @param operation 処理
+	 * @return 計測結果
+	 * @throws Exception 例外
+	 */
+	private static Measurement measure(final String name, final int count, final Operation setup,
+			final Operation operation) throws Exception {
+		for (int i = 0; i < HotPathBenchmark.WARMUP; i++) {
+			for (int j = 0; j < count; j++) {
+				if (setup != null) {
+					setup.run(j);
+				}
+				operation.run(j);
+			}
+		}
+		final Measurement ret = new Measurement(name);
+		for (int i = 0; i < count; i++) {
+			if (setup != null) {
+				setup.run(i);
+			}
+			final long start = System.nanoTime();
+			operation.run(i);
+			ret.add(System.nanoTime() - start, 0, 0);
+		}
+		return ret;
+	}
+
+	/**
+	 * 平面直角座標から緯度経度、緯度経度からUTM座標への変換を計測します。
+	 * @param recorder 計測結果を集めるオブジェクト
+	 * @param count 変換の回数
+	 * @throws Exception 例外
+	 */
+	private static void benchmarkProjection(final Recorder recorder, final int count) throws Exception {
+		final Random random = new Random(HotPathBenchmark.SEED);
+		final double[] xs = new double[count];
+		final double[] ys = new double[count];
+		final Point2D[] latLongs = new Point2D[count];
+		for (int i = 0; i < count; i++) {
+			xs[i] = (random.nextDouble() * 2 - 1) * HotPathBenchmark.PROJECTION_RANGE;
+			ys[i] = (random.nextDouble() * 2 - 1) * HotPathBenchmark.PROJECTION_RANGE;
+		}
+		recorder.add(HotPathBenchmark.measure("projection.toLatLong", count, new Operation() {
+			public void run(final int index) {
+				latLongs[index] = JasmineUtil.toLatLong(xs[index], ys[index], HotPathBenchmark.KEI);
+			}
+		}));
+		recorder.add(HotPathBenchmark.measure("projection.toUTM", count, new Operation() {
+			public void run(final int index) {
+				UTMUtil.toUTM(latLongs[index]);
+			}
+		}));
+	}
+
+	/**
+	 * メモリに読み込んだ市区町村界の解析を計測します。
+	 * @param recorder 計測結果を集めるオブジェクト
+	 * @param files ファイルの内容の一覧
+	 * @throws Exception 例外
+	 */
+	private static void benchmarkShapeIO(final Recorder recorder, final List<byte[]> files) throws Exception {
+		if (files.isEmpty()) {
+			System.out.println("WARNING: 市区町村界のデータがありません。");
+			return;
+		}
+		recorder.add(HotPathBenchmark.measure("shapeio.cities", files.size(), new Operation() {
+			public void run(final int index) {
+				ShapeIO.readShapes(new ByteArrayInputStream(files.get(index)));
+			}
+		}));
+	}
+
+	/**
+	 * 市区町村界に対する CellSearch の点検索と矩形検索を計測します。
+	 * @param recorder 計測結果を集めるオブジェクト
+	 * @param files 市区町村界のファイルの内容の一覧
+	 * @param count 検索の回数
+	 * @throws Exception 例外
+	 */
+	private static void benchmarkSearch(final Recorder recorder, final List<byte[]> files, final int count)
+			throws Exception {
+		final Search search = new CellSearch(2000, 1500);
+		Rectangle2D bounds = null;
+		for (final byte[] file : files) {
+			for (final Map.Entry<Shape, String> entry : ShapeIO.readShapes(new ByteArrayInputStream(file)).entrySet()) {
+				search.insert(entry.getKey(), entry.getValue());
+				if (bounds == null) {
+					bounds = entry.getKey().getBounds2D();
+				} else {
+					bounds.add(entry.getKey().getBounds2D());
+				}
+			}
+		}
+		if (bounds == null) {
+			System.out.println("WARNING: 市区町村界のデータがありません。");
+			return;
+		}
+		final Random random = new Random(HotPathBenchmark.SEED);
+		final List<Point2D> points = new ArrayList<Point2D>();
+		for (int i = 0; i < count; i++) {
+			points.add(new Point2D.Double(bounds.getX() + random.nextDouble() * bounds.getWidth(), bounds.getY()
+					+ random.nextDouble() * bounds.getHeight()));
+		}
+		for (final String type : new String[] { "point", "rect" }) {
+			final boolean isPoint = type.equals("point");
+			for (int i = 0; i < HotPathBenchmark.WARMUP; i++) {
+				for (final Point2D point : points) {
+					HotPathBenchmark.search(search, point, isPoint);
+				}
+			}
+			final Measurement measurement = new Measurement("search.cell." + type);
+			for (final Point2D point : points) {
+				final long start = System.nanoTime();
+				HotPathBenchmark.search(search, point, isPoint);
+				final long time = System.nanoTime() - start;
+				measurement.add(time, search.getNodeAccess(), search.getShapeAccess());
+			}
+			recorder.add(measurement);
+		}
+	}
+
+	/**
+	 * 点検索または点を中心とする矩形検索をします。
+	 * @param search 空間索引
+	 * @param point 点
+	 * @param isPoint 点検索かどうか
+	 */
+	private static void search(final Search search, final Point2D point, final boolean isPoint) {
+		if (isPoint) {
+			search.search(point);
+		} else {
+			search.search(new Rectangle2D.Double(point.getX() - HotPathBenchmark.WINDOW / 2, point.getY()
+					- HotPathBenchmark.WINDOW / 2, HotPathBenchmark.WINDOW, HotPathBenchmark.WINDOW));
+		}
+	}
+
+	/**
+	 * 同梱の道路データから作った都道府県のグラフで、経路探索を計測します。
+	 * 区間のキャッシュに当たらないように、毎回違う始点と終点を使います。
+	 * @param recorder 計測結果を集めるオブジェクト
+	 * @param prefectureId 都道府県コード
+	 * @param count 経路探索の回数
+	 * @param maxDistance 始点と終点の距離の上限
+	 * @throws Exception 例外
+	 */
+	private static void benchmarkRoute(final Recorder recorder, final String prefectureId, final int count,
+			final double maxDistance) throws Exception {
+		final RoadGraph graph = RoadGraph.load(prefectureId);
+		if (graph.getNodeCount() == 0) {
+			System.out.println("WARNING: 道路のグラフがありません。" + prefectureId);
+			return;
+		}
+		final Random random = new Random(HotPathBenchmark.SEED);
+		final List<Point2D[]> pairs = new ArrayList<Point2D[]>();
+		for (int i = 0; i < count * (HotPathBenchmark.WARMUP + 1); i++) {
+			final int start = random.nextInt(graph.getNodeCount());
+			int goal = random.nextInt(graph.getNodeCount());
+			for (int j = 0; j < 1000
+					&& Math.hypot(graph.getX(goal) - graph.getX(start), graph.getY(goal) - graph.getY(start)) > maxDistance; j++) {
+				goal = random.nextInt(graph.getNodeCount());
+			}
+			pairs.add(new Point2D[] { new Point2D.Double(graph.getX(start), graph.getY(start)),
+					new Point2D.Double(graph.getX(goal), graph.getY(goal)) });
+		}
+		final Route route = Route.getInstance();
+		final Point2D first = pairs.get(0)[0];
+		route.loadGraphs(new Rectangle2D.Double(first.getX() - maxDistance, first.getY() - maxDistance,
+				maxDistance * 2, maxDistance * 2));
+		for (int i = 0; i < count * HotPathBenchmark.WARMUP; i++) {
+			HotPathBenchmark.calcRoute(route, pairs.get(count + i));
+		}
+		final Measurement measurement = new Measurement("route.calcRoute");
+		int found = 0;
+		for (int i = 0; i < count; i++) {
+			final long start = System.nanoTime();
+			HotPathBenchmark.calcRoute(route, pairs.get(i));
+			measurement.add(System.nanoTime() - start, 0, 0);
+			if (!route.getRoute().isEmpty()) {
+				found++;
+			}
+		}
+		route.clearRoute();
+		System.out.printf("route: %d/%d件の経路が見つかりました。\n", found, count);
+		recorder.add(measurement);
+	}
+
+	/**
+	 * 2点間の経路を探索します。
+	 * @param route 経路探索のオブジェクト
+	 * @param pair 始点と終点
+	 */
+	private static void calcRoute(final Route route, final Point2D[] pair) {
+		route.clearRoute();
+		route.addPoint(pair[0]);
+		route.addPoint(pair[1]);
+		route.calcRoute();
+	}
+
+	/**
+	 * 図葉ごとに、道路の弧と丁目のポリゴンの読み込みを計測します。
+	 * 計測の後は、塗り分けと結合のために丁目を読み込んだままにします。
+	 * @param recorder 計測結果を集めるオブジェクト
+	 * @param maps 地図
+	 * @param count 1つの図葉あたりの計測回数
+	 * @throws Exception 例外
+	 */
+	private static void benchmarkSheets(final Recorder recorder, final Map<String, MapData> maps, final int count)
+			throws Exception {
+		final List<MapData> sheets = new ArrayList<MapData>(maps.values());
+		Collections.sort(sheets);
+		for (final MapData mapData : sheets) {
+			// 丁目のポリゴンは行政界の弧から作られる
+			if (!(Boolean) HotPathBenchmark.invoke(mapData, "hasGyousei")) {
+				HotPathBenchmark.invoke(mapData, "loadGyousei");
+			}
+		}
+		for (final String[] layer : new String[][] { { "loadArc", "RoadArc" }, { "loadPolygon", "Tyome" } }) {
+			final Measurement measurement = new Measurement("sheet." + layer[0]);
+			for (int i = 0; i < HotPathBenchmark.WARMUP + count; i++) {
+				for (final MapData mapData : sheets) {
+					HotPathBenchmark.invoke(mapData, "free" + layer[1]);
+					final long start = System.nanoTime();
+					HotPathBenchmark.invoke(mapData, "load" + layer[1]);
+					final long time = System.nanoTime() - start;
+					if (i >= HotPathBenchmark.WARMUP) {
+						measurement.add(time, 0, 0);
+					}
+				}
+			}
+			recorder.add(measurement);
+		}
+		for (final MapData mapData : sheets) {
+			HotPathBenchmark.invoke(mapData, "freeRoadArc");
+		}
+	}
+
+	/**
+	 * 読み込まれている丁目の塗り分けを計測します。
+	 * 塗り分けた結果を覚えていないように、毎回新しいオブジェクトで塗り分けます。
+	 * 毎回、丁目の色と保存された塗り分け情報を消してから塗り分けるので、全ての丁目の色を決め直す時間を計測します。
+	 * @param recorder 計測結果を集めるオブジェクト
+	 * @param maps 丁目が読み込まれた地図
+	 * @param count 計測回数
+	 * @throws Exception 例外
+	 */
+	private static void benchmarkPaintTyome(final Recorder recorder, final Map<String, MapData> maps,
+			final int count) throws Exception {
+		final File paintDir = new File(Const.Paint.CACHE_DIR);
+		final Collection<Object> polygons = new ArrayList<Object>();
+		for (final MapData mapData : maps.values()) {
+			polygons.addAll(((Map<?, ?>) HotPathBenchmark.invoke(mapData, "getTyome")).values());
+		}
+		recorder.add(HotPathBenchmark.measure("tyome.paintTyome", count, new Operation() {
+			public void run(final int index) throws Exception {
+				final File[] files = paintDir.listFiles();
+				if (files != null) {
+					for (final File file : files) {
+						file.delete();
+					}
+				}
+				for (final Object polygon : polygons) {
+					HotPathBenchmark.invoke(polygon, "setTyomeColorIndex", new Class<?>[] { int.class }, 0);
+				}
+			}
+		}, new Operation() {
+			public void run(final int index) throws Exception {
+				HotPathBenchmark.invoke(HotPathBenchmark.newInstance("map.PaintTyome"), "paintTyome",
+						new Class<?>[] { Map.class }, maps);
+			}
+		}));
+	}
+
+	/**
+	 * 図葉にまたがるポリゴンの結合を計測します。
+	 * 結合した結果を覚えていないように、毎回新しいオブジェクトで結合します。
+	 * 結合した領域はポリゴンに書き込まれるので、毎回、丁目の領域と属性の位置を読み込んだときの状態に戻してから結合します。
+	 * @param recorder 計測結果を集めるオブジェクト
+	 * @param maps 丁目が読み込まれた地図
+	 * @param count 計測回数
+	 * @throws Exception 例外
+	 */
+	private static void benchmarkJoinPolygon(final Recorder recorder, final Map<String, MapData> maps,
+			final int count) throws Exception {
+		final List<Object> polygons = new ArrayList<Object>();
+		final List<Object> areas = new ArrayList<Object>();
+		final List<Object> xs = new ArrayList<Object>();
+		final List<Object> ys = new ArrayList<Object>();
+		for (final MapData mapData : maps.values()) {
+			for (final Object polygon : ((Map<?, ?>) HotPathBenchmark.invoke(mapData, "getTyome")).values()) {
+				polygons.add(polygon);
+				areas.add(HotPathBenchmark.invoke(polygon, "getArea"));
+				xs.add(HotPathBenchmark.invoke(polygon, "getX"));
+				ys.add(HotPathBenchmark.invoke(polygon, "getY"));
+			}
+		}
+		recorder.add(HotPathBenchmark.measure("join.joinPolygon", count, new Operation() {
+			public void run(final int index) throws Exception {
+				for (int i = 0; i < polygons.size(); i++) {
+					final Object polygon = polygons.get(i);
+					HotPathBenchmark.invoke(polygon, "setArea", new Class<?>[] { Shape.class }, areas.get(i));
+					HotPathBenchmark.invoke(polygon, "setX", new Class<?>[] { double.class }, xs.get(i));
+					HotPathBenchmark.invoke(polygon, "setY", new Class<?>[] { double.class }, ys.get(i));
+				}
+			}
+		}, new Operation() {
+			public void run(final int index) throws Exception {
+				HotPathBenchmark.invoke(HotPathBenchmark.newInstance("map.JoinPolygon"), "joinPolygon",
+						new Class<?>[] { Map.class }, maps);
+			}
+		}));
+	}
+
+	/**
+	 * ウィンドウを表示せずに、1枚のビットマップキャッシュと同じ大きさの地図の描画を計測します。
+	 * 図葉があれば最初の図葉の中心を詳細表示の倍率で描画し、なければ都道府県の全体を描画します。
+	 * @param recorder 計測結果を集めるオブジェクト
+	 * @param maps 地図
+	 * @param prefectureId 図葉がないときに描画する都道府県コード
+	 * @param count 計測回数
+	 * @throws Exception 例外
+	 */
+	private static void benchmarkTile(final Recorder recorder, final Map<String, MapData> maps,
+			final String prefectureId, final int count) throws Exception {
+		final MapPanel panel = new MapPanel(maps);
+		panel.setStatusBar(new JLabel());
+		panel.setSWTSize(new Dimension(Const.BitmapCache.WIDTH, Const.BitmapCache.HEIGHT));
+		panel.init();
+		if (maps.isEmpty()) {
+			for (final Prefecture prefecture : panel.getPrefectures()) {
+				if (prefecture.getId().equals(prefectureId)) {
+					panel.moveTo(prefecture.getBounds());
+				}
+			}
+		} else {
+			final List<MapData> sheets = new ArrayList<MapData>(maps.values());
+			Collections.sort(sheets);
+			final Rectangle2D bounds = sheets.get(0).getBounds().getBounds2D();
+			panel.moveTo(bounds);
+			panel.zoomDetail();
+			panel.moveTo(bounds.getCenterX(), bounds.getCenterY());
+			new LoadMap().loadMap(maps, panel, panel.getVisibleRectangle(false));
+			HotPathBenchmark.invoke(HotPathBenchmark.newInstance("map.PaintTyome"), "paintTyome",
+					new Class<?>[] { Map.class }, maps);
+		}
+		final BufferedImage image = new BufferedImage(Const.BitmapCache.WIDTH, Const.BitmapCache.HEIGHT,
+				BufferedImage.TYPE_INT_BGR);
+		recorder.add(HotPathBenchmark.measure("tile.drawMap", count, new Operation() {
+			public void run(final int index) throws Exception {
+				final Graphics2D g = image.createGraphics();
+				try {
+					panel.drawMap(g, true);
+				} finally {
+					g.dispose();
+				}
+			}
+		}));
+	}
+
+	/**
+	 * 図葉のディレクトリから図葉を読み込み直し、行政界と丁目を読み込みます。
+	 * 丁目を読み込むたびに弧とポリゴンの対応表が増えていくので、図葉の計測で使った地図は使いません。
+	 * @param baseDir 図葉のディレクトリ
+	 * @return 丁目が読み込まれた地図
+	 * @throws Exception 例外
+	 */
+	private static Map<String, MapData> loadTyome(final String baseDir) throws Exception {
+		final Map<String, MapData> maps = new ConcurrentHashMap<String, MapData>();
+		HotPathBenchmark.loadSheets(baseDir, maps);
+		for (final MapData mapData : maps.values()) {
+			HotPathBenchmark.invoke(mapData, "loadGyousei");
+			HotPathBenchmark.invoke(mapData, "loadTyome");
+		}
+		return maps;
+	}
+
+	/**
+	 * パッケージの外から呼び出せない引数のないメソッドを呼び出します。
+	 * @param target オブジェクト
+	 * @param name メソッドの名前
+	 * @return 戻り値
+	 * @throws Exception 例外
+	 */
+	private static Object invoke(final Object target, final String name) throws Exception {
+		return HotPathBenchmark.invoke(target, name, new Class<?>[] {});
+	}
+
+	/**
+	 * パッケージの外から呼び出せないメソッドを呼び出します。
+	 * @param target オブジェクト
+	 * @param name メソッドの名前
+	 * @param types 引数の型
+	 * @param args 引数
+	 * @return 戻り値
+	 * @throws Exception 例外
+	 */
+	private static Object invoke(final Object target, final String name, final Class<?>[] types,
+			final Object... args) throws Exception {
+		final Method method = target.getClass().getDeclaredMethod(name, types);
+		method.setAccessible(true);
+		try {
+			return method.invoke(target, args);
+		} catch (final InvocationTargetException exception) {
+			if (exception.getCause() instanceof Exception) {
+				throw (Exception) exception.getCause();
+			}
+			throw exception;
+		}
+	}
+
+	/**
+	 * パッケージの外から呼び出せないクラスのインスタンスを作ります。
+	 * @param className クラスの名前
+	 * @return インスタンス
+	 * @throws Exception 例外
+	 */
+	private static Object newInstance(final String className) throws Exception {
+		final Constructor<?> constructor = Class.forName(className).getDeclaredConstructor();
+		constructor.setAccessible(true);
+		return constructor.newInstance();
+	}
+
+	/**
+	 * データのディレクトリから、名前が指定した文字列で始まるCSVファイルを名前順にメモリに読み込みます。
+	 * @param dataDir データのディレクトリ
+	 * @param prefix ファイル名の接頭辞
+	 * @return ファイルの内容の一覧
+	 * @throws IOException 入出力例外
+	 */
+	private static List<byte[]> readFiles(final String dataDir, final String prefix) throws IOException {
+		final List<byte[]> ret = new ArrayList<byte[]>();
+		final String[] files = new File(dataDir).list();
+		if (files == null) {
+			return ret;
+		}
+		final List<String> list = new ArrayList<String>();
+		for (final String file : files) {
+			if (file.startsWith(prefix) && file.endsWith(".csv")) {
+				list.add(file);
+			}
+		}
+		Collections.sort(list);
+		final byte[] buffer = new byte[8192];
+		for (final String file : list) {
+			final InputStream in = new FileInputStream(new File(dataDir, file));
+			try {
+				final ByteArrayOutputStream out = new ByteArrayOutputStream();
+				for (int length = in.read(buffer); length >= 0; length = in.read(buffer)) {
+					out.write(buffer, 0, length);
+				}
+				ret.add(out.toByteArray());
+			} finally {
+				in.close();
+			}
+		}
+		return ret;
+	}
+
+	/**
+	 * 図葉のディレクトリから図葉を読み込みます。
+	 * @param baseDir 図葉のディレクトリ
+	 * @param maps 図葉を追加する地図
+	 * @throws IOException 入出力例外
+	 */
+	private static void loadSheets(final String baseDir, final Map<String, MapData> maps) throws IOException {
+		final String[] files = new File(baseDir).list();
+		if (files == null) {
+			return;
+		}
+		final Pattern pattern = Pattern.compile("[0-9][0-9][a-zA-Z][a-zA-Z][0-9][0-9][0-9]");
+		for (final String file : files) {
+			if (pattern.matcher(file).matches()) {
+				final String mapName = file.toLowerCase();
+				maps.put(mapName, new MapData(baseDir, mapName));
+			}
+		}
+	}
+}
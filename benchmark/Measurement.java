@@ -0,0 +1,142 @@
+package benchmark;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * ベンチマークの計測結果を記録するクラスです。
+ * 1回ごとの所要時間とアクセス回数を記録し、スループットと所要時間の百分位数を計算します。
+ * @author zenjiro
+ * @since 6.3.0
+ */
+public class Measurement {
+	/**
+	 * 1秒のナノ秒数
+	 */
+	private static final double NANOS_PER_SECOND = 1e9;
+
+	/**
+	 * 1マイクロ秒のナノ秒数
+	 */
+	private static final double NANOS_PER_MICRO = 1e3;
+
+	/**
+	 * 計測の名前
+	 */
+	private final String name;
+
+	/**
+	 * 1回ごとの所要時間[ns]
+	 */
+	private long[] times;
+
+	/**
+	 * 計測した回数
+	 */
+	private int count;
+
+	/**
+	 * ノードへのアクセス回数の合計
+	 */
+	private long nodeAccess;
+
+	/**
+	 * ポリゴンへのアクセス回数の合計
+	 */
+	private long shapeAccess;
+
+	/**
+	 * 計測結果を記録するオブジェクトを初期化します。
+	 * @param name 計測の名前
+	 */
+	public Measurement(final String name) {
+		this.name = name;
+		this.times = new long[1024];
+	}
+
+	/**
+	 * 1回分の計測結果を追加します。
+	 * @param time 所要時間[ns]
+	 * @param nodeAccess ノードへのアクセス回数
+	 * @param shapeAccess ポリゴンへのアクセス回数
+	 */
+	public void add(final long time, final int nodeAccess, final int shapeAccess) {
+		if (this.count == this.times.length) {
+			this.times = Arrays.copyOf(this.times, this.count * 2);
+		}
+		this.times[this.count++] = time;
+		this.nodeAccess += nodeAccess;
+		this.shapeAccess += shapeAccess;
+	}
+
+	/**
+	 * @return 計測の名前
+	 */
+	public String getName() {
+		return this.name;
+	}
+
+	/**
+	 * @return 1秒あたりの処理回数
+	 */
+	public double getThroughput() {
+		long total = 0;
+		for (int i = 0; i < this.count; i++) {
+			total += this.times[i];
+		}
+		return total == 0 ? 0 : this.count * Measurement.NANOS_PER_SECOND / total;
+	}
+
+	/**
+	 * 所要時間の百分位数を取得します。
+	 * @param percent 百分率
+	 * @return 所要時間[us]
+	 */
+	public double getPercentile(final double percent) {
+		if (this.count == 0) {
+			return 0;
+		}
+		final long[] sorted = Arrays.copyOf(this.times, this.count);
+		Arrays.sort(sorted);
+		final int index = Math.min(this.count - 1, (int) Math.ceil(percent / 100 * this.count) - 1);
+		return sorted[Math.max(0, index)] / Measurement.NANOS_PER_MICRO;
+	}
+
+	/**
+	 * @return 1回あたりのノードへのアクセス回数
+	 */
+	public double getNodeAccess() {
+		return this.count == 0 ? 0 : (double) this.nodeAccess / this.count;
+	}
+
+	/**
+	 * @return 1回あたりのポリゴンへのアクセス回数
+	 */
+	public double getShapeAccess() {
+		return this.count == 0 ? 0 : (double) this.shapeAccess / this.count;
+	}
+
+	/**
+	 * 基準値と比較する値の一覧を取得します。
+	 * キーは Baseline で使う指標の名前です。
+	 * @return 指標の名前と値の対応表
+	 */
+	public Map<String, Double> getMetrics() {
+		final Map<String, Double> ret = new LinkedHashMap<String, Double>();
+		ret.put(Baseline.THROUGHPUT, this.getThroughput());
+		ret.put(Baseline.P50, this.getPercentile(50));
+		ret.put(Baseline.P90, this.getPercentile(90));
+		ret.put(Baseline.P99, this.getPercentile(99));
+		ret.put(Baseline.NODE_ACCESS, this.getNodeAccess());
+		ret.put(Baseline.SHAPE_ACCESS, this.getShapeAccess());
+		return ret;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%-36s %12.0f ops/s  p50 %9.2fus  p90 %9.2fus  p99 %9.2fus  node %9.1f  shape %9.1f",
+				this.name, this.getThroughput(), this.getPercentile(50), this.getPercentile(90), this
+						.getPercentile(99), this.getNodeAccess(), this.getShapeAccess());
+	}
+}
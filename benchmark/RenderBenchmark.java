@@ -0,0 +1,331 @@
+package benchmark;
+
+import java.awt.Dimension;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+import javax.swing.JLabel;
+
+import map.BackgroundThread;
+import map.Const;
+import map.LatencyHistogram;
+import map.LoadMap;
+import map.MapData;
+import map.MapPanel;
+import map.Metrics;
+import map.Prefecture;
+
+/**
+ * ウィンドウを表示せずに、台本どおりに地図を操作して描画の速さを計測するプログラムです。
+ * 台本の1行ごとに MapPanel の public なメソッドを呼び出し、背景スレッドと同じ更新をこのスレッドで行って、
+ * 更新を始めてから最初のビットマップキャッシュができるまでの時間、すべてのビットマップキャッシュができるまでの時間、
+ * 1秒あたりに描画したビットマップキャッシュの枚数、ビットマップキャッシュの命中率を出力します。
+ * <p>
+ * 台本は1行に1つの命令を書きます。「#」で始まる行と空行は無視します。
+ * <ul>
+ * <li>prefecture 都道府県コード: 都道府県の全体を表示します。</li>
+ * <li>それ以外: 同じ名前で引数がすべて数値の MapPanel のメソッドを呼び出します。
+ * 例えば moveTo x y、scroll dx dy、zoomIn、zoomWide、increaseSaturation、toggleRouteMode など。</li>
+ * </ul>
+ * <p>
+ * 使い方: java -Djava.awt.headless=true benchmark.RenderBenchmark [台本のファイル [図葉のディレクトリ]]
+ * <p>
+ * 次のシステムプロパティで動作を変えられます。
+ * <ul>
+ * <li>benchmark.baseline 基準値のファイル（既定値は benchmark/render.properties）</li>
+ * <li>benchmark.result 計測結果を書き出すファイル（既定値は build/benchmark/render-result.properties）</li>
+ * <li>benchmark.update true なら比較せずに基準値を書き出す</li>
+ * <li>benchmark.latencyThreshold 所要時間とスループットの閾値、負なら比較しない（既定値は-1）</li>
+ * <li>benchmark.size パネルの大きさ（既定値は 640x480）</li>
+ * <li>benchmark.clearCache true なら始める前にビットマップキャッシュを消す（既定値は true）</li>
+ * <li>map.bitmap.dir ビットマップキャッシュを保存するディレクトリ（既定値は build/benchmark/bitmap）</li>
+ * <li>map.paint.dir 塗り分け情報を保存するディレクトリ（既定値は build/benchmark/paint）</li>
+ * </ul>
+ * 利用者のキャッシュを消したり書き換えたりしないように、キャッシュは作業用のディレクトリに保存します。
+ * 基準値の所要時間は計測した環境でしか意味がないので、既定では比較せずに表示するだけです。
+ * @author zenjiro
+ * @since 6.3.0
+ */
+public class RenderBenchmark {
+	/**
+	 * 最初のビットマップキャッシュができるまでの時間の計測の名前
+	 */
+	private static final String FIRST_TILE = "render.firstTile";
+
+	/**
+	 * すべてのビットマップキャッシュができるまでの時間の計測の名前
+	 */
+	private static final String FRAME = "render.frame";
+
+	/**
+	 * ビットマップキャッシュの描画の計測の名前
+	 */
+	private static final String TILE = "render.tile";
+
+	/**
+	 * ビットマップキャッシュの命中の計測の名前
+	 */
+	private static final String CACHE = "render.cache";
+
+	/**
+	 * メインメソッドです。
+	 * @param args コマンドライン引数
+	 * @throws Exception 例外
+	 */
+	public static void main(final String[] args) throws Exception {
+		if (System.getProperty("java.awt.headless") == null) {
+			System.setProperty("java.awt.headless", "true");
+		}
+		if (System.getProperty("map.bitmap.dir") == null) {
+			System.setProperty("map.bitmap.dir", "build/benchmark/bitmap");
+		}
+		if (System.getProperty("map.paint.dir") == null) {
+			System.setProperty("map.paint.dir", "build/benchmark/paint");
+		}
+		final File script = new File(args.length > 0 ? args[0] : "benchmark/render-session.txt");
+		final File baselineFile = new File(System.getProperty("benchmark.baseline", "benchmark/render.properties"));
+		final File resultFile = new File(System.getProperty("benchmark.result",
+				"build/benchmark/render-result.properties"));
+		final boolean isUpdate = Boolean.getBoolean("benchmark.update");
+		final double latencyThreshold = Double.parseDouble(System.getProperty("benchmark.latencyThreshold", "-1"));
+		final String[] size = System.getProperty("benchmark.size", "640x480").trim().split("x");
+		final boolean isClearCache = Boolean.parseBoolean(System.getProperty("benchmark.clearCache", "true"));
+		final List<String[]> steps = RenderBenchmark.readScript(script);
+		final Map<String, MapData> maps = new ConcurrentHashMap<String, MapData>();
+		if (args.length > 1) {
+			RenderBenchmark.loadSheets(args[1], maps);
+		}
+		final MapPanel panel = new MapPanel(maps);
+		panel.setStatusBar(new JLabel());
+		panel.setSWTSize(new Dimension(Integer.parseInt(size[0]), Integer.parseInt(size[1])));
+		panel.init();
+		panel.calcMinMaxXY();
+		final BackgroundThread thread = new BackgroundThread(maps, panel, new LoadMap());
+		// 操作のたびに背景スレッドで更新されないように、更新は操作ごとにこのスレッドで行う
+		panel.setActionListener(null);
+		if (isClearCache) {
+			RenderBenchmark.clearBitmapCache();
+		}
+		final Metrics metrics = Metrics.getInstance();
+		metrics.reset();
+		final Measurement firstTile = new Measurement(RenderBenchmark.FIRST_TILE);
+		final Measurement frame = new Measurement(RenderBenchmark.FRAME);
+		for (int i = 0; i < steps.size(); i++) {
+			final String[] step = steps.get(i);
+			final Metrics.Snapshot before = metrics.snapshot();
+			RenderBenchmark.perform(panel, step);
+			thread.run();
+			final Metrics.Snapshot after = metrics.snapshot();
+			final long firstTileNanos = RenderBenchmark.getTotal(after, before, Metrics.Stage.FIRST_TILE);
+			final long frameNanos = RenderBenchmark.getTotal(after, before, Metrics.Stage.FRAME);
+			if (RenderBenchmark.getCount(after, before, Metrics.Stage.FIRST_TILE) > 0) {
+				firstTile.add(firstTileNanos, 0, 0);
+			}
+			if (RenderBenchmark.getCount(after, before, Metrics.Stage.FRAME) > 0) {
+				frame.add(frameNanos, 0, 0);
+			}
+			final long hits = after.getCount(Metrics.Counter.TILE_CACHE_HIT)
+					- before.getCount(Metrics.Counter.TILE_CACHE_HIT);
+			final long misses = after.getCount(Metrics.Counter.TILE_CACHE_MISS)
+					- before.getCount(Metrics.Counter.TILE_CACHE_MISS);
+			System.out.printf("%3d %-36s first %9.1fms  frame %9.1fms  tiles %4d  hits %4d\n", i + 1, RenderBenchmark
+					.join(step), firstTileNanos / 1E6, frameNanos / 1E6, hits + misses, hits);
+		}
+		final Metrics.Snapshot snapshot = metrics.snapshot();
+		final LatencyHistogram tiles = snapshot.getHistogram(Metrics.Stage.TILE_RENDER);
+		final long hits = snapshot.getCount(Metrics.Counter.TILE_CACHE_HIT);
+		final long misses = snapshot.getCount(Metrics.Counter.TILE_CACHE_MISS);
+		final double hitRatio = hits + misses == 0 ? 0 : (double) hits / (hits + misses);
+		final double tilesPerSecond = tiles.getTotal() == 0 ? 0 : tiles.getCount() * 1E9 / tiles.getTotal();
+		System.out.println();
+		System.out.println(firstTile);
+		System.out.println(frame);
+		System.out.printf("%-36s %12.1f tiles/s  p50 %9.2fus  p90 %9.2fus  p99 %9.2fus\n", RenderBenchmark.TILE,
+				tilesPerSecond, tiles.getValueAtPercentile(50) / 1E3, tiles.getValueAtPercentile(90) / 1E3, tiles
+						.getValueAtPercentile(99) / 1E3);
+		System.out.printf("%-36s %12.3f hit ratio  hits %d  misses %d\n", RenderBenchmark.CACHE, hitRatio, hits,
+				misses);
+		System.out.println();
+		System.out.print(snapshot);
+		final Baseline result = new Baseline();
+		result.put(firstTile);
+		result.put(frame);
+		result.put(RenderBenchmark.TILE, Baseline.THROUGHPUT, tilesPerSecond);
+		result.put(RenderBenchmark.TILE, Baseline.P50, tiles.getValueAtPercentile(50) / 1E3);
+		result.put(RenderBenchmark.TILE, Baseline.P90, tiles.getValueAtPercentile(90) / 1E3);
+		result.put(RenderBenchmark.TILE, Baseline.P99, tiles.getValueAtPercentile(99) / 1E3);
+		result.put(RenderBenchmark.CACHE, "hitRatio", hitRatio);
+		result.put(RenderBenchmark.CACHE, "hits", hits);
+		result.put(RenderBenchmark.CACHE, "misses", misses);
+		result.save(resultFile, "RenderBenchmark " + script);
+		System.out.println("wrote " + resultFile);
+		if (isUpdate) {
+			result.save(baselineFile, "RenderBenchmark " + script);
+			System.out.println("wrote " + baselineFile);
+		} else {
+			final Baseline baseline = Baseline.load(baselineFile);
+			final List<String> errors = new ArrayList<String>();
+			errors.addAll(baseline.compare(firstTile, -1, latencyThreshold));
+			errors.addAll(baseline.compare(frame, -1, latencyThreshold));
+			if (!errors.isEmpty()) {
+				for (final String error : errors) {
+					System.out.println("REGRESSION: " + error);
+				}
+				System.exit(1);
+			}
+		}
+		// ダウンロードや経路探索のスレッドが残っていても終わるようにする
+		System.exit(0);
+	}
+
+	/**
+	 * 台本の1行分の操作をします。
+	 * @param panel 地図を表示するパネル
+	 * @param step 命令と引数
+	 * @throws Exception 例外
+	 */
+	private static void perform(final MapPanel panel, final String[] step) throws Exception {
+		if (step[0].equals("prefecture") && step.length == 2) {
+			for (final Prefecture prefecture : panel.getPrefectures()) {
+				if (prefecture.getId().equals(step[1])) {
+					panel.moveTo(prefecture.getBounds());
+					return;
+				}
+			}
+			throw new IllegalArgumentException("都道府県がありません: " + step[1]);
+		}
+		for (final Method method : MapPanel.class.getMethods()) {
+			final Class<?>[] types = method.getParameterTypes();
+			if (method.getName().equals(step[0]) && types.length == step.length - 1) {
+				final Object[] values = new Object[types.length];
+				for (int i = 0; i < types.length; i++) {
+					if (types[i] == double.class) {
+						values[i] = Double.valueOf(step[i + 1]);
+					} else if (types[i] == float.class) {
+						values[i] = Float.valueOf(step[i + 1]);
+					} else if (types[i] == int.class) {
+						values[i] = Integer.valueOf(step[i + 1]);
+					} else {
+						break;
+					}
+				}
+				if (types.length == 0 || values[types.length - 1] != null) {
+					try {
+						method.invoke(panel, values);
+					} catch (final InvocationTargetException exception) {
+						if (exception.getCause() instanceof Exception) {
+							throw (Exception) exception.getCause();
+						}
+						throw exception;
+					}
+					return;
+				}
+			}
+		}
+		throw new IllegalArgumentException("台本の命令がわかりません: " + RenderBenchmark.join(step));
+	}
+
+	/**
+	 * @param after 後の記録
+	 * @param before 前の記録
+	 * @param stage 段階
+	 * @return 間に記録された処理時間の合計[ns]
+	 */
+	private static long getTotal(final Metrics.Snapshot after, final Metrics.Snapshot before,
+			final Metrics.Stage stage) {
+		return after.getHistogram(stage).getTotal() - before.getHistogram(stage).getTotal();
+	}
+
+	/**
+	 * @param after 後の記録
+	 * @param before 前の記録
+	 * @param stage 段階
+	 * @return 間に記録された回数
+	 */
+	private static long getCount(final Metrics.Snapshot after, final Metrics.Snapshot before,
+			final Metrics.Stage stage) {
+		return after.getHistogram(stage).getCount() - before.getHistogram(stage).getCount();
+	}
+
+	/**
+	 * 台本を読み込みます。
+	 * @param file ファイル
+	 * @return 命令と引数の一覧
+	 * @throws IOException 入出力例外
+	 */
+	private static List<String[]> readScript(final File file) throws IOException {
+		final List<String[]> ret = new ArrayList<String[]>();
+		final BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+		try {
+			for (String line = in.readLine(); line != null; line = in.readLine()) {
+				final String trimmed = line.trim();
+				if (trimmed.length() > 0 && !trimmed.startsWith("#")) {
+					ret.add(trimmed.split("\\s+"));
+				}
+			}
+		} finally {
+			in.close();
+		}
+		return ret;
+	}
+
+	/**
+	 * @param step 命令と引数
+	 * @return 空白で区切った文字列
+	 */
+	private static String join(final String[] step) {
+		final StringBuilder ret = new StringBuilder();
+		for (final String string : step) {
+			if (ret.length() > 0) {
+				ret.append(' ');
+			}
+			ret.append(string);
+		}
+		return ret.toString();
+	}
+
+	/**
+	 * ビットマップキャッシュを消します。
+	 */
+	private static void clearBitmapCache() {
+		final File[] files = new File(Const.BitmapCache.CACHE_DIR).listFiles();
+		if (files != null) {
+			for (final File file : files) {
+				if (file.getName().startsWith(Const.BitmapCache.PREFIX) && !file.delete()) {
+					System.out.println("WARNING: ビットマップキャッシュを消せませんでした。" + file);
+				}
+			}
+		}
+	}
+
+	/**
+	 * 図葉のディレクトリから図葉を読み込みます。
+	 * @param baseDir 図葉のディレクトリ
+	 * @param maps 図葉を追加する地図
+	 * @throws IOException 入出力例外
+	 */
+	private static void loadSheets(final String baseDir, final Map<String, MapData> maps) throws IOException {
+		final String[] files = new File(baseDir).list();
+		if (files == null) {
+			System.out.println("WARNING: 図葉がありません。" + baseDir);
+			return;
+		}
+		final Pattern pattern = Pattern.compile("[0-9][0-9][a-zA-Z][a-zA-Z][0-9][0-9][0-9]");
+		for (final String file : files) {
+			if (pattern.matcher(file).matches()) {
+				final String mapName = file.toLowerCase();
+				maps.put(mapName, new MapData(baseDir, mapName));
+			}
+		}
+	}
+}
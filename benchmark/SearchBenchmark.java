@@ -0,0 +1,392 @@
+package benchmark;
+
+import java.awt.Shape;
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+import ksj.ShapeIO;
+import map.MapData;
+import search.CellSearch;
+import search.RTreeSearch;
+import search.Search;
+
+/**
+ * 空間索引のベンチマークを行うプログラムです。
+ * 同梱の市区町村界、道路データと、指定されていれば図葉の範囲を読み込み、
+ * Search の全ての実装に対して点検索、矩形検索、近傍検索を行って、スループット、所要時間の百分位数、
+ * ノードとポリゴンへのアクセス回数を出力します。
+ * 基準値のファイルがあれば比較し、閾値を超えて悪化していれば終了コード1で終了します。
+ * 実装ごとに検索結果が異なるときも終了コード1で終了します。
+ * <p>
+ * 使い方: java benchmark.SearchBenchmark [データのディレクトリ [図葉のディレクトリ]]
+ * <p>
+ * 次のシステムプロパティで動作を変えられます。
+ * <ul>
+ * <li>benchmark.baseline 基準値のファイル（既定値は benchmark/search.properties）</li>
+ * <li>benchmark.update true なら比較せずに基準値を書き出す</li>
+ * <li>benchmark.threshold アクセス回数の閾値（既定値は0.1）</li>
+ * <li>benchmark.latencyThreshold 所要時間とスループットの閾値、負なら比較しない（既定値は-1）</li>
+ * <li>benchmark.queries 1つの負荷あたりの検索回数（既定値は10000）</li>
+ * <li>benchmark.nearestQueries 近傍検索の回数（既定値は1000）</li>
+ * <li>benchmark.roads 読み込む道路データのファイル数の上限（既定値は200）</li>
+ * <li>benchmark.cells 比較するセルの大きさ（既定値は 2000x1500,1000x100）</li>
+ * <li>benchmark.window 矩形検索の大きさ（既定値は 2000x1500）</li>
+ * </ul>
+ * 所要時間は計算機の負荷によって大きく揺れるので、既定ではアクセス回数と検索結果だけで判定します。
+ * 所要時間も判定するときは、基準値を作ったのと同じ計算機で benchmark.latencyThreshold を指定してください。
+ * @author zenjiro
+ * @since 6.3.0
+ */
+public class SearchBenchmark {
+	/**
+	 * 乱数の種
+	 */
+	private static final long SEED = 20041213;
+
+	/**
+	 * 計測の前に行う空回しの回数
+	 */
+	private static final int WARMUP = 2;
+
+	/**
+	 * 点検索の負荷の名前
+	 */
+	private static final String POINT = "point";
+
+	/**
+	 * 矩形検索の負荷の名前
+	 */
+	private static final String RECTANGLE = "rect";
+
+	/**
+	 * 近傍検索の負荷の名前
+	 */
+	private static final String NEAREST = "knn";
+
+	/**
+	 * 近傍検索で取得するデータの数
+	 */
+	private static final int K = 10;
+
+	/**
+	 * メインメソッドです。
+	 * @param args コマンドライン引数
+	 * @throws IOException 入出力例外
+	 */
+	public static void main(final String[] args) throws IOException {
+		final String dataDir = args.length > 0 ? args[0] : "data";
+		final File baselineFile = new File(System.getProperty("benchmark.baseline", "benchmark/search.properties"));
+		final boolean isUpdate = Boolean.getBoolean("benchmark.update");
+		final double threshold = Double.parseDouble(System.getProperty("benchmark.threshold", "0.1"));
+		final double latencyThreshold = Double.parseDouble(System.getProperty("benchmark.latencyThreshold", "-1"));
+		final int queries = Integer.getInteger("benchmark.queries", 10000);
+		final int nearestQueries = Integer.getInteger("benchmark.nearestQueries", 1000);
+		final int roads = Integer.getInteger("benchmark.roads", 200);
+		final double[] window = SearchBenchmark.parseSize(System.getProperty("benchmark.window", "2000x1500"));
+		final Map<String, Map<Shape, String>> datasets = new LinkedHashMap<String, Map<Shape, String>>();
+		datasets.put("cities", SearchBenchmark.loadShapes(dataDir, "cities_", Integer.MAX_VALUE));
+		datasets.put("roads", SearchBenchmark.loadShapes(dataDir, "ksj_road_city_", roads));
+		if (args.length > 1) {
+			datasets.put("sheets", SearchBenchmark.loadSheets(args[1]));
+		}
+		final Baseline baseline = isUpdate ? new Baseline() : Baseline.load(baselineFile);
+		final List<String> errors = new ArrayList<String>();
+		for (final Map.Entry<String, Map<Shape, String>> dataset : datasets.entrySet()) {
+			final List<Map.Entry<Shape, String>> entries = SearchBenchmark.sort(dataset.getValue());
+			if (entries.isEmpty()) {
+				System.out.println("WARNING: " + dataset.getKey() + "のデータがありません。");
+				continue;
+			}
+			System.out.printf("%s: %d件\n", dataset.getKey(), entries.size());
+			final Random random = new Random(SearchBenchmark.SEED);
+			final List<Point2D> points = new ArrayList<Point2D>();
+			final List<Rectangle2D> rectangles = new ArrayList<Rectangle2D>();
+			for (int i = 0; i < queries; i++) {
+				final Rectangle2D bounds = entries.get(random.nextInt(entries.size())).getKey().getBounds2D();
+				final double x = bounds.getX() + random.nextDouble() * bounds.getWidth();
+				final double y = bounds.getY() + random.nextDouble() * bounds.getHeight();
+				points.add(new Point2D.Double(x, y));
+				rectangles.add(new Rectangle2D.Double(x - window[0] / 2, y - window[1] / 2, window[0], window[1]));
+			}
+			List<Collection<String>> expectedPoints = null;
+			List<Collection<String>> expectedRectangles = null;
+			List<Collection<String>> expectedNearest = null;
+			for (final Map.Entry<String, Search> implementation : SearchBenchmark.createSearches().entrySet()) {
+				final Search search = implementation.getValue();
+				final String prefix = dataset.getKey() + "." + implementation.getKey() + ".";
+				final long start = System.nanoTime();
+				for (final Map.Entry<Shape, String> entry : entries) {
+					search.insert(entry.getKey(), entry.getValue());
+				}
+				if (search instanceof RTreeSearch) {
+					((RTreeSearch) search).build();
+				}
+				System.out.printf("%-36s %dms\n", prefix + "build", (System.nanoTime() - start) / 1000000);
+				final List<Collection<String>> actualPoints = new ArrayList<Collection<String>>();
+				final Measurement pointMeasurement = SearchBenchmark.measurePoints(prefix + SearchBenchmark.POINT,
+						search, points, actualPoints);
+				final List<Collection<String>> actualRectangles = new ArrayList<Collection<String>>();
+				final Measurement rectangleMeasurement = SearchBenchmark.measureRectangles(prefix
+						+ SearchBenchmark.RECTANGLE, search, rectangles, actualRectangles);
+				final List<Collection<String>> actualNearest = new ArrayList<Collection<String>>();
+				final Measurement nearestMeasurement = SearchBenchmark.measureNearest(prefix + SearchBenchmark.NEAREST,
+						search, points.subList(0, Math.min(nearestQueries, points.size())), actualNearest);
+				if (expectedPoints == null) {
+					expectedPoints = actualPoints;
+					expectedRectangles = actualRectangles;
+					expectedNearest = actualNearest;
+				} else {
+					SearchBenchmark.verify(pointMeasurement.getName(), expectedPoints, actualPoints, errors);
+					SearchBenchmark.verify(rectangleMeasurement.getName(), expectedRectangles, actualRectangles,
+							errors);
+					SearchBenchmark.verify(nearestMeasurement.getName(), expectedNearest, actualNearest, errors);
+				}
+				for (final Measurement measurement : new Measurement[] { pointMeasurement, rectangleMeasurement,
+						nearestMeasurement }) {
+					System.out.println(measurement);
+					if (isUpdate) {
+						baseline.put(measurement);
+					} else {
+						errors.addAll(baseline.compare(measurement, threshold, latencyThreshold));
+					}
+				}
+			}
+		}
+		if (isUpdate) {
+			baseline.save(baselineFile, "SearchBenchmark");
+			System.out.println("wrote " + baselineFile);
+		}
+		if (!errors.isEmpty()) {
+			for (final String error : errors) {
+				System.out.println("REGRESSION: " + error);
+			}
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * 比較する Search の実装を作成します。
+	 * @return 名前と実装の対応表
+	 */
+	private static Map<String, Search> createSearches() {
+		final Map<String, Search> ret = new LinkedHashMap<String, Search>();
+		for (final String cell : System.getProperty("benchmark.cells", "2000x1500,1000x100").split(",")) {
+			final double[] size = SearchBenchmark.parseSize(cell);
+			ret.put("cell" + cell.trim(), new CellSearch(size[0], size[1]));
+		}
+		ret.put("rtree", new RTreeSearch());
+		return ret;
+	}
+
+	/**
+	 * 点検索の所要時間を計測します。
+	 * @param name 計測の名前
+	 * @param search 空間索引
+	 * @param points 検索する点の一覧
+	 * @param results 検索結果を追加するリスト
+	 * @return 計測結果
+	 */
+	private static Measurement measurePoints(final String name, final Search search, final List<Point2D> points,
+			final List<Collection<String>> results) {
+		for (int i = 0; i < SearchBenchmark.WARMUP; i++) {
+			for (final Point2D point : points) {
+				search.search(point);
+			}
+		}
+		final Measurement ret = new Measurement(name);
+		for (final Point2D point : points) {
+			final long start = System.nanoTime();
+			final Collection<String> result = search.search(point);
+			final long time = System.nanoTime() - start;
+			ret.add(time, search.getNodeAccess(), search.getShapeAccess());
+			results.add(result);
+		}
+		return ret;
+	}
+
+	/**
+	 * 矩形検索の所要時間を計測します。
+	 * @param name 計測の名前
+	 * @param search 空間索引
+	 * @param rectangles 検索する矩形の一覧
+	 * @param results 検索結果を追加するリスト
+	 * @return 計測結果
+	 */
+	private static Measurement measureRectangles(final String name, final Search search,
+			final List<Rectangle2D> rectangles, final List<Collection<String>> results) {
+		for (int i = 0; i < SearchBenchmark.WARMUP; i++) {
+			for (final Rectangle2D rectangle : rectangles) {
+				search.search(rectangle);
+			}
+		}
+		final Measurement ret = new Measurement(name);
+		for (final Rectangle2D rectangle : rectangles) {
+			final long start = System.nanoTime();
+			final Collection<String> result = search.search(rectangle);
+			final long time = System.nanoTime() - start;
+			ret.add(time, search.getNodeAccess(), search.getShapeAccess());
+			results.add(result);
+		}
+		return ret;
+	}
+
+	/**
+	 * 近傍検索の所要時間を計測します。
+	 * @param name 計測の名前
+	 * @param search 空間索引
+	 * @param points 検索する点の一覧
+	 * @param results 検索結果を追加するリスト
+	 * @return 計測結果
+	 */
+	private static Measurement measureNearest(final String name, final Search search, final List<Point2D> points,
+			final List<Collection<String>> results) {
+		for (int i = 0; i < SearchBenchmark.WARMUP; i++) {
+			for (final Point2D point : points) {
+				search.searchNearest(point, SearchBenchmark.K);
+			}
+		}
+		final Measurement ret = new Measurement(name);
+		for (final Point2D point : points) {
+			final long start = System.nanoTime();
+			final Collection<String> result = search.searchNearest(point, SearchBenchmark.K);
+			final long time = System.nanoTime() - start;
+			ret.add(time, search.getNodeAccess(), search.getShapeAccess());
+			results.add(result);
+		}
+		return ret;
+	}
+
+	/**
+	 * 検索結果が基準となる実装と一致するかどうかを調べます。
+	 * @param name 計測の名前
+	 * @param expected 基準となる実装の検索結果
+	 * @param actual 検索結果
+	 * @param errors 一致しなかったときに説明を追加するリスト
+	 */
+	private static void verify(final String name, final List<Collection<String>> expected,
+			final List<Collection<String>> actual, final List<String> errors) {
+		int mismatches = 0;
+		for (int i = 0; i < expected.size(); i++) {
+			if (!new HashSet<String>(expected.get(i)).equals(new HashSet<String>(actual.get(i)))) {
+				mismatches++;
+			}
+		}
+		if (mismatches > 0) {
+			errors.add(name + ": " + mismatches + "件の検索結果が一致しません。");
+		}
+	}
+
+	/**
+	 * データのディレクトリから、名前が指定した文字列で始まるCSVファイルを読み込みます。
+	 * ファイルが上限より多ければ、名前順に並べて等間隔に間引きます。
+	 * @param dataDir データのディレクトリ
+	 * @param prefix ファイル名の接頭辞
+	 * @param max 読み込むファイル数の上限
+	 * @return ポリゴンとラベルの対応表
+	 * @throws IOException 入出力例外
+	 */
+	private static Map<Shape, String> loadShapes(final String dataDir, final String prefix, final int max)
+			throws IOException {
+		final Map<Shape, String> ret = new LinkedHashMap<Shape, String>();
+		final String[] files = new File(dataDir).list();
+		if (files == null) {
+			return ret;
+		}
+		final List<String> list = new ArrayList<String>();
+		for (final String file : files) {
+			if (file.startsWith(prefix) && file.endsWith(".csv")) {
+				list.add(file);
+			}
+		}
+		Collections.sort(list);
+		final int step = Math.max(1, (list.size() + max - 1) / Math.max(1, max));
+		for (int i = 0; i < list.size(); i += step) {
+			final InputStream in = new FileInputStream(new File(dataDir, list.get(i)));
+			try {
+				ret.putAll(ShapeIO.readShapes(in));
+			} finally {
+				in.close();
+			}
+		}
+		return ret;
+	}
+
+	/**
+	 * 図葉のディレクトリから、図葉の範囲を読み込みます。
+	 * @param baseDir 図葉のディレクトリ
+	 * @return 図葉の範囲と図葉の名前の対応表
+	 * @throws IOException 入出力例外
+	 */
+	private static Map<Shape, String> loadSheets(final String baseDir) throws IOException {
+		final Map<Shape, String> ret = new LinkedHashMap<Shape, String>();
+		final String[] files = new File(baseDir).list();
+		if (files == null) {
+			return ret;
+		}
+		final Pattern pattern = Pattern.compile("[0-9][0-9][a-zA-Z][a-zA-Z][0-9][0-9][0-9]");
+		for (final String file : files) {
+			if (pattern.matcher(file).matches()) {
+				final String mapName = file.toLowerCase();
+				ret.put(new MapData(baseDir, mapName).getBounds(), mapName);
+			}
+		}
+		return ret;
+	}
+
+	/**
+	 * 実行するたびに同じ検索をするように、ポリゴンを範囲とラベルの順に並べます。
+	 * @param shapes ポリゴンとラベルの対応表
+	 * @return 並べたポリゴンとラベルの一覧
+	 */
+	private static List<Map.Entry<Shape, String>> sort(final Map<Shape, String> shapes) {
+		final List<Map.Entry<Shape, String>> ret = new ArrayList<Map.Entry<Shape, String>>(shapes.entrySet());
+		Collections.sort(ret, new Comparator<Map.Entry<Shape, String>>() {
+			public int compare(final Map.Entry<Shape, String> o1, final Map.Entry<Shape, String> o2) {
+				final Rectangle2D bounds = o1.getKey().getBounds2D();
+				final Rectangle2D bounds2 = o2.getKey().getBounds2D();
+				final int x = Double.compare(bounds.getMinX(), bounds2.getMinX());
+				if (x != 0) {
+					return x;
+				}
+				final int y = Double.compare(bounds.getMinY(), bounds2.getMinY());
+				if (y != 0) {
+					return y;
+				}
+				final int width = Double.compare(bounds.getWidth(), bounds2.getWidth());
+				if (width != 0) {
+					return width;
+				}
+				final int height = Double.compare(bounds.getHeight(), bounds2.getHeight());
+				return height != 0 ? height : o1.getValue().compareTo(o2.getValue());
+			}
+		});
+		return ret;
+	}
+
+	/**
+	 * 「幅x高さ」の形式の文字列を解析します。
+	 * @param string 文字列
+	 * @return 幅と高さ
+	 */
+	private static double[] parseSize(final String string) {
+		final String[] items = string.trim().split("x");
+		if (items.length != 2) {
+			throw new IllegalArgumentException("大きさは「幅x高さ」の形式で指定してください: " + string);
+		}
+		return new double[] { Double.parseDouble(items[0]), Double.parseDouble(items[1]) };
+	}
+}
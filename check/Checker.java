@@ -0,0 +1,33 @@
+package check;
+
+/**
+ * 確認の結果を集めるクラスです。
+ * @author zenjiro
+ * @since 6.3.0
+ */
+class Checker {
+	/**
+	 * 失敗した確認の数
+	 */
+	private int errors;
+
+	/**
+	 * 条件を確かめます。
+	 * @param name 確認の名前
+	 * @param condition 条件
+	 */
+	void check(final String name, final boolean condition) {
+		System.out.println((condition ? "OK     " : "FAILED ") + name);
+		if (!condition) {
+			this.errors++;
+		}
+	}
+
+	/**
+	 * 結果を表示して終了します。1つでも失敗していれば、終了コード1で終了します。
+	 */
+	void exit() {
+		System.out.println(this.errors == 0 ? "all checks passed" : this.errors + " check(s) failed");
+		System.exit(this.errors == 0 ? 0 : 1);
+	}
+}
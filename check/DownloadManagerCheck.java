@@ -0,0 +1,295 @@
+package check;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import web.DownloadManager;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * DownloadManager を、ネットワークにつながずに確かめるクラスです。
+ * 手元に HTTP サーバを立てて、国土数値情報や街区レベル位置参照情報の配布サーバの代わりにします。
+ * 1つでも失敗すれば、終了コード1で終了します。
+ * @author zenjiro
+ * @since 6.3.0
+ */
+public class DownloadManagerCheck {
+	/**
+	 * 手元の HTTP サーバです。
+	 * パスごとに内容を返し、範囲指定に対応し、指定した回数だけ503を返したり、応答を遅らせたりできます。
+	 * @author zenjiro
+	 * @since 6.3.0
+	 */
+	private static class Server implements HttpHandler {
+		/**
+		 * パスと内容の対応表
+		 */
+		final Map<String, byte[]> contents = new ConcurrentHashMap<String, byte[]>();
+
+		/**
+		 * パスと、あと何回503を返すかの対応表
+		 */
+		final Map<String, Integer> failures = new ConcurrentHashMap<String, Integer>();
+
+		/**
+		 * 範囲指定された要求の数
+		 */
+		final AtomicInteger ranges = new AtomicInteger();
+
+		/**
+		 * 応答を遅らせる時間[ms]
+		 */
+		volatile long delay;
+
+		/**
+		 * HTTP サーバ
+		 */
+		final HttpServer server;
+
+		/**
+		 * 空いているポートで HTTP サーバを起動します。
+		 * @throws IOException 入出力例外
+		 */
+		Server() throws IOException {
+			this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+			this.server.createContext("/", this);
+			this.server.start();
+		}
+
+		/**
+		 * @param path パス
+		 * @return URL
+		 * @throws IOException 入出力例外
+		 */
+		URL getURL(final String path) throws IOException {
+			return new URL("http://127.0.0.1:" + this.server.getAddress().getPort() + path);
+		}
+
+		public void handle(final HttpExchange exchange) throws IOException {
+			try {
+				if (this.delay > 0) {
+					Thread.sleep(this.delay);
+				}
+			} catch (final InterruptedException exception) {
+				Thread.currentThread().interrupt();
+			}
+			final String path = exchange.getRequestURI().getPath();
+			final Integer failure = this.failures.get(path);
+			final byte[] content = this.contents.get(path);
+			if (failure != null && failure > 0) {
+				this.failures.put(path, failure - 1);
+				exchange.sendResponseHeaders(503, -1);
+			} else if (content == null) {
+				exchange.sendResponseHeaders(404, -1);
+			} else {
+				final String range = exchange.getRequestHeaders().getFirst("Range");
+				int offset = 0;
+				if (range != null) {
+					this.ranges.incrementAndGet();
+					offset = Integer.parseInt(range.replaceFirst("bytes=([0-9]+)-", "$1"));
+				}
+				if (offset >= content.length) {
+					exchange.sendResponseHeaders(416, -1);
+				} else {
+					exchange.sendResponseHeaders(offset > 0 ? 206 : 200, content.length - offset);
+					final OutputStream out = exchange.getResponseBody();
+					out.write(content, offset, content.length - offset);
+					out.close();
+				}
+			}
+			exchange.close();
+		}
+	}
+
+	/**
+	 * @param name エントリの名前
+	 * @param size エントリの大きさ[byte]
+	 * @return エントリを1つ含む圧縮ファイルの内容
+	 * @throws IOException 入出力例外
+	 */
+	private static byte[] createZip(final String name, final int size) throws IOException {
+		final ByteArrayOutputStream ret = new ByteArrayOutputStream();
+		final ZipOutputStream out = new ZipOutputStream(ret);
+		out.putNextEntry(new ZipEntry(name));
+		for (int i = 0; i < size; i++) {
+			out.write((i * 31) % 251);
+		}
+		out.closeEntry();
+		out.close();
+		return ret.toByteArray();
+	}
+
+	/**
+	 * @param file ファイル
+	 * @return ファイルの内容
+	 * @throws IOException 入出力例外
+	 */
+	private static byte[] read(final File file) throws IOException {
+		final ByteArrayOutputStream ret = new ByteArrayOutputStream();
+		final InputStream in = new FileInputStream(file);
+		try {
+			final byte[] buf = new byte[DownloadManager.BUFFER_SIZE];
+			int size;
+			while ((size = in.read(buf)) != -1) {
+				ret.write(buf, 0, size);
+			}
+		} finally {
+			in.close();
+		}
+		return ret.toByteArray();
+	}
+
+	/**
+	 * @param future ダウンロードの結果
+	 * @return ダウンロードが失敗した原因。成功すれば null
+	 * @throws InterruptedException 割り込み例外
+	 * @throws IOException 入出力例外
+	 */
+	private static Throwable getCause(final Future<File> future) throws InterruptedException, IOException {
+		try {
+			future.get(30, TimeUnit.SECONDS);
+			return null;
+		} catch (final ExecutionException exception) {
+			return exception.getCause();
+		} catch (final TimeoutException exception) {
+			throw new IOException("timed out");
+		}
+	}
+
+	/**
+	 * DownloadManager を確かめます。
+	 * @param args 使いません。
+	 * @throws Exception 例外
+	 */
+	public static void main(final String[] args) throws Exception {
+		final Checker checker = new Checker();
+		final Server server = new Server();
+		final File directory = new File("build" + File.separator + "check" + File.separator + "download");
+		directory.mkdirs();
+		for (final File file : directory.listFiles()) {
+			file.delete();
+		}
+		try {
+			final long retryInterval = 500;
+			final DownloadManager manager = new DownloadManager(1, 1, retryInterval);
+
+			// ダウンロードして、同じファイルへの要求をまとめる
+			final byte[] zip = DownloadManagerCheck.createZip("a.txt", 100000);
+			server.contents.put("/a.zip", zip);
+			server.delay = 100;
+			final File fileA = new File(directory, "a.zip");
+			final Future<File> futureA = manager.request(server.getURL("/a.zip"), fileA, null);
+			final Future<File> futureA2 = manager.request(server.getURL("/a.zip"), fileA, null);
+			checker.check("coalesce requests for the same file", futureA == futureA2);
+			checker.check("download", DownloadManagerCheck.getCause(futureA) == null
+					&& Arrays.equals(DownloadManagerCheck.read(fileA), zip));
+			checker.check("not downloading after completion", !manager.isDownloading(fileA));
+			server.delay = 0;
+
+			// 途中まで保存されたファイルから再開する
+			server.contents.put("/b.zip", zip);
+			final File fileB = new File(directory, "b.zip");
+			final OutputStream out = new FileOutputStream(new File(fileB.getPath() + DownloadManager.PART_SUFFIX));
+			out.write(zip, 0, zip.length / 2);
+			out.close();
+			checker.check("resume a partial download", DownloadManagerCheck.getCause(manager.request(
+					server.getURL("/b.zip"), fileB, null)) == null
+					&& server.ranges.get() == 1 && Arrays.equals(DownloadManagerCheck.read(fileB), zip));
+
+			// 最初の候補が見つからなければ次の候補を試す
+			server.contents.put("/old/c.zip", zip);
+			final File fileC = new File(directory, "c.zip");
+			checker.check("fall back to the next URL", DownloadManagerCheck.getCause(manager.request(
+					Arrays.asList(server.getURL("/new/c.zip"), server.getURL("/old/c.zip")), fileC, null)) == null
+					&& fileC.exists());
+
+			// 見つからないファイル
+			final File fileD = new File(directory, "d.zip");
+			checker.check("report a missing file", DownloadManagerCheck.getCause(manager.request(server
+					.getURL("/d.zip"), fileD, null)) instanceof FileNotFoundException
+					&& manager.isFailed(fileD));
+
+			// 一時的な失敗は、しばらく経てばもう一度ダウンロードできる
+			server.contents.put("/e.zip", zip);
+			server.failures.put("/e.zip", 1);
+			final File fileE = new File(directory, "e.zip");
+			checker.check("report a transient failure", DownloadManagerCheck.getCause(manager.request(
+					server.getURL("/e.zip"), fileE, null)) != null
+					&& manager.isFailed(fileE));
+			Thread.sleep(retryInterval + 100);
+			checker.check("expire a failure", !manager.isFailed(fileE));
+			checker.check("retry after a failure", DownloadManagerCheck.getCause(manager.request(server
+					.getURL("/e.zip"), fileE, null)) == null
+					&& fileE.exists());
+
+			// 待ち行列があふれても、要求は保留されて全て実行される
+			server.delay = 100;
+			final List<Future<File>> futures = new ArrayList<Future<File>>();
+			final List<File> files = new ArrayList<File>();
+			for (int i = 0; i < 6; i++) {
+				server.contents.put("/f" + i + ".zip", zip);
+				final File file = new File(directory, "f" + i + ".zip");
+				files.add(file);
+				futures.add(manager.request(server.getURL("/f" + i + ".zip"), file, null));
+			}
+			checker.check("never reject a request", !futures.contains(null));
+			boolean isAllDownloaded = true;
+			for (int i = 0; i < futures.size(); i++) {
+				if (futures.get(i) == null || DownloadManagerCheck.getCause(futures.get(i)) != null
+						|| !files.get(i).exists()) {
+					isAllDownloaded = false;
+				}
+			}
+			checker.check("run deferred requests when the queue overflows", isAllDownloaded
+					&& manager.getQueueSize() == 0);
+
+			// 保留しているダウンロードが多すぎるときは、古いものから取り消す
+			final DownloadManager manager2 = new DownloadManager(1, 1, retryInterval, 2);
+			final List<Future<File>> futures2 = new ArrayList<Future<File>>();
+			final List<File> files2 = new ArrayList<File>();
+			for (int i = 0; i < 6; i++) {
+				server.contents.put("/g" + i + ".zip", zip);
+				final File file = new File(directory, "g" + i + ".zip");
+				files2.add(file);
+				futures2.add(manager2.request(server.getURL("/g" + i + ".zip"), file, null));
+			}
+			checker.check("cancel the oldest deferred requests", futures2.get(2).isCancelled()
+					&& futures2.get(3).isCancelled() && !manager2.isDownloading(files2.get(2))
+					&& !manager2.isDownloading(files2.get(3)));
+			boolean isNewestDownloaded = true;
+			for (final int i : new int[] { 0, 1, 4, 5 }) {
+				if (DownloadManagerCheck.getCause(futures2.get(i)) != null || !files2.get(i).exists()) {
+					isNewestDownloaded = false;
+				}
+			}
+			checker.check("run the newest deferred requests", isNewestDownloaded && !files2.get(2).exists()
+					&& !files2.get(3).exists() && manager2.getQueueSize() == 0);
+		} finally {
+			server.server.stop(0);
+		}
+		checker.exit();
+	}
+}
@@ -0,0 +1,129 @@
+package check;
+
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import search.CellSearch;
+import search.RTreeSearch;
+import search.Search;
+
+/**
+ * Search の近傍検索が、どの実装でも同じ結果を返して終了することを確かめるクラスです。
+ * 1つでも失敗すれば、終了コード1で終了します。
+ * @author zenjiro
+ * @since 6.3.0
+ */
+public class SearchCheck {
+	/**
+	 * 1回の検索を待つ時間[s]。これを超えたら終了しなかったものとみなす
+	 */
+	private static final int TIMEOUT = 10;
+
+	/**
+	 * 検索を実行するスレッド。終了しなかった検索が残っていても終了できるように、デーモンにする
+	 */
+	private static final ExecutorService EXECUTOR = Executors.newSingleThreadExecutor(new ThreadFactory() {
+		public Thread newThread(final Runnable runnable) {
+			final Thread thread = new Thread(runnable, "SearchCheck");
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+
+	/**
+	 * @param search 空の空間索引
+	 * @return a と b の2つのラベルを登録した空間索引
+	 */
+	private static Search createSearch(final Search search) {
+		search.insert(new Rectangle2D.Double(0, 0, 100, 100), "a");
+		search.insert(new Rectangle2D.Double(5000, 3000, 100, 100), "b");
+		// 同じラベルの2つ目の図形は、結果に1回だけ現れる
+		search.insert(new Rectangle2D.Double(9000, 9000, 100, 100), "b");
+		return search;
+	}
+
+	/**
+	 * 時間を区切って検索します。
+	 * @param callable 検索
+	 * @return 検索結果。時間内に終わらなければ null
+	 * @throws Exception 例外
+	 */
+	private static List<String> run(final Callable<List<String>> callable) throws Exception {
+		final Future<List<String>> future = SearchCheck.EXECUTOR.submit(callable);
+		try {
+			return future.get(SearchCheck.TIMEOUT, TimeUnit.SECONDS);
+		} catch (final TimeoutException exception) {
+			future.cancel(true);
+			return null;
+		}
+	}
+
+	/**
+	 * 近傍検索を確かめます。
+	 * @param checker 確認の結果を集めるオブジェクト
+	 * @param name 実装の名前
+	 * @param search 空の空間索引
+	 * @throws Exception 例外
+	 */
+	private static void check(final Checker checker, final String name, final Search search) throws Exception {
+		checker.check(name + ": nearest in an empty index", Collections.<String> emptyList().equals(
+				SearchCheck.run(new Callable<List<String>>() {
+					public List<String> call() {
+						return search.searchNearest(new Point2D.Double(0, 0), 3);
+					}
+				})));
+		final Search filled = SearchCheck.createSearch(search);
+		checker.check(name + ": nearest with k larger than the label count", Arrays.asList("a", "b").equals(
+				SearchCheck.run(new Callable<List<String>>() {
+					public List<String> call() {
+						return filled.searchNearest(new Point2D.Double(50, 50), 3);
+					}
+				})));
+		checker.check(name + ": nearest from outside the indexed cells", Arrays.asList("b", "a").equals(
+				SearchCheck.run(new Callable<List<String>>() {
+					public List<String> call() {
+						return filled.searchNearest(new Point2D.Double(100000, 100000), 5);
+					}
+				})));
+		checker.check(name + ": nearest with k = 1", Arrays.asList("b").equals(SearchCheck
+				.run(new Callable<List<String>>() {
+					public List<String> call() {
+						return filled.searchNearest(new Point2D.Double(5050, 3050), 1);
+					}
+				})));
+		checker.check(name + ": within a distance", Arrays.asList("a").equals(SearchCheck
+				.run(new Callable<List<String>>() {
+					public List<String> call() {
+						return filled.searchWithin(new Point2D.Double(150, 50), 100);
+					}
+				})));
+		checker.check(name + ": within an infinite distance", Arrays.asList("a", "b").equals(SearchCheck
+				.run(new Callable<List<String>>() {
+					public List<String> call() {
+						return filled.searchWithin(new Point2D.Double(50, 50), Double.POSITIVE_INFINITY);
+					}
+				})));
+	}
+
+	/**
+	 * CellSearch と RTreeSearch の近傍検索を確かめます。
+	 * @param args 使いません。
+	 * @throws Exception 例外
+	 */
+	public static void main(final String[] args) throws Exception {
+		final Checker checker = new Checker();
+		SearchCheck.check(checker, "CellSearch", new CellSearch(2000, 1500));
+		SearchCheck.check(checker, "RTreeSearch", new RTreeSearch());
+		checker.exit();
+	}
+}
@@ -4,24 +4,21 @@ import java.awt.geom.Point2D;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.PrintWriter;
 import java.net.URL;
-import java.util.Enumeration;
+import java.util.Arrays;
 import java.util.Map;
 import java.util.Scanner;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipException;
-import java.util.zip.ZipFile;
 
 import map.MapPanel;
 import map.UTMUtil;
-import web.WebUtilities;
+import web.DownloadManager;
 
 /**
  * 街区レベル位置参照情報を取得するユーティリティクラスです。
@@ -41,8 +38,9 @@ public class ISJUtil {
 
 	/**
 	 * 街区レベル位置参照情報の配布URL
+	 * システムプロパティ isj.base.url で変更できます。
 	 */
-	public static final String BASE_URL = "http://nlftp.mlit.go.jp/isj/dls/data/";
+	public static final String BASE_URL = System.getProperty("isj.base.url", "http://nlftp.mlit.go.jp/isj/dls/data/");
 
 	/**
 	 * キャッシュディレクトリの相対パス
@@ -81,9 +79,11 @@ public class ISJUtil {
 
 	/**
 	 * 街区レベル位置参照情報をダウンロードし、読み込みます。
+	 * 圧縮ファイルがまだなければダウンロードを要求して、すぐに null を返します。
+	 * ダウンロードが終わると、地図を描画するパネルのアクションリスナが呼び出されます。
 	 * @param id 市区町村コード
 	 * @param panel 地図を描画するパネル
-	 * @return 街区レベル位置参照情報
+	 * @return 街区レベル位置参照情報。ダウンロード中であれば null、ダウンロードに失敗していれば空の対応表
 	 * @throws FileNotFoundException 
 	 * @throws IOException 
 	 */
@@ -96,48 +96,35 @@ public class ISJUtil {
 		final URL oldUrl = new URL(ISJUtil.BASE_URL + ISJUtil.OLD_ZIP_PREFIX + id + ISJUtil.OLD_ZIP_SUFFIX);
 		final String cacheFile = ISJUtil.CACHE_DIR + File.separator + ISJUtil.CACHE_PREFIX + id + ISJUtil.CACHE_SUFFIX;
 		if (!new File(cacheFile).exists()) {
+			InputStream in = null;
 			if (csvFile.exists()) {
 				// 平成16年の展開済みファイルがあるとき
+				in = new FileInputStream(csvFile);
 			} else {
 				if (oldCsvFile.exists()) {
 					// 平成15年の展開済みファイルがあるとき
 					csvFile = oldCsvFile;
+					in = new FileInputStream(csvFile);
 				} else {
-					final File cacheDir = new File(ISJUtil.CACHE_DIR);
-					if (!cacheDir.exists()) {
-						cacheDir.mkdir();
-					}
-					try {
-						url.openStream();
-						// 平成16年の圧縮ファイルをダウンロードできるとき
-						final File file = new File(ISJUtil.CACHE_DIR + File.separator + id + ISJUtil.ZIP_SUFFIX);
-						file.createNewFile();
-						panel.addMessage(url + "をダウンロードしています。");
-						get(url, file);
-						panel.removeMessage();
-						csvFile = new File(ISJUtil.CACHE_DIR + File.separator + id + ISJUtil.CSV_SUFFIX);
-					} catch (final FileNotFoundException e) {
-						try {
-							System.out.println("WARNING: failed to get " + url);
-							oldUrl.openStream();
-							// 平成15年の圧縮ファイルをダウンロードできるとき
-							final File file = new File(ISJUtil.CACHE_DIR + File.separator + id + ISJUtil.OLD_ZIP_SUFFIX);
-							file.createNewFile();
-							panel.addMessage(oldUrl + "をダウンロードしています。");
-							get(oldUrl, file);
-							panel.removeMessage();
-							csvFile = new File(ISJUtil.CACHE_DIR + File.separator + id + ISJUtil.OLD_CSV_SUFFIX);
-						} catch (final FileNotFoundException e1) {
-							System.out.println("WARNING: failed to get " + oldUrl);
-							e1.printStackTrace();
-						}
+					// since 6.3.0
+					final File file = new File(ISJUtil.CACHE_DIR + File.separator + id + ISJUtil.ZIP_SUFFIX);
+					if (file.exists()) {
+						// 平成16年または平成15年の圧縮ファイルがあるとき
+						csvFile = file;
+						in = DownloadManager.openEntry(file, ".csv");
+					} else if (DownloadManager.getInstance().isFailed(file)) {
+						return ret;
+					} else {
+						DownloadManager.getInstance().request(Arrays.asList(url, oldUrl), file,
+								panel.getActionListener());
+						return null;
 					}
 				}
 			}
-			if (csvFile.canRead()) {
+			if (in != null) {
 				panel.addMessage(csvFile + "の座標系を変換しています。");
 				final PrintWriter out = new PrintWriter(new File(cacheFile), "SJIS");
-				final Scanner scanner = new Scanner(new InputStreamReader(new FileInputStream(csvFile), "SJIS"));
+				final Scanner scanner = new Scanner(new InputStreamReader(in, "SJIS"));
 				boolean isFirst = true;
 				while (scanner.hasNextLine()) {
 					final String line = scanner.nextLine();
@@ -181,6 +168,9 @@ public class ISJUtil {
 				scanner.close();
 				out.close();
 				panel.removeMessage();
+			} else {
+				System.out.println("WARNING: no csv file in " + csvFile);
+				return ret;
 			}
 		}
 		{
@@ -200,26 +190,6 @@ public class ISJUtil {
 		return ret;
 	}
 
-	/**
-	 * ZIPファイルを取得して展開します。
-	 * @param url URL
-	 * @param file 出力ファイル
-	 * @throws IOException
-	 * @throws FileNotFoundException
-	 * @throws ZipException
-	 */
-	private static void get(final URL url, final File file) throws IOException, FileNotFoundException, ZipException {
-		WebUtilities.copy(url.openStream(), new FileOutputStream(file));
-		final ZipFile zipFile = new ZipFile(file);
-		for (final Enumeration<? extends ZipEntry> enumeration = zipFile.entries(); enumeration.hasMoreElements();) {
-			final ZipEntry entry = enumeration.nextElement();
-			if (entry.getName().endsWith(".csv")) {
-				WebUtilities.copy(zipFile.getInputStream(entry), new FileOutputStream(ISJUtil.CACHE_DIR
-						+ File.separator + new File(entry.getName())));
-			}
-		}
-	}
-
 	/**
 	 * アドレスマッチングを行い、住所、店舗名、x座標、y座標をカンマ区切りで出力ストリームに書き出します。
 	 * @param addresses 住所と店舗名の対応表
@@ -19,7 +19,6 @@ import java.util.Map;
 import java.util.Scanner;
 import java.util.concurrent.ConcurrentHashMap;
 
-import map.MapPanel;
 import map.UTMUtil;
 
 /**
@@ -91,56 +90,41 @@ public class LoadKsj {
 	}
 
 	/**
-	 * 地図データを読み込んでUTM座標に変換します。
-	 * @param directory ディレクトリ
-	 * @param regex ファイル名の正規表現
-	 * @param cacheFile 座標変換済みのデータを記録するキャッシュファイル
-	 * @param isFast 急ぐかどうか
-	 * @param panel 地図を描画するパネル
-	 * @return 地図データ
-	 * @throws FileNotFoundException ファイル未検出例外
-	 * @throws UnsupportedEncodingException サポート外エンコーディング例外
+	 * 地図データの座標を、秒の1/10単位の緯度経度からUTM座標に変換します。
+	 * @param shapes 地図データ
+	 * @return UTM座標に変換した地図データ
+	 * @since 6.3.0
 	 */
-	public static Map<Shape, String> loadShapesUTM(final File directory, final String regex,
-		final String cacheFile, final boolean isFast, final MapPanel panel) throws UnsupportedEncodingException,
-		FileNotFoundException {
-		if (new File(cacheFile).exists()) {
-			return ShapeIO.readShapes(new FileInputStream(new File(cacheFile)));
-		} else {
-			panel.addMessage(regex + "の座標変換をして" + cacheFile + "に保存しています。");
-			final Map<Shape, String> ret = new ConcurrentHashMap<Shape, String>();
-			final Map<Shape, String> shapes = loadShapes(directory, regex, isFast);
-			for (final Map.Entry<Shape, String> entry : shapes.entrySet()) {
-				final GeneralPath path = new GeneralPath();
-				final PathIterator iterator = entry.getKey().getPathIterator(new AffineTransform());
-				while (!iterator.isDone()) {
-					final float[] coords = new float[6];
-					final int type = iterator.currentSegment(coords);
-					switch (type) {
-					case PathIterator.SEG_MOVETO: {
-						final Point2D point = UTMUtil.toUTM(coords[0] / 36000.0,
-							coords[1] / 36000.0);
-						path.moveTo((float) point.getX(), (float) point.getY());
-						break;
-					}
-					case PathIterator.SEG_LINETO: {
-						final Point2D point = UTMUtil.toUTM(coords[0] / 36000.0,
-							coords[1] / 36000.0);
-						path.lineTo((float) point.getX(), (float) point.getY());
-						break;
-					}
-					case PathIterator.SEG_CLOSE:
-						path.closePath();
-						break;
-					}
-					iterator.next();
+	public static Map<Shape, String> toUTM(final Map<Shape, String> shapes) {
+		final Map<Shape, String> ret = new ConcurrentHashMap<Shape, String>();
+		for (final Map.Entry<Shape, String> entry : shapes.entrySet()) {
+			final GeneralPath path = new GeneralPath();
+			final PathIterator iterator = entry.getKey().getPathIterator(new AffineTransform());
+			while (!iterator.isDone()) {
+				final float[] coords = new float[6];
+				final int type = iterator.currentSegment(coords);
+				switch (type) {
+				case PathIterator.SEG_MOVETO: {
+					final Point2D point = UTMUtil.toUTM(coords[0] / 36000.0,
+						coords[1] / 36000.0);
+					path.moveTo((float) point.getX(), (float) point.getY());
+					break;
 				}
-				ret.put(path, entry.getValue());
+				case PathIterator.SEG_LINETO: {
+					final Point2D point = UTMUtil.toUTM(coords[0] / 36000.0,
+						coords[1] / 36000.0);
+					path.lineTo((float) point.getX(), (float) point.getY());
+					break;
+				}
+				case PathIterator.SEG_CLOSE:
+					path.closePath();
+					break;
+				}
+				iterator.next();
 			}
-			ShapeIO.writeShape(ret, new FileOutputStream(new File(cacheFile)));
-			panel.removeMessage();
-			return ret;
+			ret.put(path, entry.getValue());
 		}
+		return ret;
 	}
 
 	/**
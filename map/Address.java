@@ -0,0 +1,76 @@
+package map;
+
+/**
+ * 逆ジオコーディングで求めた住所を表すクラスです。
+ * 分からなかった部分は空文字列になります。
+ * @author zenjiro
+ * @since 6.3.0
+ */
+public class Address {
+	/**
+	 * 都道府県名
+	 */
+	private final String prefecture;
+
+	/**
+	 * 市区町村名
+	 */
+	private final String city;
+
+	/**
+	 * 町丁目名
+	 */
+	private final String tyome;
+
+	/**
+	 * 街区符号
+	 */
+	private final String block;
+
+	/**
+	 * 住所を初期化します。
+	 * @param prefecture 都道府県名
+	 * @param city 市区町村名
+	 * @param tyome 町丁目名
+	 * @param block 街区符号
+	 */
+	public Address(final String prefecture, final String city, final String tyome, final String block) {
+		this.prefecture = prefecture == null ? "" : prefecture;
+		this.city = city == null ? "" : city;
+		this.tyome = tyome == null ? "" : tyome;
+		this.block = block == null ? "" : block;
+	}
+
+	/**
+	 * @return 都道府県名
+	 */
+	public String getPrefecture() {
+		return this.prefecture;
+	}
+
+	/**
+	 * @return 市区町村名
+	 */
+	public String getCity() {
+		return this.city;
+	}
+
+	/**
+	 * @return 町丁目名
+	 */
+	public String getTyome() {
+		return this.tyome;
+	}
+
+	/**
+	 * @return 街区符号
+	 */
+	public String getBlock() {
+		return this.block;
+	}
+
+	@Override
+	public String toString() {
+		return this.prefecture + this.city + this.tyome + this.block;
+	}
+}
@@ -13,15 +13,15 @@ import java.awt.geom.Rectangle2D;
 import java.io.IOException;
 import java.util.Collection;
 import java.util.Map;
-import java.util.TimerTask;
 
 /**
  * 地図の読み込み、ポリゴンの結合、塗り分け、属性配置位置の計算、再描画など、
  * バックグラウンドで行う作業を管理するクラスです。
+ * 6.3.0以降は、一定時間ごとに変化を調べるのではなく、イベントが届くたびに UpdateScheduler から呼び出されます。
  * @author zenjiro
  * 作成日: 2004/01/19
  */
-public class BackgroundThread extends TimerTask {
+public class BackgroundThread implements Runnable {
 	/**
 	 * 地図
 	 */
@@ -38,15 +38,34 @@ public class BackgroundThread extends TimerTask {
 	private final MapPanel panel;
 
 	/**
-	 * 地図の状態が変化したかどうか
+	 * 地図の状態が変化したときに、更新を予約するためのオブジェクト
+	 * @since 6.3.0
 	 */
-	boolean isChanged;
+	final UpdateScheduler scheduler;
 
 	/**
 	 * 地図を読み込むためのオブジェクト
 	 */
 	private final LoadMap loadMap;
 
+	/**
+	 * 次に表示されそうな地図を先読みするためのオブジェクト
+	 * @since 6.3.0
+	 */
+	private final Prefetcher prefetcher;
+
+	/**
+	 * 丁目を塗り分けるためのオブジェクト
+	 * @since 6.3.0
+	 */
+	private final PaintTyome paintTyome;
+
+	/**
+	 * 図郭にまたがったポリゴンを結合するためのオブジェクト
+	 * @since 6.3.0
+	 */
+	private final JoinPolygon joinPolygon;
+
 	/**
 	 * 地図の数
 	 */
@@ -72,8 +91,12 @@ public class BackgroundThread extends TimerTask {
 		this.maps = maps;
 		this.panel = panel;
 		this.prefectures = this.panel.getPrefectures();
-		this.isChanged = true;
+		this.scheduler = new UpdateScheduler(this);
+		Metrics.getInstance().register(this.scheduler);
 		this.loadMap = loadMap;
+		this.prefetcher = new Prefetcher(loadMap);
+		this.paintTyome = new PaintTyome();
+		this.joinPolygon = new JoinPolygon();
 		this.mapSize = maps.size();
 		panel.addMouseListener(new MouseAdapter() {
 			@Override
@@ -84,36 +107,36 @@ public class BackgroundThread extends TimerTask {
 			@Override
 			public void mouseReleased(final MouseEvent e) {
 				if (e.getX() != BackgroundThread.this.lastX && e.getY() != BackgroundThread.this.lastY) {
-					BackgroundThread.this.isChanged = true;
+					BackgroundThread.this.request();
 				}
 			}
 			@Override
 			public void mouseClicked(MouseEvent e) {
 				if (e.getClickCount() > 1) {
-					BackgroundThread.this.isChanged = true;
+					BackgroundThread.this.request();
 				}
 			}
 		});
 		panel.addMouseMotionListener(new MouseMotionAdapter() {
 			@Override
 			public void mouseDragged(final MouseEvent e) {
-				BackgroundThread.this.isChanged = true;
+				BackgroundThread.this.request();
 			}
 		});
 		panel.addMouseWheelListener(new MouseWheelListener() {
 			public void mouseWheelMoved(final MouseWheelEvent e) {
-				BackgroundThread.this.isChanged = true;
+				BackgroundThread.this.request();
 			}
 		});
 		panel.addComponentListener(new ComponentAdapter() {
 			@Override
 			public void componentResized(final ComponentEvent e) {
-				BackgroundThread.this.isChanged = true;
+				BackgroundThread.this.request();
 			}
 		});
 		panel.setActionListener(new ActionListener() {
 			public void actionPerformed(final ActionEvent e) {
-				BackgroundThread.this.isChanged = true;
+				BackgroundThread.this.request();
 			}
 		});
 	}
@@ -127,25 +150,34 @@ public class BackgroundThread extends TimerTask {
 			this.panel.addMessage("地図を読み込んでいます。");
 			Progress.getInstance().setLoadMapPaintTyomeProgress(0);
 			if (this.prefectures != null) {
-				if (Prefectures.loadCities(this.prefectures, this.panel, this.maps, this.loadMap) && this.panel.isRouteMode()) {
-					this.panel.initializeGraph();
+				Prefectures.loadCities(this.prefectures, this.panel, this.maps, this.loadMap);
+				// since 6.3.0 道路のグラフは描画とは独立に、表示されている範囲の都道府県ごとに読み込む
+				if (this.panel.isRouteMode()) {
+					this.panel.loadGraph(visibleRectangle);
 				}
 			}
-			synchronized (this.maps) {
-				Progress.getInstance().setLoadMapPaintTyomeProgress(20);
-				this.loadMap.loadMap(this.maps, this.panel, visibleRectangle);
-				if (this.loadMap.isRoadChanged() && this.panel.isRouteMode()) {
-					this.panel.initializeGraph();
-				}
-				Progress.getInstance().setLoadMapPaintTyomeProgress(40);
-				this.panel.loadYomi();
-				Progress.getInstance().setLoadMapPaintTyomeProgress(50);
-				new PaintTyome().paintTyome(this.maps);
-				Progress.getInstance().setLoadMapPaintTyomeProgress(60);
-				new JoinPolygon().joinPolygon(this.maps, visibleRectangle);
-				Progress.getInstance().setLoadMapPaintTyomeProgress(80);
+			// since 6.3.0 描画する側は MapData.Layers を使うので、地図をロックしない
+			Progress.getInstance().setLoadMapPaintTyomeProgress(20);
+			this.loadMap.loadMap(this.maps, this.panel, visibleRectangle);
+			// since 6.3.0 今回使わなかったデータを、メモリの予算を超えた分だけ開放する
+			ResidencyManager.getInstance().evict(visibleRectangle);
+			if (this.loadMap.isRoadChanged() && this.panel.isRouteMode()) {
+				this.panel.initializeGraph();
 			}
+			Progress.getInstance().setLoadMapPaintTyomeProgress(40);
+			this.panel.loadYomi();
+			Progress.getInstance().setLoadMapPaintTyomeProgress(50);
+			final long paintTyomeStart = System.nanoTime(); // since 6.3.0
+			this.paintTyome.paintTyome(this.maps);
+			Metrics.getInstance().record(Metrics.Stage.PAINT_TYOME, paintTyomeStart);
+			Progress.getInstance().setLoadMapPaintTyomeProgress(60);
+			final long joinPolygonStart = System.nanoTime(); // since 6.3.0
+			this.joinPolygon.joinPolygon(this.maps);
+			Metrics.getInstance().record(Metrics.Stage.JOIN_POLYGON, joinPolygonStart);
+			Progress.getInstance().setLoadMapPaintTyomeProgress(80);
+			final long joinTatemonoStart = System.nanoTime(); // since 6.3.0
 			new JoinTatemono().joinTatemono(this.maps);
+			Metrics.getInstance().record(Metrics.Stage.JOIN_TATEMONO, joinTatemonoStart);
 			this.panel.removeMessage();
 			Progress.getInstance().setLoadMapPaintTyomeProgress(100);
 		} catch (final Exception exception) {
@@ -154,34 +186,64 @@ public class BackgroundThread extends TimerTask {
 		}
 	}
 
-	@Override
+	/**
+	 * 最初の更新を予約します。以降はイベントが届くたびに更新します。
+	 * @since 6.3.0
+	 */
+	public void start() {
+		this.request();
+	}
+
+	/**
+	 * @return 次に表示されそうな地図を先読みするためのオブジェクト
+	 * @since 6.3.0
+	 */
+	public Prefetcher getPrefetcher() {
+		return this.prefetcher;
+	}
+
+	/**
+	 * 表示範囲の動きを先読みのために記録し、更新を予約します。
+	 * 更新の予約は、すべてこのメソッドを通します。
+	 * @since 6.3.0
+	 */
+	void request() {
+		this.prefetcher.observe(this.panel.getVisibleRectangle(true), this.panel.getZoom());
+		this.scheduler.request();
+	}
+
 	public void run() {
 		try {
+			Metrics.getInstance().beginFrame(); // since 6.3.0
+			this.mapSize = this.maps.size();
+			Progress.getInstance().initialize();
+			Progress.getInstance().setStatus(Progress.Status.LOADING_MAP_PAINTING_TYOME);
+			final Rectangle2D visibleRectangle = this.panel.getVisibleRectangle(false);
+			final double zoom = this.panel.getZoom();
+			final double offsetX = this.panel.getOffsetX();
+			final double offsetY = this.panel.getOffsetY();
+			final double saturationDifference = this.panel.getSaturationDifference();
+			this.loadMapPaintTyomeJoinTyome(visibleRectangle);
+			Progress.getInstance().setStatus(Progress.Status.CREATING_BITMAP);
+			Progress.getInstance().setCreateBitmapProgress(0);
+			this.panel.createBitmapCache(zoom, offsetX, offsetY, saturationDifference);
+			Metrics.getInstance().endFrame(); // since 6.3.0
+			Progress.getInstance().setStatus(Progress.Status.REPAINTING);
+			Progress.getInstance().setRepaintProgress(0);
+			this.panel.setChanged();
+			this.panel.forceRepaint();
+			Progress.getInstance().complete();
+			// since 6.3.0 新しいイベントが届くまで、次に表示されそうな地図を先読みする
+			this.prefetcher.prefetch(this.maps, this.prefectures, zoom, visibleRectangle, this.scheduler);
+			// 更新中に地図が増えていたら、もう一度更新する
 			if (this.maps.size() != this.mapSize) {
-				this.isChanged = true;
-				this.mapSize = this.maps.size();
-			}
-			if (this.isChanged) {
-				Progress.getInstance().initialize();
-				Progress.getInstance().setStatus(Progress.Status.LOADING_MAP_PAINTING_TYOME);
-				this.isChanged = false;
-				final Rectangle2D visibleRectangle = this.panel.getVisibleRectangle(false);
-				final double zoom = this.panel.getZoom();
-				final double offsetX = this.panel.getOffsetX();
-				final double offsetY = this.panel.getOffsetY();
-				final double saturationDifference = this.panel.getSaturationDifference();
-				this.loadMapPaintTyomeJoinTyome(visibleRectangle);
-				Progress.getInstance().setStatus(Progress.Status.CREATING_BITMAP);
-				Progress.getInstance().setCreateBitmapProgress(0);
-				this.panel.createBitmapCache(zoom, offsetX, offsetY, saturationDifference);
-				Progress.getInstance().setStatus(Progress.Status.REPAINTING);
-				Progress.getInstance().setRepaintProgress(0);
-				this.panel.setChanged();
-				this.panel.forceRepaint();
-				Progress.getInstance().complete();
+				this.request();
 			}
 		} catch (final IOException e) {
 			e.printStackTrace();
+		} catch (final InterruptedException e) {
+			// since 6.3.0 割り込まれたことを、スレッドを止める側に伝える
+			Thread.currentThread().interrupt();
 		}
 	}
 }
@@ -0,0 +1,330 @@
+package map;
+
+import java.awt.Shape;
+import java.awt.geom.GeneralPath;
+import java.awt.geom.PathIterator;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 都道府県や市区町村の境界を、座標変換済みの2進形式で保存しておくキャッシュです。
+ * 境界ごとに、名前、線分の種類、頂点の座標を1つのファイルに書き、1回の読み込みで復元します。
+ * 読み込んだファイルはメモリに対応付けたまま持っておくので、
+ * 市区町村の一覧や高精度の領域を開放したあとに読み込み直すときも、ファイルを開いたり文字列を解析したりしません。
+ * ファイル名には元のファイルの大きさと更新時刻を含めるので、元のファイルが変わったら別のファイルに作り直し、
+ * メモリに対応付けたままのファイルを上書きしたり消したりしません。
+ * 元のファイルがないときや、読み込んだ境界が空のときは保存しません。
+ * @author zenjiro
+ * @since 6.3.0
+ */
+public class BoundaryCache {
+	/**
+	 * 境界を元のファイルから読み込むためのインターフェイスです。
+	 * @author zenjiro
+	 * @since 6.3.0
+	 */
+	public interface Loader {
+		/**
+		 * 境界を読み込みます。
+		 * @return 境界と名前の対応表
+		 * @throws IOException 入出力例外
+		 */
+		Map<Shape, String> load() throws IOException;
+	}
+
+	/**
+	 * ファイルの先頭に書く値
+	 */
+	private static final int MAGIC = 0x42444331;
+
+	/**
+	 * ファイルの見出しの大きさ[byte]（識別子、元のファイルの大きさ、更新時刻、境界の数）
+	 */
+	private static final int HEADER_SIZE = 24;
+
+	/**
+	 * インスタンス
+	 */
+	private static BoundaryCache instance;
+
+	/**
+	 * @return インスタンス
+	 */
+	public static synchronized BoundaryCache getInstance() {
+		if (BoundaryCache.instance == null) {
+			BoundaryCache.instance = new BoundaryCache();
+		}
+		return BoundaryCache.instance;
+	}
+
+	/**
+	 * キャッシュの名前と、メモリに対応付けたファイルの対応表
+	 */
+	private final Map<String, ByteBuffer> buffers;
+
+	/**
+	 * キャッシュを初期化します。
+	 */
+	private BoundaryCache() {
+		this.buffers = new ConcurrentHashMap<String, ByteBuffer>();
+	}
+
+	/**
+	 * 境界を読み込みます。
+	 * キャッシュが元のファイルと同じ大きさ、更新時刻から作られていればキャッシュから復元し、
+	 * そうでなければ元のファイルから読み込んでキャッシュを作り直します。
+	 * 元のファイルがなければ、キャッシュを使わずに読み込みます。
+	 * @param name キャッシュの名前
+	 * @param source 元のファイル
+	 * @param loader 元のファイルから読み込むためのオブジェクト
+	 * @return 境界と名前の対応表
+	 * @throws IOException 入出力例外
+	 */
+	public Map<Shape, String> getShapes(final String name, final File source, final Loader loader)
+			throws IOException {
+		if (!source.isFile()) {
+			return loader.load();
+		}
+		return this.getShapes(name, source.length(), source.lastModified(), loader);
+	}
+
+	/**
+	 * 境界を読み込みます。
+	 * @param name キャッシュの名前
+	 * @param source 元のファイルのリソース。なければ null
+	 * @param loader 元のファイルから読み込むためのオブジェクト
+	 * @return 境界と名前の対応表
+	 * @throws IOException 入出力例外
+	 * @see #getShapes(String, File, Loader)
+	 */
+	public Map<Shape, String> getShapes(final String name, final URL source, final Loader loader)
+			throws IOException {
+		if (source == null) {
+			return loader.load();
+		}
+		final URLConnection connection = source.openConnection();
+		final long length = connection.getContentLength();
+		final long modified = connection.getLastModified();
+		connection.getInputStream().close();
+		if (length < 0 || modified == 0) {
+			// 大きさや更新時刻が分からなければ、キャッシュが古くなっても気づけないので保存しない
+			return loader.load();
+		}
+		return this.getShapes(name, length, modified, loader);
+	}
+
+	/**
+	 * 境界を読み込みます。
+	 * @param name キャッシュの名前
+	 * @param length 元のファイルの大きさ[byte]
+	 * @param modified 元のファイルの更新時刻[ms]
+	 * @param loader 元のファイルから読み込むためのオブジェクト
+	 * @return 境界と名前の対応表
+	 * @throws IOException 入出力例外
+	 */
+	private Map<Shape, String> getShapes(final String name, final long length, final long modified,
+			final Loader loader) throws IOException {
+		final File file = BoundaryCache.getCacheFile(name, length, modified);
+		ByteBuffer buffer = this.buffers.get(name);
+		if (buffer != null && (buffer.getLong(4) != length || buffer.getLong(12) != modified)) {
+			// 元のファイルが変わったので、古いキャッシュを対応付けたまま持たない
+			this.buffers.remove(name);
+			buffer = null;
+		}
+		if (buffer == null && file.exists()) {
+			try {
+				buffer = BoundaryCache.map(file);
+				this.buffers.put(name, buffer);
+			} catch (final IOException exception) {
+				System.out.println("WARNING: 境界のキャッシュが壊れているので作り直します。" + file);
+			}
+		}
+		if (buffer != null && buffer.getLong(4) == length && buffer.getLong(12) == modified) {
+			try {
+				return BoundaryCache.decode(buffer.duplicate());
+			} catch (final BufferUnderflowException exception) {
+				System.out.println("WARNING: 境界のキャッシュが壊れているので作り直します。" + file);
+			}
+		}
+		this.buffers.remove(name);
+		final Map<Shape, String> ret = loader.load();
+		if (ret.isEmpty()) {
+			// 元のファイルを読めなかっただけかもしれないので、空の結果は保存しない
+			return ret;
+		}
+		BoundaryCache.write(file, ret, length, modified);
+		BoundaryCache.deleteOldFiles(name, file);
+		try {
+			this.buffers.put(name, BoundaryCache.map(file));
+		} catch (final IOException exception) {
+			System.out.println("WARNING: 境界のキャッシュを読み込めませんでした。" + file);
+		}
+		return ret;
+	}
+
+	/**
+	 * @param name キャッシュの名前
+	 * @param length 元のファイルの大きさ[byte]
+	 * @param modified 元のファイルの更新時刻[ms]
+	 * @return キャッシュのファイル
+	 */
+	private static File getCacheFile(final String name, final long length, final long modified) {
+		return new File(Const.BoundaryCache.CACHE_DIR + File.separator + name + "_" + Long.toHexString(length) + "_"
+				+ Long.toHexString(modified) + Const.BoundaryCache.SUFFIX);
+	}
+
+	/**
+	 * 同じ名前の古いキャッシュのファイルを消します。
+	 * まだメモリに対応付けられていて消せなかったファイルは、次に作り直すときに消します。
+	 * @param name キャッシュの名前
+	 * @param file 新しいキャッシュのファイル
+	 */
+	private static void deleteOldFiles(final String name, final File file) {
+		final File[] files = file.getParentFile().listFiles();
+		if (files != null) {
+			for (final File oldFile : files) {
+				final String fileName = oldFile.getName();
+				if (!oldFile.equals(file)
+						&& fileName.endsWith(Const.BoundaryCache.SUFFIX)
+						&& (fileName.equals(name + Const.BoundaryCache.SUFFIX) || fileName.startsWith(name + "_"))) {
+					oldFile.delete();
+				}
+			}
+		}
+	}
+
+	/**
+	 * キャッシュのファイルをメモリに対応付けます。
+	 * @param file ファイル
+	 * @return メモリに対応付けたファイル
+	 * @throws IOException 入出力例外
+	 */
+	private static ByteBuffer map(final File file) throws IOException {
+		final FileInputStream in = new FileInputStream(file);
+		try {
+			final FileChannel channel = in.getChannel();
+			final ByteBuffer ret = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			if (channel.size() < BoundaryCache.HEADER_SIZE || ret.getInt(0) != BoundaryCache.MAGIC) {
+				throw new IOException("not a boundary cache file: " + file);
+			}
+			return ret;
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * キャッシュから境界を復元します。
+	 * @param buffer メモリに対応付けたファイル
+	 * @return 境界と名前の対応表
+	 * @throws UnsupportedEncodingException サポート外エンコーディング例外
+	 */
+	private static Map<Shape, String> decode(final ByteBuffer buffer) throws UnsupportedEncodingException {
+		buffer.position(BoundaryCache.HEADER_SIZE - 4);
+		final int count = buffer.getInt();
+		final Map<Shape, String> ret = new LinkedHashMap<Shape, String>();
+		for (int i = 0; i < count; i++) {
+			final byte[] bytes = new byte[buffer.getShort() & 0xFFFF];
+			buffer.get(bytes);
+			final byte[] types = new byte[buffer.getInt()];
+			buffer.get(types);
+			final float[] coords = new float[buffer.getInt()];
+			buffer.asFloatBuffer().get(coords);
+			buffer.position(buffer.position() + coords.length * 4);
+			final GeneralPath path = new GeneralPath(PathIterator.WIND_NON_ZERO, types.length);
+			int j = 0;
+			for (final byte type : types) {
+				switch (type) {
+				case PathIterator.SEG_MOVETO:
+					path.moveTo(coords[j++], coords[j++]);
+					break;
+				case PathIterator.SEG_LINETO:
+					path.lineTo(coords[j++], coords[j++]);
+					break;
+				case PathIterator.SEG_CLOSE:
+					path.closePath();
+					break;
+				}
+			}
+			ret.put(path, new String(bytes, "UTF-8"));
+		}
+		return ret;
+	}
+
+	/**
+	 * 境界をキャッシュのファイルに書き出します。
+	 * 曲線は ShapeIO と同じように、始めの制御点への線分として書き出します。
+	 * 書き出している途中のファイルを読まないように、一時ファイルに書いてから名前を変えます。
+	 * @param file ファイル
+	 * @param shapes 境界と名前の対応表
+	 * @param length 元のファイルの大きさ[byte]
+	 * @param modified 元のファイルの更新時刻[ms]
+	 * @throws IOException 入出力例外
+	 */
+	private static void write(final File file, final Map<Shape, String> shapes, final long length,
+			final long modified) throws IOException {
+		file.getParentFile().mkdirs();
+		final File temporaryFile = new File(file.getPath() + ".tmp");
+		final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(
+				temporaryFile)));
+		try {
+			out.writeInt(BoundaryCache.MAGIC);
+			out.writeLong(length);
+			out.writeLong(modified);
+			out.writeInt(shapes.size());
+			final float[] segment = new float[6];
+			for (final Map.Entry<Shape, String> entry : shapes.entrySet()) {
+				final byte[] bytes = entry.getValue().getBytes("UTF-8");
+				out.writeShort(bytes.length);
+				out.write(bytes);
+				int typeCount = 0;
+				int coordCount = 0;
+				for (final PathIterator iterator = entry.getKey().getPathIterator(null); !iterator.isDone(); iterator
+						.next()) {
+					typeCount++;
+					if (iterator.currentSegment(segment) != PathIterator.SEG_CLOSE) {
+						coordCount += 2;
+					}
+				}
+				out.writeInt(typeCount);
+				for (final PathIterator iterator = entry.getKey().getPathIterator(null); !iterator.isDone(); iterator
+						.next()) {
+					final int type = iterator.currentSegment(segment);
+					out.writeByte(type == PathIterator.SEG_MOVETO || type == PathIterator.SEG_CLOSE ? type
+							: PathIterator.SEG_LINETO);
+				}
+				out.writeInt(coordCount);
+				for (final PathIterator iterator = entry.getKey().getPathIterator(null); !iterator.isDone(); iterator
+						.next()) {
+					if (iterator.currentSegment(segment) != PathIterator.SEG_CLOSE) {
+						out.writeFloat(segment[0]);
+						out.writeFloat(segment[1]);
+					}
+				}
+			}
+		} finally {
+			out.close();
+		}
+		if ((file.exists() && !file.delete()) || !temporaryFile.renameTo(file)) {
+			System.out.println("WARNING: 境界のキャッシュを保存できませんでした。" + file);
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "[BoundaryCache buffers=" + this.buffers.keySet() + "]";
+	}
+}
@@ -16,6 +16,7 @@ import java.util.concurrent.ConcurrentLinkedQueue;
 import ksj.ShapeIO;
 import map.KsjRailway.Railway;
 import map.KsjRailway.Station;
+import search.PreparedShape;
 import shop.Shop;
 
 /**
@@ -190,17 +191,28 @@ public class City {
 
 	/**
 	 * 街区レベル位置参照情報をダウンロードし、読み込みます。
+	 * ダウンロード中であれば、何もしません。
+	 * @return 読み込んだかどうか
 	 * @throws IOException 
 	 */
-	public void loadIsj() throws IOException {
+	public boolean loadIsj() throws IOException {
+		final Object event = Trace.begin(Trace.Kind.ISJ_LOAD); // since 6.3.0
 		this.isj = ISJUtil.loadIsj(this.id, this.panel);
+		// since 6.3.0 ダウンロード中で読み込まなかったときは記録しない
+		if (this.isj != null && Trace.shouldCommit(event)) {
+			Trace.commit(event, this.id, "isj", this.isj.size(), this.isj.size(), ResidencyManager
+					.estimatePoints(this.isj));
+		}
+		return this.isj != null;
 	}
 
 	/**
+	 * 高精度の領域を設定します。
+	 * 頂点が多いので、点の包含判定や長方形との交差判定を速くするために準備しておきます。
 	 * @param shape 高精度の領域
 	 */
 	public void setFineShape(final Shape shape) {
-		this.fineShape = shape;
+		this.fineShape = PreparedShape.prepare(shape);
 	}
 
 	/**
@@ -211,6 +223,14 @@ public class City {
 		return this.shops;
 	}
 
+	/**
+	 * 店舗の一覧を開放します。
+	 * @since 6.3.0
+	 */
+	public void freeShops() {
+		this.shops = null;
+	}
+
 	/**
 	 * @since 3.16
 	 * @return 店舗の一覧を持っているかどうか
@@ -300,6 +320,7 @@ public class City {
 	 */
 	public boolean loadKsjFineRoad() {
 		if (this.ksjFineRoad.isEmpty()) {
+			final Object event = Trace.begin(Trace.Kind.KSJ_LOAD); // since 6.3.0
 			final InputStream in = City.class.getResourceAsStream(Const.DIR + Const.KSJ.ROAD_FINE_PREFIX + this.id
 					+ Const.KSJ.ROAD_SUFFIX);
 			if (in != null) {
@@ -307,6 +328,12 @@ public class City {
 					this.ksjFineRoad.add(new Railway(entry.getKey(), entry.getValue()));
 				}
 			}
+			// since 6.3.0
+			if (Trace.shouldCommit(event)) {
+				final long vertices = Trace.countVertices(this.ksjFineRoad);
+				Trace.commit(event, this.id, "road", this.ksjFineRoad.size(), vertices, ResidencyManager
+						.estimateRailways(this.ksjFineRoad));
+			}
 			return true;
 		} else {
 			return false;
@@ -332,6 +359,7 @@ public class City {
 	 */
 	public boolean loadKsjRailwayCurves() {
 		if (this.ksjRailwayCurves.isEmpty()) {
+			final Object event = Trace.begin(Trace.Kind.KSJ_LOAD); // since 6.3.0
 			final InputStream in = Prefecture.class.getResourceAsStream(Const.DIR + Const.KSJ.RAILWAY_CURVES_PREFIX
 					+ this.id + Const.KSJ.RAILWAY_SUFFIX);
 			if (in != null) {
@@ -339,6 +367,12 @@ public class City {
 					this.ksjRailwayCurves.add(new Railway(entry.getKey(), entry.getValue()));
 				}
 			}
+			// since 6.3.0
+			if (Trace.shouldCommit(event)) {
+				final long vertices = Trace.countVertices(this.ksjRailwayCurves);
+				Trace.commit(event, this.id, "railwayCurves", this.ksjRailwayCurves.size(), vertices, ResidencyManager
+						.estimateRailways(this.ksjRailwayCurves));
+			}
 			return true;
 		} else {
 			return false;
@@ -352,6 +386,7 @@ public class City {
 	 */
 	public boolean loadKsjRailwayStations() {
 		if (this.ksjRailwayStations.isEmpty()) {
+			final Object event = Trace.begin(Trace.Kind.KSJ_LOAD); // since 6.3.0
 			final InputStream in = Prefecture.class.getResourceAsStream(Const.DIR + Const.KSJ.RAILWAY_STATIONS_PREFIX
 					+ this.id + Const.KSJ.RAILWAY_SUFFIX);
 			if (in != null) {
@@ -359,6 +394,12 @@ public class City {
 					this.ksjRailwayStations.add(new Station(entry.getKey(), entry.getValue()));
 				}
 			}
+			// since 6.3.0
+			if (Trace.shouldCommit(event)) {
+				final long vertices = Trace.countVertices(this.ksjRailwayStations);
+				Trace.commit(event, this.id, "railwayStations", this.ksjRailwayStations.size(), vertices, ResidencyManager
+						.estimateRailways(this.ksjRailwayStations));
+			}
 			return true;
 		} else {
 			return false;
@@ -21,8 +21,10 @@ public class Const {
 	public static class KSJ {
 		/**
 		 * 国土数値情報の配布URL
+		 * システムプロパティ ksj.base.url で変更できます。
 		 */
-		public static final String BASE_URL = "http://nlftp.mlit.go.jp/ksj/old/data/N03/N03-11A/";
+		public static final String BASE_URL = System.getProperty("ksj.base.url",
+				"http://nlftp.mlit.go.jp/ksj/old/data/N03/N03-11A/");
 
 		/**
 		 * キャッシュディレクトリの相対パス
@@ -149,6 +151,87 @@ public class Const {
 
 	}
 
+	/**
+	 * 経路探索のための道路のグラフに関する定数を集めたクラスです。
+	 * @author zenjiro
+	 * @since 6.3.0
+	 */
+	public static class RoadGraph {
+		/**
+		 * キャッシュディレクトリの相対パス
+		 */
+		public static final String CACHE_DIR = ".map" + File.separator + "route";
+
+		/**
+		 * 都道府県ごとのグラフのキャッシュファイルの接頭語
+		 */
+		public static final String PREFIX = "road_";
+
+		/**
+		 * 都道府県ごとのグラフのキャッシュファイルの接尾語
+		 */
+		public static final String SUFFIX = ".bin";
+	}
+
+	/**
+	 * 図葉の目録に関する定数を集めたクラスです。
+	 * @author zenjiro
+	 * @since 6.3.0
+	 */
+	public static class SheetCatalog {
+		/**
+		 * キャッシュディレクトリの相対パス
+		 */
+		public static final String CACHE_DIR = ".map" + File.separator + "catalog";
+
+		/**
+		 * 地図データのディレクトリごとの目録のファイルの接頭語
+		 */
+		public static final String PREFIX = "sheets_";
+
+		/**
+		 * 地図データのディレクトリごとの目録のファイルの接尾語
+		 */
+		public static final String SUFFIX = ".bin";
+	}
+
+	/**
+	 * 都道府県、市区町村の境界のキャッシュに関する定数を集めたクラスです。
+	 * @author zenjiro
+	 * @since 6.3.0
+	 */
+	public static class BoundaryCache {
+		/**
+		 * キャッシュディレクトリの相対パス
+		 */
+		public static final String CACHE_DIR = ".map" + File.separator + "boundary";
+
+		/**
+		 * 全ての都道府県の境界のキャッシュの名前
+		 */
+		public static final String PREFECTURES = "prefectures";
+
+		/**
+		 * 高精度の都道府県の境界のキャッシュの名前の接頭語
+		 */
+		public static final String PREFECTURE_PREFIX = "prefecture_";
+
+		/**
+		 * 都道府県ごとの市区町村の境界のキャッシュの名前の接頭語
+		 */
+		public static final String CITIES_PREFIX = "cities_";
+
+		/**
+		 * 都道府県ごとの高精度の市区町村の境界のキャッシュの名前の接頭語
+		 */
+		public static final String CITIES_FINE_PREFIX = "cities_fine_";
+
+		/**
+		 * キャッシュのファイルの接尾語
+		 */
+		public static final String SUFFIX = ".bin";
+	}
+
 	/**
 	 * 数値地図2500関係の定数を集めたクラスです。
 	 * @author zenjiro
@@ -182,10 +265,17 @@ public class Const {
 		 */
 		public static final double RATE = 1.1;
 
+		/**
+		 * ディスプレイがないときに使う解像度（dpi）
+		 * @since 6.3.0
+		 */
+		public static final int HEADLESS_RESOLUTION = 96;
+
 		/**
 		 * ディスプレイの解像度（dpi）
 		 */
-		public static final int RESOLUTION = Toolkit.getDefaultToolkit().getScreenResolution();
+		public static final int RESOLUTION = GraphicsEnvironment.isHeadless() ? Const.Zoom.HEADLESS_RESOLUTION
+				: Toolkit.getDefaultToolkit().getScreenResolution(); // since 6.3.0 ウィンドウを表示せずに描画できるようにする
 
 		/**
 		 * 国土数値情報の市区町村データを読み込む倍率
@@ -242,11 +332,6 @@ public class Const {
 	 */
 	public static final int GAP = 4;
 
-	/**
-	 * 一度読み込んだ地図を捨てずに置いておく範囲
-	 */
-	public static final double KEEP_COFFICIENT = 1;
-
 	/**
 	 * 地図を先読みする範囲
 	 */
@@ -259,10 +344,16 @@ public class Const {
 	 */
 	public static class Prefecture {
 
+		/**
+		 * 全ての都道府県の情報が記載されているファイルのリソース名
+		 * @since 6.3.0
+		 */
+		public static final String PREFECTURES_RESOURCE = DIR + "prefectures.csv";
+
 		/**
 		 * 全ての都道府県の情報が記載されているファイル
 		 */
-		public static final InputStream PREFECTURES = Const.class.getResourceAsStream(DIR + "prefectures.csv");
+		public static final InputStream PREFECTURES = Const.class.getResourceAsStream(PREFECTURES_RESOURCE);
 
 		/**
 		 * 高精度の都道府県の情報が記載されているファイルの拡張子
@@ -274,6 +365,18 @@ public class Const {
 		 */
 		public static final String PREFECTURE_PREFIX = "prefecture_";
 
+		/**
+		 * 都道府県ごとの市区町村の情報が記載されているファイルの接頭語
+		 * @since 6.3.0
+		 */
+		public static final String CITIES_PREFIX = "cities_";
+
+		/**
+		 * 都道府県ごとの市区町村の情報が記載されているファイルの拡張子
+		 * @since 6.3.0
+		 */
+		public static final String CITIES_SUFFIX = ".csv";
+
 	}
 
 	/**
@@ -304,8 +407,10 @@ public class Const {
 
 		/**
 		 * ビットマップキャッシュを保存するディレクトリ
+		 * since 6.3.0 システムプロパティ map.bitmap.dir で変更できます。
 		 */
-		public static final String CACHE_DIR = ".map" + File.separator + "bitmap";
+		public static final String CACHE_DIR = System.getProperty("map.bitmap.dir", ".map" + File.separator
+				+ "bitmap");
 
 		/**
 		 * ビットマップキャッシュの接頭辞
@@ -321,14 +426,28 @@ public class Const {
 	public static class Paint {
 		/**
 		 * 塗り分け情報を保存するディレクトリ
+		 * since 6.3.0 システムプロパティ map.paint.dir で変更できます。
 		 */
-		public static final String CACHE_DIR = ".map" + File.separator + "paint";
+		public static final String CACHE_DIR = System.getProperty("map.paint.dir", ".map" + File.separator
+				+ "paint");
 
 		/**
 		 * 塗り分け情報を記録したファイルの拡張子
 		 */
 		public static final String CACHE_SUFFIX = ".csv";
 
+		/**
+		 * 図葉単位の塗り分け情報を記録したファイルの接頭語
+		 * @since 6.3.0
+		 */
+		public static final String SHEET_PREFIX = "sheet_";
+
+		/**
+		 * 書き出し中の一時ファイルの接尾語
+		 * @since 6.3.0
+		 */
+		public static final String TEMP_SUFFIX = ".tmp";
+
 		/**
 		 * 色が見つからなかったことを表す定数
 		 */
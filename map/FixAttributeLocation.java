@@ -36,6 +36,8 @@ class FixAttributeLocation {
 	 */
 	public void fixAttributeLocation(final Map<String, MapData> maps, final Collection<Prefecture> prefectures,
 			final MapPanel panel) throws IOException {
+		final long startTime = System.nanoTime(); // since 6.3.0
+		final Object event = Trace.begin(Trace.Kind.LABEL_PLACEMENT); // since 6.3.0
 		final MapPreferences preferences = panel.getMapPreferences();
 		final Font tatemonoFont = preferences.getTatemonoPreferences().getFont();
 		final Font zyoutiFont = preferences.getZyoutiPreferences().getFont();
@@ -61,9 +63,10 @@ class FixAttributeLocation {
 		if (zoom >= Const.Zoom.LOAD_ALL) {
 			// 駅の属性の表示位置を計算する
 			for (final MapData mapData : maps.values()) {
-				if (mapData.hasEki()) {
+				final MapData.Layers layers = mapData.getLayers();
+				if (layers.getEki() != null) {
 					if (panel.isVisible(mapData.getBounds())) {
-						for (final PointData point : mapData.getEki().values()) {
+						for (final PointData point : layers.getEki().values()) {
 							final Rectangle2D pointRectangle = new Rectangle2D.Double(point.getX()
 									- (ekiPointSize / 2 / zoom), point.getY() - (ekiPointSize / 2 / zoom), ekiPointSize
 									/ zoom, ekiPointSize / zoom);
@@ -73,11 +76,12 @@ class FixAttributeLocation {
 				}
 			}
 			for (final MapData mapData : maps.values()) {
-				if (mapData.hasEki()) {
+				final MapData.Layers layers = mapData.getLayers();
+				if (layers.getEki() != null) {
 					if (panel.isVisible(mapData.getBounds())) {
 						final FontMetrics metrics = panel.getFontMetrics(ekiFont);
 						final double attributeHeight = metrics.getHeight() / zoom;
-						for (final PointData point : mapData.getEki().values()) {
+						for (final PointData point : layers.getEki().values()) {
 							this.fixPointAttributeLocation(point, usedPoints, visibleRectangle, zoom, attributeHeight,
 									metrics, ekiPointSize, search);
 						}
@@ -175,11 +179,12 @@ class FixAttributeLocation {
 		if (zoom >= Const.Zoom.LOAD_GYOUSEI) {
 			// 公共建物の属性の表示位置を計算する
 			for (final MapData mapData : maps.values()) {
-				if (mapData.hasTatemono()) {
+				final MapData.Layers layers = mapData.getLayers();
+				if (layers.getTatemono() != null) {
 					if (panel.isVisible(mapData.getBounds())) {
 						final FontMetrics metrics = panel.getFontMetrics(tatemonoFont);
 						final double attributeHeight = metrics.getHeight() / zoom;
-						for (final PolygonData polygon : mapData.getTatemono().values()) {
+						for (final PolygonData polygon : layers.getTatemono().values()) {
 							this.fixTatemonoAttributeLocation(polygon, usedPoints, visibleRectangle, zoom,
 									attributeHeight, metrics, tatemonoPointSize, search);
 						}
@@ -188,16 +193,18 @@ class FixAttributeLocation {
 			}
 			// 場地の属性の表示位置を計算する
 			for (final MapData mapData : maps.values()) {
-				if (mapData.hasZyouti()) {
+				final MapData.Layers layers = mapData.getLayers();
+				if (layers.getZyouti() != null) {
 					fixAttributeLocation(panel, zyoutiFont, search, visibleRectangle, usedPoints, tatemonoPointSize,
-							zoom, mapData, mapData.getZyouti());
+							zoom, mapData, layers.getZyouti());
 				}
 			}
 			// 内水面の属性の表示位置を計算する
 			for (final MapData mapData : maps.values()) {
-				if (mapData.hasMizu()) {
+				final MapData.Layers layers = mapData.getLayers();
+				if (layers.getMizu() != null) {
 					fixAttributeLocation(panel, mizuFont, search, visibleRectangle, usedPoints, tatemonoPointSize,
-							zoom, mapData, mapData.getMizu());
+							zoom, mapData, layers.getMizu());
 				}
 			}
 			// 道路の属性の表示位置を計算する
@@ -206,12 +213,13 @@ class FixAttributeLocation {
 				final double attributeHeight = metrics.getHeight() / zoom;
 				final Collection<String> fixedAttributes = new HashSet<String>();
 				for (final MapData mapData : maps.values()) {
-					if (mapData.hasRoadArc()) {
-						final Map<String, ArcData> arcs = mapData.getRoadArc();
+					final MapData.Layers layers = mapData.getLayers();
+					if (layers.getRoadArc() != null) {
+						final Map<String, ArcData> arcs = layers.getRoadArc();
 						fixAttributeLocation(arcs, panel, search, visibleRectangle, zoom, metrics, attributeHeight,
 								fixedAttributes, mapData);
-					} else if (mapData.hasLargeRoadArc()) {
-						final Map<String, ArcData> arcs = mapData.getLargeRoadArc();
+					} else if (layers.getLargeRoadArc() != null) {
+						final Map<String, ArcData> arcs = layers.getLargeRoadArc();
 						fixAttributeLocation(arcs, panel, search, visibleRectangle, zoom, metrics, attributeHeight,
 								fixedAttributes, mapData);
 					}
@@ -223,9 +231,10 @@ class FixAttributeLocation {
 				final double attributeHeight = metrics.getHeight() / zoom;
 				final Collection<String> fixedAttributes = new HashSet<String>();
 				for (final MapData mapData : maps.values()) {
-					if (mapData.hasOthers()) {
+					final MapData.Layers layers = mapData.getLayers();
+					if (layers.getOthers() != null) {
 						if (panel.isVisible(mapData.getBounds())) {
-							for (final ArcData arc : mapData.getOthers().values()) {
+							for (final ArcData arc : layers.getOthers().values()) {
 								final String attribute = arc.getAttribute();
 								if (attribute != null) {
 									arc.setAttributeLocation(0, 0);
@@ -260,9 +269,10 @@ class FixAttributeLocation {
 			}
 			// 丁目の属性の表示位置を計算する
 			for (final MapData mapData : maps.values()) {
-				if (mapData.hasTyome()) {
+				final MapData.Layers layers = mapData.getLayers();
+				if (layers.getTyome() != null) {
 					if (panel.isVisible(mapData.getBounds())) {
-						for (final PolygonData polygon : mapData.getTyome().values()) {
+						for (final PolygonData polygon : layers.getTyome().values()) {
 							polygon.setAttributeLocation(0, 0);
 							this.fixTyomeAttributeLocation(polygon, tyomeFont1, visibleRectangle, usedPoints, panel,
 									true, search);
@@ -277,9 +287,10 @@ class FixAttributeLocation {
 			// 町丁目の読みの表示位置を計算する
 			if (zoom >= Const.Zoom.LOAD_GYOUSEI) {
 				for (final MapData mapData : maps.values()) {
-					if (mapData.hasTyome()) {
+					final MapData.Layers layers = mapData.getLayers();
+					if (layers.getTyome() != null) {
 						if (panel.isVisible(mapData.getBounds())) {
-							for (final PolygonData polygon : mapData.getTyome().values()) {
+							for (final PolygonData polygon : layers.getTyome().values()) {
 								final Font yomiFont = preferences.getTyomePreferences().getFont();
 								final FontMetrics yomiMetrics = panel.getFontMetrics(yomiFont);
 								final Font tyomeFont = polygon.getTyomeFont();
@@ -366,6 +377,8 @@ class FixAttributeLocation {
 				}
 			}
 		}
+		Metrics.getInstance().record(Metrics.Stage.FIX_ATTRIBUTE_LOCATION, startTime);
+		Trace.commit(event, "", String.valueOf(panel.getZoom()), maps.size(), 0, 0);
 	}
 
 	/**
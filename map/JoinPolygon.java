@@ -1,207 +1,121 @@
 package map;
 
-import java.awt.geom.Area;
-import java.awt.geom.Rectangle2D;
+import java.awt.Shape;
+import java.awt.geom.Point2D;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.HashSet;
+import java.util.Collection;
 import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.Map.Entry;
 import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * 複数の図郭にまたがったポリゴンを見かけ上結合し、
  * 丁目の属性を結合されたポリゴンの中央に配置するクラスです。
+ * 図郭の縁を共有するポリゴンを素集合データ構造でまとめ、結合したポリゴンを記憶しておくので、
+ * 図葉が読み込まれたり開放されたりしたときだけ結合し直します。
  * @author zenjiro
  * 作成日: 2004/01/09
  */
 class JoinPolygon {
+	/**
+	 * 結合するレイヤの数（丁目、場地、水域）
+	 */
+	private static final int LAYERS = 3;
+
 	/**
 	 * 変更されたかどうか
 	 */
 	private boolean isChanged;
 
+	/**
+	 * 前回結合したときの、図葉の名前と各レイヤのポリゴンの対応表
+	 * @since 6.3.0
+	 */
+	private Map<String, List<Map<String, PolygonData>>> lastLayers = new ConcurrentHashMap<String, List<Map<String, PolygonData>>>();
+
+	/**
+	 * 結合されたポリゴンの集合と、結合した領域の対応表
+	 * @since 6.3.0
+	 */
+	private Map<Set<PolygonData>, Shape> joinedAreas = new ConcurrentHashMap<Set<PolygonData>, Shape>();
+
+	/**
+	 * 結合される前のポリゴンの領域
+	 * @since 6.3.0
+	 */
+	private final Map<PolygonData, Shape> originalAreas = new ConcurrentHashMap<PolygonData, Shape>();
+
+	/**
+	 * 結合される前のポリゴンの属性の位置
+	 * @since 6.3.0
+	 */
+	private final Map<PolygonData, Point2D> originalLocations = new ConcurrentHashMap<PolygonData, Point2D>();
+
 	/** 複数の図郭にまたがったポリゴンを見かけ上結合します。
+	 * 丁目、場地、水域を一度に処理します。
+	 * 前回の呼び出しから図葉の読み込み、開放がなければ何もしません。
 	 * このメソッドを呼び出した直後に isChanged() を呼び出すと、
 	 * このメソッドによって地図の状態が変化したかどうかが取得できます。
+	 * 表示されている図葉だけでなく、読み込まれている全ての図葉を結合します。
 	 * @param maps 地図
-	 * @param visibleRectangle 現在表示されている領域（仮想座標）
-	 * @throws IOException 
-	 * @throws FileNotFoundException 
+	 * @throws IOException
+	 * @throws FileNotFoundException
 	 */
-	void joinPolygon(final Map<String, MapData> maps, final Rectangle2D visibleRectangle) throws IOException {
+	void joinPolygon(final Map<String, MapData> maps) throws IOException {
 		this.isChanged = false;
-		final Map<PolygonData, Set<PolygonData>> joiningPolygons = new ConcurrentHashMap<PolygonData, Set<PolygonData>>();
+		final Map<String, List<Map<String, PolygonData>>> layers = new ConcurrentHashMap<String, List<Map<String, PolygonData>>>();
 		for (final MapData mapData : maps.values()) {
-			if (mapData.hasTyome()) {
-				if (mapData.getBounds().intersects(visibleRectangle)) {
-					final Map<String, String> edgePolygons = mapData.getEdgePolygons();
-					if (edgePolygons != null) {
-						for (final MapData mapData2 : maps.values()) {
-							if (mapData2.hasTyome()) {
-								if (mapData2.getBounds().intersects(visibleRectangle)) {
-									final Map<String, String> edgePolygons2 = mapData2
-											.getEdgePolygons();
-									if (edgePolygons2 != null) {
-										if (mapData.hashCode() < mapData2.hashCode()) {
-											//System.out.println("1 = " + mapData.getMapName() + ", 2 = " + mapData2.getMapName());
-											//System.out.println("edgePolygons = " + edgePolygons);
-											//System.out.println("edgePolygons2 = " + edgePolygons2);
-											for (final Map.Entry<String, String> entry3 : edgePolygons
-													.entrySet()) {
-												final String key = entry3.getKey();
-												final String polygonName = entry3.getValue();
-												if (mapData.getTyome().containsKey(polygonName)) {
-													final PolygonData polygon = mapData.getTyome().get(
-															polygonName);
-													if (polygon.getArea().getBounds2D().intersects(
-															visibleRectangle)) {
-														if (edgePolygons2.containsKey(key)) {
-															final String polygonName2 = edgePolygons2
-																	.get(key);
-															final Map<String, PolygonData> polygons2 = mapData2
-																	.getTyome();
-															if (polygons2.containsKey(polygonName2)) {
-																final PolygonData polygon2 = polygons2
-																		.get(polygonName2);
-																if ((polygon.getAttribute() != null)
-																		&& ((polygon2)
-																				.getAttribute() != null)) {
-																	if (polygon
-																			.getAttribute()
-																			.equals(
-																					(polygon2)
-																							.getAttribute())) {
-																		//System.out.println(polygonName + " is joining to " + polygonName2);
-																		if (!joiningPolygons
-																				.containsKey(polygon)) {
-																			joiningPolygons
-																					.put(
-																							polygon,
-																							new HashSet<PolygonData>());
-																		}
-																		joiningPolygons
-																				.get(polygon).add(
-																						polygon2);
-																	} else {
-																		System.out
-																				.println("WARNING: "
-																						+ polygon
-																						+ "と"
-																						+ polygons2
-																								.get(polygonName2)
-																						+ "は属性が一致しません。");
-																	}
-																}
-															}
-														}
-													}
-												}
-												if (mapData.hasZyouti()) {
-													if (mapData.getZyouti()
-															.containsKey(polygonName)) {
-														final PolygonData polygon = mapData.getZyouti()
-																.get(polygonName);
-														if (polygon.getArea().getBounds2D()
-																.intersects(visibleRectangle)) {
-															if (edgePolygons2.containsKey(key)) {
-																final String polygonName2 = edgePolygons2
-																		.get(key);
-																if (mapData2.hasZyouti()) {
-																	final Map<String, PolygonData> polygons2 = mapData2
-																			.getZyouti();
-																	if (polygons2
-																			.containsKey(polygonName2)) {
-																		if ((polygon.getAttribute() != null)
-																				&& polygons2
-																						.get(
-																								polygonName2)
-																						.getAttribute() != null) {
-																			if (polygon
-																					.getAttribute()
-																					.equals(
-																							polygons2
-																									.get(
-																											polygonName2)
-																									.getAttribute())) {
-																				//System.out.println(polygonName + " is joining to " + polygonName2);
-																				if (!joiningPolygons
-																						.containsKey(polygon)) {
-																					joiningPolygons
-																							.put(
-																									polygon,
-																									new HashSet<PolygonData>());
-																				}
-																				joiningPolygons
-																						.get(
-																								polygon)
-																						.add(
-																								polygons2
-																										.get(polygonName2));
-																			} else {
-																				//System.out.println(polygon + "と" + polygon2 + "は属性が一致しません。");
-																			}
-																		}
-																	}
-																}
-															}
-														}
-													}
-												}
-												if (mapData.hasMizu()) {
-													if (mapData.getMizu().containsKey(polygonName)) {
-														final PolygonData polygon = mapData.getMizu()
-																.get(polygonName);
-														if (polygon.getArea().getBounds2D()
-																.intersects(visibleRectangle)) {
-															if (edgePolygons2.containsKey(key)) {
-																final String polygonName2 = edgePolygons2
-																		.get(key);
-																if (mapData2.hasMizu()) {
-																	final Map<String, PolygonData> polygons2 = mapData2
-																			.getMizu();
-																	if (polygons2
-																			.containsKey(polygonName2)) {
-																		if ((polygon.getAttribute() != null)
-																				&& ((polygons2
-																						.get(polygonName2))
-																						.getAttribute() != null)) {
-																			if (polygon
-																					.getAttribute()
-																					.equals(
-																							(polygons2
-																									.get(polygonName2))
-																									.getAttribute())) {
-																				//System.out.println(polygonName + " is joining to " + polygonName2);
-																				if (!joiningPolygons
-																						.containsKey(polygon)) {
-																					joiningPolygons
-																							.put(
-																									polygon,
-																									new HashSet<PolygonData>());
-																				}
-																				joiningPolygons
-																						.get(
-																								polygon)
-																						.add(
-																								polygons2
-																										.get(polygonName2));
-																			} else {
-																				//System.out.println(polygon + "と" + polygon2 + "は属性が一致しません。");
-																			}
-																		}
-																	}
-																}
-															}
-														}
-													}
-												}
-											}
-										}
-									}
+			if (mapData.hasTyome() && mapData.getEdgePolygons() != null) {
+				final List<Map<String, PolygonData>> list = new ArrayList<Map<String, PolygonData>>();
+				list.add(mapData.getTyome());
+				list.add(mapData.hasZyouti() ? mapData.getZyouti() : null);
+				list.add(mapData.hasMizu() ? mapData.getMizu() : null);
+				layers.put(mapData.getMapName(), list);
+			}
+		}
+		if (JoinPolygon.isSameLayers(layers, this.lastLayers)) {
+			return;
+		}
+		this.lastLayers = layers;
+		// 図郭の縁の座標と、その縁に接するポリゴンを含む図葉の対応表を作る
+		final Map<String, Collection<String>> edgeSheets = new ConcurrentHashMap<String, Collection<String>>();
+		for (final MapData mapData : maps.values()) {
+			if (layers.containsKey(mapData.getMapName())) {
+				for (final String key : mapData.getEdgePolygons().keySet()) {
+					if (!edgeSheets.containsKey(key)) {
+						edgeSheets.put(key, new ArrayList<String>(2));
+					}
+					edgeSheets.get(key).add(mapData.getMapName());
+				}
+			}
+		}
+		// 縁を共有し、属性が等しいポリゴンを同じ集合にまとめる
+		final UnionFind unionFind = new UnionFind();
+		for (final Map.Entry<String, Collection<String>> entry : edgeSheets.entrySet()) {
+			final String key = entry.getKey();
+			final List<String> sheets = new ArrayList<String>(entry.getValue());
+			for (int i = 0; i < sheets.size(); i++) {
+				for (int j = i + 1; j < sheets.size(); j++) {
+					final MapData mapData = maps.get(sheets.get(i));
+					final MapData mapData2 = maps.get(sheets.get(j));
+					final String polygonName = mapData.getEdgePolygons().get(key);
+					final String polygonName2 = mapData2.getEdgePolygons().get(key);
+					for (int layer = 0; layer < JoinPolygon.LAYERS; layer++) {
+						final Map<String, PolygonData> polygons = layers.get(sheets.get(i)).get(layer);
+						final Map<String, PolygonData> polygons2 = layers.get(sheets.get(j)).get(layer);
+						if (polygons != null && polygons2 != null && polygons.containsKey(polygonName)
+								&& polygons2.containsKey(polygonName2)) {
+							final PolygonData polygon = polygons.get(polygonName);
+							final PolygonData polygon2 = polygons2.get(polygonName2);
+							if ((polygon.getAttribute() != null) && (polygon2.getAttribute() != null)) {
+								if (polygon.getAttribute().equals(polygon2.getAttribute())) {
+									unionFind.union(polygon, polygon2);
+								} else if (layer == 0) {
+									System.out.println("WARNING: " + polygon + "と" + polygon2 + "は属性が一致しません。");
 								}
 							}
 						}
@@ -209,53 +123,80 @@ class JoinPolygon {
 				}
 			}
 		}
-		final ArrayList<Set<PolygonData>> finalPolygons = new ArrayList<Set<PolygonData>>();
-		for (final Entry<PolygonData, Set<PolygonData>> entry : joiningPolygons.entrySet()) {
-			final PolygonData key = entry.getKey();
-			final Set<PolygonData> values = entry.getValue();
-			boolean isKeyFound = false;
-			for (final Set<PolygonData> set : finalPolygons) {
-				if (set.contains(key)) {
-					set.addAll(values);
-					isKeyFound = true;
-				}
+		final Collection<Set<PolygonData>> groups = unionFind.getGroups();
+		// 結合されなくなったポリゴンを元に戻す
+		final Set<PolygonData> joinedPolygons = new LinkedHashSet<PolygonData>();
+		for (final Set<PolygonData> group : groups) {
+			joinedPolygons.addAll(group);
+		}
+		for (final Map.Entry<PolygonData, Shape> entry : this.originalAreas.entrySet()) {
+			final PolygonData polygon = entry.getKey();
+			if (!joinedPolygons.contains(polygon)) {
+				final Point2D location = this.originalLocations.get(polygon);
+				polygon.setArea(entry.getValue());
+				polygon.setX(location.getX());
+				polygon.setY(location.getY());
+				this.originalAreas.remove(polygon);
+				this.originalLocations.remove(polygon);
+				this.isChanged = true;
 			}
-			for (final PolygonData value : values) {
-				for (final Set<PolygonData> set : finalPolygons) {
-					if (set.contains(value)) {
-						set.add(key);
-						set.addAll(values);
-						isKeyFound = true;
-					}
+		}
+		// 集合ごとに結合する。集合が前回と同じなら、前回結合した領域を使う
+		final Map<Set<PolygonData>, Shape> newJoinedAreas = new ConcurrentHashMap<Set<PolygonData>, Shape>();
+		for (final Set<PolygonData> group : groups) {
+			for (final PolygonData polygon : group) {
+				if (!this.originalAreas.containsKey(polygon)) {
+					this.originalAreas.put(polygon, polygon.getArea());
+					this.originalLocations.put(polygon, new Point2D.Double(polygon.getX(), polygon.getY()));
 				}
 			}
-			if (!isKeyFound) {
-				final Set<PolygonData> set = new LinkedHashSet<PolygonData>();
-				set.add(key);
-				set.addAll(values);
-				finalPolygons.add(set);
-			}
-		}
-		for (final Set<PolygonData> polygons : finalPolygons) {
-			final Area area = new Area();
-			for (final PolygonData polygon : polygons) {
-				if (polygon != null) {
-					area.add(polygon.getArea());
+			Shape area = this.joinedAreas.get(group);
+			if (area == null) {
+				final Collection<Shape> shapes = new ArrayList<Shape>();
+				for (final PolygonData polygon : group) {
+					shapes.add(this.originalAreas.get(polygon));
 				}
+				area = RingPolygon.merge(shapes);
 			}
-			for (final PolygonData polygon : polygons) {
-				if (polygon != null) {
-					final double x = area.getBounds().getCenterX();
-					final double y = area.getBounds().getCenterY();
-					if ((polygon.getX() != x) || (polygon.getY() != y)) {
-						polygon.setX(x);
-						polygon.setY(y);
-						this.isChanged = true;
-					}
+			newJoinedAreas.put(group, area);
+			final double x = area.getBounds().getCenterX();
+			final double y = area.getBounds().getCenterY();
+			for (final PolygonData polygon : group) {
+				if ((polygon.getX() != x) || (polygon.getY() != y)) {
+					polygon.setX(x);
+					polygon.setY(y);
+					this.isChanged = true;
+				}
+				if (polygon.getArea() != area) {
 					polygon.setArea(area);
+					this.isChanged = true;
 				}
 			}
 		}
+		this.joinedAreas = newJoinedAreas;
+	}
+
+	/**
+	 * 図葉ごとの各レイヤのポリゴンが、前回と同じオブジェクトかどうかを調べます。
+	 * @param layers 今回の図葉の名前と各レイヤのポリゴンの対応表
+	 * @param lastLayers 前回の図葉の名前と各レイヤのポリゴンの対応表
+	 * @return 同じかどうか
+	 */
+	private static boolean isSameLayers(final Map<String, List<Map<String, PolygonData>>> layers,
+			final Map<String, List<Map<String, PolygonData>>> lastLayers) {
+		if (!layers.keySet().equals(lastLayers.keySet())) {
+			return false;
+		}
+		for (final Map.Entry<String, List<Map<String, PolygonData>>> entry : layers.entrySet()) {
+			final List<Map<String, PolygonData>> list = entry.getValue();
+			final List<Map<String, PolygonData>> lastList = lastLayers.get(entry.getKey());
+			for (int i = 0; i < JoinPolygon.LAYERS; i++) {
+				if (list.get(i) != lastList.get(i)) {
+					return false;
+				}
+			}
+		}
+		return true;
 	}
 
 	/**
@@ -265,4 +206,104 @@ class JoinPolygon {
 	boolean isChanged() {
 		return this.isChanged;
 	}
+
+	/**
+	 * ポリゴンの素集合データ構造です。
+	 * ポリゴンに通し番号を振り、配列で親を管理します。
+	 * @since 6.3.0
+	 */
+	private static class UnionFind {
+		/**
+		 * ポリゴンと通し番号の対応表
+		 */
+		private final Map<PolygonData, Integer> ids = new ConcurrentHashMap<PolygonData, Integer>();
+
+		/**
+		 * 通し番号とポリゴンの対応表
+		 */
+		private final List<PolygonData> polygons = new ArrayList<PolygonData>();
+
+		/**
+		 * 親の通し番号
+		 */
+		private int[] parents = new int[16];
+
+		/**
+		 * 根であるときの、集合の要素数
+		 */
+		private int[] sizes = new int[16];
+
+		/**
+		 * @param polygon ポリゴン
+		 * @return 通し番号
+		 */
+		private int getId(final PolygonData polygon) {
+			final Integer id = this.ids.get(polygon);
+			if (id != null) {
+				return id;
+			}
+			final int ret = this.polygons.size();
+			if (ret == this.parents.length) {
+				final int[] parents2 = new int[ret * 2];
+				final int[] sizes2 = new int[ret * 2];
+				System.arraycopy(this.parents, 0, parents2, 0, ret);
+				System.arraycopy(this.sizes, 0, sizes2, 0, ret);
+				this.parents = parents2;
+				this.sizes = sizes2;
+			}
+			this.parents[ret] = ret;
+			this.sizes[ret] = 1;
+			this.polygons.add(polygon);
+			this.ids.put(polygon, ret);
+			return ret;
+		}
+
+		/**
+		 * @param id 通し番号
+		 * @return 根の通し番号
+		 */
+		private int find(final int id) {
+			int i = id;
+			while (this.parents[i] != i) {
+				this.parents[i] = this.parents[this.parents[i]];
+				i = this.parents[i];
+			}
+			return i;
+		}
+
+		/**
+		 * 2つのポリゴンを含む集合を1つにまとめます。
+		 * @param polygon ポリゴン
+		 * @param polygon2 ポリゴン
+		 */
+		void union(final PolygonData polygon, final PolygonData polygon2) {
+			final int root = this.find(this.getId(polygon));
+			final int root2 = this.find(this.getId(polygon2));
+			if (root == root2) {
+				return;
+			}
+			if (this.sizes[root] < this.sizes[root2]) {
+				this.parents[root] = root2;
+				this.sizes[root2] += this.sizes[root];
+			} else {
+				this.parents[root2] = root;
+				this.sizes[root] += this.sizes[root2];
+			}
+		}
+
+		/**
+		 * @return 集合の一覧
+		 */
+		Collection<Set<PolygonData>> getGroups() {
+			final Map<Integer, Set<PolygonData>> ret = new ConcurrentHashMap<Integer, Set<PolygonData>>();
+			for (int i = 0; i < this.polygons.size(); i++) {
+				final int root = this.find(i);
+				if (!ret.containsKey(root)) {
+					ret.put(root, new LinkedHashSet<PolygonData>());
+				}
+				ret.get(root).add(this.polygons.get(i));
+			}
+			return ret.values();
+		}
+	}
 }
@@ -27,23 +27,21 @@ class JoinTatemono {
         this.isChanged = false;
         final Map<String, Collection<PolygonData>> attributePolygonMap = new ConcurrentHashMap<String, Collection<PolygonData>>(); // String -> Collection<Polygon> の Map
         // 属性をキー、ポリゴンの集合を値とする Map を初期化する
-        synchronized (maps) {
-			for (final MapData mapData : maps.values()) {
-				if (mapData.hasTatemono()) {
-					for (final PolygonData polygon : mapData.getTatemono().values()) {
-						if (polygon.getAttribute() != null) {
-							if (polygon.getAttribute().length() > 0) {
-								if (!attributePolygonMap.containsKey(polygon.getAttribute())) {
-									attributePolygonMap.put(polygon.getAttribute(),
-										new ArrayList<PolygonData>());
-								}
-								attributePolygonMap.get(polygon.getAttribute()).add(polygon);
-							}
-						}
-					}
-				}
-			}
-		}
+        for (final MapData mapData : maps.values()) {
+            if (mapData.hasTatemono()) {
+                for (final PolygonData polygon : mapData.getTatemono().values()) {
+                    if (polygon.getAttribute() != null) {
+                        if (polygon.getAttribute().length() > 0) {
+                            if (!attributePolygonMap.containsKey(polygon.getAttribute())) {
+                                attributePolygonMap.put(polygon.getAttribute(),
+                                    new ArrayList<PolygonData>());
+                            }
+                            attributePolygonMap.get(polygon.getAttribute()).add(polygon);
+                        }
+                    }
+                }
+            }
+        }
         for (final Collection<PolygonData> polygons : attributePolygonMap.values()) {
             if (polygons.size() > 1) {
                 Rectangle2D rect = null;
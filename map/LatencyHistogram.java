@@ -0,0 +1,197 @@
+package map;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 処理時間の分布を記録するヒストグラムです。
+ * HDR Histogram と同じように、2のべき乗ごとの区間をさらに16等分したバケツに数えるので、
+ * ナノ秒から数時間までの値を少ないメモリに記録できます。
+ * 32未満の値は正確に数え、それ以上の値のパーセンタイルはバケツの上限を返すので、
+ * 相対誤差は最大で1/16（約6%）です。
+ * 記録はロックを使わないので、複数のスレッドから呼び出せます。
+ * @author zenjiro
+ * @since 6.3.0
+ */
+public class LatencyHistogram {
+	/**
+	 * 値を数えるときに残す上位のビット数。最上位のビットは常に1なので、2つ目以降の区間は1ビット少ない数で等分する
+	 */
+	private static final int SUB_BUCKET_BITS = 5;
+
+	/**
+	 * 最初の区間のバケツの数
+	 */
+	private static final int SUB_BUCKETS = 1 << LatencyHistogram.SUB_BUCKET_BITS;
+
+	/**
+	 * 2つ目以降の区間のバケツの数
+	 */
+	private static final int HALF_SUB_BUCKETS = LatencyHistogram.SUB_BUCKETS / 2;
+
+	/**
+	 * バケツの数
+	 */
+	private static final int BUCKETS = LatencyHistogram.SUB_BUCKETS + (Long.SIZE - LatencyHistogram.SUB_BUCKET_BITS)
+			* LatencyHistogram.HALF_SUB_BUCKETS;
+
+	/**
+	 * バケツごとの数
+	 */
+	private final AtomicLongArray counts;
+
+	/**
+	 * 記録した数
+	 */
+	private final AtomicLong count;
+
+	/**
+	 * 記録した値の合計[ns]
+	 */
+	private final AtomicLong total;
+
+	/**
+	 * 記録した値の最大値[ns]
+	 */
+	private final AtomicLong max;
+
+	/**
+	 * 空のヒストグラムを初期化します。
+	 */
+	public LatencyHistogram() {
+		this.counts = new AtomicLongArray(LatencyHistogram.BUCKETS);
+		this.count = new AtomicLong();
+		this.total = new AtomicLong();
+		this.max = new AtomicLong();
+	}
+
+	/**
+	 * 値を記録します。
+	 * @param nanos 処理時間[ns]。負の値は0とみなします。
+	 */
+	public void record(final long nanos) {
+		final long value = Math.max(0, nanos);
+		this.counts.incrementAndGet(LatencyHistogram.getIndex(value));
+		this.count.incrementAndGet();
+		this.total.addAndGet(value);
+		long current = this.max.get();
+		while (value > current && !this.max.compareAndSet(current, value)) {
+			current = this.max.get();
+		}
+	}
+
+	/**
+	 * @param value 値
+	 * @return 値を数えるバケツの番号
+	 */
+	private static int getIndex(final long value) {
+		final int magnitude = Math.max(0, Long.SIZE - Long.numberOfLeadingZeros(value)
+				- LatencyHistogram.SUB_BUCKET_BITS);
+		final int subBucket = (int) (value >>> magnitude);
+		if (magnitude == 0) {
+			return subBucket;
+		}
+		return LatencyHistogram.SUB_BUCKETS + (magnitude - 1) * LatencyHistogram.HALF_SUB_BUCKETS + subBucket
+				- LatencyHistogram.HALF_SUB_BUCKETS;
+	}
+
+	/**
+	 * @param index バケツの番号
+	 * @return バケツに数える値の最大値
+	 */
+	private static long getUpperBound(final int index) {
+		if (index < LatencyHistogram.SUB_BUCKETS) {
+			return index;
+		}
+		final int magnitude = (index - LatencyHistogram.SUB_BUCKETS) / LatencyHistogram.HALF_SUB_BUCKETS + 1;
+		final long subBucket = (index - LatencyHistogram.SUB_BUCKETS) % LatencyHistogram.HALF_SUB_BUCKETS
+				+ LatencyHistogram.HALF_SUB_BUCKETS;
+		return ((subBucket + 1) << magnitude) - 1;
+	}
+
+	/**
+	 * @return 記録した数
+	 */
+	public long getCount() {
+		return this.count.get();
+	}
+
+	/**
+	 * @return 記録した値の合計[ns]
+	 */
+	public long getTotal() {
+		return this.total.get();
+	}
+
+	/**
+	 * @return 記録した値の最大値[ns]
+	 */
+	public long getMax() {
+		return this.max.get();
+	}
+
+	/**
+	 * @return 記録した値の平均[ns]
+	 */
+	public double getMean() {
+		final long n = this.count.get();
+		return n == 0 ? 0 : (double) this.total.get() / n;
+	}
+
+	/**
+	 * 指定した割合の値がそれ以下になる値を求めます。
+	 * @param percentile 割合[%]
+	 * @return 値[ns]。記録した値がなければ0
+	 */
+	public long getValueAtPercentile(final double percentile) {
+		long n = 0;
+		for (int i = 0; i < LatencyHistogram.BUCKETS; i++) {
+			n += this.counts.get(i);
+		}
+		if (n == 0) {
+			return 0;
+		}
+		final long target = Math.max(1, (long) Math.ceil(n * Math.min(100, percentile) / 100));
+		long sum = 0;
+		for (int i = 0; i < LatencyHistogram.BUCKETS; i++) {
+			sum += this.counts.get(i);
+			if (sum >= target) {
+				return Math.min(LatencyHistogram.getUpperBound(i), this.max.get());
+			}
+		}
+		return this.max.get();
+	}
+
+	/**
+	 * 記録した値をすべて消します。
+	 */
+	public void reset() {
+		for (int i = 0; i < LatencyHistogram.BUCKETS; i++) {
+			this.counts.set(i, 0);
+		}
+		this.count.set(0);
+		this.total.set(0);
+		this.max.set(0);
+	}
+
+	/**
+	 * @return 今の状態を写したヒストグラム
+	 */
+	public LatencyHistogram copy() {
+		final LatencyHistogram ret = new LatencyHistogram();
+		for (int i = 0; i < LatencyHistogram.BUCKETS; i++) {
+			ret.counts.set(i, this.counts.get(i));
+		}
+		ret.count.set(this.count.get());
+		ret.total.set(this.total.get());
+		ret.max.set(this.max.get());
+		return ret;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("count=%d, mean=%.3fms, p50=%.3fms, p90=%.3fms, p99=%.3fms, max=%.3fms", this
+				.getCount(), this.getMean() / 1E6, this.getValueAtPercentile(50) / 1E6,
+				this.getValueAtPercentile(90) / 1E6, this.getValueAtPercentile(99) / 1E6, this.getMax() / 1E6);
+	}
+}
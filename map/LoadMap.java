@@ -12,6 +12,36 @@ import map.Const.Zoom;
  * 作成日: 2004/01/09
  */
 public class LoadMap {
+	/**
+	 * 行政界、市区町村、丁目を表す層の名前
+	 * @since 6.3.0
+	 */
+	private static final String GYOUSEI = "gyousei";
+
+	/**
+	 * 道路、その他の弧、駅を表す層の名前
+	 * @since 6.3.0
+	 */
+	private static final String ROAD = "road";
+
+	/**
+	 * 内水面を表す層の名前
+	 * @since 6.3.0
+	 */
+	private static final String MIZU = "mizu";
+
+	/**
+	 * 建物を表す層の名前
+	 * @since 6.3.0
+	 */
+	private static final String TATEMONO = "tatemono";
+
+	/**
+	 * 場地を表す層の名前
+	 * @since 6.3.0
+	 */
+	private static final String ZYOUTI = "zyouti";
+
 	/**
 	 * 変更されたかどうか
 	 */
@@ -22,6 +52,12 @@ public class LoadMap {
 	 */
 	private boolean isRoadChanged;
 
+	/**
+	 * 先読みで道路を読み込んだかどうか
+	 * @since 6.3.0
+	 */
+	private boolean isRoadPrefetched;
+
 	/**
 	 * @return 道路が変更されたかどうか
 	 */
@@ -33,6 +69,8 @@ public class LoadMap {
 	 * 地図を読み込む必要があれば読み込み、開放する必要があれば開放します。
 	 * このメソッドを呼び出した直後に isChanged() を呼び出すと、
 	 * このメソッドによって地図の状態が変化したかどうかが取得できます。
+	 * since 6.3.0 表示されている領域から外れたデータはすぐには開放せず、
+	 * ResidencyManager がメモリの予算を超えたときに開放します。
 	 * @param maps 地図
 	 * @param panel パネル
 	 * @param visibleRectangle 表示されている領域（仮想座標）
@@ -41,114 +79,245 @@ public class LoadMap {
 	public void loadMap(final Map<String, MapData> maps, final MapPanel panel, final Rectangle2D visibleRectangle) throws IOException {
 		final double zoom = panel.getZoom();
 		this.isChanged = false;
-		this.isRoadChanged = false;
+		// since 6.3.0 先読みで道路を読み込んでいたら、道路が変更されたことにする
+		this.isRoadChanged = this.isRoadPrefetched;
+		this.isRoadPrefetched = false;
+		final ResidencyManager manager = ResidencyManager.getInstance();
 		for (final MapData mapData : maps.values()) {
 			final Rectangle2D preLoadRectangle = new Rectangle2D.Double(visibleRectangle.getX()
 					- (visibleRectangle.getWidth() * Const.PRE_LOAD_COEFFICIENT), visibleRectangle.getY()
 					- (visibleRectangle.getHeight() * Const.PRE_LOAD_COEFFICIENT), visibleRectangle.getWidth()
 					+ (visibleRectangle.getWidth() * Const.PRE_LOAD_COEFFICIENT * 2), visibleRectangle.getHeight()
 					+ (visibleRectangle.getHeight() * Const.PRE_LOAD_COEFFICIENT * 2));
-			final Rectangle2D keepRectangle = new Rectangle2D.Double(visibleRectangle.getX()
-					- (visibleRectangle.getWidth() * Const.KEEP_COFFICIENT), visibleRectangle.getY()
-					- (visibleRectangle.getHeight() * Const.KEEP_COFFICIENT), visibleRectangle.getWidth()
-					+ (visibleRectangle.getWidth() * Const.KEEP_COFFICIENT * 2), visibleRectangle.getHeight()
-					+ (visibleRectangle.getHeight() * Const.KEEP_COFFICIENT * 2));
 			// データを開放する
 			if (zoom < Zoom.LOAD_GYOUSEI) {
 				if (mapData.hasGyousei()) {
-					mapData.freeSi_tyo();
-					mapData.freeTyome();
-					mapData.freeGyousei();
+					LoadMap.freeGyousei(mapData);
+					manager.remove(LoadMap.getKey(mapData, LoadMap.GYOUSEI));
 					this.isChanged = true;
 				}
 			}
 			if (zoom < Zoom.LOAD_ALL) {
 				if (mapData.hasRoadArc()) {
-					mapData.freeRoadArc();
-					mapData.freeOthers();
-					mapData.freeEki();
+					LoadMap.freeRoad(mapData);
+					manager.remove(LoadMap.getKey(mapData, LoadMap.ROAD));
 					this.isChanged = true;
 				}
 				if (mapData.hasMizuArc()) {
-					mapData.freeMizu();
-					mapData.freeMizuArc();
+					LoadMap.freeMizu(mapData);
+					manager.remove(LoadMap.getKey(mapData, LoadMap.MIZU));
 					this.isChanged = true;
 				}
 				if (mapData.hasTatemonoArc()) {
-					mapData.freeTatemono();
-					mapData.freeTatemonoArc();
+					LoadMap.freeTatemono(mapData);
+					manager.remove(LoadMap.getKey(mapData, LoadMap.TATEMONO));
 					this.isChanged = true;
 				}
 				if (mapData.hasZyouti()) {
 					mapData.freeZyouti();
+					manager.remove(LoadMap.getKey(mapData, LoadMap.ZYOUTI));
 					this.isChanged = true;
 				}
 			}
 			if (mapData.getBounds().intersects(preLoadRectangle)) {
 				// データを読み込む
-				if (zoom >= Zoom.LOAD_GYOUSEI) {
-					if (!mapData.hasGyousei()) {
-						mapData.loadGyousei();
-						//mapData.loadSi_tyo();
-						mapData.loadTyome();
-						this.isChanged = true;
-					}
+				if (this.load(mapData, zoom)) {
+					this.isChanged = true;
 				}
-				if (zoom >= Zoom.LOAD_ALL) {
-					if (!mapData.hasEki()) {
-						mapData.loadEki();
-						this.isChanged = true;
-					}
-					if (!mapData.hasOthers()) {
-						mapData.loadOthers();
-						this.isChanged = true;
+			}
+		}
+	}
+
+	/**
+	 * 先読みのために、表示されていない地図を読み込みます。
+	 * 読み込んだ道路は、次の loadMap の呼び出しで isRoadChanged() に反映されます。
+	 * @param mapData 地図
+	 * @param zoom 倍率
+	 * @return 読み込んだかどうか
+	 * @throws IOException 入出力例外
+	 * @since 6.3.0
+	 */
+	boolean prefetch(final MapData mapData, final double zoom) throws IOException {
+		final boolean isRoadChanged = this.isRoadChanged;
+		final boolean ret = this.load(mapData, zoom);
+		if (this.isRoadChanged && !isRoadChanged) {
+			this.isRoadPrefetched = true;
+		}
+		this.isRoadChanged = isRoadChanged;
+		return ret;
+	}
+
+	/**
+	 * 倍率に応じて、地図の読み込まれていない層を読み込み、読み込まれている層を使ったことにします。
+	 * @param mapData 地図
+	 * @param zoom 倍率
+	 * @return 読み込んだかどうか
+	 * @throws IOException 入出力例外
+	 * @since 6.3.0
+	 */
+	private boolean load(final MapData mapData, final double zoom) throws IOException {
+		final ResidencyManager manager = ResidencyManager.getInstance();
+		boolean ret = false;
+		if (zoom >= Zoom.LOAD_GYOUSEI) {
+			if (!mapData.hasGyousei()) {
+				mapData.loadGyousei();
+				//mapData.loadSi_tyo();
+				mapData.loadTyome();
+				final MapData.Layers layers = mapData.getLayers();
+				this.register(mapData, LoadMap.GYOUSEI, ResidencyManager.estimateArcs(layers.getGyousei())
+						+ ResidencyManager.estimatePolygons(layers.getTyome()), new Runnable() {
+					public void run() {
+						LoadMap.freeGyousei(mapData);
 					}
-					if (!mapData.hasRoadArc()) {
-						mapData.loadRoadArc();
-						this.isChanged = true;
-						this.isRoadChanged = true;
+				});
+				ret = true;
+			} else {
+				manager.touch(LoadMap.getKey(mapData, LoadMap.GYOUSEI));
+			}
+		}
+		if (zoom >= Zoom.LOAD_ALL) {
+			boolean isRoadLoaded = false;
+			if (!mapData.hasEki()) {
+				mapData.loadEki();
+				isRoadLoaded = true;
+				ret = true;
+			}
+			if (!mapData.hasOthers()) {
+				mapData.loadOthers();
+				isRoadLoaded = true;
+				ret = true;
+			}
+			if (!mapData.hasRoadArc()) {
+				mapData.loadRoadArc();
+				isRoadLoaded = true;
+				ret = true;
+				this.isRoadChanged = true;
+			}
+			if (isRoadLoaded) {
+				final MapData.Layers layers = mapData.getLayers();
+				this.register(mapData, LoadMap.ROAD, ResidencyManager.estimateArcs(layers.getRoadArc())
+						+ ResidencyManager.estimateArcs(layers.getOthers())
+						+ ResidencyManager.estimatePoints(layers.getEki()), new Runnable() {
+					public void run() {
+						LoadMap.freeRoad(mapData);
 					}
-					if (!mapData.hasMizuArc()) {
-						mapData.loadMizuArc();
-						mapData.loadMizu();
-						this.isChanged = true;
+				});
+			} else {
+				manager.touch(LoadMap.getKey(mapData, LoadMap.ROAD));
+			}
+			if (!mapData.hasMizuArc()) {
+				mapData.loadMizuArc();
+				mapData.loadMizu();
+				final MapData.Layers layers = mapData.getLayers();
+				this.register(mapData, LoadMap.MIZU, ResidencyManager.estimateArcs(layers.getMizuArc())
+						+ ResidencyManager.estimatePolygons(layers.getMizu()), new Runnable() {
+					public void run() {
+						LoadMap.freeMizu(mapData);
 					}
-					if (!mapData.hasTatemonoArc()) {
-						mapData.loadTatemonoArc();
-						mapData.loadTatemono();
-						this.isChanged = true;
+				});
+				ret = true;
+			} else {
+				manager.touch(LoadMap.getKey(mapData, LoadMap.MIZU));
+			}
+			if (!mapData.hasTatemonoArc()) {
+				mapData.loadTatemonoArc();
+				mapData.loadTatemono();
+				final MapData.Layers layers = mapData.getLayers();
+				this.register(mapData, LoadMap.TATEMONO, ResidencyManager.estimateArcs(layers
+						.getTatemonoArc())
+						+ ResidencyManager.estimatePolygons(layers.getTatemono()), new Runnable() {
+					public void run() {
+						LoadMap.freeTatemono(mapData);
 					}
-					if (!mapData.hasZyouti()) {
-						mapData.loadZyouti();
-						this.isChanged = true;
+				});
+				ret = true;
+			} else {
+				manager.touch(LoadMap.getKey(mapData, LoadMap.TATEMONO));
+			}
+			if (!mapData.hasZyouti()) {
+				mapData.loadZyouti();
+				this.register(mapData, LoadMap.ZYOUTI, ResidencyManager.estimatePolygons(mapData.getLayers()
+						.getZyouti()), new Runnable() {
+					public void run() {
+						mapData.freeZyouti();
 					}
-				}
-			} else if (!mapData.getBounds().intersects(keepRectangle)) {
-				// データを開放する
-				if (mapData.hasGyousei()) {
-					mapData.freeSi_tyo();
-					mapData.freeTyome();
-					mapData.freeGyousei();
-				}
-				if (mapData.hasMizuArc()) {
-					mapData.freeMizu();
-					mapData.freeMizuArc();
-				}
-				if (mapData.hasOthers()) {
-					mapData.freeZyouti();
-				}
-				if (mapData.hasTatemonoArc()) {
-					mapData.freeTatemono();
-					mapData.freeTatemonoArc();
-				}
-				if (mapData.hasRoadArc()) {
-					mapData.freeRoadArc();
-				}
-				if (mapData.hasEki()) {
-					mapData.freeEki();
-				}
+				});
+				ret = true;
+			} else {
+				manager.touch(LoadMap.getKey(mapData, LoadMap.ZYOUTI));
 			}
 		}
+		return ret;
+	}
+
+	/**
+	 * @param mapData 地図
+	 * @param layer 層の名前
+	 * @return ResidencyManager に登録する名前
+	 * @since 6.3.0
+	 */
+	private static String getKey(final MapData mapData, final String layer) {
+		return mapData.getMapName() + "/" + layer;
+	}
+
+	/**
+	 * 読み込んだ層を ResidencyManager に登録します。
+	 * @param mapData 地図
+	 * @param layer 層の名前
+	 * @param bytes 使っているメモリの量の見積もり[byte]
+	 * @param evictor 層を開放する処理
+	 * @since 6.3.0
+	 */
+	private void register(final MapData mapData, final String layer, final long bytes, final Runnable evictor) {
+		ResidencyManager.getInstance().put(LoadMap.getKey(mapData, layer), mapData.getBounds().getBounds2D(), bytes,
+				new Runnable() {
+					public void run() {
+						evictor.run();
+						LoadMap.this.isChanged = true;
+					}
+				});
+	}
+
+	/**
+	 * 行政界、市区町村、丁目を開放します。
+	 * @param mapData 地図
+	 * @since 6.3.0
+	 */
+	static void freeGyousei(final MapData mapData) {
+		mapData.freeSi_tyo();
+		mapData.freeTyome();
+		mapData.freeGyousei();
+	}
+
+	/**
+	 * 道路、その他の弧、駅を開放します。
+	 * @param mapData 地図
+	 * @since 6.3.0
+	 */
+	static void freeRoad(final MapData mapData) {
+		mapData.freeRoadArc();
+		mapData.freeOthers();
+		mapData.freeEki();
+	}
+
+	/**
+	 * 内水面を開放します。
+	 * @param mapData 地図
+	 * @since 6.3.0
+	 */
+	static void freeMizu(final MapData mapData) {
+		mapData.freeMizu();
+		mapData.freeMizuArc();
+	}
+
+	/**
+	 * 建物を開放します。
+	 * @param mapData 地図
+	 * @since 6.3.0
+	 */
+	static void freeTatemono(final MapData mapData) {
+		mapData.freeTatemono();
+		mapData.freeTatemonoArc();
 	}
 
 	/**
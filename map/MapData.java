@@ -2,7 +2,6 @@ package map;
 
 import java.awt.Shape;
 import java.awt.geom.AffineTransform;
-import java.awt.geom.Area;
 import java.awt.geom.GeneralPath;
 import java.awt.geom.PathIterator;
 import java.awt.geom.Point2D;
@@ -27,6 +26,199 @@ import java.util.regex.Pattern;
  * 作成日: 2003/12/11
  */
 public class MapData implements Comparable<MapData> {
+	/**
+	 * ある時点の図葉の各レイヤをまとめたものです。
+	 * 読み込みや開放のたびに新しいものが作られ、作られた後は変化しません。
+	 * 描画する側はこれを1つ取得して使うことで、ロックを取らずに、途中で開放されることもなく各レイヤを参照できます。
+	 * 読み込まれていないレイヤは null です。
+	 * @author zenjiro
+	 * @since 6.3.0
+	 */
+	static class Layers {
+		/**
+		 * 版。読み込みや開放のたびに増えます。
+		 */
+		private final long version;
+
+		/**
+		 * 駅の点データ
+		 */
+		private final Map<String, PointData> eki;
+
+		/**
+		 * 行政界の弧データ
+		 */
+		private final Map<String, ArcData> gyousei;
+
+		/**
+		 * 高速道路、国道の弧データ
+		 */
+		private final Map<String, ArcData> largeRoadArc;
+
+		/**
+		 * 内水面のポリゴンデータ
+		 */
+		private final Map<String, PolygonData> mizu;
+
+		/**
+		 * 水界の弧データ
+		 */
+		private final Map<String, ArcData> mizuArc;
+
+		/**
+		 * 鉄道、場地界の弧データ
+		 */
+		private final Map<String, ArcData> others;
+
+		/**
+		 * 道路の弧データ
+		 */
+		private final Map<String, ArcData> roadArc;
+
+		/**
+		 * 市町界のポリゴンデータ
+		 */
+		private final Map<String, PolygonData> si_tyo;
+
+		/**
+		 * 建物のポリゴンデータ
+		 */
+		private final Map<String, PolygonData> tatemono;
+
+		/**
+		 * 建物界の弧データ
+		 */
+		private final Map<String, ArcData> tatemonoArc;
+
+		/**
+		 * 町丁目のポリゴンデータ
+		 */
+		private final Map<String, PolygonData> tyome;
+
+		/**
+		 * 場地のポリゴンデータ
+		 */
+		private final Map<String, PolygonData> zyouti;
+
+		/**
+		 * 各レイヤを指定して初期化します。
+		 * @param version 版
+		 * @param mapData 地図
+		 */
+		Layers(final long version, final MapData mapData) {
+			this.version = version;
+			this.eki = mapData.eki;
+			this.gyousei = mapData.gyousei;
+			this.largeRoadArc = mapData.largeRoadArc;
+			this.mizu = mapData.mizu;
+			this.mizuArc = mapData.mizuArc;
+			this.others = mapData.others;
+			this.roadArc = mapData.roadArc;
+			this.si_tyo = mapData.si_tyo;
+			this.tatemono = mapData.tatemono;
+			this.tatemonoArc = mapData.tatemonoArc;
+			this.tyome = mapData.tyome;
+			this.zyouti = mapData.zyouti;
+		}
+
+		/**
+		 * @return 版
+		 */
+		long getVersion() {
+			return this.version;
+		}
+
+		/**
+		 * @return 駅の点データ。読み込まれていなければ null
+		 */
+		Map<String, PointData> getEki() {
+			return this.eki;
+		}
+
+		/**
+		 * @return 行政界の弧データ。読み込まれていなければ null
+		 */
+		Map<String, ArcData> getGyousei() {
+			return this.gyousei;
+		}
+
+		/**
+		 * @return 高速道路、国道の弧データ。読み込まれていなければ null
+		 */
+		Map<String, ArcData> getLargeRoadArc() {
+			return this.largeRoadArc;
+		}
+
+		/**
+		 * @return 内水面のポリゴンデータ。読み込まれていなければ null
+		 */
+		Map<String, PolygonData> getMizu() {
+			return this.mizu;
+		}
+
+		/**
+		 * @return 水界の弧データ。読み込まれていなければ null
+		 */
+		Map<String, ArcData> getMizuArc() {
+			return this.mizuArc;
+		}
+
+		/**
+		 * @return 鉄道、場地界の弧データ。読み込まれていなければ null
+		 */
+		Map<String, ArcData> getOthers() {
+			return this.others;
+		}
+
+		/**
+		 * @return 道路の弧データ。読み込まれていなければ null
+		 */
+		Map<String, ArcData> getRoadArc() {
+			return this.roadArc;
+		}
+
+		/**
+		 * @return 市町界のポリゴンデータ。読み込まれていなければ null
+		 */
+		Map<String, PolygonData> getSi_tyo() {
+			return this.si_tyo;
+		}
+
+		/**
+		 * @return 建物のポリゴンデータ。読み込まれていなければ null
+		 */
+		Map<String, PolygonData> getTatemono() {
+			return this.tatemono;
+		}
+
+		/**
+		 * @return 建物界の弧データ。読み込まれていなければ null
+		 */
+		Map<String, ArcData> getTatemonoArc() {
+			return this.tatemonoArc;
+		}
+
+		/**
+		 * @return 町丁目のポリゴンデータ。読み込まれていなければ null
+		 */
+		Map<String, PolygonData> getTyome() {
+			return this.tyome;
+		}
+
+		/**
+		 * @return 場地のポリゴンデータ。読み込まれていなければ null
+		 */
+		Map<String, PolygonData> getZyouti() {
+			return this.zyouti;
+		}
+	}
+
+	/**
+	 * 最後に公開された各レイヤ
+	 * @since 6.3.0
+	 */
+	private volatile Layers layers;
+
 	/**
 	 * 隣接グラフ
 	 */
@@ -130,11 +322,42 @@ public class MapData implements Comparable<MapData> {
 	 */
 	public MapData(final String baseDir, final String mapName) throws NumberFormatException,
 		IOException {
+		this(baseDir, mapName, MapData.readRectangle(baseDir, mapName));
+	}
+
+	/**
+	 * 地図がある領域が分かっている地図を、ファイルを開かずに初期化します。
+	 * @param baseDir 地図データのあるディレクトリ
+	 * @param mapName 地図の名前
+	 * @param rectangle 地図がある領域（仮想座標）
+	 * @since 6.3.0
+	 */
+	MapData(final String baseDir, final String mapName, final Shape rectangle) {
 		this.setBaseDir(baseDir);
 		this.setMapName(mapName);
-		this.loadRectangle();
+		this.setRectangle(rectangle);
 		this.edgePolygons = new ConcurrentHashMap<String, String>();
 		this.arcPolygonMap = new ConcurrentHashMap<ArcData, Collection<String>>();
+		this.layers = new Layers(0, this);
+	}
+
+	/**
+	 * 現在の各レイヤを新しい版として公開します。
+	 * レイヤは読み込み終わってから代入されるので、公開されたレイヤが変化することはありません。
+	 * @since 6.3.0
+	 */
+	private synchronized void publish() {
+		this.layers = new Layers(this.layers.getVersion() + 1, this);
+	}
+
+	/**
+	 * 最後に公開された各レイヤを取得します。
+	 * 描画など、読み込みを行うスレッド以外から地図を参照するときはこれを使います。
+	 * @return 各レイヤ
+	 * @since 6.3.0
+	 */
+	Layers getLayers() {
+		return this.layers;
 	}
 
 	/** 丁目の隣接グラフを計算します。
@@ -185,6 +408,7 @@ public class MapData implements Comparable<MapData> {
 	 */
 	void freeEki() {
 		this.eki = null;
+		this.publish();
 	}
 
 	/**
@@ -192,6 +416,7 @@ public class MapData implements Comparable<MapData> {
 	 */
 	void freeGyousei() {
 		this.gyousei = null;
+		this.publish();
 	}
 
 	/**
@@ -199,6 +424,7 @@ public class MapData implements Comparable<MapData> {
 	 */
 	void freeLargeRoadArc() {
 		this.largeRoadArc = null;
+		this.publish();
 	}
 
 	/**
@@ -206,6 +432,7 @@ public class MapData implements Comparable<MapData> {
 	 */
 	void freeMizu() {
 		this.mizu = null;
+		this.publish();
 	}
 
 	/**
@@ -213,6 +440,7 @@ public class MapData implements Comparable<MapData> {
 	 */
 	void freeMizuArc() {
 		this.mizuArc = null;
+		this.publish();
 	}
 
 	/**
@@ -220,6 +448,7 @@ public class MapData implements Comparable<MapData> {
 	 */
 	void freeOthers() {
 		this.others = null;
+		this.publish();
 	}
 
 	/**
@@ -227,6 +456,7 @@ public class MapData implements Comparable<MapData> {
 	 */
 	void freeRoadArc() {
 		this.roadArc = null;
+		this.publish();
 	}
 
 	/**
@@ -234,6 +464,7 @@ public class MapData implements Comparable<MapData> {
 	 */
 	void freeSi_tyo() {
 		this.si_tyo = null;
+		this.publish();
 	}
 
 	/**
@@ -241,6 +472,7 @@ public class MapData implements Comparable<MapData> {
 	 */
 	void freeTatemono() {
 		this.tatemono = null;
+		this.publish();
 	}
 
 	/**
@@ -248,6 +480,7 @@ public class MapData implements Comparable<MapData> {
 	 */
 	void freeTatemonoArc() {
 		this.tatemonoArc = null;
+		this.publish();
 	}
 
 	/**
@@ -255,6 +488,7 @@ public class MapData implements Comparable<MapData> {
 	 */
 	void freeTyome() {
 		this.tyome = null;
+		this.publish();
 	}
 
 	/**
@@ -262,6 +496,7 @@ public class MapData implements Comparable<MapData> {
 	 */
 	void freeZyouti() {
 		this.zyouti = null;
+		this.publish();
 	}
 
 	/** 丁目の隣接グラフを取得します。
@@ -724,6 +959,7 @@ public class MapData implements Comparable<MapData> {
 	 * @throws IOException 例外
 	 */
 	private void loadArc(final Map<String, ArcData> arcs, final BufferedReader in) throws IOException {
+		long projectionTime = 0; // since 6.3.0 座標変換にかかった時間[ns]
 		String line;
 		String arcName = null;
 		int type = 0;
@@ -798,7 +1034,9 @@ public class MapData implements Comparable<MapData> {
 				//				// test
 				final double x = Double.parseDouble(tokenizer.nextToken());
 				final double y = Double.parseDouble(tokenizer.nextToken());
+				final long projectionStart = System.nanoTime(); // since 6.3.0
 				final Point2D p = UTMUtil.toUTM(JasmineUtil.toLatLong(x + x0, y + y0, kei));
+				projectionTime += System.nanoTime() - projectionStart;
 				if (path != null) {
 					path.lineTo((float) p.getX(), (float) -p.getY());
 				} else {
@@ -810,6 +1048,7 @@ public class MapData implements Comparable<MapData> {
 		if (path != null) {
 			arcs.put(arcName, new ArcData(arcName, path, type, tag));
 		}
+		Metrics.getInstance().recordNanos(Metrics.Stage.PROJECTION, projectionTime);
 	}
 
 	/**
@@ -867,20 +1106,26 @@ public class MapData implements Comparable<MapData> {
 	 * @throws FileNotFoundException ファイル未検出例外
 	 */
 	void loadEki() throws FileNotFoundException, IOException {
+		final long startTime = System.nanoTime(); // since 6.3.0
+		final Object event = Trace.begin(Trace.Kind.SHEET_LOAD);
 		final String fileName = this.baseDir + File.separator + this.mapName.toUpperCase()
 			+ File.separator + "others" + File.separator + "eki.pnt";
 		final String attributeFileName = this.baseDir + File.separator + this.mapName.toUpperCase()
 			+ File.separator + "others" + File.separator + "eki.atr";
-		this.eki = new ConcurrentHashMap<String, PointData>();
+		final Map<String, PointData> eki = new ConcurrentHashMap<String, PointData>();
 		if (new File(fileName).canRead()) {
-			this.loadPoint(this.eki, new BufferedReader(new InputStreamReader(new FileInputStream(
+			this.loadPoint(eki, new BufferedReader(new InputStreamReader(new FileInputStream(
 				fileName))));
 			if (new File(attributeFileName).canRead()) {
-				this.loadPointAttribute(this.eki, new BufferedReader(new InputStreamReader(
+				this.loadPointAttribute(eki, new BufferedReader(new InputStreamReader(
 					new FileInputStream(attributeFileName), "SJIS")),
 					PointData.CLASSIFICATION_STATION);
 			}
 		}
+		this.eki = eki;
+		this.publish();
+		Metrics.getInstance().record(Metrics.Stage.LOAD_EKI, startTime);
+		Trace.commitSheet(event, this.mapName, "eki", this.eki);
 	}
 
 	/**
@@ -889,13 +1134,19 @@ public class MapData implements Comparable<MapData> {
 	 * @throws FileNotFoundException ファイル未検出例外
 	 */
 	void loadGyousei() throws FileNotFoundException, IOException {
+		final long startTime = System.nanoTime(); // since 6.3.0
+		final Object event = Trace.begin(Trace.Kind.SHEET_LOAD);
 		final String fileName = this.baseDir + File.separator + this.mapName.toUpperCase()
 			+ File.separator + "gyousei" + File.separator + "gyousei.arc";
-		this.gyousei = new ConcurrentHashMap<String, ArcData>();
+		final Map<String, ArcData> gyousei = new ConcurrentHashMap<String, ArcData>();
 		if (new File(fileName).canRead()) {
-			this.loadArc(this.gyousei, new BufferedReader(new InputStreamReader(new FileInputStream(
+			this.loadArc(gyousei, new BufferedReader(new InputStreamReader(new FileInputStream(
 				fileName))));
 		}
+		this.gyousei = gyousei;
+		this.publish();
+		Metrics.getInstance().record(Metrics.Stage.LOAD_GYOUSEI, startTime);
+		Trace.commitSheet(event, this.mapName, "gyousei", this.gyousei);
 	}
 
 	/**
@@ -904,11 +1155,13 @@ public class MapData implements Comparable<MapData> {
 	 * @throws FileNotFoundException ファイル未検出例外
 	 */
 	void loadLargeRoadArc() throws FileNotFoundException, IOException {
+		final long startTime = System.nanoTime(); // since 6.3.0
+		final Object event = Trace.begin(Trace.Kind.SHEET_LOAD);
 		final String fileName = this.baseDir + File.separator + this.mapName.toUpperCase()
 			+ File.separator + "road" + File.separator + "roadntwk.arc";
 		final String attributeFileName = this.baseDir + File.separator + this.mapName.toUpperCase()
 			+ File.separator + "road" + File.separator + "road.atr";
-		this.largeRoadArc = new ConcurrentHashMap<String, ArcData>();
+		final Map<String, ArcData> largeRoadArc = new ConcurrentHashMap<String, ArcData>();
 		final Map<String, ArcData> tempArc = new ConcurrentHashMap<String, ArcData>();
 		if (new File(fileName).canRead()) {
 			this.loadArc(tempArc, new BufferedReader(
@@ -923,9 +1176,13 @@ public class MapData implements Comparable<MapData> {
 			if (arc.getRoadType() == ArcData.ROAD_HIGHWAY
 				|| arc.getRoadType() == ArcData.ROAD_KOKUDO
 				|| arc.getRoadType() == ArcData.ROAD_CHIHODO) {
-				this.largeRoadArc.put(entry.getKey(), arc);
+				largeRoadArc.put(entry.getKey(), arc);
 			}
 		}
+		this.largeRoadArc = largeRoadArc;
+		this.publish();
+		Metrics.getInstance().record(Metrics.Stage.LOAD_LARGE_ROAD_ARC, startTime);
+		Trace.commitSheet(event, this.mapName, "largeRoadArc", this.largeRoadArc);
 	}
 
 	/**
@@ -934,20 +1191,26 @@ public class MapData implements Comparable<MapData> {
 	 * @throws FileNotFoundException ファイル未検出例外
 	 */
 	void loadMizu() throws FileNotFoundException, IOException {
+		final long startTime = System.nanoTime(); // since 6.3.0
+		final Object event = Trace.begin(Trace.Kind.SHEET_LOAD);
 		final String polygonFileName = this.baseDir + File.separator + this.mapName.toUpperCase()
 			+ File.separator + "mizu" + File.separator + "mizu.pgn";
 		if (new File(polygonFileName).canRead()) {
-			this.mizu = new ConcurrentHashMap<String, PolygonData>();
-			this.loadPolygon(this.mizu, this.mizuArc, new BufferedReader(new InputStreamReader(
+			final Map<String, PolygonData> mizu = new ConcurrentHashMap<String, PolygonData>();
+			this.loadPolygon(mizu, this.mizuArc, new BufferedReader(new InputStreamReader(
 				new FileInputStream(polygonFileName))));
 			final String attributeFileName = this.baseDir + File.separator + this.mapName.toUpperCase()
 				+ File.separator + "mizu" + File.separator + "mizu.atr";
 			if (new File(attributeFileName).canRead()) {
-				this.loadPolygonAttribute(this.mizu, new BufferedReader(new InputStreamReader(
+				this.loadPolygonAttribute(mizu, new BufferedReader(new InputStreamReader(
 					new FileInputStream(attributeFileName), "SJIS")),
 					PolygonData.CLASSIFICATION_RIVER);
 			}
+			this.mizu = mizu;
+			this.publish();
 		}
+		Metrics.getInstance().record(Metrics.Stage.LOAD_MIZU, startTime);
+		Trace.commitSheet(event, this.mapName, "mizu", this.mizu);
 	}
 
 	/**
@@ -956,13 +1219,19 @@ public class MapData implements Comparable<MapData> {
 	 * @throws FileNotFoundException ファイル未検出例外
 	 */
 	void loadMizuArc() throws FileNotFoundException, IOException {
+		final long startTime = System.nanoTime(); // since 6.3.0
+		final Object event = Trace.begin(Trace.Kind.SHEET_LOAD);
 		final String fileName = this.baseDir + File.separator + this.mapName.toUpperCase()
 			+ File.separator + "mizu" + File.separator + "mizu.arc";
 		if (new File(fileName).canRead()) {
-			this.mizuArc = new ConcurrentHashMap<String, ArcData>();
-			this.loadArc(this.mizuArc, new BufferedReader(new InputStreamReader(new FileInputStream(
+			final Map<String, ArcData> mizuArc = new ConcurrentHashMap<String, ArcData>();
+			this.loadArc(mizuArc, new BufferedReader(new InputStreamReader(new FileInputStream(
 				fileName))));
+			this.mizuArc = mizuArc;
+			this.publish();
 		}
+		Metrics.getInstance().record(Metrics.Stage.LOAD_MIZU_ARC, startTime);
+		Trace.commitSheet(event, this.mapName, "mizuArc", this.mizuArc);
 	}
 
 	/**
@@ -971,16 +1240,22 @@ public class MapData implements Comparable<MapData> {
 	 * @throws FileNotFoundException ファイル未検出例外
 	 */
 	void loadOthers() throws FileNotFoundException, IOException {
-		this.others = new ConcurrentHashMap<String, ArcData>();
+		final long startTime = System.nanoTime(); // since 6.3.0
+		final Object event = Trace.begin(Trace.Kind.SHEET_LOAD);
+		final Map<String, ArcData> others = new ConcurrentHashMap<String, ArcData>();
 		final String attributeFileName = this.baseDir + File.separator + this.mapName.toUpperCase()
 			+ File.separator + "others" + File.separator + "tetudou.atr";
-		this.loadArc(this.others, new BufferedReader(new InputStreamReader(new FileInputStream(
+		this.loadArc(others, new BufferedReader(new InputStreamReader(new FileInputStream(
 			this.baseDir + File.separator + this.mapName.toUpperCase() + File.separator + "others"
 				+ File.separator + "others.arc"))));
 		if (new File(attributeFileName).canRead()) {
-			this.loadArcAttribute(this.others, new BufferedReader(new InputStreamReader(
+			this.loadArcAttribute(others, new BufferedReader(new InputStreamReader(
 				new FileInputStream(attributeFileName), "SJIS")));
 		}
+		this.others = others;
+		this.publish();
+		Metrics.getInstance().record(Metrics.Stage.LOAD_OTHERS, startTime);
+		Trace.commitSheet(event, this.mapName, "others", this.others);
 	}
 
 	/** 点の情報をファイルから読み込みます。
@@ -989,6 +1264,7 @@ public class MapData implements Comparable<MapData> {
 	 * @throws IOException 例外
 	 */
 	private void loadPoint(final Map<String, PointData> points, final BufferedReader in) throws IOException {
+		long projectionTime = 0; // since 6.3.0 座標変換にかかった時間[ns]
 		String line;
 		int kei = -1;
 		double x0 = Double.NaN;
@@ -1024,11 +1300,14 @@ public class MapData implements Comparable<MapData> {
 				// test
 				final double x = Double.parseDouble(tokenizer.nextToken());
 				final double y = Double.parseDouble(tokenizer.nextToken());
+				final long projectionStart = System.nanoTime(); // since 6.3.0
 				final Point2D p = UTMUtil.toUTM(JasmineUtil.toLatLong(x + x0, y + y0, kei));
+				projectionTime += System.nanoTime() - projectionStart;
 				final PointData point = new PointData(name, code, p.getX(), -p.getY());
 				points.put(name, point);
 			}
 		}
+		Metrics.getInstance().recordNanos(Metrics.Stage.PROJECTION, projectionTime);
 	}
 
 	/** 点データの属性情報をファイルから読み込みます。
@@ -1085,6 +1364,7 @@ public class MapData implements Comparable<MapData> {
 	 */
 	private void loadPolygon(final Map<String, PolygonData> polygons, final Map<String, ArcData> arcs,
 		final BufferedReader in) throws IOException {
+		long projectionTime = 0; // since 6.3.0 座標変換にかかった時間[ns]
 		String line;
 		String polygonName = null;
 		GeneralPath path = null;
@@ -1110,7 +1390,7 @@ public class MapData implements Comparable<MapData> {
 			} else if (tokenizer.countTokens() == 5) {
 				// 新しいポリゴンが始まるとき
 				if ((path != null) && (polygonName != null)) {
-					polygons.put(polygonName, new PolygonData(polygonName, new Area(path), type, x,
+					polygons.put(polygonName, new PolygonData(polygonName, RingPolygon.create(path), type, x,
 						-y));
 				}
 				type = this.parsePolygonType(tokenizer.nextToken()); // 図式分類コード
@@ -1121,7 +1401,9 @@ public class MapData implements Comparable<MapData> {
 				// test
 				final double tempX = Double.parseDouble(tokenizer.nextToken());
 				final double tempY = Double.parseDouble(tokenizer.nextToken());
+				final long projectionStart = System.nanoTime(); // since 6.3.0
 				final Point2D p = UTMUtil.toUTM(JasmineUtil.toLatLong(tempX + x0, tempY + y0, kei));
+				projectionTime += System.nanoTime() - projectionStart;
 				x = p.getX();
 				y = p.getY();
 				path = new GeneralPath();
@@ -1210,9 +1492,10 @@ public class MapData implements Comparable<MapData> {
 			}
 			if ((path != null) && (polygonName != null)) {
 				polygons
-					.put(polygonName, new PolygonData(polygonName, new Area(path), type, x, -y));
+					.put(polygonName, new PolygonData(polygonName, RingPolygon.create(path), type, x, -y));
 			}
 		}
+		Metrics.getInstance().recordNanos(Metrics.Stage.PROJECTION, projectionTime);
 	}
 
 	/**
@@ -1341,50 +1624,58 @@ public class MapData implements Comparable<MapData> {
 	}
 
 	/** 地図がある領域をファイルから読み込みます。
+	 * @param baseDir 地図データのあるディレクトリ
+	 * @param mapName 地図の名前
+	 * @return 地図がある領域（仮想座標）。ファイルに書かれていなければ null
 	 * @throws NumberFormatException 数値形式例外
 	 * @throws IOException 入出力例外
+	 * @since 6.3.0 目録を作るときにも使えるように static にしました。
 	 */
-	private void loadRectangle() throws NumberFormatException, IOException {
+	static Shape readRectangle(final String baseDir, final String mapName) throws NumberFormatException,
+		IOException {
 		final BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(
-			this.baseDir + File.separator + this.mapName.toUpperCase() + File.separator
-				+ this.mapName.toLowerCase() + ".txt")));
-		String line;
-		while ((line = in.readLine()) != null) {
-			final StringTokenizer tokenizer = new StringTokenizer(line, ",");
-			if (tokenizer.countTokens() == 10) {
-				final int kei = Integer.parseInt(tokenizer.nextToken());
-				//				double y2 = -Double.parseDouble(tokenizer.nextToken());
-				//				double x1 = Double.parseDouble(tokenizer.nextToken());
-				//				double y1 = -Double.parseDouble(tokenizer.nextToken());
-				//				double x2 = Double.parseDouble(tokenizer.nextToken());
-				//				setRectangle(new Rectangle2D.Double(x1, y1, x2 - x1, y2 - y1));
-				// test
-				final double x1 = Double.parseDouble(tokenizer.nextToken());
-				final double y1 = Double.parseDouble(tokenizer.nextToken());
-				final double x2 = Double.parseDouble(tokenizer.nextToken());
-				final double y2 = Double.parseDouble(tokenizer.nextToken());
-				final double x3 = Double.parseDouble(tokenizer.nextToken());
-				final double y3 = Double.parseDouble(tokenizer.nextToken());
-				final double x4 = Double.parseDouble(tokenizer.nextToken());
-				final double y4 = Double.parseDouble(tokenizer.nextToken());
-				final Point2D p1 = UTMUtil.toUTM(JasmineUtil.toLatLong(x1, y1, kei));
-				final Point2D p2 = UTMUtil.toUTM(JasmineUtil.toLatLong(x2, y2, kei));
-				final Point2D p3 = UTMUtil.toUTM(JasmineUtil.toLatLong(x3, y3, kei));
-				final Point2D p4 = UTMUtil.toUTM(JasmineUtil.toLatLong(x4, y4, kei));
-				//				final Rectangle2D rectangle = new Rectangle2D.Double();
-				//				rectangle.setFrameFromDiagonal(p1.getY(), -p1.getX(), p2.getY(), -p2.getX());
-				//				setRectangle(rectangle);
-				final GeneralPath path = new GeneralPath();
-				path.moveTo((float) p1.getX(), (float) -p1.getY());
-				path.lineTo((float) p3.getX(), (float) -p3.getY());
-				path.lineTo((float) p2.getX(), (float) -p2.getY());
-				path.lineTo((float) p4.getX(), (float) -p4.getY());
-				path.closePath();
-				this.setRectangle(path);
-				break;
+			baseDir + File.separator + mapName.toUpperCase() + File.separator
+				+ mapName.toLowerCase() + ".txt")));
+		try {
+			String line;
+			while ((line = in.readLine()) != null) {
+				final StringTokenizer tokenizer = new StringTokenizer(line, ",");
+				if (tokenizer.countTokens() == 10) {
+					final int kei = Integer.parseInt(tokenizer.nextToken());
+					//				double y2 = -Double.parseDouble(tokenizer.nextToken());
+					//				double x1 = Double.parseDouble(tokenizer.nextToken());
+					//				double y1 = -Double.parseDouble(tokenizer.nextToken());
+					//				double x2 = Double.parseDouble(tokenizer.nextToken());
+					//				setRectangle(new Rectangle2D.Double(x1, y1, x2 - x1, y2 - y1));
+					// test
+					final double x1 = Double.parseDouble(tokenizer.nextToken());
+					final double y1 = Double.parseDouble(tokenizer.nextToken());
+					final double x2 = Double.parseDouble(tokenizer.nextToken());
+					final double y2 = Double.parseDouble(tokenizer.nextToken());
+					final double x3 = Double.parseDouble(tokenizer.nextToken());
+					final double y3 = Double.parseDouble(tokenizer.nextToken());
+					final double x4 = Double.parseDouble(tokenizer.nextToken());
+					final double y4 = Double.parseDouble(tokenizer.nextToken());
+					final Point2D p1 = UTMUtil.toUTM(JasmineUtil.toLatLong(x1, y1, kei));
+					final Point2D p2 = UTMUtil.toUTM(JasmineUtil.toLatLong(x2, y2, kei));
+					final Point2D p3 = UTMUtil.toUTM(JasmineUtil.toLatLong(x3, y3, kei));
+					final Point2D p4 = UTMUtil.toUTM(JasmineUtil.toLatLong(x4, y4, kei));
+					//				final Rectangle2D rectangle = new Rectangle2D.Double();
+					//				rectangle.setFrameFromDiagonal(p1.getY(), -p1.getX(), p2.getY(), -p2.getX());
+					//				setRectangle(rectangle);
+					final GeneralPath path = new GeneralPath();
+					path.moveTo((float) p1.getX(), (float) -p1.getY());
+					path.lineTo((float) p3.getX(), (float) -p3.getY());
+					path.lineTo((float) p2.getX(), (float) -p2.getY());
+					path.lineTo((float) p4.getX(), (float) -p4.getY());
+					path.closePath();
+					return path;
+				}
 			}
+			return null;
+		} finally {
+			in.close();
 		}
-		in.close();
 	}
 
 	/**
@@ -1393,19 +1684,25 @@ public class MapData implements Comparable<MapData> {
 	 * @throws FileNotFoundException ファイル未検出例外
 	 */
 	void loadRoadArc() throws FileNotFoundException, IOException {
+		final long startTime = System.nanoTime(); // since 6.3.0
+		final Object event = Trace.begin(Trace.Kind.SHEET_LOAD);
 		final String fileName = this.baseDir + File.separator + this.mapName.toUpperCase()
 			+ File.separator + "road" + File.separator + "roadntwk.arc";
 		final String attributeFileName = this.baseDir + File.separator + this.mapName.toUpperCase()
 			+ File.separator + "road" + File.separator + "road.atr";
-		this.roadArc = new ConcurrentHashMap<String, ArcData>();
+		final Map<String, ArcData> roadArc = new ConcurrentHashMap<String, ArcData>();
 		if (new File(fileName).canRead()) {
-			this.loadArc(this.roadArc, new BufferedReader(new InputStreamReader(new FileInputStream(
+			this.loadArc(roadArc, new BufferedReader(new InputStreamReader(new FileInputStream(
 				fileName))));
 			if (new File(attributeFileName).canRead()) {
-				this.loadArcAttribute(this.roadArc, new BufferedReader(new InputStreamReader(
+				this.loadArcAttribute(roadArc, new BufferedReader(new InputStreamReader(
 					new FileInputStream(attributeFileName), "SJIS")));
 			}
 		}
+		this.roadArc = roadArc;
+		this.publish();
+		Metrics.getInstance().record(Metrics.Stage.LOAD_ROAD_ARC, startTime);
+		Trace.commitSheet(event, this.mapName, "roadArc", this.roadArc);
 	}
 
 	/** 
@@ -1414,11 +1711,13 @@ public class MapData implements Comparable<MapData> {
 	 * @throws FileNotFoundException ファイル未検出例外
 	 */
 	void loadSi_tyo() throws FileNotFoundException, IOException {
+		final long startTime = System.nanoTime(); // since 6.3.0
+		final Object event = Trace.begin(Trace.Kind.SHEET_LOAD);
 		final String polygonFileName = this.baseDir + File.separator + this.mapName.toUpperCase()
 			+ File.separator + "gyousei" + File.separator + "si_tyo.pgn";
-		this.si_tyo = new ConcurrentHashMap<String, PolygonData>();
+		final Map<String, PolygonData> si_tyo = new ConcurrentHashMap<String, PolygonData>();
 		if (new File(polygonFileName).canRead()) {
-			this.loadPolygon(this.si_tyo, this.gyousei, new BufferedReader(new InputStreamReader(
+			this.loadPolygon(si_tyo, this.gyousei, new BufferedReader(new InputStreamReader(
 				new FileInputStream(polygonFileName))));
 			/*
 			 String attributeFileName = baseDir + File.separator + mapName.toUpperCase() + File.separator + "gyousei" + File.separator + "si_tyo.atr";
@@ -1430,6 +1729,10 @@ public class MapData implements Comparable<MapData> {
 			 }
 			 */
 		}
+		this.si_tyo = si_tyo;
+		this.publish();
+		Metrics.getInstance().record(Metrics.Stage.LOAD_SI_TYO, startTime);
+		Trace.commitSheet(event, this.mapName, "si_tyo", this.si_tyo);
 	}
 
 	/**
@@ -1438,20 +1741,26 @@ public class MapData implements Comparable<MapData> {
 	 * @throws FileNotFoundException ファイル未検出例外
 	 */
 	void loadTatemono() throws FileNotFoundException, IOException {
+		final long startTime = System.nanoTime(); // since 6.3.0
+		final Object event = Trace.begin(Trace.Kind.SHEET_LOAD);
 		final String polygonFileName = this.baseDir + File.separator + this.mapName.toUpperCase()
 			+ File.separator + "tatemono" + File.separator + "tatemono.pgn";
 		final String attributeFileName = this.baseDir + File.separator + this.mapName.toUpperCase()
 			+ File.separator + "tatemono" + File.separator + "tatemono.atr";
-		this.tatemono = new ConcurrentHashMap<String, PolygonData>();
+		final Map<String, PolygonData> tatemono = new ConcurrentHashMap<String, PolygonData>();
 		if (new File(polygonFileName).canRead()) {
-			this.loadPolygon(this.tatemono, this.tatemonoArc, new BufferedReader(new InputStreamReader(
+			this.loadPolygon(tatemono, this.tatemonoArc, new BufferedReader(new InputStreamReader(
 				new FileInputStream(polygonFileName))));
 			if (new File(attributeFileName).canRead()) {
-				this.loadPolygonAttribute(this.tatemono, new BufferedReader(new InputStreamReader(
+				this.loadPolygonAttribute(tatemono, new BufferedReader(new InputStreamReader(
 					new FileInputStream(attributeFileName), "SJIS")),
 					PolygonData.CLASSIFICATION_BUILDING);
 			}
 		}
+		this.tatemono = tatemono;
+		this.publish();
+		Metrics.getInstance().record(Metrics.Stage.LOAD_TATEMONO, startTime);
+		Trace.commitSheet(event, this.mapName, "tatemono", this.tatemono);
 	}
 
 	/** 建物の弧ファイルを読み込みます。
@@ -1459,13 +1768,19 @@ public class MapData implements Comparable<MapData> {
 	 * @throws FileNotFoundException ファイル未検出例外
 	 */
 	void loadTatemonoArc() throws FileNotFoundException, IOException {
+		final long startTime = System.nanoTime(); // since 6.3.0
+		final Object event = Trace.begin(Trace.Kind.SHEET_LOAD);
 		final String fileName = this.baseDir + File.separator + this.mapName.toUpperCase()
 			+ File.separator + "tatemono" + File.separator + "tatemono.arc";
-		this.tatemonoArc = new ConcurrentHashMap<String, ArcData>();
+		final Map<String, ArcData> tatemonoArc = new ConcurrentHashMap<String, ArcData>();
 		if (new File(fileName).canRead()) {
-			this.loadArc(this.tatemonoArc, new BufferedReader(new InputStreamReader(new FileInputStream(
+			this.loadArc(tatemonoArc, new BufferedReader(new InputStreamReader(new FileInputStream(
 				fileName))));
 		}
+		this.tatemonoArc = tatemonoArc;
+		this.publish();
+		Metrics.getInstance().record(Metrics.Stage.LOAD_TATEMONO_ARC, startTime);
+		Trace.commitSheet(event, this.mapName, "tatemonoArc", this.tatemonoArc);
 	}
 
 	/** 丁目界のポリゴンファイルを読み込みます。
@@ -1473,14 +1788,20 @@ public class MapData implements Comparable<MapData> {
 	 * @throws FileNotFoundException ファイル未検出例外
 	 */
 	void loadTyome() throws FileNotFoundException, IOException {
-		this.tyome = new ConcurrentHashMap<String, PolygonData>();
-		this.loadPolygon(this.tyome, this.gyousei, new BufferedReader(new InputStreamReader(
+		final long startTime = System.nanoTime(); // since 6.3.0
+		final Object event = Trace.begin(Trace.Kind.SHEET_LOAD);
+		final Map<String, PolygonData> tyome = new ConcurrentHashMap<String, PolygonData>();
+		this.loadPolygon(tyome, this.gyousei, new BufferedReader(new InputStreamReader(
 			new FileInputStream(this.baseDir + File.separator + this.mapName.toUpperCase()
 				+ File.separator + "gyousei" + File.separator + "tyome.pgn"))));
-		this.loadPolygonAttribute(this.tyome, new BufferedReader(new InputStreamReader(
+		this.loadPolygonAttribute(tyome, new BufferedReader(new InputStreamReader(
 			new FileInputStream(this.baseDir + File.separator + this.mapName.toUpperCase()
 				+ File.separator + "gyousei" + File.separator + "tyome.atr"), "SJIS")),
 			PolygonData.CLASSIFICATION_TYOME);
+		this.tyome = tyome;
+		this.publish();
+		Metrics.getInstance().record(Metrics.Stage.LOAD_TYOME, startTime);
+		Trace.commitSheet(event, this.mapName, "tyome", this.tyome);
 	}
 
 	/**
@@ -1489,20 +1810,26 @@ public class MapData implements Comparable<MapData> {
 	 * @throws FileNotFoundException ファイル未検出例外
 	 */
 	void loadZyouti() throws FileNotFoundException, IOException {
+		final long startTime = System.nanoTime(); // since 6.3.0
+		final Object event = Trace.begin(Trace.Kind.SHEET_LOAD);
 		final String polygonFileName = this.baseDir + File.separator + this.mapName.toUpperCase()
 			+ File.separator + "others" + File.separator + "zyouti.pgn";
 		final String attributeFileName = this.baseDir + File.separator + this.mapName.toUpperCase()
 			+ File.separator + "others" + File.separator + "zyouti.atr";
-		this.zyouti = new ConcurrentHashMap<String, PolygonData>();
+		final Map<String, PolygonData> zyouti = new ConcurrentHashMap<String, PolygonData>();
 		if (new File(polygonFileName).canRead()) {
-			this.loadPolygon(this.zyouti, this.others, new BufferedReader(new InputStreamReader(
+			this.loadPolygon(zyouti, this.others, new BufferedReader(new InputStreamReader(
 				new FileInputStream(polygonFileName))));
 			if (new File(attributeFileName).canRead()) {
-				this.loadPolygonAttribute(this.zyouti, new BufferedReader(new InputStreamReader(
+				this.loadPolygonAttribute(zyouti, new BufferedReader(new InputStreamReader(
 					new FileInputStream(attributeFileName), "SJIS")),
 					PolygonData.CLASSIFICATION_PARK);
 			}
 		}
+		this.zyouti = zyouti;
+		this.publish();
+		Metrics.getInstance().record(Metrics.Stage.LOAD_ZYOUTI, startTime);
+		Trace.commitSheet(event, this.mapName, "zyouti", this.zyouti);
 	}
 
 	/**
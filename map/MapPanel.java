@@ -40,8 +40,10 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Formatter;
+import java.util.List;
 import java.util.Map;
 import java.util.Stack;
 import java.util.concurrent.ConcurrentHashMap;
@@ -106,6 +108,17 @@ public class MapPanel extends JPanel implements Printable {
 	 */
 	private ActionListener listener;
 
+	/**
+	 * 最短経路の区間が求まるたびに再描画するためのアクションリスナ
+	 * @since 6.3.0
+	 */
+	private final ActionListener routeListener = new ActionListener() {
+		public void actionPerformed(final ActionEvent e) {
+			MapPanel.this.setChanged();
+			MapPanel.this.repaint();
+		}
+	};
+
 	/**
 	 * 地図の設定
 	 */
@@ -198,6 +211,18 @@ public class MapPanel extends JPanel implements Printable {
 	 */
 	private String centerTyome;
 
+	/**
+	 * 画面中央の住所を求める逆ジオコーダ
+	 * @since 6.3.0
+	 */
+	private ReverseGeocoder geocoder;
+
+	/**
+	 * 逆ジオコーダを作成したときに読み込まれていた領域と街区レベル位置参照情報の一覧
+	 * @since 6.3.0
+	 */
+	private List<Object> geocoderSources = new ArrayList<Object>();
+
 	/**
 	 * 中心点を表示するかどうか
 	 * @since 6.0.0
@@ -244,7 +269,7 @@ public class MapPanel extends JPanel implements Printable {
 							Route.getInstance().removeNearestPoint(
 									toVirtualLocation(new Point2D.Double(e.getX(), e.getY())),
 									32 / MapPanel.this.getZoom());
-							Route.getInstance().calcRoute();
+							Route.getInstance().calcRouteLater(MapPanel.this.routeListener);
 						}
 						final Point2D point = MapPanel.this.toVirtualLocation(new Point2D.Double(e.getX(), e.getY()));
 						MapPanel.this.moveTo(point.getX(), point.getY());
@@ -274,19 +299,23 @@ public class MapPanel extends JPanel implements Printable {
 				} else {
 					// since 6.0.0
 					if (MapPanel.this.isRouteMode()) {
-						if ((e.getModifiersEx() & InputEvent.SHIFT_DOWN_MASK) != 0
+						if ((e.getModifiersEx() & InputEvent.ALT_DOWN_MASK) != 0) {
+							// since 6.3.0
+							Route.getInstance().calcIsochrones(
+									toVirtualLocation(new Point2D.Double(e.getX(), e.getY())));
+						} else if ((e.getModifiersEx() & InputEvent.SHIFT_DOWN_MASK) != 0
 								|| e.getButton() == MouseEvent.BUTTON3) {
 							Route.getInstance().removeNearestPoint(
 									toVirtualLocation(new Point2D.Double(e.getX(), e.getY())),
 									32 / MapPanel.this.getZoom());
-							Route.getInstance().calcRoute();
+							Route.getInstance().calcRouteLater(MapPanel.this.routeListener);
 						} else if ((e.getModifiersEx() & InputEvent.CTRL_DOWN_MASK) != 0
 								|| e.getButton() == MouseEvent.BUTTON2) {
 							Route.getInstance().insertPoint(toVirtualLocation(new Point2D.Double(e.getX(), e.getY())));
-							Route.getInstance().calcRoute();
+							Route.getInstance().calcRouteLater(MapPanel.this.routeListener);
 						} else {
 							Route.getInstance().addPoint(toVirtualLocation(new Point2D.Double(e.getX(), e.getY())));
-							Route.getInstance().calcRoute();
+							Route.getInstance().calcRouteLater(MapPanel.this.routeListener);
 						}
 						MapPanel.this.setChanged();
 						MapPanel.this.forceRepaint();
@@ -436,6 +465,10 @@ public class MapPanel extends JPanel implements Printable {
 							Const.BitmapCache.WIDTH, Const.BitmapCache.HEIGHT, saturationDifference, zoom, x, y)
 							.toString());
 					if (!file.exists()) {
+						// since 6.3.0
+						Metrics.getInstance().increment(Metrics.Counter.TILE_CACHE_MISS);
+						final long renderStart = System.nanoTime();
+						final Object event = Trace.begin(Trace.Kind.TILE_RENDER);
 						g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
 						g.setColor(MapPanel.this.mapPreferences.getMizuPreferences().getFillColor());
 						g.fillRect(0, 0, width, height);
@@ -445,8 +478,6 @@ public class MapPanel extends JPanel implements Printable {
 						final double virtualHeight = height / zoom;
 						final Point2D center = MapPanel.this
 								.toVirtualLocation(new Point2D.Double(width / 2, height / 2));
-						MapPanel.this.centerPrefectureCity = "";
-						MapPanel.this.centerTyome = "";
 						try {
 							this.drawHeight(g, x, y, Const.BitmapCache.WIDTH, Const.BitmapCache.HEIGHT, zoom);
 							final AffineTransform transform = new AffineTransform();
@@ -468,7 +499,16 @@ public class MapPanel extends JPanel implements Printable {
 							e2.printStackTrace();
 						}
 						ImageIO.write(image, "PNG", file);
+						Metrics.getInstance().record(Metrics.Stage.TILE_RENDER, renderStart);
+						if (Trace.shouldCommit(event)) {
+							Trace.commit(event, x + "," + y, String.valueOf(zoom), 1, 0, file.length());
+						}
+					} else {
+						// since 6.3.0
+						Metrics.getInstance().increment(Metrics.Counter.TILE_CACHE_HIT);
 					}
+					// since 6.3.0
+					Metrics.getInstance().markTile();
 					count++;
 					Progress.getInstance().setCreateBitmapProgress((int) ((double) count / maxCount * 100));
 				}
@@ -596,9 +636,6 @@ public class MapPanel extends JPanel implements Printable {
 								} else {
 									g.setColor(Color.BLACK);
 									this.draw(g, shape, isTransform, transform);
-									if (city.hasFineShape() && shape.contains(center)) {
-										this.centerPrefectureCity = prefecture.getLabel() + city.getLabel();
-									}
 								}
 							}
 						}
@@ -627,13 +664,14 @@ public class MapPanel extends JPanel implements Printable {
 	 */
 	private void drawEkiLabel(final Graphics2D g, final MapData mapData, final Rectangle2D visibleRectangle,
 			final double zoom, final double offsetX, final double offsetY) throws FileNotFoundException, IOException {
-		if (mapData.hasEki()) {
+		final MapData.Layers layers = mapData.getLayers();
+		if (layers.getEki() != null) {
 			final double pointSize = this.mapPreferences.getEkiPreferences().getWidth();
 			final Font ekiFont = this.mapPreferences.getEkiPreferences().getFont();
 			g.setFont(ekiFont);
 			final FontMetrics metrics = this.getFontMetrics(ekiFont);
 			final int descent = metrics.getDescent();
-			for (final PointData point : mapData.getEki().values()) {
+			for (final PointData point : layers.getEki().values()) {
 				if (point.getAttribute() != null) {
 					final Ellipse2D ellipse = new Ellipse2D.Double((point.getX() * zoom) - offsetX - (pointSize / 2),
 							(point.getY() * zoom) - offsetY - (pointSize / 2), pointSize, pointSize);
@@ -721,6 +759,27 @@ public class MapPanel extends JPanel implements Printable {
 	private void drawLabels(final Graphics2D g, final Rectangle2D visibleRectangle, final double zoom,
 			final double offsetX, final double offsetY) throws FileNotFoundException, IOException,
 			UnsupportedEncodingException {
+		// 到達圏を、時間の長いものから順に半透明で重ねて描画する since 6.3.0
+		if (this.isRouteMode) {
+			final List<Shape> isochrones = Route.getInstance().getIsochrones();
+			if (!isochrones.isEmpty()) {
+				final AffineTransform transform = new AffineTransform();
+				transform.translate(-this.offsetX, -this.offsetY);
+				transform.scale(this.zoom, this.zoom);
+				final Composite composite = g.getComposite();
+				g.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_OVER, .2f));
+				g.setColor(this.getMapPreferences().getRoutePreferences().getFillColor());
+				for (int i = isochrones.size() - 1; i >= 0; i--) {
+					g.fill(transform.createTransformedShape(isochrones.get(i)));
+				}
+				g.setComposite(composite);
+				g.setStroke(new BasicStroke(1f));
+				g.setColor(this.getMapPreferences().getRoutePreferences().getBorderColor());
+				for (final Shape shape : isochrones) {
+					this.draw(g, shape, false, transform);
+				}
+			}
+		}
 		// 最短経路探索の探索結果を描画する since 5.03
 		if (this.isRouteMode) {
 			for (final boolean is1st : new boolean[] { true, false }) {
@@ -942,8 +1001,7 @@ public class MapPanel extends JPanel implements Printable {
 	public void drawMap(final Graphics2D g, final boolean isTransform) throws IOException {
 		this.addMessage("地図を描画しています。");
 		new FixAttributeLocation().fixAttributeLocation(this.maps, this.prefectures, this);
-		this.centerPrefectureCity = "";
-		this.centerTyome = "";
+		this.updateCenterAddress();
 		try {
 			this.drawBackground(g, isTransform);
 			this.drawLabels(g, this.getVisibleRectangle(true), this.getZoom(), this.getOffsetX(), this.getOffsetY());
@@ -953,6 +1011,57 @@ public class MapPanel extends JPanel implements Printable {
 		this.removeMessage();
 	}
 
+	/**
+	 * 画面中央の住所を逆ジオコーディングで求め、ステータスバーに表示する文字列を更新します。
+	 * 逆ジオコーダは、読み込まれている領域や街区レベル位置参照情報が変化したときだけ作り直します。
+	 * @throws IOException 入出力例外
+	 * @since 6.3.0
+	 */
+	private void updateCenterAddress() throws IOException {
+		final List<Object> sources = new ArrayList<Object>();
+		if (this.prefectures != null) {
+			for (final Prefecture prefecture : this.prefectures) {
+				sources.add(prefecture.hasFine() ? prefecture.getFineShape() : prefecture.getShape());
+				if (prefecture.hasCities()) {
+					for (final City city : prefecture.getCities()) {
+						sources.add(city.hasFineShape() ? city.getFineShape() : city.getShape());
+						sources.add(city.getIsj());
+					}
+				}
+			}
+		}
+		for (final MapData mapData : this.maps.values()) {
+			sources.add(mapData.getLayers().getTyome());
+		}
+		if (this.geocoder == null || !MapPanel.isSameObjects(sources, this.geocoderSources)) {
+			this.geocoder = ReverseGeocoder.create(this.prefectures, this.maps);
+			this.geocoderSources = sources;
+		}
+		final Address address = this.geocoder.geocode(this.toVirtualLocation(new Point2D.Double(
+				this.getPanelWidth() / 2, this.getPanelHeight() / 2)));
+		this.centerPrefectureCity = address.getPrefecture() + address.getCity();
+		this.centerTyome = address.getTyome() + address.getBlock();
+	}
+
+	/**
+	 * 2つの一覧が同じオブジェクトを同じ順に持っているかどうかを調べます。
+	 * @param objects 一覧
+	 * @param objects2 一覧
+	 * @return 同じかどうか
+	 * @since 6.3.0
+	 */
+	private static boolean isSameObjects(final List<Object> objects, final List<Object> objects2) {
+		if (objects.size() != objects2.size()) {
+			return false;
+		}
+		for (int i = 0; i < objects.size(); i++) {
+			if (objects.get(i) != objects2.get(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
 	/**
 	 * 内水面の属性を描画します。
 	 * @param g 描画対象
@@ -966,13 +1075,14 @@ public class MapPanel extends JPanel implements Printable {
 	 */
 	private void drawMizuLabel(final Graphics2D g, final MapData mapData, final Rectangle2D visibleRectangle,
 			final double zoom, final double offsetX, final double offsetY) throws FileNotFoundException, IOException {
-		if (mapData.hasMizu()) {
+		final MapData.Layers layers = mapData.getLayers();
+		if (layers.getMizu() != null) {
 			g.setColor(this.mapPreferences.getMizuPreferences().getAttributeColor());
 			final Font mizuFont = this.mapPreferences.getMizuPreferences().getFont();
 			g.setFont(mizuFont);
 			final FontMetrics metrics = this.getFontMetrics(mizuFont);
 			final int descent = metrics.getDescent();
-			for (final PolygonData polygon : mapData.getMizu().values()) {
+			for (final PolygonData polygon : layers.getMizu().values()) {
 				if (polygon.getAttribute() != null) {
 					if (visibleRectangle.contains(polygon.getAttributeX(), polygon.getAttributeY())) {
 						g.drawString(polygon.getAttribute(), (float) ((polygon.getAttributeX() * zoom) - offsetX),
@@ -1350,13 +1460,14 @@ public class MapPanel extends JPanel implements Printable {
 	 */
 	private void drawRailwayLabel(final Graphics2D g, final MapData mapData, final Rectangle2D visibleRectangle,
 			final double zoom, final double offsetX, final double offsetY) throws FileNotFoundException, IOException {
-		if (mapData.hasOthers()) {
+		final MapData.Layers layers = mapData.getLayers();
+		if (layers.getOthers() != null) {
 			final Font railFont = this.mapPreferences.getRailwayPreferences().getFont();
 			g.setFont(railFont);
 			final FontMetrics metrics = this.getFontMetrics(railFont);
 			final int descent = metrics.getDescent();
 			g.setColor(this.mapPreferences.getRailwayPreferences().getAttributeColor());
-			for (final ArcData arc : mapData.getOthers().values()) {
+			for (final ArcData arc : layers.getOthers().values()) {
 				if (arc.getAttribute() != null) {
 					if (arc.getAttributeX() != 0 && arc.getAttributeY() != 0) {
 						g.drawString(arc.getAttribute(), (float) ((arc.getAttributeX() * zoom) - offsetX),
@@ -1380,13 +1491,14 @@ public class MapPanel extends JPanel implements Printable {
 	 */
 	private void drawRoadLabel(final Graphics2D g, final MapData mapData, final Rectangle2D visibleRectangle,
 			final double zoom, final double offsetX, final double offsetY) throws FileNotFoundException, IOException {
+		final MapData.Layers layers = mapData.getLayers();
 		final Font roadFont = this.mapPreferences.getNormalRoadPreferences().getFont();
-		if (mapData.hasRoadArc()) {
+		if (layers.getRoadArc() != null) {
 			g.setFont(roadFont);
 			final FontMetrics metrics = this.getFontMetrics(roadFont);
 			final int descent = metrics.getDescent();
 			g.setColor(this.mapPreferences.getNormalRoadPreferences().getAttributeColor());
-			for (final ArcData arc : mapData.getRoadArc().values()) {
+			for (final ArcData arc : layers.getRoadArc().values()) {
 				if (arc.getAttribute() != null) {
 					g.drawString(arc.getAttribute(), (float) ((arc.getAttributeX() * zoom) - offsetX), (float) ((arc
 							.getAttributeY() * zoom)
@@ -1395,12 +1507,12 @@ public class MapPanel extends JPanel implements Printable {
 			}
 		}
 		// 高速道路、国道のラベルを描画する
-		if (!mapData.hasRoadArc() && mapData.hasLargeRoadArc()) {
+		if (layers.getRoadArc() == null && layers.getLargeRoadArc() != null) {
 			g.setFont(roadFont);
 			final FontMetrics metrics = this.getFontMetrics(roadFont);
 			final int descent = metrics.getDescent();
 			g.setColor(this.mapPreferences.getNormalRoadPreferences().getAttributeColor());
-			for (final ArcData arc : mapData.getLargeRoadArc().values()) {
+			for (final ArcData arc : layers.getLargeRoadArc().values()) {
 				if (arc.getAttribute() != null) {
 					g.drawString(arc.getAttribute(), (float) ((arc.getAttributeX() * zoom) - offsetX), (float) ((arc
 							.getAttributeY() * zoom)
@@ -1467,14 +1579,15 @@ public class MapPanel extends JPanel implements Printable {
 	 */
 	private void drawTatemonoLabel(final Graphics2D g, final MapData mapData, final Rectangle2D visibleRectangle,
 			final double zoom, final double offsetX, final double offsetY) throws FileNotFoundException, IOException {
-		if (mapData.hasTatemono()) {
+		final MapData.Layers layers = mapData.getLayers();
+		if (layers.getTatemono() != null) {
 			g.setColor(this.mapPreferences.getTatemonoPreferences().getAttributeColor());
 			final Font tatemonoFont = this.mapPreferences.getTatemonoPreferences().getFont();
 			g.setFont(tatemonoFont);
 			final FontMetrics metrics = this.getFontMetrics(tatemonoFont);
 			final int descent = metrics.getDescent();
 			final double pointSize = 4;
-			for (final PolygonData polygon : mapData.getTatemono().values()) {
+			for (final PolygonData polygon : layers.getTatemono().values()) {
 				if (polygon.getAttribute() != null) {
 					if (visibleRectangle.contains(polygon.getAttributeX(), polygon.getAttributeY())) {
 						g.fill(new Ellipse2D.Double((polygon.getX() * zoom) - offsetX - (pointSize / 2), (polygon
@@ -1501,9 +1614,10 @@ public class MapPanel extends JPanel implements Printable {
 	 */
 	private void drawTyomeLabel(final Graphics2D g, final MapData mapData, final Rectangle2D visibleRectangle,
 			final double zoom, final double offsetX, final double offsetY) throws FileNotFoundException, IOException {
-		if (mapData.hasTyome()) {
+		final MapData.Layers layers = mapData.getLayers();
+		if (layers.getTyome() != null) {
 			g.setColor(this.mapPreferences.getTyomePreferences().getAttributeColor());
-			for (final PolygonData polygon : mapData.getTyome().values()) {
+			for (final PolygonData polygon : layers.getTyome().values()) {
 				final Font tyomeFont = polygon.getTyomeFont();
 				if (tyomeFont != null) {
 					g.setFont(tyomeFont);
@@ -1537,13 +1651,14 @@ public class MapPanel extends JPanel implements Printable {
 	 */
 	private void drawTyomeYomi(final Graphics2D g, final MapData mapData, final Rectangle2D visibleRectangle,
 			final double zoom, final double offsetX, final double offsetY) throws FileNotFoundException, IOException {
+		final MapData.Layers layers = mapData.getLayers();
 		if (this.mapPreferences.getYomiMapCategory().isShow(zoom)) {
-			if (mapData.hasTyome()) {
+			if (layers.getTyome() != null) {
 				g.setColor(this.mapPreferences.getTyomePreferences().getAttributeColor());
 				final Font yomiFont = this.mapPreferences.getTyomePreferences().getFont();
 				g.setFont(yomiFont);
 				final int descent = g.getFontMetrics().getDescent();
-				for (final PolygonData polygon : mapData.getTyome().values()) {
+				for (final PolygonData polygon : layers.getTyome().values()) {
 					if (polygon.getClassificationCode() == PolygonData.CLASSIFICATION_TYOME) {
 						if (polygon.getAttribute() != null) {
 							if (visibleRectangle.contains(polygon.getAttributeX(), polygon.getAttributeY())) {
@@ -1571,13 +1686,14 @@ public class MapPanel extends JPanel implements Printable {
 	 */
 	private void drawZyoutiLabel(final Graphics2D g, final MapData mapData, final Rectangle2D visibleRectangle,
 			final double zoom, final double offsetX, final double offsetY) throws IOException {
-		if (mapData.hasZyouti()) {
+		final MapData.Layers layers = mapData.getLayers();
+		if (layers.getZyouti() != null) {
 			g.setColor(this.mapPreferences.getZyoutiPreferences().getAttributeColor());
 			final Font zyoutiFont = this.mapPreferences.getZyoutiPreferences().getFont();
 			g.setFont(zyoutiFont);
 			final FontMetrics metrics = this.getFontMetrics(zyoutiFont);
 			final int descent = metrics.getDescent();
-			for (final PolygonData polygon : mapData.getZyouti().values()) {
+			for (final PolygonData polygon : layers.getZyouti().values()) {
 				if (polygon.getAttribute() != null) {
 					if (visibleRectangle.contains(polygon.getAttributeX(), polygon.getAttributeY())) {
 						g.drawString(polygon.getAttribute(), (float) ((polygon.getAttributeX() * zoom) - offsetX),
@@ -1817,9 +1933,10 @@ public class MapPanel extends JPanel implements Printable {
 				}
 			}
 			for (final MapData map : this.maps.values()) {
-				if (map.hasTyome()) {
+				final Map<String, PolygonData> tyome = map.getLayers().getTyome();
+				if (tyome != null) {
 					for (final ZipCode zipCode : zipCodes.values()) {
-						for (final PolygonData polygon : map.getTyome().values()) {
+						for (final PolygonData polygon : tyome.values()) {
 							if (!polygon.hasYomi()) {
 								final String attribute = polygon.getAttribute().replaceFirst("[0-9０-９]+$", "");
 								final String yomi = zipCode.getYomi(attribute);
@@ -2172,6 +2289,22 @@ public class MapPanel extends JPanel implements Printable {
 		this.size = size;
 	}
 
+	/**
+	 * @return パネルの幅。setSWTSize で大きさが設定されていれば、その幅
+	 * @since 6.3.0
+	 */
+	private int getPanelWidth() {
+		return (this.size == null) ? this.getWidth() : this.size.width;
+	}
+
+	/**
+	 * @return パネルの高さ。setSWTSize で大きさが設定されていれば、その高さ
+	 * @since 6.3.0
+	 */
+	private int getPanelHeight() {
+		return (this.size == null) ? this.getHeight() : this.size.height;
+	}
+
 	/**
 	 * 実座標を取得します。
 	 * @param location 仮想座標
@@ -2228,7 +2361,7 @@ public class MapPanel extends JPanel implements Printable {
 	 * 国土数値情報の荒い市区町村界を読み込む縮尺にします。
 	 */
 	public void zoomCities() {
-		this.zoom(Const.Zoom.LOAD_KSJ_CITIES, this.getWidth() / 2, this.getHeight() / 2);
+		this.zoom(Const.Zoom.LOAD_KSJ_CITIES, this.getPanelWidth() / 2, this.getPanelHeight() / 2); // since 6.3.0
 		if (this.listener != null) {
 			this.listener.actionPerformed(new ActionEvent(this, this.hashCode(), "zoom cities"));
 		}
@@ -2238,7 +2371,7 @@ public class MapPanel extends JPanel implements Printable {
 	 * 詳細表示します。
 	 */
 	public void zoomDetail() {
-		this.zoom(Const.Zoom.LOAD_ALL, this.getWidth() / 2, this.getHeight() / 2);
+		this.zoom(Const.Zoom.LOAD_ALL, this.getPanelWidth() / 2, this.getPanelHeight() / 2); // since 6.3.0
 		if (this.listener != null) {
 			this.listener.actionPerformed(new ActionEvent(this, this.hashCode(), "zoom detail"));
 		}
@@ -2248,7 +2381,7 @@ public class MapPanel extends JPanel implements Printable {
 	 * 拡大します。
 	 */
 	public void zoomIn() {
-		this.doWheelRotation(1, this.getWidth() / 2, this.getHeight() / 2);
+		this.doWheelRotation(1, this.getPanelWidth() / 2, this.getPanelHeight() / 2); // since 6.3.0
 		if (this.listener != null) {
 			this.listener.actionPerformed(new ActionEvent(this, this.hashCode(), "zoom in"));
 		}
@@ -2258,7 +2391,7 @@ public class MapPanel extends JPanel implements Printable {
 	 * 中域表示します。
 	 */
 	public void zoomMiddle() {
-		this.zoom(Const.Zoom.LOAD_GYOUSEI, this.getWidth() / 2, this.getHeight() / 2);
+		this.zoom(Const.Zoom.LOAD_GYOUSEI, this.getPanelWidth() / 2, this.getPanelHeight() / 2); // since 6.3.0
 		if (this.listener != null) {
 			this.listener.actionPerformed(new ActionEvent(this, this.hashCode(), "zoom middle"));
 		}
@@ -2268,7 +2401,7 @@ public class MapPanel extends JPanel implements Printable {
 	 * 縮小します。
 	 */
 	public void zoomOut() {
-		this.doWheelRotation(-1, this.getWidth() / 2, this.getHeight() / 2);
+		this.doWheelRotation(-1, this.getPanelWidth() / 2, this.getPanelHeight() / 2); // since 6.3.0
 		if (this.listener != null) {
 			this.listener.actionPerformed(new ActionEvent(this, this.hashCode(), "zoom out"));
 		}
@@ -2289,7 +2422,7 @@ public class MapPanel extends JPanel implements Printable {
 	 * 広域表示します。
 	 */
 	public void zoomWide() {
-		this.zoom(Const.Zoom.LOAD_KSJ_RAILWAY, this.getWidth() / 2, this.getHeight() / 2);
+		this.zoom(Const.Zoom.LOAD_KSJ_RAILWAY, this.getPanelWidth() / 2, this.getPanelHeight() / 2); // since 6.3.0
 		if (this.listener != null) {
 			this.listener.actionPerformed(new ActionEvent(this, this.hashCode(), "zoom wide"));
 		}
@@ -2342,75 +2475,59 @@ public class MapPanel extends JPanel implements Printable {
 
 	/**
 	 * 最短経路探索用のグラフを初期化します。
+	 * 数値地図2500の道路を表示しているときはその道路からグラフを作り、
+	 * 国土数値情報の道路を表示しているときは、表示されている範囲の都道府県のグラフを読み込みます。
 	 * @since 6.0.0
 	 */
 	public void initializeGraph() {
-		if (this.prefectures != null) {
-			try {
-				if (this.mapPreferences.getRailwayKSJMapCateogry().isShow(this.zoom)) {
-					Route.getInstance().clear();
-					for (final Prefecture prefecture : this.prefectures) {
-						if (prefecture.hasCities()) {
-							for (final City city : prefecture.getCities()) {
-								if (city.hasKsjFineRoad()) {
-									for (final Railway railway : city.getKsjFineRoad()) {
-										switch (railway.getBusiness()) {
-										case ROAD_HIGHWAY:
-											Route.getInstance().add(railway.getShape(), Category.ROAD_HIGHWAY);
-											break;
-										case ROAD_KOKUDO:
-											Route.getInstance().add(railway.getShape(), Category.ROAD_KOKUDO);
-											break;
-										case ROAD_MAJOR:
-											Route.getInstance().add(railway.getShape(), Category.ROAD_MAJOR);
-											break;
-										default:
-											Route.getInstance().add(railway.getShape(), Category.UNKNOWN);
-										}
-									}
-								}
-							}
+		if (this.maps != null && this.mapPreferences.getDetailSDF2500MapCategory().isShow(this.zoom)) {
+			Route.getInstance().clear();
+			for (final MapData mapData : this.maps.values()) {
+				final MapData.Layers layers = mapData.getLayers();
+				if (layers.getRoadArc() != null && layers.getTyome() != null) {
+					for (final ArcData arc : layers.getRoadArc().values()) {
+						switch (arc.getRoadType()) {
+						case ArcData.ROAD_HIGHWAY:
+							Route.getInstance().add(arc.getPath(), Category.ROAD_HIGHWAY);
+							break;
+						case ArcData.ROAD_KOKUDO:
+							Route.getInstance().add(arc.getPath(), Category.ROAD_KOKUDO);
+							break;
+						case ArcData.ROAD_KENDO:
+							Route.getInstance().add(arc.getPath(), Category.ROAD_KENDO);
+							break;
+						case ArcData.ROAD_CHIHODO:
+							Route.getInstance().add(arc.getPath(), Category.ROAD_CHIHODO);
+							break;
+						case ArcData.ROAD_MAJOR:
+							Route.getInstance().add(arc.getPath(), Category.ROAD_MAJOR);
+							break;
+						case ArcData.ROAD_NORMAL:
+							Route.getInstance().add(arc.getPath(), Category.ROAD_OTHER);
+							break;
+						default:
+							Route.getInstance().add(arc.getPath(), Category.UNKNOWN);
 						}
 					}
 				}
-			} catch (final IOException exception) {
-				exception.printStackTrace();
 			}
+		} else {
+			this.loadGraph(this.getVisibleRectangle(false));
 		}
-		if (this.maps != null) {
+	}
+
+	/**
+	 * 国土数値情報の道路を表示しているときに、表示されている範囲の都道府県のグラフを読み込みます。
+	 * 読み込む都道府県が変わらなければ何もしないので、表示範囲が変わるたびに呼び出しても構いません。
+	 * @param visibleRectangle 表示されている範囲（仮想座標）
+	 * @since 6.3.0
+	 */
+	public void loadGraph(final Rectangle2D visibleRectangle) {
+		if (this.mapPreferences.getRailwayKSJMapCateogry().isShow(this.zoom)
+				&& !this.mapPreferences.getDetailSDF2500MapCategory().isShow(this.zoom)) {
 			try {
-				if (this.mapPreferences.getDetailSDF2500MapCategory().isShow(this.zoom)) {
-					Route.getInstance().clear();
-					for (final MapData mapData : this.maps.values()) {
-						if (mapData.hasRoadArc() && mapData.hasTyome()) {
-							for (final ArcData arc : mapData.getRoadArc().values()) {
-								switch (arc.getRoadType()) {
-								case ArcData.ROAD_HIGHWAY:
-									Route.getInstance().add(arc.getPath(), Category.ROAD_HIGHWAY);
-									break;
-								case ArcData.ROAD_KOKUDO:
-									Route.getInstance().add(arc.getPath(), Category.ROAD_KOKUDO);
-									break;
-								case ArcData.ROAD_KENDO:
-									Route.getInstance().add(arc.getPath(), Category.ROAD_KENDO);
-									break;
-								case ArcData.ROAD_CHIHODO:
-									Route.getInstance().add(arc.getPath(), Category.ROAD_CHIHODO);
-									break;
-								case ArcData.ROAD_MAJOR:
-									Route.getInstance().add(arc.getPath(), Category.ROAD_MAJOR);
-									break;
-								case ArcData.ROAD_NORMAL:
-									Route.getInstance().add(arc.getPath(), Category.ROAD_OTHER);
-									break;
-								default:
-									Route.getInstance().add(arc.getPath(), Category.UNKNOWN);
-								}
-							}
-						}
-					}
-				}
-			} catch (IOException exception) {
+				Route.getInstance().loadGraphs(visibleRectangle);
+			} catch (final IOException exception) {
 				exception.printStackTrace();
 			}
 		}
@@ -0,0 +1,511 @@
+package map;
+
+import java.lang.management.ManagementFactory;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * 地図を表示するまでの各段階の処理時間と回数を記録するクラスです。
+ * 段階ごとの処理時間のヒストグラムと回数は、JMX の MBean として
+ * map:type=Stage,name=段階の名前、map:type=Counter,name=回数の名前 で公開し、
+ * ウィンドウを表示しないときは snapshot() で取得できます。
+ * 更新の予約の待ち時間とまとめたイベントの数は、map:type=Scheduler,name=Update で公開します。
+ * @author zenjiro
+ * @since 6.3.0
+ */
+public class Metrics {
+	/**
+	 * 処理時間を記録する段階の列挙型です。
+	 * @author zenjiro
+	 * @since 6.3.0
+	 */
+	public enum Stage {
+		/**
+		 * 駅の読み込み
+		 */
+		LOAD_EKI,
+		/**
+		 * 行政界の読み込み
+		 */
+		LOAD_GYOUSEI,
+		/**
+		 * 高速道路、国道の読み込み
+		 */
+		LOAD_LARGE_ROAD_ARC,
+		/**
+		 * 内水面のポリゴンの読み込み
+		 */
+		LOAD_MIZU,
+		/**
+		 * 内水面の弧の読み込み
+		 */
+		LOAD_MIZU_ARC,
+		/**
+		 * その他の弧の読み込み
+		 */
+		LOAD_OTHERS,
+		/**
+		 * 道路の読み込み
+		 */
+		LOAD_ROAD_ARC,
+		/**
+		 * 市区町村の読み込み
+		 */
+		LOAD_SI_TYO,
+		/**
+		 * 建物のポリゴンの読み込み
+		 */
+		LOAD_TATEMONO,
+		/**
+		 * 建物の弧の読み込み
+		 */
+		LOAD_TATEMONO_ARC,
+		/**
+		 * 丁目の読み込み
+		 */
+		LOAD_TYOME,
+		/**
+		 * 場地の読み込み
+		 */
+		LOAD_ZYOUTI,
+		/**
+		 * 1ファイル分の座標変換
+		 */
+		PROJECTION,
+		/**
+		 * 丁目の塗り分け
+		 */
+		PAINT_TYOME,
+		/**
+		 * 図郭にまたがるポリゴンの結合
+		 */
+		JOIN_POLYGON,
+		/**
+		 * 建物の結合
+		 */
+		JOIN_TATEMONO,
+		/**
+		 * 属性を表示する位置の計算
+		 */
+		FIX_ATTRIBUTE_LOCATION,
+		/**
+		 * 1枚のビットマップキャッシュの描画
+		 */
+		TILE_RENDER,
+		/**
+		 * 更新を始めてから、最初のビットマップキャッシュができるまで
+		 */
+		FIRST_TILE,
+		/**
+		 * 更新を始めてから、表示する範囲のビットマップキャッシュがすべてできるまで
+		 */
+		FRAME
+	}
+
+	/**
+	 * 回数を記録する事象の列挙型です。
+	 * @author zenjiro
+	 * @since 6.3.0
+	 */
+	public enum Counter {
+		/**
+		 * ビットマップキャッシュが既にあった回数
+		 */
+		TILE_CACHE_HIT,
+		/**
+		 * ビットマップキャッシュがなかった回数
+		 */
+		TILE_CACHE_MISS
+	}
+
+	/**
+	 * 段階ごとの処理時間を公開する MBean のインターフェイスです。
+	 * @author zenjiro
+	 * @since 6.3.0
+	 */
+	public interface StageMXBean {
+		/**
+		 * @return 回数
+		 */
+		long getCount();
+
+		/**
+		 * @return 処理時間の合計[ms]
+		 */
+		double getTotalMillis();
+
+		/**
+		 * @return 処理時間の平均[ms]
+		 */
+		double getMeanMillis();
+
+		/**
+		 * @return 処理時間の中央値[ms]
+		 */
+		double getP50Millis();
+
+		/**
+		 * @return 処理時間の90パーセンタイル[ms]
+		 */
+		double getP90Millis();
+
+		/**
+		 * @return 処理時間の99パーセンタイル[ms]
+		 */
+		double getP99Millis();
+
+		/**
+		 * @return 処理時間の最大値[ms]
+		 */
+		double getMaxMillis();
+
+		/**
+		 * 記録を消します。
+		 */
+		void reset();
+	}
+
+	/**
+	 * 回数を公開する MBean のインターフェイスです。
+	 * @author zenjiro
+	 * @since 6.3.0
+	 */
+	public interface CounterMXBean {
+		/**
+		 * @return 回数
+		 */
+		long getCount();
+
+		/**
+		 * 記録を消します。
+		 */
+		void reset();
+	}
+
+	/**
+	 * 更新の予約の状態を公開する MBean のインターフェイスです。
+	 * @author zenjiro
+	 * @since 6.3.0
+	 */
+	public interface SchedulerMXBean {
+		/**
+		 * @return 更新を始めた回数
+		 */
+		long getUpdateCount();
+
+		/**
+		 * @return まだ更新に反映されていないイベントの数
+		 */
+		int getQueueDepth();
+
+		/**
+		 * @return 直前の更新にまとめられたイベントの数
+		 */
+		int getLastQueueDepth();
+
+		/**
+		 * @return 1回の更新にまとめられたイベントの数の最大値
+		 */
+		int getMaxQueueDepth();
+
+		/**
+		 * @return 直前の更新の、最初のイベントから更新を始めるまでの時間[ms]
+		 */
+		double getLastLatency();
+
+		/**
+		 * @return 最初のイベントから更新を始めるまでの時間の平均[ms]
+		 */
+		double getAverageLatency();
+	}
+
+	/**
+	 * 段階ごとの処理時間を公開する MBean です。
+	 * @author zenjiro
+	 * @since 6.3.0
+	 */
+	private static class StageBean implements StageMXBean {
+		/**
+		 * 処理時間のヒストグラム
+		 */
+		final LatencyHistogram histogram = new LatencyHistogram();
+
+		public long getCount() {
+			return this.histogram.getCount();
+		}
+
+		public double getTotalMillis() {
+			return this.histogram.getTotal() / 1E6;
+		}
+
+		public double getMeanMillis() {
+			return this.histogram.getMean() / 1E6;
+		}
+
+		public double getP50Millis() {
+			return this.histogram.getValueAtPercentile(50) / 1E6;
+		}
+
+		public double getP90Millis() {
+			return this.histogram.getValueAtPercentile(90) / 1E6;
+		}
+
+		public double getP99Millis() {
+			return this.histogram.getValueAtPercentile(99) / 1E6;
+		}
+
+		public double getMaxMillis() {
+			return this.histogram.getMax() / 1E6;
+		}
+
+		public void reset() {
+			this.histogram.reset();
+		}
+	}
+
+	/**
+	 * 回数を公開する MBean です。
+	 * @author zenjiro
+	 * @since 6.3.0
+	 */
+	private static class CounterBean implements CounterMXBean {
+		/**
+		 * 回数
+		 */
+		final AtomicLong count = new AtomicLong();
+
+		public long getCount() {
+			return this.count.get();
+		}
+
+		public void reset() {
+			this.count.set(0);
+		}
+	}
+
+	/**
+	 * ある時点の記録を写したものです。後から変更されることはありません。
+	 * @author zenjiro
+	 * @since 6.3.0
+	 */
+	public static class Snapshot {
+		/**
+		 * 段階ごとの処理時間のヒストグラム
+		 */
+		private final Map<Stage, LatencyHistogram> histograms;
+
+		/**
+		 * 事象ごとの回数
+		 */
+		private final Map<Counter, Long> counts;
+
+		/**
+		 * 記録を写します。
+		 * @param histograms 段階ごとの処理時間のヒストグラム
+		 * @param counts 事象ごとの回数
+		 */
+		Snapshot(final Map<Stage, LatencyHistogram> histograms, final Map<Counter, Long> counts) {
+			this.histograms = histograms;
+			this.counts = counts;
+		}
+
+		/**
+		 * @param stage 段階
+		 * @return 処理時間のヒストグラムの写し。変更しても、この記録には影響しない
+		 */
+		public LatencyHistogram getHistogram(final Stage stage) {
+			return this.histograms.get(stage).copy();
+		}
+
+		/**
+		 * @param counter 事象
+		 * @return 回数
+		 */
+		public long getCount(final Counter counter) {
+			return this.counts.get(counter);
+		}
+
+		@Override
+		public String toString() {
+			final StringBuilder ret = new StringBuilder();
+			for (final Map.Entry<Stage, LatencyHistogram> entry : this.histograms.entrySet()) {
+				if (entry.getValue().getCount() > 0) {
+					ret.append(entry.getKey() + ": " + entry.getValue() + "\n");
+				}
+			}
+			for (final Map.Entry<Counter, Long> entry : this.counts.entrySet()) {
+				ret.append(entry.getKey() + ": " + entry.getValue() + "\n");
+			}
+			return ret.toString();
+		}
+	}
+
+	/**
+	 * インスタンス
+	 */
+	private static Metrics instance;
+
+	/**
+	 * @return インスタンス
+	 */
+	public static synchronized Metrics getInstance() {
+		if (Metrics.instance == null) {
+			Metrics.instance = new Metrics();
+		}
+		return Metrics.instance;
+	}
+
+	/**
+	 * 段階ごとの MBean
+	 */
+	private final Map<Stage, StageBean> stages;
+
+	/**
+	 * 事象ごとの MBean
+	 */
+	private final Map<Counter, CounterBean> counters;
+
+	/**
+	 * 更新を始めた時刻[ns]。更新中でなければ0
+	 */
+	private volatile long frameStart;
+
+	/**
+	 * 更新を始めてから、ビットマップキャッシュができたかどうか
+	 */
+	private volatile boolean hasTile;
+
+	/**
+	 * 記録を初期化し、MBean を登録します。
+	 */
+	private Metrics() {
+		this.stages = new EnumMap<Stage, StageBean>(Stage.class);
+		for (final Stage stage : Stage.values()) {
+			this.stages.put(stage, new StageBean());
+		}
+		this.counters = new EnumMap<Counter, CounterBean>(Counter.class);
+		for (final Counter counter : Counter.values()) {
+			this.counters.put(counter, new CounterBean());
+		}
+		try {
+			final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			for (final Map.Entry<Stage, StageBean> entry : this.stages.entrySet()) {
+				server.registerMBean(entry.getValue(), new ObjectName("map:type=Stage,name=" + entry.getKey()));
+			}
+			for (final Map.Entry<Counter, CounterBean> entry : this.counters.entrySet()) {
+				server.registerMBean(entry.getValue(), new ObjectName("map:type=Counter,name=" + entry.getKey()));
+			}
+		} catch (final JMException exception) {
+			System.out.println("WARNING: MBeanを登録できませんでした。" + exception);
+		}
+	}
+
+	/**
+	 * 更新の予約の状態を MBean として公開します。
+	 * 既に公開しているものがあれば置き換えます。
+	 * @param scheduler 更新の予約の状態
+	 */
+	public void register(final SchedulerMXBean scheduler) {
+		try {
+			final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			final ObjectName name = new ObjectName("map:type=Scheduler,name=Update");
+			if (server.isRegistered(name)) {
+				server.unregisterMBean(name);
+			}
+			server.registerMBean(scheduler, name);
+		} catch (final JMException exception) {
+			System.out.println("WARNING: MBeanを登録できませんでした。" + exception);
+		}
+	}
+
+	/**
+	 * 処理時間を記録します。
+	 * @param stage 段階
+	 * @param startTime System.nanoTime() で取得した、処理を始めた時刻[ns]
+	 */
+	public void record(final Stage stage, final long startTime) {
+		this.stages.get(stage).histogram.record(System.nanoTime() - startTime);
+	}
+
+	/**
+	 * 処理時間を記録します。
+	 * @param stage 段階
+	 * @param nanos 処理時間[ns]
+	 */
+	public void recordNanos(final Stage stage, final long nanos) {
+		this.stages.get(stage).histogram.record(nanos);
+	}
+
+	/**
+	 * 回数を1増やします。
+	 * @param counter 事象
+	 */
+	public void increment(final Counter counter) {
+		this.counters.get(counter).count.incrementAndGet();
+	}
+
+	/**
+	 * 地図の更新を始めたことを記録します。
+	 * FIRST_TILE と FRAME の処理時間は、この時刻から測ります。
+	 */
+	public void beginFrame() {
+		this.hasTile = false;
+		this.frameStart = System.nanoTime();
+	}
+
+	/**
+	 * 1枚のビットマップキャッシュができたことを記録します。
+	 * 既にあったビットマップキャッシュを使ったときも呼び出します。
+	 * 更新を始めてから最初の1枚なら、FIRST_TILE の処理時間を記録します。
+	 */
+	public void markTile() {
+		final long start = this.frameStart;
+		if (start != 0 && !this.hasTile) {
+			this.hasTile = true;
+			this.record(Stage.FIRST_TILE, start);
+		}
+	}
+
+	/**
+	 * 表示する範囲のビットマップキャッシュがすべてできたことを記録します。
+	 */
+	public void endFrame() {
+		final long start = this.frameStart;
+		if (start != 0) {
+			this.frameStart = 0;
+			this.record(Stage.FRAME, start);
+		}
+	}
+
+	/**
+	 * @return 今の記録を写したもの
+	 */
+	public Snapshot snapshot() {
+		final Map<Stage, LatencyHistogram> histograms = new EnumMap<Stage, LatencyHistogram>(Stage.class);
+		for (final Map.Entry<Stage, StageBean> entry : this.stages.entrySet()) {
+			histograms.put(entry.getKey(), entry.getValue().histogram.copy());
+		}
+		final Map<Counter, Long> counts = new EnumMap<Counter, Long>(Counter.class);
+		for (final Map.Entry<Counter, CounterBean> entry : this.counters.entrySet()) {
+			counts.put(entry.getKey(), entry.getValue().count.get());
+		}
+		return new Snapshot(histograms, counts);
+	}
+
+	/**
+	 * すべての記録を消します。
+	 */
+	public void reset() {
+		for (final StageBean stage : this.stages.values()) {
+			stage.reset();
+		}
+		for (final CounterBean counter : this.counters.values()) {
+			counter.reset();
+		}
+	}
+}
@@ -1,32 +1,68 @@
 package map;
 
-import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.OutputStreamWriter;
-import java.io.PrintWriter;
-import java.io.UnsupportedEncodingException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.LinkedList;
 import java.util.Map;
-import java.util.Scanner;
+import java.util.Queue;
 import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * 地図を丁目単位で塗り分けるクラスです。
+ * 隣接グラフは呼び出しをまたいで保持し、新しく読み込まれた図葉の丁目だけを塗り分けます。
  * 作成日: 2004/01/09
  * @author zenjiro
  */
 class PaintTyome {
+	/**
+	 * 使う色の数
+	 */
+	private static final int COLORS = 7;
+
+	/**
+	 * 全ての色が隣接する丁目で使われていたときの色
+	 */
+	private static final int FALLBACK_COLOR = PaintTyome.COLORS + 1;
+
 	/**
 	 * 地図が変化したかどうか
 	 */
 	private boolean isChanged;
 
+	/**
+	 * 塗り分け情報を記憶するオブジェクト
+	 * @since 6.3.0
+	 */
+	private final TyomeColorStore store = new TyomeColorStore();
+
+	/**
+	 * ポリゴンと、そのポリゴンを含む図葉の名前の対応表
+	 * @since 6.3.0
+	 */
+	private final Map<PolygonData, String> sheets = new ConcurrentHashMap<PolygonData, String>();
+
+	/**
+	 * 塗り分けが済んだ図葉の名前と、そのときの丁目の対応表
+	 * 図葉が読み込み直されると丁目のオブジェクトが変わるので、それで読み込み直されたことを検出します。
+	 * @since 6.3.0
+	 */
+	private final Map<String, Map<String, PolygonData>> settledSheets = new ConcurrentHashMap<String, Map<String, PolygonData>>();
+
+	/**
+	 * 属性とポリゴンの集合の対応表
+	 * @since 6.3.0
+	 */
+	private final Map<String, Collection<PolygonData>> attributePolygonMap = new ConcurrentHashMap<String, Collection<PolygonData>>();
+
+	/**
+	 * 隣接グラフ
+	 * @since 6.3.0
+	 */
+	private final Map<PolygonData, Collection<PolygonData>> adjacentGraph = new ConcurrentHashMap<PolygonData, Collection<PolygonData>>();
+
 	/** 地図を丁目単位で塗り分けます。
+	 * 前回の呼び出しから丁目が読み込まれた図葉、開放された図葉だけを処理します。
 	 * このメソッドを呼び出した直後に isChanged() を呼び出すと、
 	 * このメソッドによって地図の状態が変化したかどうかが取得できます。
 	 * @param maps 地図
@@ -34,64 +70,131 @@ class PaintTyome {
 	 */
 	void paintTyome(final Map<String, MapData> maps) throws IOException {
 		this.isChanged = false;
-		final Map<String, Collection<PolygonData>> attributePolygonMap = new ConcurrentHashMap<String, Collection<PolygonData>>(); // String -> Collection<Polygon> の Map
-		// 属性をキー、ポリゴンの集合を値とする Map を初期化する
+		final Collection<String> loadedSheets = new ArrayList<String>();
+		final Collection<MapData> newSheets = new ArrayList<MapData>();
 		for (final MapData mapData : maps.values()) {
 			if (mapData.hasTyome()) {
-				for (final PolygonData polygon : mapData.getTyome().values()) {
-					final String attribute = polygon.getAttribute();
-					if (attribute != null) {
-						if (!attributePolygonMap.containsKey(attribute)) {
-							attributePolygonMap.put(attribute, new ArrayList<PolygonData>());
+				final String sheet = mapData.getMapName();
+				loadedSheets.add(sheet);
+				if (this.settledSheets.get(sheet) != mapData.getTyome()) {
+					newSheets.add(mapData);
+				}
+			}
+		}
+		// 開放された図葉、読み込み直された図葉の丁目を取り除く
+		for (final Map.Entry<String, Map<String, PolygonData>> entry : this.settledSheets.entrySet()) {
+			final MapData mapData = maps.get(entry.getKey());
+			if (mapData == null || !mapData.hasTyome() || mapData.getTyome() != entry.getValue()) {
+				this.removeSheet(entry.getKey(), entry.getValue().values());
+			}
+		}
+		if (newSheets.isEmpty()) {
+			this.store.retain(loadedSheets);
+			return;
+		}
+		// 新しい図葉の丁目を、属性とポリゴンの対応表と隣接グラフに加える
+		final Queue<PolygonData> worklist = new LinkedList<PolygonData>();
+		for (final MapData mapData : newSheets) {
+			final String sheet = mapData.getMapName();
+			final Map<String, PolygonData> tyome = mapData.getTyome();
+			this.store.load(sheet, tyome.values());
+			for (final PolygonData polygon : tyome.values()) {
+				this.sheets.put(polygon, sheet);
+				final String attribute = polygon.getAttribute();
+				if (attribute != null) {
+					if (!this.attributePolygonMap.containsKey(attribute)) {
+						this.attributePolygonMap.put(attribute, new ArrayList<PolygonData>());
+					}
+					this.attributePolygonMap.get(attribute).add(polygon);
+				}
+				if (polygon.getPolygonName() != null) {
+					worklist.add(polygon);
+				}
+			}
+			for (final Map.Entry<String, Collection<PolygonData>> entry : mapData.getAdjacentGraph().entrySet()) {
+				final PolygonData polygon = tyome.get(entry.getKey());
+				if (polygon != null) {
+					final Collection<PolygonData> adjacentPolygons = new ArrayList<PolygonData>();
+					for (final PolygonData polygon2 : entry.getValue()) {
+						// 隣接グラフが古い丁目を指していることがあるので、名前で引き直す
+						final PolygonData polygon3 = tyome.get(polygon2.getPolygonName());
+						if (polygon3 != null) {
+							adjacentPolygons.add(polygon3);
 						}
-						attributePolygonMap.get(attribute).add(polygon);
 					}
+					this.adjacentGraph.put(polygon, adjacentPolygons);
 				}
 			}
 		}
 		// 保存されている色を読み込む since 4.16
-		for (final MapData mapData : maps.values()) {
-			if (mapData.hasTyome()) {
-				for (final PolygonData polygon : mapData.getTyome().values()) {
-					final int color = this.loadColor(polygon);
-					if (color != Const.Paint.NOT_FOUND) {
-						polygon.setTyomeColorIndex(color);
-						final String attribute = polygon.getAttribute();
-						if (attribute != null) {
-							if (attributePolygonMap.containsKey(attribute)) {
-								for (final PolygonData polygon2 : attributePolygonMap.get(attribute)) {
-									if (polygon != polygon2) {
-										polygon2.setTyomeColorIndex(color);
-									}
-								}
-							}
+		for (final PolygonData polygon : worklist) {
+			final int color = this.loadColor(polygon);
+			if (color != Const.Paint.NOT_FOUND) {
+				polygon.setTyomeColorIndex(color);
+				final String attribute = polygon.getAttribute();
+				if (attribute != null) {
+					for (final PolygonData polygon2 : this.attributePolygonMap.get(attribute)) {
+						if (polygon != polygon2) {
+							polygon2.setTyomeColorIndex(color);
 						}
 					}
 				}
 			}
 		}
-		//System.out.println("attribute <-> polygon = " + attributePolygonMap);
-		// Polygon をキー、Collection<Polygon> を値とする Map を作る
-		final Map<PolygonData, Collection<PolygonData>> adjacentGraph = new ConcurrentHashMap<PolygonData, Collection<PolygonData>>();
-		for (final MapData mapData : maps.values()) {
-			if (mapData.hasTyome()) {
-				final Map<String, Collection<PolygonData>> adjacentPolygons = mapData.getAdjacentGraph();
-				for (final String polygonName : adjacentPolygons.keySet()) {
-					adjacentGraph.put(mapData.getTyome().get(polygonName), adjacentPolygons.get(polygonName));
+		// since 6.3.0 色が保存されていなくても、同じ属性の丁目が既に塗られていればその色を引き継ぎ、
+		// 表示されている丁目の色が隣の図葉を読み込んだだけで変わらないようにする
+		for (final PolygonData polygon : worklist) {
+			final String attribute = polygon.getAttribute();
+			if (polygon.getTyomeColorIndex() == 0 && attribute != null) {
+				for (final PolygonData polygon2 : this.attributePolygonMap.get(attribute)) {
+					if (polygon2.getTyomeColorIndex() != 0) {
+						polygon.setTyomeColorIndex(polygon2.getTyomeColorIndex());
+						this.saveColor(polygon);
+						break;
+					}
 				}
 			}
 		}
-		//System.out.println("隣接グラフ：" + adjacentGraph);
 		// 塗り分ける
-		for (final MapData mapData : maps.values()) {
-			if (mapData.hasTyome()) {
-				for (final PolygonData polygon : mapData.getTyome().values()) {
-					if (polygon.getPolygonName() != null) {
-						this.fixColorRecursively(polygon, adjacentGraph, attributePolygonMap);
+		while (!worklist.isEmpty()) {
+			final PolygonData polygon = worklist.poll();
+			if (polygon.getTyomeColorIndex() == 0) {
+				this.fixColor(polygon);
+				if (this.adjacentGraph.containsKey(polygon)) {
+					for (final PolygonData polygon2 : this.adjacentGraph.get(polygon)) {
+						if (polygon2.getTyomeColorIndex() == 0) {
+							worklist.add(polygon2);
+						}
 					}
 				}
 			}
 		}
+		for (final MapData mapData : newSheets) {
+			this.settledSheets.put(mapData.getMapName(), mapData.getTyome());
+		}
+		this.store.flush();
+		this.store.retain(loadedSheets);
+	}
+
+	/**
+	 * 図葉の丁目を、属性とポリゴンの対応表と隣接グラフから取り除きます。
+	 * @param sheet 図葉の名前
+	 * @param polygons 図葉に含まれていた丁目
+	 */
+	private void removeSheet(final String sheet, final Collection<PolygonData> polygons) {
+		for (final PolygonData polygon : polygons) {
+			this.sheets.remove(polygon);
+			this.adjacentGraph.remove(polygon);
+			final String attribute = polygon.getAttribute();
+			if (attribute != null && this.attributePolygonMap.containsKey(attribute)) {
+				final Collection<PolygonData> polygons2 = this.attributePolygonMap.get(attribute);
+				polygons2.remove(polygon);
+				if (polygons2.isEmpty()) {
+					this.attributePolygonMap.remove(attribute);
+				}
+			}
+		}
+		this.settledSheets.remove(sheet);
 	}
 
 	/**
@@ -103,81 +206,61 @@ class PaintTyome {
 	}
 
 	/**
-	 * 指定したポリゴンの色を再帰的に決定します。
+	 * 指定したポリゴンの色を決定します。
 	 * red, green, blue, yellow, magenda, cyan の順に色を決めます。
+	 * 同じ属性を持つポリゴンも同じ色にします。
 	 * @param polygon ポリゴン
-	 * @param adjacentGraph 隣接グラフ
-	 * @param attributePolygonMap 属性とポリゴンの関連づけ
-	 * @throws FileNotFoundException ファイル未検出例外
-	 * @throws UnsupportedEncodingException サポート外エンコーディング例外
 	 */
-	private void fixColorRecursively(final PolygonData polygon,
-			final Map<PolygonData, Collection<PolygonData>> adjacentGraph,
-			final Map<String, Collection<PolygonData>> attributePolygonMap) throws FileNotFoundException,
-			UnsupportedEncodingException {
-		if (polygon.getTyomeColorIndex() != 0) {
-			return;
-		}
-		final boolean[] isUsed = new boolean[8];
-		this.addUsedColors(polygon, adjacentGraph, isUsed);
+	private void fixColor(final PolygonData polygon) {
+		final boolean[] isUsed = new boolean[PaintTyome.FALLBACK_COLOR];
+		this.addUsedColors(polygon, isUsed);
 		final String attribute = polygon.getAttribute();
-		if (attribute != null) {
-			if (attributePolygonMap.containsKey(attribute)) {
-				for (final PolygonData polygon2 : attributePolygonMap.get(attribute)) {
-					if (polygon != polygon2) {
-						this.addUsedColors(polygon2, adjacentGraph, isUsed);
-					}
+		final Collection<PolygonData> sameAttributePolygons = attribute == null ? null : this.attributePolygonMap
+				.get(attribute);
+		if (sameAttributePolygons != null) {
+			for (final PolygonData polygon2 : sameAttributePolygons) {
+				if (polygon != polygon2) {
+					this.addUsedColors(polygon2, isUsed);
 				}
 			}
 		}
-		boolean isPainted = false;
-		for (int i = 1; i < 8; ++i) {
+		polygon.setTyomeColorIndex(PaintTyome.FALLBACK_COLOR);
+		for (int i = 1; i <= PaintTyome.COLORS; ++i) {
 			if (!isUsed[i]) {
 				polygon.setTyomeColorIndex(i);
-				if (this.loadColor(polygon) != i && this.loadColor(polygon) != Const.Paint.NOT_FOUND) {
-					System.out.printf("%s: %sの色を%dから%dに変えました。\n", this.getClass().getName(), polygon, this
-							.loadColor(polygon), i);
+				final int savedColor = this.loadColor(polygon);
+				if (savedColor != i && savedColor != Const.Paint.NOT_FOUND) {
+					System.out.printf("%s: %sの色を%dから%dに変えました。\n", this.getClass().getName(), polygon,
+							savedColor, i);
 				}
 				this.saveColor(polygon);
-				isPainted = true;
 				break;
 			}
-			if (!isPainted) {
-				polygon.setTyomeColorIndex(8);
-			}
 		}
 		this.isChanged = true;
-		if (attribute != null) {
-			if (attributePolygonMap.containsKey(attribute)) {
-				for (final PolygonData polygon2 : attributePolygonMap.get(attribute)) {
-					if (polygon != polygon2) {
-						polygon2.setTyomeColorIndex(polygon.getTyomeColorIndex());
-						if (this.loadColor(polygon2) != polygon.getTyomeColorIndex() && this.loadColor(polygon2) != Const.Paint.NOT_FOUND) {
-							System.out.printf("%s: つられて%sの色を%dから%dに変えました。\n", this.getClass().getName(), polygon2, this
-									.loadColor(polygon2), polygon.getTyomeColorIndex());
-						}
-						this.saveColor(polygon2);
+		if (sameAttributePolygons != null) {
+			for (final PolygonData polygon2 : sameAttributePolygons) {
+				if (polygon != polygon2) {
+					polygon2.setTyomeColorIndex(polygon.getTyomeColorIndex());
+					final int savedColor = this.loadColor(polygon2);
+					if (savedColor != polygon.getTyomeColorIndex() && savedColor != Const.Paint.NOT_FOUND) {
+						System.out.printf("%s: つられて%sの色を%dから%dに変えました。\n", this.getClass().getName(), polygon2,
+								savedColor, polygon.getTyomeColorIndex());
 					}
+					this.saveColor(polygon2);
 				}
 			}
 		}
-		if (adjacentGraph.containsKey(polygon)) {
-			for (final PolygonData polygon2 : adjacentGraph.get(polygon)) {
-				this.fixColorRecursively(polygon2, adjacentGraph, attributePolygonMap);
-			}
-		}
 	}
 
 	/**
 	 * あるポリゴンに隣接しているポリゴンの色を調べます。
 	 * @param polygon ポリゴン
-	 * @param adjacentGraph 隣接グラフ
 	 * @param isUsed その色が使われているかどうか
 	 */
-	private void addUsedColors(final PolygonData polygon,
-			final Map<PolygonData, Collection<PolygonData>> adjacentGraph, final boolean[] isUsed) {
-		if (adjacentGraph.containsKey(polygon)) {
-			for (final PolygonData polygon2 : adjacentGraph.get(polygon)) {
+	private void addUsedColors(final PolygonData polygon, final boolean[] isUsed) {
+		if (this.adjacentGraph.containsKey(polygon)) {
+			for (final PolygonData polygon2 : this.adjacentGraph.get(polygon)) {
 				if (polygon2.getTyomeColorIndex() < isUsed.length) {
 					isUsed[polygon2.getTyomeColorIndex()] = true;
 				}
@@ -186,20 +269,11 @@ class PaintTyome {
 	}
 
 	/**
-	 * ポリゴンの色を保存します。
+	 * ポリゴンの色を記録します。
 	 * @param polygon ポリゴン
-	 * @throws FileNotFoundException ファイル未検出例外
-	 * @throws UnsupportedEncodingException サポート外エンコーディング例外
 	 */
-	private void saveColor(final PolygonData polygon) throws FileNotFoundException, UnsupportedEncodingException {
-		final String id = polygon.getPolygonName();
-		final String attribute = polygon.getAttribute();
-		final int color = polygon.getTyomeColorIndex();
-		new File(Const.Paint.CACHE_DIR).mkdirs();
-		final PrintWriter out = new PrintWriter(new OutputStreamWriter(new FileOutputStream(new File(
-				Const.Paint.CACHE_DIR + File.separator + id + Const.Paint.CACHE_SUFFIX), true), Const.Paint.ENCODING));
-		out.println(attribute + "," + color);
-		out.close();
+	private void saveColor(final PolygonData polygon) {
+		this.store.put(this.sheets.get(polygon), polygon);
 	}
 
 	/**
@@ -208,29 +282,6 @@ class PaintTyome {
 	 * @return 色
 	 */
 	private int loadColor(final PolygonData polygon) {
-		final String id = polygon.getPolygonName();
-		final String attribute = polygon.getAttribute();
-		try {
-			final Scanner scanner = new Scanner(new InputStreamReader(new FileInputStream(new File(
-					Const.Paint.CACHE_DIR + File.separator + id + Const.Paint.CACHE_SUFFIX)), Const.Paint.ENCODING));
-			while (scanner.hasNextLine()) {
-				final String line = scanner.nextLine();
-				final Scanner scanner2 = new Scanner(line);
-				scanner2.useDelimiter(",");
-				if (scanner2.hasNext()) {
-					final String attribute2 = scanner2.next();
-					if (attribute.equals(attribute2)) {
-						if (scanner2.hasNextInt()) {
-							final int color = scanner2.nextInt();
-							return color;
-						}
-					}
-				}
-			}
-			scanner.close();
-			return Const.Paint.NOT_FOUND;
-		} catch (final IOException e) {
-			return Const.Paint.NOT_FOUND;
-		}
+		return this.store.get(this.sheets.get(polygon), polygon);
 	}
 }
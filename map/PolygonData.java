@@ -1,7 +1,7 @@
 package map;
 import java.awt.Color;
 import java.awt.Font;
-import java.awt.geom.Area;
+import java.awt.Shape;
 
 /**
  * ポリゴンを表すクラスです。
@@ -161,7 +161,7 @@ class PolygonData {
     /**
      * 表す領域（図郭にまたがるポリゴンを結合したもの）
      */
-    private Area area;
+    private volatile Shape area; // since 6.3.0 描画するスレッドから読むので volatile にする
     /**
      * 属性
      */
@@ -185,7 +185,7 @@ class PolygonData {
     /**
      * 丁目を塗り分けるときに何色目を使うか
      */
-    private int tyomeColorIndex; // 丁目を塗り分けるときに何色目を使うか
+    private volatile int tyomeColorIndex; // 丁目を塗り分けるときに何色目を使うか
     /**
      * 個別番号
      */
@@ -201,11 +201,11 @@ class PolygonData {
     /**
      * 代表点のx座標
      */
-    private double x; // 代表点の x 座標
+    private volatile double x; // 代表点の x 座標
     /**
      * 代表点のy座標
      */
-    private double y; // 代表点の y 座標
+    private volatile double y; // 代表点の y 座標
 
     /**
      * 読み
@@ -276,7 +276,7 @@ class PolygonData {
      * @param x 代表点の x 座標
      * @param y 代表点の y 座標
      */
-    PolygonData(final String polygonName, final Area area, final int type, final double x, final double y) {
+    PolygonData(final String polygonName, final Shape area, final int type, final double x, final double y) {
         this.polygonName = polygonName;
         this.area = area;
         this.classificationCode = type;
@@ -304,7 +304,7 @@ class PolygonData {
      * このポリゴンが表す領域を取得します。
      * @return 領域
      */
-    Area getArea() {
+    Shape getArea() {
         return this.area;
     }
 
@@ -385,7 +385,7 @@ class PolygonData {
      * 複数の図葉ファイルに含まれるポリゴンのばあい、それらを結合した領域を設定します。
      * @param area 領域
      */
-    void setArea(final Area area) {
+    void setArea(final Shape area) {
         this.area = area;
     }
 
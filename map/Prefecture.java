@@ -14,6 +14,7 @@ import java.util.concurrent.ConcurrentLinkedQueue;
 
 import ksj.LoadKsj;
 import ksj.ShapeIO;
+import search.PreparedShape;
 
 /**
  * 国土数値情報の行政界・海岸線（面）から作成された1つの都道府県を管理するクラスです。
@@ -176,9 +177,15 @@ public class Prefecture {
 	 * @throws UnsupportedEncodingException サポート外エンコーディング例外
 	 */
 	public void loadCities() throws UnsupportedEncodingException, IOException {
-		final Map<Shape, String> shapes = LoadKsj.loadShapesUTM(new File(Const.KSJ.CACHE_DIR), Const.KSJ.TXT_PREFIX
-				+ this.id + Const.KSJ.TXT_SUFFIX, Const.KSJ.CACHE_DIR + File.separator + Const.KSJ.CACHE_PREFIX
-				+ this.id + Const.KSJ.CACHE_SUFFIX, true, this.panel);
+		final Object event = Trace.begin(Trace.Kind.PREFECTURE_LOAD); // since 6.3.0
+		// since 6.3.0 読み込み直すときに文字列を解析しないように、境界のキャッシュから読み込む
+		final Map<Shape, String> shapes = BoundaryCache.getInstance().getShapes(
+				Const.BoundaryCache.CITIES_PREFIX + this.id, this.getTextFile(), new BoundaryCache.Loader() {
+					public Map<Shape, String> load() throws IOException {
+						return Prefecture.this.loadKsj(true, Const.KSJ.CACHE_PREFIX + Prefecture.this.id
+								+ Const.KSJ.CACHE_SUFFIX);
+					}
+				});
 		for (final Map.Entry<Shape, String> entry : shapes.entrySet()) {
 			final String[] values = entry.getValue().split("_");
 			if (values.length == 4) {
@@ -188,6 +195,12 @@ public class Prefecture {
 				System.out.println("WARNING: 市区町村名の表記がおかしいです。" + entry.getValue());
 			}
 		}
+		// since 6.3.0
+		if (Trace.shouldCommit(event)) {
+			final long vertices = Trace.countVertices(shapes.keySet());
+			Trace.commit(event, this.id, "cities", shapes.size(), vertices, ResidencyManager.estimate(shapes.size(),
+					vertices));
+		}
 	}
 
 	/**
@@ -195,8 +208,18 @@ public class Prefecture {
 	 * @throws IOException 
 	 */
 	public void loadFine() throws IOException {
+		final Object event = Trace.begin(Trace.Kind.PREFECTURE_LOAD); // since 6.3.0
 		this.loadFineShape();
 		this.loadFineCities();
+		// since 6.3.0
+		if (Trace.shouldCommit(event)) {
+			long vertices = Trace.countVertices(this.fineShape);
+			for (final City city : this.cities) {
+				vertices += Trace.countVertices(city.getFineShape());
+			}
+			Trace.commit(event, this.id, "fine", this.cities.size(), vertices, ResidencyManager.estimate(this.cities
+					.size(), vertices));
+		}
 	}
 
 	/**
@@ -211,9 +234,14 @@ public class Prefecture {
 			}
 			citiesMap.get(city.getId()).add(city);
 		}
-		final Map<Shape, String> shapes = LoadKsj.loadShapesUTM(new File(Const.KSJ.CACHE_DIR), Const.KSJ.TXT_PREFIX
-				+ this.id + Const.KSJ.TXT_SUFFIX, Const.KSJ.CACHE_DIR + File.separator + Const.KSJ.CACHE_PREFIX_FINE
-				+ this.id + Const.KSJ.CACHE_SUFFIX_FINE, false, this.panel);
+		// since 6.3.0
+		final Map<Shape, String> shapes = BoundaryCache.getInstance().getShapes(
+				Const.BoundaryCache.CITIES_FINE_PREFIX + this.id, this.getTextFile(), new BoundaryCache.Loader() {
+					public Map<Shape, String> load() throws IOException {
+						return Prefecture.this.loadKsj(false, Const.KSJ.CACHE_PREFIX_FINE + Prefecture.this.id
+								+ Const.KSJ.CACHE_SUFFIX_FINE);
+					}
+				});
 		for (final Map.Entry<Shape, String> entry : shapes.entrySet()) {
 			final String[] values = entry.getValue().split("_");
 			if (values.length == 4) {
@@ -235,18 +263,60 @@ public class Prefecture {
 		}
 	}
 
+	/**
+	 * 国土数値情報の行政界・海岸線を読み込み、UTM座標に変換します。
+	 * 座標変換した結果は境界のキャッシュに保存するので、以前の版で作った CSV 形式のキャッシュは消します。
+	 * @param isFast 急ぐかどうか
+	 * @param oldCacheFile 以前の版で作った CSV 形式のキャッシュのファイル名
+	 * @return 境界と名前の対応表
+	 * @throws IOException 入出力例外
+	 * @since 6.3.0
+	 */
+	private Map<Shape, String> loadKsj(final boolean isFast, final String oldCacheFile) throws IOException {
+		final File textFile = this.getTextFile();
+		if (!textFile.isFile()) {
+			return new ConcurrentHashMap<Shape, String>();
+		}
+		this.panel.addMessage(textFile.getName() + "の座標変換をしています。");
+		try {
+			final Map<Shape, String> ret = LoadKsj.toUTM(LoadKsj.loadShapes(textFile, isFast));
+			new File(Const.KSJ.CACHE_DIR + File.separator + oldCacheFile).delete();
+			return ret;
+		} finally {
+			this.panel.removeMessage();
+		}
+	}
+
+	/**
+	 * @return 国土数値情報の行政界・海岸線の展開済みファイル
+	 * @since 6.3.0
+	 */
+	private File getTextFile() {
+		return new File(Const.KSJ.CACHE_DIR + File.separator + Const.KSJ.TXT_PREFIX + this.id + Const.KSJ.TXT_SUFFIX);
+	}
+
 	/**
 	 * 高精度の領域を読み込みます。
+	 * @throws IOException 入出力例外
 	 */
-	private void loadFineShape() {
-		final Map<Shape, String> map = ShapeIO.readShapes(Prefecture.class.getResourceAsStream(Const.DIR
-				+ Const.Prefecture.PREFECTURE_PREFIX + this.id + Const.Prefecture.PREFECTURE_SUFFIX));
+	private void loadFineShape() throws IOException {
+		// since 6.3.0
+		final String resource = Const.DIR + Const.Prefecture.PREFECTURE_PREFIX + this.id
+				+ Const.Prefecture.PREFECTURE_SUFFIX;
+		final Map<Shape, String> map = BoundaryCache.getInstance().getShapes(
+				Const.BoundaryCache.PREFECTURE_PREFIX + this.id, Prefecture.class.getResource(resource),
+				new BoundaryCache.Loader() {
+					public Map<Shape, String> load() {
+						return ShapeIO.readShapes(Prefecture.class.getResourceAsStream(resource));
+					}
+				});
 		if (map.isEmpty()) {
 			System.out.println("WARNING: 高精度の都道府県の情報が読み込めませんでした。" + Const.Prefecture.PREFECTURE_PREFIX + this.id
 					+ Const.Prefecture.PREFECTURE_SUFFIX);
 		} else {
 			for (final Shape shape2 : map.keySet()) {
-				this.fineShape = shape2;
+				// since 6.3.0 海岸線の頂点が多いので、包含判定と交差判定のために準備しておく
+				this.fineShape = PreparedShape.prepare(shape2);
 			}
 		}
 	}
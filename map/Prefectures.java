@@ -2,21 +2,23 @@ package map;
 
 import java.awt.Shape;
 import java.awt.geom.Rectangle2D;
+import java.io.BufferedInputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Enumeration;
 import java.util.Map;
 import java.util.zip.ZipEntry;
-import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
 
 import ksj.ShapeIO;
 import map.Const.Zoom;
-import web.WebUtilities;
+import web.DownloadManager;
 
 /**
  * 国土数値情報の行政界・海岸線（面）から作成された都道府県に関するユーティリティクラスです。
@@ -47,6 +49,8 @@ public class Prefectures {
 					final Shape shape = prefecture.hasFine() ? prefecture.getFineShape() : prefecture.getShape();
 					if (shape.intersects(visibleRectangle)) {
 						if (prefecture.hasCities()) {
+							// since 6.3.0
+							ResidencyManager.getInstance().touch(Prefectures.getKey(prefecture));
 						} else {
 							if (!new File(Const.KSJ.CACHE_DIR).exists()) {
 								new File(Const.KSJ.CACHE_DIR).mkdirs();
@@ -57,42 +61,36 @@ public class Prefectures {
 									+ Const.KSJ.ZIP_SUFFIX);
 							if (textFile.exists()) {
 							} else {
-								final File cacheDir = new File(Const.KSJ.CACHE_DIR);
-								if (!cacheDir.exists()) {
-									cacheDir.mkdir();
-								}
 								final File file = new File(Const.KSJ.CACHE_DIR + File.separator + Const.KSJ.ZIP_PREFIX
 										+ prefecture.getId() + Const.KSJ.ZIP_SUFFIX);
-								file.createNewFile();
-								panel.addMessage(url + "をダウンロードしています。");
-								WebUtilities.copy(url.openStream(), new FileOutputStream(file));
-								final ZipFile zipFile = new ZipFile(file);
-								for (final Enumeration<? extends ZipEntry> enumeration = zipFile.entries(); enumeration
-										.hasMoreElements();) {
-									final ZipEntry entry = enumeration.nextElement();
-									if (entry.getName().endsWith(".txt")) {
-										WebUtilities.copy(zipFile.getInputStream(entry), new FileOutputStream(
-												Const.KSJ.CACHE_DIR + File.separator + new File(entry.getName())));
+								if (file.exists()) {
+									panel.addMessage(file + "を展開しています。");
+									Prefectures.extract(file, ".txt", new File(Const.KSJ.CACHE_DIR));
+									panel.removeMessage();
+								} else {
+									// since 6.3.0
+									if (!DownloadManager.getInstance().isFailed(file)) {
+										DownloadManager.getInstance().request(url, file, panel.getActionListener());
 									}
+									continue;
 								}
-								panel.removeMessage();
 							}
 							prefecture.loadCities();
+							// since 6.3.0
+							Prefectures.register(prefecture);
 							ret = true;
 						}
-					} else {
-						prefecture.freeCities();
-						prefecture.freeFine();
 					}
-				} else {
-					prefecture.freeCities();
-					prefecture.freeFine();
 				}
+				// since 6.3.0 表示されている領域から外れた都道府県は、ResidencyManager が予算を超えたときに開放する
 			}
 		} else {
 			for (final Prefecture prefecture : prefectures) {
-				prefecture.freeCities();
-				prefecture.freeFine();
+				// since 6.3.0
+				if (prefecture.hasCities()) {
+					Prefectures.free(prefecture);
+					ResidencyManager.getInstance().remove(Prefectures.getKey(prefecture));
+				}
 			}
 		}
 		if (panel.getZoom() >= Zoom.LOAD_KSJ_RAILWAY) {
@@ -102,8 +100,10 @@ public class Prefectures {
 				if (prefecture.getBounds().intersects(visibleRectangle)) {
 					final Shape shape = prefecture.hasFine() ? prefecture.getFineShape() : prefecture.getShape();
 					if (shape.intersects(visibleRectangle)) {
-						if (!prefecture.hasFine()) {
+						if (!prefecture.hasFine() && prefecture.hasCities()) {
 							prefecture.loadFine();
+							// since 6.3.0 高精度の領域の分だけ見積もりを増やす
+							Prefectures.register(prefecture);
 						}
 					}
 				}
@@ -112,6 +112,10 @@ public class Prefectures {
 			for (final Prefecture prefecture : prefectures) {
 				if (prefecture.hasFine()) {
 					prefecture.freeFine();
+					// since 6.3.0
+					if (prefecture.hasCities()) {
+						Prefectures.register(prefecture);
+					}
 				}
 			}
 		}
@@ -127,49 +131,16 @@ public class Prefectures {
 								final Shape shape2 = city.hasFineShape() ? city.getFineShape() : city.getShape();
 								if (shape2.getBounds2D().intersects(visibleRectangle)) {
 									if (shape2.intersects(visibleRectangle)) {
-										if (city.loadKsjFineRoad()) {
-											ret = true;
-										}
-										// since 6.1.2
-										if (city.loadKsjRailwayStations()) {
-											ret = true;
-										}
-										if (city.loadKsjRailwayCurves()) {
+										// since 6.3.0
+										if (Prefectures.loadKsj(city)) {
 											ret = true;
 										}
-									} else {
-										city.freeKsjFineRoad();
-										// since 6.1.2
-										city.freeKsjRailwayCurves();
-										city.freeKsjRailwayStations();
 									}
-								} else {
-									city.freeKsjFineRoad();
-									// since 6.1.2
-									city.freeKsjRailwayCurves();
-									city.freeKsjRailwayStations();
 								}
-							}
-						}
-					} else {
-						if (prefecture.hasCities()) {
-							for (final City city : prefecture.getCities()) {
-								city.freeKsjFineRoad();
-								// since 6.1.2
-								city.freeKsjRailwayCurves();
-								city.freeKsjRailwayStations();
+								// since 6.3.0 表示されている領域から外れた市区町村は、ResidencyManager が予算を超えたときに開放する
 							}
 						}
 					}
-				} else {
-					if (prefecture.hasCities()) {
-						for (final City city : prefecture.getCities()) {
-							city.freeKsjFineRoad();
-							// since 6.1.2
-							city.freeKsjRailwayCurves();
-							city.freeKsjRailwayStations();
-						}
-					}
 				}
 			}
 		} else {
@@ -191,11 +162,8 @@ public class Prefectures {
 						final Shape shape = city.hasFineShape() ? city.getFineShape() : city.getShape();
 						if (shape.getBounds2D().intersects(visibleRectangle)) {
 							if (shape.intersects(visibleRectangle)) {
-								if (!city.hasIsj()) {
-									city.loadIsj();
-									// since 3.16
-									city.loadShops();
-								}
+								// since 6.3.0
+								Prefectures.loadIsj(city);
 							}
 						}
 					}
@@ -206,6 +174,159 @@ public class Prefectures {
 		return ret;
 	}
 
+	/**
+	 * @param prefecture 都道府県
+	 * @return ResidencyManager に登録する名前
+	 * @since 6.3.0
+	 */
+	private static String getKey(final Prefecture prefecture) {
+		return "prefecture/" + prefecture.getId();
+	}
+
+	/**
+	 * @param city 市区町村
+	 * @return 国土数値情報の鉄道、道路データを ResidencyManager に登録する名前
+	 * @since 6.3.0
+	 */
+	private static String getKsjKey(final City city) {
+		return "ksj/" + city.getId();
+	}
+
+	/**
+	 * @param city 市区町村
+	 * @return 街区レベル位置参照情報を ResidencyManager に登録する名前
+	 * @since 6.3.0
+	 */
+	private static String getIsjKey(final City city) {
+		return "isj/" + city.getId();
+	}
+
+	/**
+	 * 都道府県の市区町村の一覧と高精度の領域を ResidencyManager に登録します。
+	 * @param prefecture 都道府県
+	 * @throws IOException 入出力例外
+	 * @since 6.3.0
+	 */
+	private static void register(final Prefecture prefecture) throws IOException {
+		long bytes = ResidencyManager.estimate(prefecture.getFineShape());
+		for (final City city : prefecture.getCities()) {
+			bytes += ResidencyManager.estimate(city.getShape()) + ResidencyManager.estimate(city.getFineShape());
+		}
+		ResidencyManager.getInstance().put(Prefectures.getKey(prefecture), prefecture.getBounds(), bytes,
+				new Runnable() {
+					public void run() {
+						Prefectures.free(prefecture);
+					}
+				});
+	}
+
+	/**
+	 * 都道府県の市区町村の一覧と高精度の領域を開放し、
+	 * 市区町村ごとのデータの ResidencyManager への登録を取り消します。
+	 * @param prefecture 都道府県
+	 * @since 6.3.0
+	 */
+	private static void free(final Prefecture prefecture) {
+		if (prefecture.hasCities()) {
+			try {
+				for (final City city : prefecture.getCities()) {
+					ResidencyManager.getInstance().remove(Prefectures.getKsjKey(city));
+					ResidencyManager.getInstance().remove(Prefectures.getIsjKey(city));
+				}
+			} catch (final IOException exception) {
+				exception.printStackTrace();
+			}
+		}
+		prefecture.freeFine();
+		prefecture.freeCities();
+	}
+
+	/**
+	 * 市区町村の国土数値情報の鉄道、道路データを読み込み、ResidencyManager に登録します。
+	 * 既に読み込まれていれば、使ったことにします。
+	 * @param city 市区町村
+	 * @return 読み込んだかどうか
+	 * @since 6.3.0
+	 */
+	static boolean loadKsj(final City city) {
+		boolean ret = false;
+		if (city.loadKsjFineRoad()) {
+			ret = true;
+		}
+		// since 6.1.2
+		if (city.loadKsjRailwayStations()) {
+			ret = true;
+		}
+		if (city.loadKsjRailwayCurves()) {
+			ret = true;
+		}
+		if (ret) {
+			Prefectures.registerKsj(city);
+		} else {
+			ResidencyManager.getInstance().touch(Prefectures.getKsjKey(city));
+		}
+		return ret;
+	}
+
+	/**
+	 * 市区町村の街区レベル位置参照情報と店舗の一覧を読み込み、ResidencyManager に登録します。
+	 * 既に読み込まれていれば、使ったことにします。
+	 * @param city 市区町村
+	 * @return 読み込んだかどうか
+	 * @throws IOException 入出力例外
+	 * @throws InterruptedException 割り込み例外
+	 * @since 6.3.0
+	 */
+	static boolean loadIsj(final City city) throws IOException, InterruptedException {
+		if (city.hasIsj()) {
+			ResidencyManager.getInstance().touch(Prefectures.getIsjKey(city));
+			return false;
+		}
+		if (city.loadIsj()) {
+			// since 3.16
+			city.loadShops();
+			Prefectures.registerIsj(city);
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * 市区町村の国土数値情報の鉄道、道路データを ResidencyManager に登録します。
+	 * @param city 市区町村
+	 * @since 6.3.0
+	 */
+	private static void registerKsj(final City city) {
+		ResidencyManager.getInstance().put(
+				Prefectures.getKsjKey(city),
+				city.getBounds(),
+				ResidencyManager.estimateRailways(city.getKsjFineRoad())
+						+ ResidencyManager.estimateRailways(city.getKsjRailwayCurves())
+						+ ResidencyManager.estimateRailways(city.getKsjRailwayStations()), new Runnable() {
+					public void run() {
+						city.freeKsjFineRoad();
+						city.freeKsjRailwayCurves();
+						city.freeKsjRailwayStations();
+					}
+				});
+	}
+
+	/**
+	 * 市区町村の街区レベル位置参照情報と店舗の一覧を ResidencyManager に登録します。
+	 * @param city 市区町村
+	 * @since 6.3.0
+	 */
+	private static void registerIsj(final City city) {
+		ResidencyManager.getInstance().put(Prefectures.getIsjKey(city), city.getBounds(),
+				ResidencyManager.estimatePoints(city.getIsj()) + ResidencyManager.estimatePoints(city.getShops()),
+				new Runnable() {
+					public void run() {
+						city.freeShops();
+						city.freeIsj();
+					}
+				});
+	}
+
 	/**
 	 * 都道府県を読み込みます。
 	 * @param preferences 色の設定
@@ -214,7 +335,20 @@ public class Prefectures {
 	 */
 	public static Collection<Prefecture> loadPrefectures(final MapPreferences preferences, final MapPanel panel) {
 		final Collection<Prefecture> ret = new ArrayList<Prefecture>();
-		for (final Map.Entry<Shape, String> entry : ShapeIO.readShapes(Const.Prefecture.PREFECTURES).entrySet()) {
+		// since 6.3.0 起動するときに文字列を解析しないように、境界のキャッシュから読み込む
+		Map<Shape, String> shapes;
+		try {
+			shapes = BoundaryCache.getInstance().getShapes(Const.BoundaryCache.PREFECTURES,
+					Prefectures.class.getResource(Const.Prefecture.PREFECTURES_RESOURCE), new BoundaryCache.Loader() {
+						public Map<Shape, String> load() {
+							return ShapeIO.readShapes(Const.Prefecture.PREFECTURES);
+						}
+					});
+		} catch (final IOException exception) {
+			exception.printStackTrace();
+			shapes = ShapeIO.readShapes(Prefectures.class.getResourceAsStream(Const.Prefecture.PREFECTURES_RESOURCE));
+		}
+		for (final Map.Entry<Shape, String> entry : shapes.entrySet()) {
 			final String[] values = entry.getValue().split("_");
 			if (values.length == 2) {
 				final String idString = values[0];
@@ -228,4 +362,37 @@ public class Prefectures {
 		}
 		return ret;
 	}
+
+	/**
+	 * 圧縮ファイルから、名前が指定した接尾語で終わるエントリを全て展開します。
+	 * @param file 圧縮ファイル
+	 * @param suffix エントリ名の接尾語
+	 * @param directory 展開先のディレクトリ
+	 * @throws IOException 入出力例外
+	 * @since 6.3.0
+	 */
+	static void extract(final File file, final String suffix, final File directory) throws IOException {
+		final ZipInputStream in = new ZipInputStream(new BufferedInputStream(new FileInputStream(file),
+				DownloadManager.BUFFER_SIZE));
+		try {
+			final byte[] buf = new byte[DownloadManager.BUFFER_SIZE];
+			ZipEntry entry;
+			while ((entry = in.getNextEntry()) != null) {
+				if (entry.getName().endsWith(suffix)) {
+					final OutputStream out = new FileOutputStream(new File(directory, new File(entry.getName())
+							.getName()));
+					try {
+						int size;
+						while ((size = in.read(buf)) != -1) {
+							out.write(buf, 0, size);
+						}
+					} finally {
+						out.close();
+					}
+				}
+			}
+		} finally {
+			in.close();
+		}
+	}
 }
@@ -0,0 +1,294 @@
+package map;
+
+import java.awt.Shape;
+import java.awt.geom.Rectangle2D;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+import map.Const.Zoom;
+
+/**
+ * 表示範囲の動く向きと速さ、拡大縮小の傾向から、次に表示されそうな範囲を予測し、
+ * 図郭の地図、市区町村の国土数値情報、街区レベル位置参照情報を先読みするクラスです。
+ * 先読みは地図の更新が終わった後に、更新と同じスレッドで1つずつ行い、
+ * 新しいイベントが届いたらすぐにやめます。
+ * @author zenjiro
+ * @since 6.3.0
+ */
+public class Prefetcher {
+	/**
+	 * 何秒先の表示範囲を予測するか[s]
+	 */
+	public static final double LOOKAHEAD_SECONDS = 1;
+
+	/**
+	 * 表示範囲を動かす量の最大値（表示範囲の幅、高さに対する割合）
+	 */
+	public static final double MAX_LOOKAHEAD = 1;
+
+	/**
+	 * 縮小しているときに、表示範囲を広げる割合の最大値
+	 */
+	public static final double MAX_EXPANSION = 2;
+
+	/**
+	 * 最後のイベントからこの時間が過ぎたら、動きが止まったとみなして先読みしない[ms]
+	 */
+	public static final long EXPIRE_MILLIS = 2000;
+
+	/**
+	 * 速さを平滑化するときの、新しい値の重み
+	 */
+	private static final double SMOOTHING = .5;
+
+	/**
+	 * 地図を読み込むためのオブジェクト
+	 */
+	private final LoadMap loadMap;
+
+	/**
+	 * 観測したことがあるかどうか
+	 */
+	private boolean hasSample;
+
+	/**
+	 * 最後に観測した時刻[ns]
+	 */
+	private long lastTime;
+
+	/**
+	 * 最後に観測した表示範囲の中心のx座標（仮想座標）
+	 */
+	private double lastX;
+
+	/**
+	 * 最後に観測した表示範囲の中心のy座標（仮想座標）
+	 */
+	private double lastY;
+
+	/**
+	 * 最後に観測した倍率
+	 */
+	private double lastZoom;
+
+	/**
+	 * 表示範囲の中心がx方向に動く速さ（仮想座標/s）
+	 */
+	private double velocityX;
+
+	/**
+	 * 表示範囲の中心がy方向に動く速さ（仮想座標/s）
+	 */
+	private double velocityY;
+
+	/**
+	 * 倍率の対数が変わる速さ[1/s]。正なら拡大、負なら縮小
+	 */
+	private double zoomRate;
+
+	/**
+	 * 先読みした数
+	 */
+	private volatile long prefetchCount;
+
+	/**
+	 * 新しいイベントが届いたために先読みをやめた回数
+	 */
+	private volatile long interruptCount;
+
+	/**
+	 * 先読みを初期化します。
+	 * @param loadMap 地図を読み込むためのオブジェクト
+	 */
+	public Prefetcher(final LoadMap loadMap) {
+		this.loadMap = loadMap;
+	}
+
+	/**
+	 * 表示範囲を観測し、動く向きと速さ、拡大縮小の傾向を更新します。
+	 * パネルのイベントを受け取るたびに呼び出します。
+	 * @param visibleRectangle 表示されている領域（仮想座標）
+	 * @param zoom 倍率
+	 */
+	public synchronized void observe(final Rectangle2D visibleRectangle, final double zoom) {
+		final long time = System.nanoTime();
+		final double x = visibleRectangle.getCenterX();
+		final double y = visibleRectangle.getCenterY();
+		if (this.hasSample) {
+			final double seconds = (time - this.lastTime) / 1E9;
+			if (seconds > Prefetcher.EXPIRE_MILLIS / 1000.0) {
+				// 止まってから動き出したときは、前の動きを引き継がない
+				this.velocityX = 0;
+				this.velocityY = 0;
+				this.zoomRate = 0;
+			} else if (seconds > 0) {
+				this.velocityX = Prefetcher.SMOOTHING * (x - this.lastX) / seconds + (1 - Prefetcher.SMOOTHING)
+						* this.velocityX;
+				this.velocityY = Prefetcher.SMOOTHING * (y - this.lastY) / seconds + (1 - Prefetcher.SMOOTHING)
+						* this.velocityY;
+				this.zoomRate = Prefetcher.SMOOTHING * Math.log(zoom / this.lastZoom) / seconds
+						+ (1 - Prefetcher.SMOOTHING) * this.zoomRate;
+			}
+		}
+		this.hasSample = true;
+		this.lastTime = time;
+		this.lastX = x;
+		this.lastY = y;
+		this.lastZoom = zoom;
+	}
+
+	/**
+	 * 次に表示されそうな範囲を予測します。
+	 * @param visibleRectangle 表示されている領域（仮想座標）
+	 * @return 予測した範囲（仮想座標）。動きが止まっていれば null
+	 */
+	synchronized Rectangle2D predict(final Rectangle2D visibleRectangle) {
+		if (!this.hasSample || (System.nanoTime() - this.lastTime) / 1000000 > Prefetcher.EXPIRE_MILLIS) {
+			return null;
+		}
+		if (this.velocityX == 0 && this.velocityY == 0 && this.zoomRate >= 0) {
+			return null;
+		}
+		final double maxX = visibleRectangle.getWidth() * Prefetcher.MAX_LOOKAHEAD;
+		final double maxY = visibleRectangle.getHeight() * Prefetcher.MAX_LOOKAHEAD;
+		final double dx = Math.max(-maxX, Math.min(maxX, this.velocityX * Prefetcher.LOOKAHEAD_SECONDS));
+		final double dy = Math.max(-maxY, Math.min(maxY, this.velocityY * Prefetcher.LOOKAHEAD_SECONDS));
+		// 拡大しているときは表示範囲が狭くなるだけなので、縮小しているときだけ広げる
+		final double expansion = Math.min(Prefetcher.MAX_EXPANSION, Math.exp(Math.max(0, -this.zoomRate
+				* Prefetcher.LOOKAHEAD_SECONDS)));
+		final double width = visibleRectangle.getWidth() * expansion;
+		final double height = visibleRectangle.getHeight() * expansion;
+		return new Rectangle2D.Double(visibleRectangle.getCenterX() + dx - width / 2, visibleRectangle.getCenterY()
+				+ dy - height / 2, width, height);
+	}
+
+	/**
+	 * 次に表示されそうな範囲のうち、表示されていない部分にある地図を、
+	 * 表示されている領域に近いものから読み込みます。
+	 * 更新を予約するためのオブジェクトに新しいイベントが届いていたら、すぐにやめます。
+	 * @param maps 地図
+	 * @param prefectures 都道府県の一覧
+	 * @param zoom 倍率
+	 * @param visibleRectangle 表示されている領域（仮想座標）
+	 * @param scheduler 更新を予約するためのオブジェクト
+	 * @return 先読みした数
+	 * @throws IOException 入出力例外
+	 * @throws InterruptedException 割り込み例外
+	 */
+	public int prefetch(final Map<String, MapData> maps, final Collection<Prefecture> prefectures,
+			final double zoom, final Rectangle2D visibleRectangle, final UpdateScheduler scheduler)
+			throws IOException, InterruptedException {
+		final Rectangle2D predictedRectangle = this.predict(visibleRectangle);
+		if (predictedRectangle == null) {
+			return 0;
+		}
+		int ret = 0;
+		final List<MapData> sheets = new ArrayList<MapData>();
+		for (final MapData mapData : maps.values()) {
+			final Shape bounds = mapData.getBounds();
+			if (bounds.intersects(predictedRectangle) && !bounds.intersects(visibleRectangle)) {
+				sheets.add(mapData);
+			}
+		}
+		Collections.sort(sheets, new Comparator<MapData>() {
+			public int compare(final MapData o1, final MapData o2) {
+				return Double.compare(Prefetcher.distance(o1.getBounds().getBounds2D(), visibleRectangle), Prefetcher
+						.distance(o2.getBounds().getBounds2D(), visibleRectangle));
+			}
+		});
+		for (final MapData mapData : sheets) {
+			if (this.isInterrupted(scheduler)) {
+				return ret;
+			}
+			if (this.loadMap.prefetch(mapData, zoom)) {
+				ret++;
+				this.prefetchCount++;
+			}
+		}
+		if (prefectures != null && zoom >= Zoom.LOAD_KSJ_RAILWAY) {
+			final List<City> cities = new ArrayList<City>();
+			for (final Prefecture prefecture : prefectures) {
+				if (prefecture.hasCities() && prefecture.getBounds().intersects(predictedRectangle)) {
+					for (final City city : prefecture.getCities()) {
+						final Rectangle2D bounds = city.getBounds();
+						if (bounds.intersects(predictedRectangle) && !bounds.intersects(visibleRectangle)) {
+							cities.add(city);
+						}
+					}
+				}
+			}
+			Collections.sort(cities, new Comparator<City>() {
+				public int compare(final City o1, final City o2) {
+					return Double.compare(Prefetcher.distance(o1.getBounds(), visibleRectangle), Prefetcher.distance(
+							o2.getBounds(), visibleRectangle));
+				}
+			});
+			for (final City city : cities) {
+				if (this.isInterrupted(scheduler)) {
+					return ret;
+				}
+				if (Prefectures.loadKsj(city)) {
+					ret++;
+					this.prefetchCount++;
+				}
+				if (zoom >= Zoom.LOAD_ALL) {
+					if (this.isInterrupted(scheduler)) {
+						return ret;
+					}
+					if (Prefectures.loadIsj(city)) {
+						ret++;
+						this.prefetchCount++;
+					}
+				}
+			}
+		}
+		return ret;
+	}
+
+	/**
+	 * @param scheduler 更新を予約するためのオブジェクト
+	 * @return 新しいイベントが届いていて、先読みをやめるべきかどうか
+	 */
+	private boolean isInterrupted(final UpdateScheduler scheduler) {
+		if (scheduler.getQueueDepth() > 0) {
+			this.interruptCount++;
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * @param rectangle 長方形
+	 * @param visibleRectangle 表示されている領域
+	 * @return 2つの長方形の中心の距離
+	 */
+	static double distance(final Rectangle2D rectangle, final Rectangle2D visibleRectangle) {
+		return Math.hypot(rectangle.getCenterX() - visibleRectangle.getCenterX(), rectangle.getCenterY()
+				- visibleRectangle.getCenterY());
+	}
+
+	/**
+	 * @return 先読みした数
+	 */
+	public long getPrefetchCount() {
+		return this.prefetchCount;
+	}
+
+	/**
+	 * @return 新しいイベントが届いたために先読みをやめた回数
+	 */
+	public long getInterruptCount() {
+		return this.interruptCount;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "Prefetcher[velocity=(" + this.velocityX + ", " + this.velocityY + "), zoomRate=" + this.zoomRate
+				+ ", prefetches=" + this.prefetchCount + ", interrupts=" + this.interruptCount + "]";
+	}
+}
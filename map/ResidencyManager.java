@@ -0,0 +1,449 @@
+package map;
+
+import java.awt.Shape;
+import java.awt.geom.PathIterator;
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import map.KsjRailway.Railway;
+
+/**
+ * 読み込んだ地図のデータ（図郭の層、市区町村の国土数値情報、街区レベル位置参照情報など）が
+ * 使っているメモリの量を見積もり、予算を超えたら古いものから開放するクラスです。
+ * すべてのデータを1つの一覧で管理し、最後に使われた時刻が古いもの、
+ * 同じなら表示されている領域から遠いものから開放します。
+ * 開放したデータは、再び表示されたときに読み込み直されます。
+ * @author zenjiro
+ * @since 6.3.0
+ */
+public class ResidencyManager {
+	/**
+	 * 予算[MB]を指定するシステムプロパティの名前
+	 */
+	public static final String BUDGET_PROPERTY = "map.residency.budget";
+
+	/**
+	 * 予算を指定しなかったときの、最大ヒープサイズに対する予算の割合
+	 */
+	public static final double DEFAULT_BUDGET_RATIO = .5;
+
+	/**
+	 * 1つのオブジェクトが使うメモリの量の目安[byte]
+	 */
+	private static final long OBJECT_BYTES = 128;
+
+	/**
+	 * 図形の1つの線分が使うメモリの量の目安[byte]
+	 */
+	private static final long SEGMENT_BYTES = 24;
+
+	/**
+	 * PathIterator の currentSegment の戻り値の配列の大きさ
+	 */
+	private static final int COORDS_NUMBER = 6;
+
+	/**
+	 * 管理しているデータです。
+	 * @author zenjiro
+	 * @since 6.3.0
+	 */
+	private static class Entry {
+		/**
+		 * 名前
+		 */
+		final String key;
+
+		/**
+		 * 領域（仮想座標）
+		 */
+		final Rectangle2D bounds;
+
+		/**
+		 * 使っているメモリの量の見積もり[byte]
+		 */
+		final long bytes;
+
+		/**
+		 * データを開放する処理
+		 */
+		final Runnable evictor;
+
+		/**
+		 * 最後に使われた更新の番号
+		 */
+		long lastUsed;
+
+		/**
+		 * 直前に開放するかどうかを判断したときの、表示されている領域からの距離（仮想座標）
+		 */
+		double distance;
+
+		/**
+		 * データを初期化します。
+		 * @param key 名前
+		 * @param bounds 領域（仮想座標）
+		 * @param bytes 使っているメモリの量の見積もり[byte]
+		 * @param evictor データを開放する処理
+		 */
+		Entry(final String key, final Rectangle2D bounds, final long bytes, final Runnable evictor) {
+			this.key = key;
+			this.bounds = bounds;
+			this.bytes = bytes;
+			this.evictor = evictor;
+		}
+	}
+
+	/**
+	 * インスタンス
+	 */
+	private static ResidencyManager instance;
+
+	/**
+	 * @return インスタンス
+	 */
+	public static synchronized ResidencyManager getInstance() {
+		if (ResidencyManager.instance == null) {
+			ResidencyManager.instance = new ResidencyManager();
+		}
+		return ResidencyManager.instance;
+	}
+
+	/**
+	 * 名前とデータの対応表
+	 */
+	private final Map<String, Entry> entries;
+
+	/**
+	 * 予算[byte]
+	 */
+	private long budget;
+
+	/**
+	 * 管理しているデータが使っているメモリの量の見積もりの合計[byte]
+	 */
+	private long residentBytes;
+
+	/**
+	 * 管理しているデータが使っているメモリの量の見積もりの合計の最大値[byte]
+	 */
+	private long maxResidentBytes;
+
+	/**
+	 * 更新の番号
+	 */
+	private long tick;
+
+	/**
+	 * 予算を超えたために開放したデータの数
+	 */
+	private long evictionCount;
+
+	/**
+	 * 予算を超えたために開放したデータが使っていたメモリの量の見積もりの合計[byte]
+	 */
+	private long evictedBytes;
+
+	/**
+	 * 開放したデータを読み込み直した回数
+	 */
+	private long reloadCount;
+
+	/**
+	 * 予算を超えたために開放したデータの名前の一覧
+	 */
+	private final Collection<String> evictedKeys;
+
+	/**
+	 * 管理を初期化します。
+	 * 予算はシステムプロパティ map.residency.budget で MB 単位で指定でき、
+	 * 指定しなければ最大ヒープサイズの半分とします。
+	 */
+	private ResidencyManager() {
+		this.entries = new HashMap<String, Entry>();
+		this.evictedKeys = new HashSet<String>();
+		final String property = System.getProperty(ResidencyManager.BUDGET_PROPERTY);
+		long value = (long) (Runtime.getRuntime().maxMemory() * ResidencyManager.DEFAULT_BUDGET_RATIO);
+		if (property != null) {
+			try {
+				value = Long.parseLong(property) * 1024 * 1024;
+			} catch (final NumberFormatException exception) {
+				System.out.println("WARNING: " + ResidencyManager.BUDGET_PROPERTY + "の値がおかしいです。" + property);
+			}
+		}
+		this.budget = value;
+	}
+
+	/**
+	 * 読み込んだデータを登録し、今使われたことにします。
+	 * 既に登録されていれば、置き換えます。
+	 * @param key 名前
+	 * @param bounds 領域（仮想座標）
+	 * @param bytes 使っているメモリの量の見積もり[byte]
+	 * @param evictor データを開放する処理
+	 */
+	public synchronized void put(final String key, final Rectangle2D bounds, final long bytes,
+			final Runnable evictor) {
+		this.remove(key);
+		final Entry entry = new Entry(key, bounds, bytes, evictor);
+		entry.lastUsed = this.tick;
+		this.entries.put(key, entry);
+		this.residentBytes += bytes;
+		this.maxResidentBytes = Math.max(this.maxResidentBytes, this.residentBytes);
+		if (this.evictedKeys.remove(key)) {
+			this.reloadCount++;
+		}
+	}
+
+	/**
+	 * データが今使われたことにします。
+	 * @param key 名前
+	 * @return 登録されていたかどうか
+	 */
+	public synchronized boolean touch(final String key) {
+		final Entry entry = this.entries.get(key);
+		if (entry == null) {
+			return false;
+		}
+		entry.lastUsed = this.tick;
+		return true;
+	}
+
+	/**
+	 * データの登録を取り消します。
+	 * ズームが変わったなどの理由で、呼び出し元がデータを開放したときに呼び出します。
+	 * @param key 名前
+	 */
+	public synchronized void remove(final String key) {
+		final Entry entry = this.entries.remove(key);
+		if (entry != null) {
+			this.residentBytes -= entry.bytes;
+		}
+	}
+
+	/**
+	 * 予算を超えていれば、今回の更新で使われなかったデータを、
+	 * 最後に使われた時刻が古いもの、同じなら表示されている領域から遠いものから開放します。
+	 * 更新の最後に1回だけ呼び出します。
+	 * @param visibleRectangle 表示されている領域（仮想座標）
+	 * @return 開放したデータの数
+	 */
+	public int evict(final Rectangle2D visibleRectangle) {
+		final List<Entry> victims = new ArrayList<Entry>();
+		synchronized (this) {
+			if (this.residentBytes > this.budget) {
+				final List<Entry> candidates = new ArrayList<Entry>();
+				for (final Entry entry : this.entries.values()) {
+					if (entry.lastUsed < this.tick) {
+						entry.distance = ResidencyManager.distance(entry.bounds, visibleRectangle);
+						candidates.add(entry);
+					}
+				}
+				Collections.sort(candidates, new Comparator<Entry>() {
+					public int compare(final Entry o1, final Entry o2) {
+						if (o1.lastUsed != o2.lastUsed) {
+							return o1.lastUsed < o2.lastUsed ? -1 : 1;
+						}
+						return Double.compare(o2.distance, o1.distance);
+					}
+				});
+				for (final Entry entry : candidates) {
+					if (this.residentBytes <= this.budget) {
+						break;
+					}
+					this.remove(entry.key);
+					this.evictedKeys.add(entry.key);
+					this.evictionCount++;
+					this.evictedBytes += entry.bytes;
+					victims.add(entry);
+				}
+			}
+			this.tick++;
+		}
+		// 開放する処理が登録を取り消すことがあるので、ロックの外で呼び出す
+		for (final Entry entry : victims) {
+			entry.evictor.run();
+		}
+		return victims.size();
+	}
+
+	/**
+	 * @param rectangle 長方形
+	 * @param visibleRectangle 表示されている領域
+	 * @return 2つの長方形の距離。重なっていれば0
+	 */
+	private static double distance(final Rectangle2D rectangle, final Rectangle2D visibleRectangle) {
+		final double dx = Math.max(0, Math.max(rectangle.getMinX() - visibleRectangle.getMaxX(), visibleRectangle
+				.getMinX()
+				- rectangle.getMaxX()));
+		final double dy = Math.max(0, Math.max(rectangle.getMinY() - visibleRectangle.getMaxY(), visibleRectangle
+				.getMinY()
+				- rectangle.getMaxY()));
+		return Math.hypot(dx, dy);
+	}
+
+	/**
+	 * @param budget 予算[byte]
+	 */
+	public synchronized void setBudget(final long budget) {
+		this.budget = budget;
+	}
+
+	/**
+	 * @return 予算[byte]
+	 */
+	public synchronized long getBudget() {
+		return this.budget;
+	}
+
+	/**
+	 * @return 管理しているデータが使っているメモリの量の見積もりの合計[byte]
+	 */
+	public synchronized long getResidentBytes() {
+		return this.residentBytes;
+	}
+
+	/**
+	 * @return 管理しているデータが使っているメモリの量の見積もりの合計の最大値[byte]
+	 */
+	public synchronized long getMaxResidentBytes() {
+		return this.maxResidentBytes;
+	}
+
+	/**
+	 * @return 予算に対する、管理しているデータが使っているメモリの量の見積もりの合計の割合
+	 */
+	public synchronized double getOccupancy() {
+		return this.budget == 0 ? 0 : (double) this.residentBytes / this.budget;
+	}
+
+	/**
+	 * @return 管理しているデータの数
+	 */
+	public synchronized int getEntryCount() {
+		return this.entries.size();
+	}
+
+	/**
+	 * @return 予算を超えたために開放したデータの数
+	 */
+	public synchronized long getEvictionCount() {
+		return this.evictionCount;
+	}
+
+	/**
+	 * @return 予算を超えたために開放したデータが使っていたメモリの量の見積もりの合計[byte]
+	 */
+	public synchronized long getEvictedBytes() {
+		return this.evictedBytes;
+	}
+
+	/**
+	 * @return 予算を超えたために開放したデータを読み込み直した回数
+	 */
+	public synchronized long getReloadCount() {
+		return this.reloadCount;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "ResidencyManager[entries=" + this.entries.size() + ", residentBytes=" + this.residentBytes
+				+ ", budget=" + this.budget + ", maxResidentBytes=" + this.maxResidentBytes + ", evictions="
+				+ this.evictionCount + ", evictedBytes=" + this.evictedBytes + ", reloads=" + this.reloadCount + "]";
+	}
+
+	/**
+	 * 図形が使っているメモリの量を見積もります。
+	 * @param shape 図形
+	 * @return 使っているメモリの量の見積もり[byte]
+	 */
+	public static long estimate(final Shape shape) {
+		if (shape == null) {
+			return 0;
+		}
+		long segments = 0;
+		final double[] coords = new double[ResidencyManager.COORDS_NUMBER];
+		for (final PathIterator iterator = shape.getPathIterator(null); !iterator.isDone(); iterator.next()) {
+			iterator.currentSegment(coords);
+			segments++;
+		}
+		return ResidencyManager.OBJECT_BYTES + segments * ResidencyManager.SEGMENT_BYTES;
+	}
+
+	/**
+	 * 要素と頂点の数から、使っているメモリの量を見積もります。
+	 * @param features 要素の数
+	 * @param vertices 頂点の数
+	 * @return 使っているメモリの量の見積もり[byte]
+	 */
+	static long estimate(final long features, final long vertices) {
+		return features * ResidencyManager.OBJECT_BYTES * 2 + vertices * ResidencyManager.SEGMENT_BYTES;
+	}
+
+	/**
+	 * 弧の一覧が使っているメモリの量を見積もります。
+	 * @param arcs 弧の一覧
+	 * @return 使っているメモリの量の見積もり[byte]
+	 */
+	static long estimateArcs(final Map<String, ArcData> arcs) {
+		long ret = 0;
+		if (arcs != null) {
+			for (final ArcData arc : arcs.values()) {
+				ret += ResidencyManager.OBJECT_BYTES + ResidencyManager.estimate(arc.getPath());
+			}
+		}
+		return ret;
+	}
+
+	/**
+	 * ポリゴンの一覧が使っているメモリの量を見積もります。
+	 * @param polygons ポリゴンの一覧
+	 * @return 使っているメモリの量の見積もり[byte]
+	 */
+	static long estimatePolygons(final Map<String, PolygonData> polygons) {
+		long ret = 0;
+		if (polygons != null) {
+			for (final PolygonData polygon : polygons.values()) {
+				ret += ResidencyManager.OBJECT_BYTES + ResidencyManager.estimate(polygon.getArea());
+			}
+		}
+		return ret;
+	}
+
+	/**
+	 * 点の一覧が使っているメモリの量を見積もります。
+	 * @param points 点の一覧
+	 * @return 使っているメモリの量の見積もり[byte]
+	 */
+	static long estimatePoints(final Map<?, ?> points) {
+		return points == null ? 0 : points.size() * ResidencyManager.OBJECT_BYTES * 2;
+	}
+
+	/**
+	 * 国土数値情報の鉄道、道路データの一覧が使っているメモリの量を見積もります。
+	 * @param railways 鉄道、道路データの一覧
+	 * @return 使っているメモリの量の見積もり[byte]
+	 */
+	static long estimateRailways(final Collection<? extends Railway> railways) {
+		long ret = 0;
+		for (final Railway railway : railways) {
+			ret += ResidencyManager.OBJECT_BYTES + ResidencyManager.estimate(railway.getShape());
+		}
+		return ret;
+	}
+
+	/**
+	 * 店舗などの一覧が使っているメモリの量を見積もります。
+	 * @param points 店舗などの一覧
+	 * @return 使っているメモリの量の見積もり[byte]
+	 */
+	static long estimatePoints(final Collection<?> points) {
+		return points == null ? 0 : points.size() * ResidencyManager.OBJECT_BYTES * 2;
+	}
+}
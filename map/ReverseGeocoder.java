@@ -0,0 +1,418 @@
+package map;
+
+import isj.ISJUtil;
+
+import java.awt.Shape;
+import java.awt.geom.Line2D;
+import java.awt.geom.Point2D;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import ksj.ShapeIO;
+import search.RTreeSearch;
+
+/**
+ * 座標から都道府県、市区町村、町丁目、街区を求める逆ジオコーディングを行うクラスです。
+ * 都道府県、市区町村、町丁目のポリゴンと街区レベル位置参照情報の点をR-treeに登録しておき、
+ * 点を含むポリゴンと、近くにある同じ市区町村の街区の代表点を検索します。
+ * 登録は検索の前に済ませておく必要があり、一度検索を始めたら複数のスレッドから同時に検索できます。
+ * @author zenjiro
+ * @since 6.3.0
+ */
+public class ReverseGeocoder {
+	/**
+	 * 街区の代表点を探す距離[m]
+	 */
+	public static final double BLOCK_DISTANCE = 200;
+
+	/**
+	 * 一括で検索するときに一度に読み込む点の数
+	 */
+	private static final int BATCH_SIZE = 100000;
+
+	/**
+	 * 一括で検索するときに、1つのタスクが担当する点の最小数
+	 */
+	private static final int MIN_TASK_SIZE = 256;
+
+	/**
+	 * 都道府県名と市区町村名の区切り文字
+	 */
+	private static final String SEPARATOR = "_";
+
+	/**
+	 * 一括で検索するスレッドプール
+	 */
+	private static final ExecutorService EXECUTOR = Executors.newFixedThreadPool(Runtime.getRuntime()
+			.availableProcessors(), new ThreadFactory() {
+		public Thread newThread(final Runnable runnable) {
+			final Thread thread = new Thread(runnable, "ReverseGeocoder");
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+
+	/**
+	 * 都道府県
+	 */
+	private final RTreeSearch prefectures;
+
+	/**
+	 * 市区町村。ラベルは「都道府県名_市区町村名」
+	 */
+	private final RTreeSearch cities;
+
+	/**
+	 * 町丁目
+	 */
+	private final RTreeSearch tyome;
+
+	/**
+	 * 街区の代表点。ラベルは「都道府県名,市区町村名,町丁目名,街区符号」
+	 */
+	private final RTreeSearch blocks;
+
+	/**
+	 * 空の逆ジオコーダを初期化します。
+	 */
+	public ReverseGeocoder() {
+		this.prefectures = new RTreeSearch();
+		this.cities = new RTreeSearch();
+		this.tyome = new RTreeSearch();
+		this.blocks = new RTreeSearch();
+	}
+
+	/**
+	 * 読み込まれている都道府県、市区町村、地図から逆ジオコーダを作成します。
+	 * 高精度の領域が読み込まれていればそれを使い、なければ荒い領域を使います。
+	 * @param prefectures 都道府県の一覧
+	 * @param maps 地図
+	 * @return 逆ジオコーダ
+	 * @throws IOException 入出力例外
+	 */
+	public static ReverseGeocoder create(final Collection<Prefecture> prefectures, final Map<String, MapData> maps)
+			throws IOException {
+		final ReverseGeocoder ret = new ReverseGeocoder();
+		if (prefectures != null) {
+			for (final Prefecture prefecture : prefectures) {
+				ret.addPrefecture(prefecture.hasFine() ? prefecture.getFineShape() : prefecture.getShape(), prefecture
+						.getLabel());
+				if (prefecture.hasCities()) {
+					for (final City city : prefecture.getCities()) {
+						ret.addCity(city.hasFineShape() ? city.getFineShape() : city.getShape(), prefecture.getLabel(),
+								city.getLabel());
+						if (city.hasIsj()) {
+							ret.addBlocks(city.getIsj());
+						}
+					}
+				}
+			}
+		}
+		if (maps != null) {
+			for (final MapData mapData : maps.values()) {
+				final Map<String, PolygonData> tyome = mapData.getLayers().getTyome();
+				if (tyome != null) {
+					ret.addTyome(tyome.values());
+				}
+			}
+		}
+		ret.build();
+		return ret;
+	}
+
+	/**
+	 * アプリケーションに同梱された都道府県と市区町村の領域から逆ジオコーダを作成します。
+	 * 街区レベル位置参照情報は、座標変換済みのキャッシュファイルがある市区町村だけ読み込みます。
+	 * @return 逆ジオコーダ
+	 * @throws IOException 入出力例外
+	 */
+	public static ReverseGeocoder load() throws IOException {
+		final ReverseGeocoder ret = new ReverseGeocoder();
+		for (final Map.Entry<Shape, String> entry : ShapeIO.readShapes(
+				ReverseGeocoder.class.getResourceAsStream(Const.DIR + "prefectures.csv")).entrySet()) {
+			final String[] values = entry.getValue().split("_");
+			if (values.length == 2) {
+				final String id = values[0];
+				final String label = values[1];
+				Shape shape = entry.getKey();
+				final InputStream fineIn = ReverseGeocoder.class.getResourceAsStream(Const.DIR
+						+ Const.Prefecture.PREFECTURE_PREFIX + id + Const.Prefecture.PREFECTURE_SUFFIX);
+				if (fineIn != null) {
+					for (final Shape fineShape : ShapeIO.readShapes(fineIn).keySet()) {
+						shape = fineShape;
+					}
+				}
+				ret.addPrefecture(shape, label);
+				final InputStream citiesIn = ReverseGeocoder.class.getResourceAsStream(Const.DIR
+						+ Const.Prefecture.CITIES_PREFIX + id + Const.Prefecture.CITIES_SUFFIX);
+				if (citiesIn == null) {
+					System.out.println("WARNING: 市区町村の情報が読み込めませんでした。" + Const.Prefecture.CITIES_PREFIX + id
+							+ Const.Prefecture.CITIES_SUFFIX);
+					continue;
+				}
+				for (final Map.Entry<Shape, String> entry2 : ShapeIO.readShapes(citiesIn).entrySet()) {
+					final String[] values2 = entry2.getValue().split("_");
+					if (values2.length == 4) {
+						ret.addCity(entry2.getKey(), label, values2[3]);
+						if (new File(ISJUtil.CACHE_DIR + File.separator + ISJUtil.CACHE_PREFIX + values2[2]
+								+ ISJUtil.CACHE_SUFFIX).exists()) {
+							// キャッシュファイルがあればダウンロードも座標変換もしないので、パネルは不要
+							ret.addBlocks(ISJUtil.loadIsj(values2[2], null));
+						}
+					} else {
+						System.out.println("WARNING: 市区町村名の表記がおかしいです。" + entry2.getValue());
+					}
+				}
+			} else {
+				System.out.println("WARNING: 都道府県名の表記がおかしいです。" + entry.getValue());
+			}
+		}
+		ret.build();
+		return ret;
+	}
+
+	/**
+	 * 都道府県を登録します。
+	 * @param shape 領域
+	 * @param prefecture 都道府県名
+	 */
+	public void addPrefecture(final Shape shape, final String prefecture) {
+		this.prefectures.insert(shape, prefecture);
+	}
+
+	/**
+	 * 市区町村を登録します。
+	 * @param shape 領域
+	 * @param prefecture 都道府県名
+	 * @param city 市区町村名
+	 */
+	public void addCity(final Shape shape, final String prefecture, final String city) {
+		this.cities.insert(shape, prefecture + ReverseGeocoder.SEPARATOR + city);
+	}
+
+	/**
+	 * 町丁目を登録します。属性のないポリゴンは無視します。
+	 * @param polygons 町丁目のポリゴンの一覧
+	 */
+	public void addTyome(final Collection<PolygonData> polygons) {
+		for (final PolygonData polygon : polygons) {
+			if (polygon.getAttribute() != null && polygon.getArea() != null) {
+				this.tyome.insert(polygon.getArea(), polygon.getAttribute());
+			}
+		}
+	}
+
+	/**
+	 * 街区の代表点を登録します。
+	 * @param isj 街区レベル位置参照情報
+	 */
+	public void addBlocks(final Map<String, Point2D> isj) {
+		for (final Map.Entry<String, Point2D> entry : isj.entrySet()) {
+			this.blocks.insert(new Line2D.Double(entry.getValue(), entry.getValue()), entry.getKey());
+		}
+	}
+
+	/**
+	 * 索引を構築します。
+	 * 複数のスレッドから検索する前に呼び出してください。
+	 */
+	public void build() {
+		this.prefectures.build();
+		this.cities.build();
+		this.tyome.build();
+		this.blocks.build();
+	}
+
+	/**
+	 * 1点の住所を求めます。
+	 * @param point 点（仮想座標）
+	 * @return 住所
+	 */
+	public Address geocode(final Point2D point) {
+		String prefecture = null;
+		String city = null;
+		final Collection<String> cityLabels = this.cities.search(point);
+		if (!cityLabels.isEmpty()) {
+			// 荒い領域が重なっていても結果が変わらないように、名前の順で最初のものを使う
+			final String[] values = new TreeSet<String>(cityLabels).first().split(ReverseGeocoder.SEPARATOR, 2);
+			prefecture = values[0];
+			city = values[1];
+		} else {
+			final Collection<String> prefectureLabels = this.prefectures.search(point);
+			if (!prefectureLabels.isEmpty()) {
+				prefecture = new TreeSet<String>(prefectureLabels).first();
+			}
+		}
+		String tyomeName = null;
+		final Collection<String> tyomeLabels = this.tyome.search(point);
+		if (!tyomeLabels.isEmpty()) {
+			tyomeName = new TreeSet<String>(tyomeLabels).first();
+		}
+		String block = null;
+		for (final String label : this.blocks.searchWithin(point, ReverseGeocoder.BLOCK_DISTANCE)) {
+			final String[] items = label.split(",");
+			if (items.length == 4 && (prefecture == null || prefecture.equals(items[0]))
+					&& (city == null || city.equals(items[1]))) {
+				if (prefecture == null) {
+					prefecture = items[0];
+					city = items[1];
+				}
+				if (tyomeName == null) {
+					tyomeName = items[2];
+				}
+				block = items[3];
+				break;
+			}
+		}
+		return new Address(prefecture, city, tyomeName, block);
+	}
+
+	/**
+	 * 複数の点の住所を並列に求めます。
+	 * @param points 点（仮想座標）の一覧
+	 * @return 住所の一覧。順序は点の一覧と同じです。
+	 * @throws InterruptedException 割り込み例外
+	 */
+	public List<Address> geocode(final List<? extends Point2D> points) throws InterruptedException {
+		this.build();
+		final Address[] ret = new Address[points.size()];
+		final int threads = Runtime.getRuntime().availableProcessors();
+		// 処理時間の偏りをならすため、スレッド数より細かく分ける
+		final int taskSize = Math.max(ReverseGeocoder.MIN_TASK_SIZE, points.size() / (threads * 8) + 1);
+		final List<Callable<Object>> tasks = new ArrayList<Callable<Object>>();
+		for (int start = 0; start < ret.length; start += taskSize) {
+			final int from = start;
+			final int to = Math.min(ret.length, start + taskSize);
+			tasks.add(new Callable<Object>() {
+				public Object call() {
+					for (int i = from; i < to; i++) {
+						ret[i] = ReverseGeocoder.this.geocode(points.get(i));
+					}
+					return null;
+				}
+			});
+		}
+		for (final Future<Object> future : ReverseGeocoder.EXECUTOR.invokeAll(tasks)) {
+			try {
+				future.get();
+			} catch (final ExecutionException e) {
+				if (e.getCause() instanceof RuntimeException) {
+					throw (RuntimeException) e.getCause();
+				}
+				throw new IllegalStateException(e.getCause());
+			}
+		}
+		return Arrays.asList(ret);
+	}
+
+	/**
+	 * 経度,緯度で始まる行からなるCSVファイルを読み込み、各行の末尾に住所を付け加えて書き出します。
+	 * 経度と緯度は世界測地系の度で、「#」で始まる行はそのまま書き出します。
+	 * 経度と緯度が読み取れない行は、住所の列を空にして書き出すので、入力と出力の行は1対1に対応します。
+	 * 大きなファイルでも一定のメモリで処理できるように、一定の行数ごとに並列に検索します。
+	 * @param args 入力ファイル 出力ファイル
+	 * @throws IOException 入出力例外
+	 * @throws InterruptedException 割り込み例外
+	 */
+	public static void main(final String[] args) throws IOException, InterruptedException {
+		if (args.length != 2) {
+			System.out.println("usage: java map.ReverseGeocoder input.csv output.csv");
+			System.exit(1);
+		}
+		final long start = System.currentTimeMillis();
+		final ReverseGeocoder geocoder = ReverseGeocoder.load();
+		System.out.println("loaded in " + (System.currentTimeMillis() - start) + " ms");
+		final BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(args[0]), "SJIS"));
+		final PrintWriter out = new PrintWriter(new File(args[1]), "SJIS");
+		long count = 0;
+		try {
+			final List<String> lines = new ArrayList<String>();
+			final List<Point2D> points = new ArrayList<Point2D>();
+			for (String line = in.readLine(); line != null; line = in.readLine()) {
+				if (line.startsWith("#")) {
+					lines.add(line);
+					points.add(null);
+				} else {
+					final String[] items = line.split(",");
+					Point2D point = null;
+					if (items.length >= 2) {
+						try {
+							// 仮想座標は南向きが正なので、緯度の符号を反転する
+							point = UTMUtil.toUTM(Double.parseDouble(items[0].trim()), -Double.parseDouble(items[1]
+									.trim()));
+						} catch (final NumberFormatException exception) {
+							// 見出しの行など
+						}
+					}
+					if (point == null) {
+						System.out.println("WARNING: invalid line: " + line);
+						// since 6.3.0 行を飛ばさずに、住所の列を空にして書き出す
+						lines.add(line + ",,,,");
+					} else {
+						lines.add(line);
+					}
+					points.add(point);
+				}
+				if (lines.size() == ReverseGeocoder.BATCH_SIZE) {
+					count += ReverseGeocoder.write(geocoder, lines, points, out);
+				}
+			}
+			count += ReverseGeocoder.write(geocoder, lines, points, out);
+		} finally {
+			in.close();
+			out.close();
+		}
+		final long time = System.currentTimeMillis() - start;
+		System.out.println(count + " points in " + time + " ms");
+	}
+
+	/**
+	 * 読み込んだ行の住所を求めて書き出し、行の一覧を空にします。
+	 * @param geocoder 逆ジオコーダ
+	 * @param lines 行の一覧
+	 * @param points 点の一覧。コメント行と、経度と緯度が読み取れない行は null
+	 * @param out 出力先
+	 * @return 住所を求めた点の数
+	 * @throws InterruptedException 割り込み例外
+	 */
+	private static int write(final ReverseGeocoder geocoder, final List<String> lines, final List<Point2D> points,
+			final PrintWriter out) throws InterruptedException {
+		final List<Point2D> targets = new ArrayList<Point2D>();
+		for (final Point2D point : points) {
+			if (point != null) {
+				targets.add(point);
+			}
+		}
+		final List<Address> addresses = geocoder.geocode(targets);
+		int index = 0;
+		for (int i = 0; i < lines.size(); i++) {
+			if (points.get(i) == null) {
+				out.println(lines.get(i));
+			} else {
+				final Address address = addresses.get(index++);
+				out.println(lines.get(i) + "," + address.getPrefecture() + "," + address.getCity() + ","
+						+ address.getTyome() + "," + address.getBlock());
+			}
+		}
+		lines.clear();
+		points.clear();
+		return index;
+	}
+}
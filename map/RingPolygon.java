@@ -0,0 +1,418 @@
+package map;
+
+import java.awt.Rectangle;
+import java.awt.Shape;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Area;
+import java.awt.geom.GeneralPath;
+import java.awt.geom.PathIterator;
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 穴を持つことができる、リングの集合で表された多角形です。
+ * 外周は反時計回り、穴は時計回りに正規化されています。
+ * 辺を共有する多角形どうしは、向きが逆の辺を打ち消し合ってから
+ * 残った辺をつなぎ直すことで、java.awt.geom.Area の演算を使わずに結合できます。
+ * 自己交差などで辺をつなぎ直せないときだけ java.awt.geom.Area を使います。
+ * @author zenjiro
+ * @since 6.3.0
+ */
+class RingPolygon implements Shape {
+	/**
+	 * 座標を同一視する細かさの逆数
+	 * 図葉ごとに座標変換するので、図郭の縁の座標がわずかにずれることがあります。
+	 * MapData が図郭の縁の座標を (int) で整数に切り捨てて比較しているのに合わせています。
+	 */
+	private static final double SCALE = 1;
+
+	/**
+	 * 曲線を直線で近似するときの平坦度
+	 */
+	private static final double FLATNESS = 0.1;
+
+	/**
+	 * リングの一覧
+	 * 各リングは x0, y0, x1, y1, ... の順に頂点の座標を持ち、最初の頂点は繰り返しません。
+	 */
+	private final List<double[]> rings;
+
+	/**
+	 * 描画、内外判定に使う経路
+	 */
+	private final GeneralPath path;
+
+	/**
+	 * リングの一覧から多角形を初期化します。
+	 * @param rings 向きが正規化されたリングの一覧
+	 */
+	private RingPolygon(final List<double[]> rings) {
+		this.rings = rings;
+		this.path = new GeneralPath(PathIterator.WIND_NON_ZERO);
+		for (final double[] ring : rings) {
+			this.path.moveTo((float) ring[0], (float) ring[1]);
+			for (int i = 2; i < ring.length; i += 2) {
+				this.path.lineTo((float) ring[i], (float) ring[i + 1]);
+			}
+			this.path.closePath();
+		}
+	}
+
+	/**
+	 * 図形から多角形を作成します。
+	 * 同じ経路を往復する辺（外周と穴をつなぐ辺など）は取り除かれます。
+	 * @param shape 図形
+	 * @return 多角形。リングに分解できなければ java.awt.geom.Area
+	 */
+	static Shape create(final Shape shape) {
+		final EdgeGraph graph = new EdgeGraph();
+		if (!graph.addShape(shape)) {
+			return new Area(shape);
+		}
+		final List<double[]> rings = graph.stitch();
+		if (rings == null || rings.isEmpty()) {
+			return new Area(shape);
+		}
+		RingPolygon.normalize(rings);
+		return new RingPolygon(rings);
+	}
+
+	/**
+	 * 辺を共有する図形を結合します。
+	 * 共有する辺を打ち消し合い、残った辺をつなぎ直します。
+	 * @param shapes 図形の一覧
+	 * @return 結合した図形。辺をつなぎ直せなければ java.awt.geom.Area
+	 */
+	static Shape merge(final Collection<? extends Shape> shapes) {
+		final EdgeGraph graph = new EdgeGraph();
+		boolean isValid = true;
+		for (final Shape shape : shapes) {
+			if (shape instanceof RingPolygon) {
+				for (final double[] ring : ((RingPolygon) shape).rings) {
+					graph.addRing(ring, ring.length);
+				}
+			} else {
+				isValid = false;
+				break;
+			}
+		}
+		if (isValid) {
+			final List<double[]> rings = graph.stitch();
+			if (rings != null && !rings.isEmpty()) {
+				return new RingPolygon(rings);
+			}
+		}
+		final Area ret = new Area();
+		for (final Shape shape : shapes) {
+			ret.add(shape instanceof Area ? (Area) shape : new Area(shape));
+		}
+		return ret;
+	}
+
+	/**
+	 * リングの向きを正規化します。
+	 * 他のリングに奇数回含まれるリングを穴とみなします。
+	 * @param rings リングの一覧
+	 */
+	private static void normalize(final List<double[]> rings) {
+		for (int i = 0; i < rings.size(); i++) {
+			final double[] ring = rings.get(i);
+			int depth = 0;
+			for (int j = 0; j < rings.size(); j++) {
+				if (i != j && RingPolygon.contains(rings.get(j), ring[0], ring[1])) {
+					depth++;
+				}
+			}
+			final boolean isHole = depth % 2 == 1;
+			final boolean isCounterClockwise = RingPolygon.getSignedArea(ring) > 0;
+			if (isHole == isCounterClockwise) {
+				RingPolygon.reverse(ring);
+			}
+		}
+	}
+
+	/**
+	 * @param ring リング
+	 * @return 符号付き面積の2倍
+	 */
+	private static double getSignedArea(final double[] ring) {
+		double ret = 0;
+		for (int i = 0; i < ring.length; i += 2) {
+			final int j = (i + 2) % ring.length;
+			ret += ring[i] * ring[j + 1] - ring[j] * ring[i + 1];
+		}
+		return ret;
+	}
+
+	/**
+	 * 偶奇規則で、点がリングの内側にあるかどうかを調べます。
+	 * @param ring リング
+	 * @param x x座標
+	 * @param y y座標
+	 * @return 内側にあるかどうか
+	 */
+	private static boolean contains(final double[] ring, final double x, final double y) {
+		boolean ret = false;
+		for (int i = 0, j = ring.length - 2; i < ring.length; j = i, i += 2) {
+			final double xi = ring[i];
+			final double yi = ring[i + 1];
+			final double xj = ring[j];
+			final double yj = ring[j + 1];
+			if (((yi > y) != (yj > y)) && (x < (xj - xi) * (y - yi) / (yj - yi) + xi)) {
+				ret = !ret;
+			}
+		}
+		return ret;
+	}
+
+	/**
+	 * リングの向きを反転します。
+	 * @param ring リング
+	 */
+	private static void reverse(final double[] ring) {
+		for (int i = 0, j = ring.length - 2; i < j; i += 2, j -= 2) {
+			final double x = ring[i];
+			final double y = ring[i + 1];
+			ring[i] = ring[j];
+			ring[i + 1] = ring[j + 1];
+			ring[j] = x;
+			ring[j + 1] = y;
+		}
+	}
+
+	/**
+	 * @return リングの数
+	 */
+	int getRingCount() {
+		return this.rings.size();
+	}
+
+	public boolean contains(final double x, final double y) {
+		return this.path.contains(x, y);
+	}
+
+	public boolean contains(final double x, final double y, final double w, final double h) {
+		return this.path.contains(x, y, w, h);
+	}
+
+	public boolean contains(final Point2D p) {
+		return this.path.contains(p);
+	}
+
+	public boolean contains(final Rectangle2D r) {
+		return this.path.contains(r);
+	}
+
+	public Rectangle getBounds() {
+		return this.path.getBounds();
+	}
+
+	public Rectangle2D getBounds2D() {
+		return this.path.getBounds2D();
+	}
+
+	public PathIterator getPathIterator(final AffineTransform at) {
+		return this.path.getPathIterator(at);
+	}
+
+	public PathIterator getPathIterator(final AffineTransform at, final double flatness) {
+		return this.path.getPathIterator(at, flatness);
+	}
+
+	public boolean intersects(final double x, final double y, final double w, final double h) {
+		return this.path.intersects(x, y, w, h);
+	}
+
+	public boolean intersects(final Rectangle2D r) {
+		return this.path.intersects(r);
+	}
+
+	/**
+	 * 有向辺の集合です。
+	 * 逆向きの辺が加えられると、打ち消し合います。
+	 */
+	private static class EdgeGraph {
+		/**
+		 * 頂点と、その頂点から出る辺の終点の一覧
+		 */
+		private final Map<Vertex, List<Vertex>> edges = new LinkedHashMap<Vertex, List<Vertex>>();
+
+		/**
+		 * 頂点の一覧
+		 */
+		private final Map<Vertex, Vertex> vertices = new LinkedHashMap<Vertex, Vertex>();
+
+		/**
+		 * 図形の全ての辺を加えます。
+		 * @param shape 図形
+		 * @return 加えられたかどうか
+		 */
+		boolean addShape(final Shape shape) {
+			final PathIterator iterator = shape.getPathIterator(null, RingPolygon.FLATNESS);
+			final double[] coords = new double[6];
+			double[] ring = new double[16];
+			int length = 0;
+			while (!iterator.isDone()) {
+				final int type = iterator.currentSegment(coords);
+				if (type == PathIterator.SEG_MOVETO || type == PathIterator.SEG_CLOSE) {
+					this.addRing(ring, length);
+					length = 0;
+				}
+				if (type == PathIterator.SEG_MOVETO || type == PathIterator.SEG_LINETO) {
+					if (Double.isNaN(coords[0]) || Double.isNaN(coords[1])) {
+						return false;
+					}
+					if (length + 2 > ring.length) {
+						final double[] ring2 = new double[ring.length * 2];
+						System.arraycopy(ring, 0, ring2, 0, length);
+						ring = ring2;
+					}
+					ring[length++] = coords[0];
+					ring[length++] = coords[1];
+				}
+				iterator.next();
+			}
+			this.addRing(ring, length);
+			return true;
+		}
+
+		/**
+		 * 閉じたリングの全ての辺を加えます。
+		 * @param ring リング
+		 * @param length 座標の数
+		 */
+		void addRing(final double[] ring, final int length) {
+			if (length < 6) {
+				return;
+			}
+			for (int i = 0; i < length; i += 2) {
+				final int j = (i + 2) % length;
+				this.addEdge(this.getVertex(ring[i], ring[i + 1]), this.getVertex(ring[j], ring[j + 1]));
+			}
+		}
+
+		/**
+		 * @param x x座標
+		 * @param y y座標
+		 * @return 頂点
+		 */
+		private Vertex getVertex(final double x, final double y) {
+			final Vertex vertex = new Vertex(x, y);
+			final Vertex ret = this.vertices.get(vertex);
+			if (ret != null) {
+				return ret;
+			}
+			this.vertices.put(vertex, vertex);
+			return vertex;
+		}
+
+		/**
+		 * 辺を加えます。逆向きの辺があれば、両方を取り除きます。
+		 * @param from 始点
+		 * @param to 終点
+		 */
+		private void addEdge(final Vertex from, final Vertex to) {
+			if (from == to) {
+				return;
+			}
+			final List<Vertex> reverse = this.edges.get(to);
+			if (reverse != null && reverse.remove(from)) {
+				return;
+			}
+			List<Vertex> list = this.edges.get(from);
+			if (list == null) {
+				list = new ArrayList<Vertex>(2);
+				this.edges.put(from, list);
+			}
+			list.add(to);
+		}
+
+		/**
+		 * 残った辺をつなぎ直してリングにします。
+		 * @return リングの一覧。つなぎ直せなければ null
+		 */
+		List<double[]> stitch() {
+			final List<double[]> ret = new ArrayList<double[]>();
+			for (final Map.Entry<Vertex, List<Vertex>> entry : this.edges.entrySet()) {
+				final Vertex start = entry.getKey();
+				while (!entry.getValue().isEmpty()) {
+					final List<Vertex> ring = new ArrayList<Vertex>();
+					Vertex vertex = start;
+					do {
+						final List<Vertex> list = this.edges.get(vertex);
+						if (list == null || list.isEmpty()) {
+							return null;
+						}
+						ring.add(vertex);
+						vertex = list.remove(list.size() - 1);
+					} while (vertex != start);
+					if (ring.size() >= 3) {
+						final double[] coords = new double[ring.size() * 2];
+						for (int i = 0; i < ring.size(); i++) {
+							coords[i * 2] = ring.get(i).x;
+							coords[i * 2 + 1] = ring.get(i).y;
+						}
+						ret.add(coords);
+					}
+				}
+			}
+			return ret;
+		}
+	}
+
+	/**
+	 * 頂点です。
+	 * 座標を切り捨てた値が等しい頂点を同一視します。
+	 */
+	private static class Vertex {
+		/**
+		 * x座標
+		 */
+		final double x;
+
+		/**
+		 * y座標
+		 */
+		final double y;
+
+		/**
+		 * 切り捨てたx座標
+		 */
+		private final long truncatedX;
+
+		/**
+		 * 切り捨てたy座標
+		 */
+		private final long truncatedY;
+
+		/**
+		 * @param x x座標
+		 * @param y y座標
+		 */
+		Vertex(final double x, final double y) {
+			this.x = x;
+			this.y = y;
+			this.truncatedX = (long) (x * RingPolygon.SCALE);
+			this.truncatedY = (long) (y * RingPolygon.SCALE);
+		}
+
+		@Override
+		public boolean equals(final Object object) {
+			if (object instanceof Vertex) {
+				final Vertex vertex = (Vertex) object;
+				return this.truncatedX == vertex.truncatedX && this.truncatedY == vertex.truncatedY;
+			}
+			return false;
+		}
+
+		@Override
+		public int hashCode() {
+			return (int) (this.truncatedX * 31 + this.truncatedY);
+		}
+	}
+}
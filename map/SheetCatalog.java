@@ -0,0 +1,410 @@
+package map;
+
+import java.awt.Shape;
+import java.awt.geom.GeneralPath;
+import java.awt.geom.PathIterator;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.regex.Pattern;
+
+/**
+ * 地図データのディレクトリにある図葉の目録です。
+ * 図葉ごとに、名前、地図がある領域の4つの頂点（仮想座標）、領域を書いたファイルの大きさと更新時刻を記録して、
+ * ディレクトリごとに1つのファイルに保存します。
+ * 起動するときは目録を1回で読み込み、領域を書いたファイルの大きさや更新時刻が変わった図葉だけを並列に読み直すので、
+ * 図葉ごとにファイルを開いて座標変換する必要がありません。
+ * @author zenjiro
+ * @since 6.3.0
+ */
+public class SheetCatalog {
+	/**
+	 * 目録のファイルの先頭に書く値
+	 */
+	private static final int MAGIC = 0x53434132;
+
+	/**
+	 * 図葉のディレクトリの名前のパターン
+	 */
+	private static final Pattern PATTERN = Pattern.compile("[0-9][0-9][a-zA-Z][a-zA-Z][0-9][0-9][0-9]");
+
+	/**
+	 * 1つの図葉の情報です。
+	 * @author zenjiro
+	 * @since 6.3.0
+	 */
+	private static class Entry {
+		/**
+		 * 地図の名前
+		 */
+		final String mapName;
+
+		/**
+		 * 領域を書いたファイルの大きさ[byte]
+		 */
+		final long length;
+
+		/**
+		 * 領域を書いたファイルの更新時刻[ms]
+		 */
+		final long modified;
+
+		/**
+		 * 図葉のディレクトリの更新時刻[ms]
+		 */
+		final long directoryModified;
+
+		/**
+		 * 地図がある領域の4つの頂点の座標（仮想座標）。領域が書かれていなければ null
+		 */
+		final float[] coordinates;
+
+		/**
+		 * 図葉の情報を初期化します。
+		 * @param mapName 地図の名前
+		 * @param length 領域を書いたファイルの大きさ[byte]
+		 * @param modified 領域を書いたファイルの更新時刻[ms]
+		 * @param directoryModified 図葉のディレクトリの更新時刻[ms]
+		 * @param coordinates 地図がある領域の4つの頂点の座標
+		 */
+		Entry(final String mapName, final long length, final long modified, final long directoryModified,
+				final float[] coordinates) {
+			this.mapName = mapName;
+			this.length = length;
+			this.modified = modified;
+			this.directoryModified = directoryModified;
+			this.coordinates = coordinates;
+		}
+
+		/**
+		 * @return 地図がある領域（仮想座標）
+		 */
+		Shape toShape() {
+			final GeneralPath ret = new GeneralPath();
+			ret.moveTo(this.coordinates[0], this.coordinates[1]);
+			for (int i = 2; i < this.coordinates.length; i += 2) {
+				ret.lineTo(this.coordinates[i], this.coordinates[i + 1]);
+			}
+			ret.closePath();
+			return ret;
+		}
+	}
+
+	/**
+	 * 地図データのディレクトリ
+	 */
+	private final String baseDir;
+
+	/**
+	 * 地図の名前と図葉の情報の対応表
+	 */
+	private final Map<String, Entry> entries;
+
+	/**
+	 * 目録を開いたときに読み直した図葉の数
+	 */
+	private int updateCount;
+
+	/**
+	 * 空の目録を初期化します。
+	 * @param baseDir 地図データのディレクトリ
+	 */
+	private SheetCatalog(final String baseDir) {
+		this.baseDir = baseDir;
+		this.entries = new TreeMap<String, Entry>();
+	}
+
+	/**
+	 * 地図データのディレクトリの目録を開きます。
+	 * 保存された目録を読み込み、変わった図葉だけを読み直して、変わっていれば保存し直します。
+	 * @param baseDir 地図データのディレクトリ
+	 * @return 目録
+	 * @throws IOException 入出力例外
+	 */
+	public static SheetCatalog open(final String baseDir) throws IOException {
+		final SheetCatalog ret = new SheetCatalog(baseDir);
+		final File file = SheetCatalog.getCacheFile(baseDir);
+		Map<String, Entry> saved = new HashMap<String, Entry>();
+		if (file.exists()) {
+			try {
+				saved = SheetCatalog.read(file, baseDir);
+			} catch (final IOException exception) {
+				System.out.println("WARNING: 図葉の目録が壊れているので作り直します。" + file);
+			}
+		}
+		final List<String> changed = new ArrayList<String>();
+		final String[] files = new File(baseDir).list();
+		if (files != null) {
+			for (final String name : files) {
+				if (SheetCatalog.PATTERN.matcher(name).matches()) {
+					final String mapName = name.toLowerCase();
+					final Entry entry = saved.get(mapName);
+					final File textFile = SheetCatalog.getTextFile(baseDir, mapName);
+					if (entry != null && entry.length == textFile.length() && entry.modified == textFile.lastModified()
+							&& entry.directoryModified == textFile.getParentFile().lastModified()) {
+						ret.entries.put(mapName, entry);
+					} else {
+						changed.add(mapName);
+					}
+				}
+			}
+		}
+		ret.update(changed);
+		if (!changed.isEmpty() || ret.entries.size() != saved.size()) {
+			ret.write(file);
+		}
+		return ret;
+	}
+
+	/**
+	 * 図葉の情報を並列に読み込みます。
+	 * 読み込めなかった図葉は目録に含めません。
+	 * @param mapNames 地図の名前の一覧
+	 * @throws IOException 入出力例外
+	 */
+	private void update(final List<String> mapNames) throws IOException {
+		if (mapNames.isEmpty()) {
+			return;
+		}
+		final ExecutorService executor = Executors.newFixedThreadPool(Math.min(mapNames.size(), Runtime
+				.getRuntime().availableProcessors()), new ThreadFactory() {
+			public Thread newThread(final Runnable runnable) {
+				final Thread thread = new Thread(runnable, "SheetCatalog");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		try {
+			final List<Future<Entry>> futures = new ArrayList<Future<Entry>>();
+			for (final String mapName : mapNames) {
+				futures.add(executor.submit(new Callable<Entry>() {
+					public Entry call() throws IOException {
+						return SheetCatalog.createEntry(SheetCatalog.this.baseDir, mapName);
+					}
+				}));
+			}
+			for (int i = 0; i < futures.size(); i++) {
+				try {
+					final Entry entry = futures.get(i).get();
+					this.entries.put(entry.mapName, entry);
+					this.updateCount++;
+				} catch (final ExecutionException exception) {
+					System.out.println("WARNING: 図葉の領域を読み込めませんでした。" + mapNames.get(i) + ": "
+							+ exception.getCause());
+				}
+			}
+		} catch (final InterruptedException exception) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("interrupted while updating the sheet catalog of " + this.baseDir);
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	/**
+	 * 図葉の情報をファイルから読み込みます。
+	 * @param baseDir 地図データのディレクトリ
+	 * @param mapName 地図の名前
+	 * @return 図葉の情報
+	 * @throws IOException 入出力例外
+	 */
+	static Entry createEntry(final String baseDir, final String mapName) throws IOException {
+		final File textFile = SheetCatalog.getTextFile(baseDir, mapName);
+		final File directory = textFile.getParentFile();
+		// 読んでいる間に書き換えられたら次回に読み直すように、先に大きさと更新時刻を調べる
+		final long length = textFile.length();
+		final long modified = textFile.lastModified();
+		final long directoryModified = directory.lastModified();
+		final Shape rectangle = MapData.readRectangle(baseDir, mapName);
+		float[] coordinates = null;
+		if (rectangle != null) {
+			final List<Float> list = new ArrayList<Float>();
+			final float[] segment = new float[6];
+			for (final PathIterator iterator = rectangle.getPathIterator(null); !iterator.isDone(); iterator.next()) {
+				if (iterator.currentSegment(segment) != PathIterator.SEG_CLOSE) {
+					list.add(segment[0]);
+					list.add(segment[1]);
+				}
+			}
+			coordinates = new float[list.size()];
+			for (int i = 0; i < coordinates.length; i++) {
+				coordinates[i] = list.get(i);
+			}
+		}
+		return new Entry(mapName, length, modified, directoryModified, coordinates);
+	}
+
+	/**
+	 * @return 領域が分かっている図葉の地図の名前の一覧（名前順）
+	 */
+	public Collection<String> getMapNames() {
+		final Collection<String> ret = new ArrayList<String>();
+		for (final Entry entry : this.entries.values()) {
+			if (entry.coordinates != null) {
+				ret.add(entry.mapName);
+			}
+		}
+		return ret;
+	}
+
+	/**
+	 * 図葉のファイルを開かずに地図を作ります。
+	 * @param mapName 地図の名前
+	 * @return 地図
+	 */
+	public MapData createMapData(final String mapName) {
+		return new MapData(this.baseDir, mapName, this.entries.get(mapName).toShape());
+	}
+
+	/**
+	 * @return 目録を開いたときに読み直した図葉の数
+	 */
+	public int getUpdateCount() {
+		return this.updateCount;
+	}
+
+	/**
+	 * @param baseDir 地図データのディレクトリ
+	 * @param mapName 地図の名前
+	 * @return 地図がある領域を書いたファイル
+	 */
+	private static File getTextFile(final String baseDir, final String mapName) {
+		return new File(baseDir + File.separator + mapName.toUpperCase() + File.separator + mapName.toLowerCase()
+				+ ".txt");
+	}
+
+	/**
+	 * @param baseDir 地図データのディレクトリ
+	 * @return 地図データのディレクトリの目録のファイル
+	 * @throws IOException 入出力例外
+	 */
+	public static File getCacheFile(final String baseDir) throws IOException {
+		return new File(Const.SheetCatalog.CACHE_DIR + File.separator + Const.SheetCatalog.PREFIX
+				+ Integer.toHexString(new File(baseDir).getCanonicalPath().hashCode()) + Const.SheetCatalog.SUFFIX);
+	}
+
+	/**
+	 * 保存された目録を読み込みます。
+	 * @param file ファイル
+	 * @param baseDir 地図データのディレクトリ
+	 * @return 地図の名前と図葉の情報の対応表。別のディレクトリの目録なら空の対応表
+	 * @throws IOException 入出力例外
+	 */
+	private static Map<String, Entry> read(final File file, final String baseDir) throws IOException {
+		final Map<String, Entry> ret = new HashMap<String, Entry>();
+		final FileInputStream in = new FileInputStream(file);
+		try {
+			final FileChannel channel = in.getChannel();
+			final ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			if (channel.size() < 4 || buffer.getInt() != SheetCatalog.MAGIC) {
+				throw new IOException("not a sheet catalog file: " + file);
+			}
+			if (!SheetCatalog.readString(buffer).equals(new File(baseDir).getCanonicalPath())) {
+				return ret;
+			}
+			final int count = buffer.getInt();
+			for (int i = 0; i < count; i++) {
+				final String mapName = SheetCatalog.readString(buffer);
+				final long length = buffer.getLong();
+				final long modified = buffer.getLong();
+				final long directoryModified = buffer.getLong();
+				final int coordinateCount = buffer.getInt();
+				final float[] coordinates = coordinateCount < 0 ? null : new float[coordinateCount];
+				if (coordinates != null) {
+					buffer.asFloatBuffer().get(coordinates);
+					buffer.position(buffer.position() + coordinateCount * 4);
+				}
+				ret.put(mapName, new Entry(mapName, length, modified, directoryModified, coordinates));
+			}
+		} catch (final BufferUnderflowException exception) {
+			throw new IOException("unexpected end of sheet catalog file: " + file);
+		} finally {
+			in.close();
+		}
+		return ret;
+	}
+
+	/**
+	 * 目録をファイルに保存します。
+	 * 書き出している途中の目録を読まないように、一時ファイルに書いてから名前を変えます。
+	 * @param file ファイル
+	 * @throws IOException 入出力例外
+	 */
+	private void write(final File file) throws IOException {
+		file.getParentFile().mkdirs();
+		final File temporaryFile = new File(file.getPath() + ".tmp");
+		final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(
+				temporaryFile)));
+		try {
+			out.writeInt(SheetCatalog.MAGIC);
+			SheetCatalog.writeString(out, new File(this.baseDir).getCanonicalPath());
+			out.writeInt(this.entries.size());
+			for (final Entry entry : this.entries.values()) {
+				SheetCatalog.writeString(out, entry.mapName);
+				out.writeLong(entry.length);
+				out.writeLong(entry.modified);
+				out.writeLong(entry.directoryModified);
+				if (entry.coordinates == null) {
+					out.writeInt(-1);
+				} else {
+					out.writeInt(entry.coordinates.length);
+					for (final float coordinate : entry.coordinates) {
+						out.writeFloat(coordinate);
+					}
+				}
+			}
+		} finally {
+			out.close();
+		}
+		if ((file.exists() && !file.delete()) || !temporaryFile.renameTo(file)) {
+			System.out.println("WARNING: 図葉の目録を保存できませんでした。" + file);
+		}
+	}
+
+	/**
+	 * @param buffer バッファ
+	 * @return バッファから読み込んだ文字列
+	 * @throws IOException 入出力例外
+	 */
+	private static String readString(final ByteBuffer buffer) throws IOException {
+		final byte[] bytes = new byte[buffer.getShort() & 0xFFFF];
+		buffer.get(bytes);
+		return new String(bytes, "UTF-8");
+	}
+
+	/**
+	 * @param out 出力ストリーム
+	 * @param string 書き出す文字列
+	 * @throws IOException 入出力例外
+	 */
+	private static void writeString(final DataOutputStream out, final String string) throws IOException {
+		final byte[] bytes = string.getBytes("UTF-8");
+		out.writeShort(bytes.length);
+		out.write(bytes);
+	}
+
+	@Override
+	public String toString() {
+		return "[SheetCatalog baseDir=" + this.baseDir + ", sheets=" + this.entries.size() + ", updated="
+				+ this.updateCount + "]";
+	}
+}
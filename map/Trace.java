@@ -0,0 +1,173 @@
+package map;
+
+import java.awt.Shape;
+import java.awt.geom.PathIterator;
+import java.util.Collection;
+import java.util.Map;
+
+import map.KsjRailway.Railway;
+
+/**
+ * 地図の読み込みや描画の単位ごとに、JDK Flight Recorder のイベントを記録するクラスです。
+ * JDK Flight Recorder がない JVM では何もしません。
+ * イベントの型は TraceEvents にあり、JDK Flight Recorder があるときだけ読み込まれます。
+ * 使い方は次のとおりです。
+ * <pre>
+ * final Object event = Trace.begin(Trace.Kind.SHEET_LOAD);
+ * // 処理
+ * if (Trace.shouldCommit(event)) {
+ *     Trace.commit(event, 名前, 層, 要素の数, 頂点の数, バイト数);
+ * }
+ * </pre>
+ * @author zenjiro
+ * @since 6.3.0
+ */
+public class Trace {
+	/**
+	 * イベントの種類の列挙型です。
+	 * @author zenjiro
+	 * @since 6.3.0
+	 */
+	public enum Kind {
+		/**
+		 * 図郭の1つの層の読み込み
+		 */
+		SHEET_LOAD,
+		/**
+		 * 都道府県の市区町村の一覧、高精度の領域の読み込み
+		 */
+		PREFECTURE_LOAD,
+		/**
+		 * 市区町村の国土数値情報の鉄道、道路データの読み込み
+		 */
+		KSJ_LOAD,
+		/**
+		 * 市区町村の街区レベル位置参照情報の読み込み
+		 */
+		ISJ_LOAD,
+		/**
+		 * 1枚のビットマップキャッシュの描画
+		 */
+		TILE_RENDER,
+		/**
+		 * 経路の1区間の探索
+		 */
+		ROUTE_LEG,
+		/**
+		 * 属性を表示する位置の計算
+		 */
+		LABEL_PLACEMENT
+	}
+
+	/**
+	 * JDK Flight Recorder が使えるかどうか
+	 */
+	private static final boolean IS_AVAILABLE = Trace.isAvailable();
+
+	/**
+	 * @return JDK Flight Recorder が使えるかどうか
+	 */
+	private static boolean isAvailable() {
+		try {
+			Class.forName("jdk.jfr.Event");
+			return true;
+		} catch (final ClassNotFoundException exception) {
+			return false;
+		} catch (final LinkageError error) {
+			return false;
+		}
+	}
+
+	/**
+	 * イベントを始めます。
+	 * @param kind 種類
+	 * @return イベント。JDK Flight Recorder がなければ null
+	 */
+	public static Object begin(final Kind kind) {
+		return Trace.IS_AVAILABLE ? TraceEvents.begin(kind) : null;
+	}
+
+	/**
+	 * イベントを記録する必要があるかどうかを調べます。
+	 * 記録していないときに要素や頂点を数えないように、commit の前に呼び出します。
+	 * @param event イベント
+	 * @return 記録する必要があるかどうか
+	 */
+	public static boolean shouldCommit(final Object event) {
+		return event != null && TraceEvents.shouldCommit(event);
+	}
+
+	/**
+	 * イベントを終えて記録します。
+	 * @param event イベント
+	 * @param name 図郭、市区町村、都道府県、ビットマップキャッシュ、経路などの名前
+	 * @param layer 層、データ、速度などの種類
+	 * @param features 要素の数
+	 * @param vertices 頂点の数
+	 * @param bytes バイト数
+	 */
+	public static void commit(final Object event, final String name, final String layer, final long features,
+			final long vertices, final long bytes) {
+		if (event != null) {
+			TraceEvents.commit(event, name, layer, features, vertices, bytes);
+		}
+	}
+
+	/**
+	 * 図形の頂点を数えます。
+	 * @param shape 図形
+	 * @return 頂点の数
+	 */
+	public static long countVertices(final Shape shape) {
+		if (shape == null) {
+			return 0;
+		}
+		long ret = 0;
+		for (final PathIterator iterator = shape.getPathIterator(null); !iterator.isDone(); iterator.next()) {
+			ret++;
+		}
+		return ret;
+	}
+
+	/**
+	 * 弧、ポリゴン、点、鉄道データ、図形の頂点を数えます。
+	 * @param features 弧、ポリゴン、点、鉄道データ、図形の一覧
+	 * @return 頂点の数
+	 */
+	public static long countVertices(final Collection<?> features) {
+		long ret = 0;
+		if (features != null) {
+			for (final Object feature : features) {
+				if (feature instanceof ArcData) {
+					ret += Trace.countVertices(((ArcData) feature).getPath());
+				} else if (feature instanceof PolygonData) {
+					ret += Trace.countVertices(((PolygonData) feature).getArea());
+				} else if (feature instanceof Railway) {
+					ret += Trace.countVertices(((Railway) feature).getShape());
+				} else if (feature instanceof Shape) {
+					ret += Trace.countVertices((Shape) feature);
+				} else {
+					ret++;
+				}
+			}
+		}
+		return ret;
+	}
+
+	/**
+	 * 図郭の1つの層の読み込みを記録します。
+	 * @param event イベント
+	 * @param mapName 図郭の名前
+	 * @param layer 層の名前
+	 * @param features 読み込んだ層。読み込まなかったときは null
+	 */
+	static void commitSheet(final Object event, final String mapName, final String layer,
+			final Map<String, ?> features) {
+		if (Trace.shouldCommit(event)) {
+			final Collection<?> values = features == null ? null : features.values();
+			final long vertices = Trace.countVertices(values);
+			final long size = values == null ? 0 : values.size();
+			Trace.commit(event, mapName, layer, size, vertices, ResidencyManager.estimate(size, vertices));
+		}
+	}
+}
@@ -0,0 +1,178 @@
+package map;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * JDK Flight Recorder のイベントの型を集めたクラスです。
+ * JDK Flight Recorder がない JVM で読み込まれないように、Trace からだけ使います。
+ * @author zenjiro
+ * @since 6.3.0
+ */
+class TraceEvents {
+	/**
+	 * 地図のイベントに共通する項目をまとめた抽象クラスです。
+	 * @author zenjiro
+	 * @since 6.3.0
+	 */
+	@Category("Map")
+	abstract static class MapEvent extends Event {
+		/**
+		 * 名前
+		 */
+		@Label("Name")
+		@Description("図郭、市区町村、都道府県、ビットマップキャッシュ、経路などの名前")
+		String name;
+
+		/**
+		 * 種類
+		 */
+		@Label("Layer")
+		@Description("層、データ、速度などの種類")
+		String layer;
+
+		/**
+		 * 要素の数
+		 */
+		@Label("Features")
+		long features;
+
+		/**
+		 * 頂点の数
+		 */
+		@Label("Vertices")
+		long vertices;
+
+		/**
+		 * バイト数
+		 */
+		@Label("Bytes")
+		@DataAmount
+		long bytes;
+	}
+
+	/**
+	 * 図郭の1つの層の読み込みです。
+	 */
+	@Name("map.SheetLoad")
+	@Label("Sheet Load")
+	static class SheetLoad extends MapEvent {
+	}
+
+	/**
+	 * 都道府県の市区町村の一覧、高精度の領域の読み込みです。
+	 */
+	@Name("map.PrefectureLoad")
+	@Label("Prefecture Load")
+	static class PrefectureLoad extends MapEvent {
+	}
+
+	/**
+	 * 市区町村の国土数値情報の鉄道、道路データの読み込みです。
+	 */
+	@Name("map.KsjLoad")
+	@Label("KSJ Load")
+	static class KsjLoad extends MapEvent {
+	}
+
+	/**
+	 * 市区町村の街区レベル位置参照情報の読み込みです。
+	 */
+	@Name("map.IsjLoad")
+	@Label("ISJ Load")
+	static class IsjLoad extends MapEvent {
+	}
+
+	/**
+	 * 1枚のビットマップキャッシュの描画です。
+	 */
+	@Name("map.TileRender")
+	@Label("Tile Render")
+	static class TileRender extends MapEvent {
+	}
+
+	/**
+	 * 経路の1区間の探索です。
+	 */
+	@Name("map.RouteLeg")
+	@Label("Route Leg")
+	static class RouteLeg extends MapEvent {
+	}
+
+	/**
+	 * 属性を表示する位置の計算です。
+	 */
+	@Name("map.LabelPlacement")
+	@Label("Label Placement")
+	static class LabelPlacement extends MapEvent {
+	}
+
+	/**
+	 * イベントを始めます。
+	 * @param kind 種類
+	 * @return イベント
+	 */
+	static Object begin(final Trace.Kind kind) {
+		final MapEvent ret;
+		switch (kind) {
+		case SHEET_LOAD:
+			ret = new SheetLoad();
+			break;
+		case PREFECTURE_LOAD:
+			ret = new PrefectureLoad();
+			break;
+		case KSJ_LOAD:
+			ret = new KsjLoad();
+			break;
+		case ISJ_LOAD:
+			ret = new IsjLoad();
+			break;
+		case TILE_RENDER:
+			ret = new TileRender();
+			break;
+		case ROUTE_LEG:
+			ret = new RouteLeg();
+			break;
+		default:
+			ret = new LabelPlacement();
+			break;
+		}
+		ret.begin();
+		return ret;
+	}
+
+	/**
+	 * @param event イベント
+	 * @return 記録する必要があるかどうか
+	 */
+	static boolean shouldCommit(final Object event) {
+		return ((MapEvent) event).shouldCommit();
+	}
+
+	/**
+	 * イベントを終えて記録します。
+	 * @param event イベント
+	 * @param name 名前
+	 * @param layer 種類
+	 * @param features 要素の数
+	 * @param vertices 頂点の数
+	 * @param bytes バイト数
+	 */
+	static void commit(final Object event, final String name, final String layer, final long features,
+			final long vertices, final long bytes) {
+		final MapEvent mapEvent = (MapEvent) event;
+		mapEvent.end();
+		if (mapEvent.shouldCommit()) {
+			mapEvent.name = name;
+			mapEvent.layer = layer;
+			mapEvent.features = features;
+			mapEvent.vertices = vertices;
+			mapEvent.bytes = bytes;
+			mapEvent.commit();
+		}
+	}
+}
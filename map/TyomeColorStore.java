@@ -0,0 +1,241 @@
+package map;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Scanner;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 丁目の塗り分け情報を図葉単位で記憶するクラスです。
+ * 図葉を読み込んだときに、その図葉の塗り分け情報を1つのファイルからまとめて読み込みます。
+ * 色の変更はメモリ上に記録し、flush() を呼び出したときに図葉ごとに1回だけ書き出します。
+ * 書き出しは一時ファイルに行ってから名前を変更するので、途中で異常終了しても以前の内容が失われません。
+ * @author zenjiro
+ * @since 6.3.0
+ */
+class TyomeColorStore {
+	/**
+	 * 図葉の名前と、その図葉のポリゴンの色の対応表
+	 * 色の対応表のキーは「ポリゴンの名前,属性」です。
+	 */
+	private final Map<String, Map<String, Integer>> colors;
+
+	/**
+	 * 変更されたが、まだ書き出していない図葉の一覧
+	 */
+	private final Set<String> dirtySheets;
+
+	/**
+	 * 丁目の塗り分け情報を記憶するオブジェクトを初期化します。
+	 */
+	TyomeColorStore() {
+		this.colors = new ConcurrentHashMap<String, Map<String, Integer>>();
+		this.dirtySheets = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+	}
+
+	/**
+	 * 図葉の塗り分け情報を読み込みます。
+	 * 既に読み込まれていれば何もしません。
+	 * 図葉単位のファイルがなければ、以前の版が作成したポリゴン単位のファイルから読み込みます。
+	 * @param sheet 図葉の名前
+	 * @param polygons 図葉に含まれる丁目のポリゴン
+	 */
+	void load(final String sheet, final Collection<PolygonData> polygons) {
+		if (this.colors.containsKey(sheet)) {
+			return;
+		}
+		final Map<String, Integer> sheetColors = new HashMap<String, Integer>();
+		File file = TyomeColorStore.getFile(sheet);
+		final File tempFile = TyomeColorStore.getTempFile(sheet);
+		if (!file.exists() && tempFile.exists()) {
+			// 名前を変更する直前に異常終了したとき
+			file = tempFile;
+		}
+		if (file.exists()) {
+			try {
+				final Scanner scanner = new Scanner(new InputStreamReader(new FileInputStream(file),
+						Const.Paint.ENCODING));
+				while (scanner.hasNextLine()) {
+					final String line = scanner.nextLine();
+					final int index = line.lastIndexOf(',');
+					if (index > 0) {
+						try {
+							sheetColors.put(line.substring(0, index), Integer.valueOf(line.substring(index + 1)));
+						} catch (final NumberFormatException exception) {
+							System.out.println("WARNING: invalid color line: " + line);
+						}
+					}
+				}
+				scanner.close();
+			} catch (final IOException exception) {
+				System.out.println("WARNING: failed to read " + file + ": " + exception);
+			}
+		} else if (new File(Const.Paint.CACHE_DIR).exists()) {
+			for (final PolygonData polygon : polygons) {
+				final int color = TyomeColorStore.loadLegacyColor(polygon);
+				if (color != Const.Paint.NOT_FOUND) {
+					sheetColors.put(TyomeColorStore.getKey(polygon), color);
+				}
+			}
+			if (!sheetColors.isEmpty()) {
+				this.dirtySheets.add(sheet);
+			}
+		}
+		this.colors.put(sheet, sheetColors);
+	}
+
+	/**
+	 * ポリゴンの色を取得します。
+	 * @param sheet 図葉の名前
+	 * @param polygon ポリゴン
+	 * @return 色
+	 */
+	int get(final String sheet, final PolygonData polygon) {
+		final Map<String, Integer> sheetColors = this.colors.get(sheet);
+		if (sheetColors != null) {
+			final Integer color = sheetColors.get(TyomeColorStore.getKey(polygon));
+			if (color != null) {
+				return color;
+			}
+		}
+		return Const.Paint.NOT_FOUND;
+	}
+
+	/**
+	 * ポリゴンの色を記録します。
+	 * ファイルに書き出すのは flush() を呼び出したときです。
+	 * @param sheet 図葉の名前
+	 * @param polygon ポリゴン
+	 */
+	void put(final String sheet, final PolygonData polygon) {
+		Map<String, Integer> sheetColors = this.colors.get(sheet);
+		if (sheetColors == null) {
+			sheetColors = new HashMap<String, Integer>();
+			this.colors.put(sheet, sheetColors);
+		}
+		final Integer color = polygon.getTyomeColorIndex();
+		if (!color.equals(sheetColors.put(TyomeColorStore.getKey(polygon), color))) {
+			this.dirtySheets.add(sheet);
+		}
+	}
+
+	/**
+	 * 変更された図葉の塗り分け情報を書き出します。
+	 */
+	void flush() {
+		for (final String sheet : this.dirtySheets) {
+			final Map<String, Integer> sheetColors = this.colors.get(sheet);
+			if (sheetColors != null) {
+				try {
+					new File(Const.Paint.CACHE_DIR).mkdirs();
+					final File file = TyomeColorStore.getFile(sheet);
+					final File tempFile = TyomeColorStore.getTempFile(sheet);
+					final PrintWriter out = new PrintWriter(new OutputStreamWriter(new FileOutputStream(tempFile),
+							Const.Paint.ENCODING));
+					for (final Map.Entry<String, Integer> entry : sheetColors.entrySet()) {
+						out.println(entry.getKey() + "," + entry.getValue());
+					}
+					out.close();
+					if (out.checkError()) {
+						throw new IOException("failed to write " + tempFile);
+					}
+					if (file.exists()) {
+						file.delete();
+					}
+					if (!tempFile.renameTo(file)) {
+						throw new IOException("failed to rename " + tempFile + " to " + file);
+					}
+				} catch (final IOException exception) {
+					System.out.println("WARNING: failed to save colors of " + sheet + ": " + exception);
+					continue;
+				}
+			}
+			this.dirtySheets.remove(sheet);
+		}
+	}
+
+	/**
+	 * 指定した図葉以外の塗り分け情報をメモリから開放します。
+	 * 変更がまだ書き出されていない図葉は開放しません。
+	 * @param sheets 残す図葉の名前の一覧
+	 */
+	void retain(final Collection<String> sheets) {
+		for (final String sheet : this.colors.keySet()) {
+			if (!sheets.contains(sheet) && !this.dirtySheets.contains(sheet)) {
+				this.colors.remove(sheet);
+			}
+		}
+	}
+
+	/**
+	 * @param polygon ポリゴン
+	 * @return 色の対応表のキー
+	 */
+	private static String getKey(final PolygonData polygon) {
+		return polygon.getPolygonName() + "," + polygon.getAttribute();
+	}
+
+	/**
+	 * @param sheet 図葉の名前
+	 * @return 図葉の塗り分け情報を記録するファイル
+	 */
+	private static File getFile(final String sheet) {
+		return new File(Const.Paint.CACHE_DIR + File.separator + Const.Paint.SHEET_PREFIX + sheet
+				+ Const.Paint.CACHE_SUFFIX);
+	}
+
+	/**
+	 * @param sheet 図葉の名前
+	 * @return 書き出し中の一時ファイル
+	 */
+	private static File getTempFile(final String sheet) {
+		return new File(Const.Paint.CACHE_DIR + File.separator + Const.Paint.SHEET_PREFIX + sheet
+				+ Const.Paint.CACHE_SUFFIX + Const.Paint.TEMP_SUFFIX);
+	}
+
+	/**
+	 * 以前の版が作成したポリゴン単位のファイルから、ポリゴンの色を読み込みます。
+	 * @param polygon ポリゴン
+	 * @return 色
+	 */
+	private static int loadLegacyColor(final PolygonData polygon) {
+		final File file = new File(Const.Paint.CACHE_DIR + File.separator + polygon.getPolygonName()
+				+ Const.Paint.CACHE_SUFFIX);
+		if (!file.exists()) {
+			return Const.Paint.NOT_FOUND;
+		}
+		final String attribute = polygon.getAttribute();
+		int ret = Const.Paint.NOT_FOUND;
+		try {
+			final Scanner scanner = new Scanner(new InputStreamReader(new FileInputStream(file),
+					Const.Paint.ENCODING));
+			while (scanner.hasNextLine()) {
+				final String line = scanner.nextLine();
+				final Scanner scanner2 = new Scanner(line);
+				scanner2.useDelimiter(",");
+				if (scanner2.hasNext()) {
+					final String attribute2 = scanner2.next();
+					if (attribute2.equals(attribute)) {
+						if (scanner2.hasNextInt()) {
+							ret = scanner2.nextInt();
+							break;
+						}
+					}
+				}
+			}
+			scanner.close();
+		} catch (final IOException e) {
+		}
+		return ret;
+	}
+}
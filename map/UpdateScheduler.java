@@ -0,0 +1,223 @@
+package map;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 表示範囲の変化などのイベントを受け取り、地図の更新を専用のスレッドで行うクラスです。
+ * ドラッグやホイールの回転のように続けて届いたイベントは1回の更新にまとめ、
+ * イベントが途切れたらすぐに更新を始めます。
+ * 更新中に届いたイベントは、更新が終わった直後の1回の更新にまとめます。
+ * 待ち時間とまとめたイベントの数は、Metrics.register(SchedulerMXBean) で JMX に公開できます。
+ * @author zenjiro
+ * @since 6.3.0
+ */
+public class UpdateScheduler implements Metrics.SchedulerMXBean {
+	/**
+	 * イベントが途切れたとみなすまでの時間[ms]
+	 */
+	public static final long DEBOUNCE_MILLIS = 50;
+
+	/**
+	 * イベントが途切れなくても、最初のイベントから更新を始めるまでの最大の時間[ms]
+	 */
+	public static final long MAX_DELAY_MILLIS = 250;
+
+	/**
+	 * 更新を行うスレッド
+	 */
+	private final ScheduledExecutorService executor;
+
+	/**
+	 * 更新処理
+	 */
+	private final Runnable task;
+
+	/**
+	 * 予約されている更新。予約されていなければ null
+	 */
+	private ScheduledFuture<?> future;
+
+	/**
+	 * 予約した回数。予約された更新が、最後に予約されたものかどうかを調べるために使う
+	 */
+	private long scheduleCount;
+
+	/**
+	 * 更新中かどうか
+	 */
+	private boolean isRunning;
+
+	/**
+	 * 前回の更新を始めてから届いたイベントの数
+	 */
+	private int pendingEvents;
+
+	/**
+	 * 前回の更新を始めてから最初にイベントが届いた時刻[ns]
+	 */
+	private long firstEventTime;
+
+	/**
+	 * 更新を始めた回数
+	 */
+	private volatile long updateCount;
+
+	/**
+	 * 直前の更新にまとめられたイベントの数
+	 */
+	private volatile int lastQueueDepth;
+
+	/**
+	 * 1回の更新にまとめられたイベントの数の最大値
+	 */
+	private volatile int maxQueueDepth;
+
+	/**
+	 * 直前の更新の、最初のイベントから更新を始めるまでの時間[ms]
+	 */
+	private volatile double lastLatency;
+
+	/**
+	 * 最初のイベントから更新を始めるまでの時間の合計[ms]
+	 */
+	private volatile double totalLatency;
+
+	/**
+	 * 更新処理を指定して初期化します。
+	 * @param task 更新処理
+	 */
+	public UpdateScheduler(final Runnable task) {
+		this.task = task;
+		this.executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			public Thread newThread(final Runnable runnable) {
+				final Thread thread = new Thread(runnable, "UpdateScheduler");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+	/**
+	 * イベントが届いたことを通知し、更新を予約します。
+	 * 既に予約されていれば、イベントが途切れるまで予約を延ばします。
+	 * 更新中なら、更新が終わってから予約します。
+	 */
+	public synchronized void request() {
+		if (this.pendingEvents == 0) {
+			this.firstEventTime = System.nanoTime();
+		}
+		this.pendingEvents++;
+		if (!this.isRunning) {
+			this.schedule();
+		}
+	}
+
+	/**
+	 * 更新を予約し直します。
+	 */
+	private synchronized void schedule() {
+		if (this.future != null) {
+			this.future.cancel(false);
+		}
+		final long waited = (System.nanoTime() - this.firstEventTime) / 1000000;
+		final long delay = Math.max(0, Math.min(UpdateScheduler.DEBOUNCE_MILLIS, UpdateScheduler.MAX_DELAY_MILLIS
+				- waited));
+		final long count = ++this.scheduleCount;
+		this.future = this.executor.schedule(new Runnable() {
+			public void run() {
+				UpdateScheduler.this.update(count);
+			}
+		}, delay, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * 予約された時刻に更新を行います。
+	 * 取り消しが間に合わなかった古い予約でも、まだ反映されていないイベントがあれば更新します。
+	 * @param count 何回目の予約か
+	 */
+	private void update(final long count) {
+		synchronized (this) {
+			// 実行を待つ間に予約し直されていれば、新しい予約を残しておく
+			if (count == this.scheduleCount) {
+				this.future = null;
+			}
+			if (this.pendingEvents == 0) {
+				return;
+			}
+			final double latency = (System.nanoTime() - this.firstEventTime) / 1E6;
+			this.lastLatency = latency;
+			this.totalLatency += latency;
+			this.lastQueueDepth = this.pendingEvents;
+			this.maxQueueDepth = Math.max(this.maxQueueDepth, this.pendingEvents);
+			this.updateCount++;
+			this.pendingEvents = 0;
+			this.isRunning = true;
+		}
+		try {
+			this.task.run();
+		} catch (final RuntimeException exception) {
+			System.err.println("EXCEPTION: Failed to update map.");
+			exception.printStackTrace();
+		} finally {
+			synchronized (this) {
+				this.isRunning = false;
+				if (this.pendingEvents > 0) {
+					this.schedule();
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return まだ更新に反映されていないイベントの数
+	 */
+	public synchronized int getQueueDepth() {
+		return this.pendingEvents;
+	}
+
+	/**
+	 * @return 直前の更新にまとめられたイベントの数
+	 */
+	public int getLastQueueDepth() {
+		return this.lastQueueDepth;
+	}
+
+	/**
+	 * @return 1回の更新にまとめられたイベントの数の最大値
+	 */
+	public int getMaxQueueDepth() {
+		return this.maxQueueDepth;
+	}
+
+	/**
+	 * @return 直前の更新の、最初のイベントから更新を始めるまでの時間[ms]
+	 */
+	public double getLastLatency() {
+		return this.lastLatency;
+	}
+
+	/**
+	 * @return 最初のイベントから更新を始めるまでの時間の平均[ms]
+	 */
+	public double getAverageLatency() {
+		return this.updateCount == 0 ? 0 : this.totalLatency / this.updateCount;
+	}
+
+	/**
+	 * @return 更新を始めた回数
+	 */
+	public long getUpdateCount() {
+		return this.updateCount;
+	}
+
+	@Override
+	public String toString() {
+		return "UpdateScheduler[updates=" + this.updateCount + ", queueDepth=" + this.getQueueDepth()
+				+ ", lastQueueDepth=" + this.lastQueueDepth + ", maxQueueDepth=" + this.maxQueueDepth
+				+ ", lastLatency=" + this.lastLatency + "ms, averageLatency=" + this.getAverageLatency() + "ms]";
+	}
+}
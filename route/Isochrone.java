@@ -0,0 +1,177 @@
+package route;
+
+import java.awt.Shape;
+import java.awt.geom.Area;
+import java.awt.geom.GeneralPath;
+import java.util.Arrays;
+
+import route.Route.Speed;
+
+/**
+ * 1つの地点から一定の時間内に到達できる範囲（到達圏）を求めるクラスです。
+ * 地点から全頂点への探索を1回だけ行い、最も長い時間を超えたところで打ち切ります。
+ * 到達できる道路を格子状のセルに塗り、時間ごとにセルをつないだ多角形を作ります。
+ * @author zenjiro
+ * @since 6.3.0
+ */
+public class Isochrone {
+	/**
+	 * セルの大きさの最小値（仮想座標）
+	 */
+	private static final double MIN_CELL_SIZE = 50;
+
+	/**
+	 * 到達圏を囲む長方形の長辺に並ぶセルの数の最大値
+	 */
+	private static final int MAX_CELLS = 256;
+
+	/**
+	 * 到達圏を求めます。
+	 * @param graph グラフ
+	 * @param start 出発地の頂点番号
+	 * @param speed 速度
+	 * @param times 時間[s]の一覧（昇順）
+	 * @return 時間ごとの到達圏
+	 */
+	public static Shape[] calc(final RoadGraph graph, final int start, final Speed speed, final double[] times) {
+		final Shape[] ret = new Shape[times.length];
+		if (times.length == 0) {
+			return ret;
+		}
+		final double maxTime = times[times.length - 1];
+		final double[] values = Isochrone.search(graph, start, speed, maxTime);
+		double minX = Double.POSITIVE_INFINITY;
+		double minY = Double.POSITIVE_INFINITY;
+		double maxX = Double.NEGATIVE_INFINITY;
+		double maxY = Double.NEGATIVE_INFINITY;
+		for (int node = 0; node < values.length; node++) {
+			if (values[node] <= maxTime) {
+				minX = Math.min(minX, graph.getX(node));
+				minY = Math.min(minY, graph.getY(node));
+				maxX = Math.max(maxX, graph.getX(node));
+				maxY = Math.max(maxY, graph.getY(node));
+			}
+		}
+		final double cellSize = Math.max(Isochrone.MIN_CELL_SIZE, Math.max(maxX - minX, maxY - minY)
+				/ Isochrone.MAX_CELLS);
+		// 到達圏が辺の途中で終わることがあるので、1セル分広げておく
+		minX -= cellSize;
+		minY -= cellSize;
+		final int columns = (int) ((maxX - minX) / cellSize) + 2;
+		final int rows = (int) ((maxY - minY) / cellSize) + 2;
+		// セルごとに、そのセルを含む最小の時間の番号を記録する
+		final byte[] levels = new byte[columns * rows];
+		Arrays.fill(levels, Byte.MAX_VALUE);
+		for (int edge = 0; edge < graph.getEdgeCount(); edge++) {
+			final double firstValue = values[graph.getFirst(edge)];
+			final double lastValue = values[graph.getLast(edge)];
+			if (firstValue > maxTime && lastValue > maxTime) {
+				continue;
+			}
+			final double edgeSpeed = speed.get(graph.getCategory(edge));
+			final int pointCount = graph.getPointCount(edge);
+			// 辺の形の向きが頂点1から頂点2とは限らないので、近い方を始点とする
+			final boolean isReverse = Math.abs(graph.getPointX(edge, 0) - graph.getX(graph.getFirst(edge)))
+					+ Math.abs(graph.getPointY(edge, 0) - graph.getY(graph.getFirst(edge))) > Math.abs(graph
+					.getPointX(edge, 0)
+					- graph.getX(graph.getLast(edge)))
+					+ Math.abs(graph.getPointY(edge, 0) - graph.getY(graph.getLast(edge)));
+			final double headValue = isReverse ? lastValue : firstValue;
+			final double tailValue = isReverse ? firstValue : lastValue;
+			final double length = graph.getLength(edge);
+			double distance = 0;
+			for (int i = 1; i < pointCount; i++) {
+				final double x1 = graph.getPointX(edge, i - 1);
+				final double y1 = graph.getPointY(edge, i - 1);
+				final double x2 = graph.getPointX(edge, i);
+				final double y2 = graph.getPointY(edge, i);
+				final double segmentLength = Math.hypot(x2 - x1, y2 - y1);
+				final int steps = Math.max(1, (int) Math.ceil(segmentLength / (cellSize / 2)));
+				for (int j = i == 1 ? 0 : 1; j <= steps; j++) {
+					final double d = distance + segmentLength * j / steps;
+					final double value = Math.min(headValue + d / edgeSpeed, tailValue + Math.max(0, length - d)
+							/ edgeSpeed);
+					if (value > maxTime) {
+						continue;
+					}
+					int level = 0;
+					while (times[level] < value) {
+						level++;
+					}
+					final int column = (int) ((x1 + (x2 - x1) * j / steps - minX) / cellSize);
+					final int row = (int) ((y1 + (y2 - y1) * j / steps - minY) / cellSize);
+					if (column >= 0 && column < columns && row >= 0 && row < rows
+							&& level < levels[row * columns + column]) {
+						levels[row * columns + column] = (byte) level;
+					}
+				}
+				distance += segmentLength;
+			}
+		}
+		for (int level = 0; level < times.length; level++) {
+			// 行ごとに連続したセルを長方形にし、最後にまとめて1つの領域にする
+			final GeneralPath path = new GeneralPath(GeneralPath.WIND_NON_ZERO);
+			for (int row = 0; row < rows; row++) {
+				int column = 0;
+				while (column < columns) {
+					if (levels[row * columns + column] > level) {
+						column++;
+						continue;
+					}
+					final int first = column;
+					while (column < columns && levels[row * columns + column] <= level) {
+						column++;
+					}
+					final float x1 = (float) (minX + first * cellSize);
+					final float x2 = (float) (minX + column * cellSize);
+					final float y1 = (float) (minY + row * cellSize);
+					final float y2 = (float) (minY + (row + 1) * cellSize);
+					path.moveTo(x1, y1);
+					path.lineTo(x2, y1);
+					path.lineTo(x2, y2);
+					path.lineTo(x1, y2);
+					path.closePath();
+				}
+			}
+			ret[level] = new Area(path);
+		}
+		return ret;
+	}
+
+	/**
+	 * 出発地から各頂点までの時間を求めます。
+	 * @param graph グラフ
+	 * @param start 出発地の頂点番号
+	 * @param speed 速度
+	 * @param maxTime 探索を打ち切る時間[s]
+	 * @return 頂点ごとの時間[s]。maxTime までに到達できない頂点は無限大
+	 */
+	public static double[] search(final RoadGraph graph, final int start, final Speed speed, final double maxTime) {
+		final double[] values = new double[graph.getNodeCount()];
+		Arrays.fill(values, Double.POSITIVE_INFINITY);
+		final boolean[] doneNodes = new boolean[graph.getNodeCount()];
+		final NodeHeap heap = new NodeHeap(graph.getNodeCount());
+		values[start] = 0;
+		heap.update(start, 0);
+		while (!heap.isEmpty() && heap.peekValue() <= maxTime) {
+			final int node = heap.poll();
+			doneNodes[node] = true;
+			for (int i = graph.getEdgeStart(node); i < graph.getEdgeEnd(node); i++) {
+				final int edge = graph.getAdjacentEdge(i);
+				final int node2 = graph.getFirst(edge) == node ? graph.getLast(edge) : graph.getFirst(edge);
+				if (!doneNodes[node2]) {
+					final double value = values[node] + graph.getLength(edge) / speed.get(graph.getCategory(edge));
+					if (value < values[node2]) {
+						values[node2] = value;
+						heap.update(node2, value);
+					}
+				}
+			}
+		}
+		// 打ち切ったときにヒープに残っていた頂点は、到達できないものとする
+		while (!heap.isEmpty()) {
+			values[heap.poll()] = Double.POSITIVE_INFINITY;
+		}
+		return values;
+	}
+}
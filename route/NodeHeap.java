@@ -0,0 +1,119 @@
+package route;
+
+import java.util.Arrays;
+
+/**
+ * 経路探索のための、頂点番号と値を持つ二分ヒープです。
+ * 頂点ごとにヒープ内の位置を覚えているので、値を小さくするときに追加し直す必要がありません。
+ * @author zenjiro
+ * @since 6.3.0
+ */
+class NodeHeap {
+	/**
+	 * ヒープ内の頂点番号
+	 */
+	private final int[] nodes;
+
+	/**
+	 * ヒープ内の値
+	 */
+	private final double[] values;
+
+	/**
+	 * 頂点ごとの、ヒープ内の位置。ヒープにない頂点は-1
+	 */
+	private final int[] positions;
+
+	/**
+	 * ヒープ内の頂点の数
+	 */
+	private int size;
+
+	/**
+	 * コンストラクタです。
+	 * @param nodeCount 頂点の数
+	 */
+	NodeHeap(final int nodeCount) {
+		this.nodes = new int[nodeCount];
+		this.values = new double[nodeCount];
+		this.positions = new int[nodeCount];
+		Arrays.fill(this.positions, -1);
+	}
+
+	/**
+	 * @return ヒープが空かどうか
+	 */
+	boolean isEmpty() {
+		return this.size == 0;
+	}
+
+	/**
+	 * @return 最小の値
+	 */
+	double peekValue() {
+		return this.values[0];
+	}
+
+	/**
+	 * 頂点を追加するか、既にあれば値を小さくします。
+	 * @param node 頂点番号
+	 * @param value 値
+	 */
+	void update(final int node, final double value) {
+		int i = this.positions[node];
+		if (i < 0) {
+			i = this.size++;
+		}
+		while (i > 0) {
+			final int parent = (i - 1) / 2;
+			if (this.values[parent] <= value) {
+				break;
+			}
+			this.set(i, this.nodes[parent], this.values[parent]);
+			i = parent;
+		}
+		this.set(i, node, value);
+	}
+
+	/**
+	 * 値が最小の頂点を取り出します。
+	 * @return 頂点番号
+	 */
+	int poll() {
+		final int ret = this.nodes[0];
+		this.positions[ret] = -1;
+		this.size--;
+		if (this.size > 0) {
+			final int node = this.nodes[this.size];
+			final double value = this.values[this.size];
+			int i = 0;
+			while (true) {
+				int child = i * 2 + 1;
+				if (child >= this.size) {
+					break;
+				}
+				if (child + 1 < this.size && this.values[child + 1] < this.values[child]) {
+					child++;
+				}
+				if (value <= this.values[child]) {
+					break;
+				}
+				this.set(i, this.nodes[child], this.values[child]);
+				i = child;
+			}
+			this.set(i, node, value);
+		}
+		return ret;
+	}
+
+	/**
+	 * @param i ヒープ内の位置
+	 * @param node 頂点番号
+	 * @param value 値
+	 */
+	private void set(final int i, final int node, final double value) {
+		this.nodes[i] = node;
+		this.values[i] = value;
+		this.positions[node] = i;
+	}
+}
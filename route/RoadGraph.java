@@ -0,0 +1,1051 @@
+package route;
+
+import java.awt.Shape;
+import java.awt.geom.GeneralPath;
+import java.awt.geom.PathIterator;
+import java.awt.geom.Point2D;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import ksj.ShapeIO;
+import map.Const;
+import route.Route.Category;
+
+/**
+ * 経路探索のための道路のグラフを、整数の頂点番号と配列で管理するクラスです。
+ * 各頂点に接続する辺は圧縮行格納形式（CSR）で持ちます。
+ * 座標を整数に丸めたものが等しい頂点は同じ頂点として扱います。
+ * 都道府県ごとのグラフは同梱された国土数値情報の道路データから作り、バイナリ形式でキャッシュします。
+ * キャッシュには元にした道路データの大きさと更新時刻を記録し、道路データが変わったら作り直します。
+ * 一度作ったグラフは変化しないので、複数のスレッドから同時に参照できます。
+ * @author zenjiro
+ * @since 6.3.0
+ */
+public class RoadGraph {
+	/**
+	 * ファイルの先頭に書かれる識別子
+	 */
+	private static final int MAGIC = 0x52474632;
+
+	/**
+	 * ファイルの見出しの大きさ[byte]（識別子、頂点の数、辺の数、座標の数、元にしたデータの一覧の大きさ）
+	 */
+	private static final int HEADER_SIZE = 20;
+
+	/**
+	 * 辺の種類の一覧。Category.values() は呼び出すたびに配列を複製するので、1つだけ作っておく
+	 */
+	private static final Category[] CATEGORIES = Category.values();
+
+	/**
+	 * 頂点のx座標
+	 */
+	private final float[] xs;
+
+	/**
+	 * 頂点のy座標
+	 */
+	private final float[] ys;
+
+	/**
+	 * 頂点ごとの、接続する辺の一覧の開始位置
+	 */
+	private final int[] offsets;
+
+	/**
+	 * 頂点ごとの、接続する辺の番号
+	 */
+	private final int[] adjacentEdges;
+
+	/**
+	 * 辺の頂点1
+	 */
+	private final int[] firsts;
+
+	/**
+	 * 辺の頂点2
+	 */
+	private final int[] lasts;
+
+	/**
+	 * 辺の長さ
+	 */
+	private final float[] lengths;
+
+	/**
+	 * 辺の種類（Category の序数）
+	 */
+	private final byte[] categories;
+
+	/**
+	 * 辺ごとの、形を表す座標の一覧の開始位置
+	 */
+	private final int[] pointOffsets;
+
+	/**
+	 * 辺の形を表す座標（x座標とy座標を交互に並べたもの）
+	 */
+	private final float[] points;
+
+	/**
+	 * 座標を整数に丸めたものと頂点番号の対応表
+	 */
+	private final NodeTable nodeTable;
+
+	/**
+	 * 最近傍の頂点を求めるための格子。最初に検索するときに作ります。
+	 */
+	private volatile NodeGrid grid;
+
+	/**
+	 * 元にしたリソースの名前と、その大きさ[byte]、更新時刻[ms]の対応表。リソースがなければ {-1, -1}
+	 */
+	private Map<String, long[]> sources = Collections.emptyMap();
+
+	/**
+	 * 座標を整数に丸めたキーと頂点番号の対応表です。
+	 * 頂点の座標を使うので、キーそのものは記憶しません。
+	 * @author zenjiro
+	 * @since 6.3.0
+	 */
+	private static class NodeTable {
+		/**
+		 * 頂点番号+1。0は空きを表す
+		 */
+		private int[] slots;
+
+		/**
+		 * 登録された頂点の数
+		 */
+		private int size;
+
+		/**
+		 * 頂点のx座標
+		 */
+		private float[] xs;
+
+		/**
+		 * 頂点のy座標
+		 */
+		private float[] ys;
+
+		/**
+		 * 対応表を初期化します。
+		 * @param capacity 予想される頂点の数
+		 */
+		NodeTable(final int capacity) {
+			int length = 16;
+			while (length < capacity * 2) {
+				length *= 2;
+			}
+			this.slots = new int[length];
+		}
+
+		/**
+		 * @param x 整数に丸めたx座標
+		 * @param y 整数に丸めたy座標
+		 * @return ハッシュ値
+		 */
+		private static int hash(final int x, final int y) {
+			final int h = x * 92821 + y;
+			return h ^ (h >>> 16);
+		}
+
+		/**
+		 * 頂点を探します。
+		 * @param x 整数に丸めたx座標
+		 * @param y 整数に丸めたy座標
+		 * @return 頂点番号。見つからなければ-1
+		 */
+		int get(final int x, final int y) {
+			final int mask = this.slots.length - 1;
+			for (int i = NodeTable.hash(x, y) & mask;; i = (i + 1) & mask) {
+				final int slot = this.slots[i];
+				if (slot == 0) {
+					return -1;
+				}
+				if ((int) this.xs[slot - 1] == x && (int) this.ys[slot - 1] == y) {
+					return slot - 1;
+				}
+			}
+		}
+
+		/**
+		 * 頂点を登録します。
+		 * @param node 頂点番号
+		 * @param nodeXs 頂点のx座標
+		 * @param nodeYs 頂点のy座標
+		 */
+		void put(final int node, final float[] nodeXs, final float[] nodeYs) {
+			this.xs = nodeXs;
+			this.ys = nodeYs;
+			if ((this.size + 1) * 2 > this.slots.length) {
+				final int[] oldSlots = this.slots;
+				this.slots = new int[oldSlots.length * 2];
+				this.size = 0;
+				for (final int slot : oldSlots) {
+					if (slot != 0) {
+						this.insert(slot - 1);
+					}
+				}
+			}
+			this.insert(node);
+		}
+
+		/**
+		 * @param node 頂点番号
+		 */
+		private void insert(final int node) {
+			final int mask = this.slots.length - 1;
+			int i = NodeTable.hash((int) this.xs[node], (int) this.ys[node]) & mask;
+			while (this.slots[i] != 0) {
+				i = (i + 1) & mask;
+			}
+			this.slots[i] = node + 1;
+			++this.size;
+		}
+	}
+
+	/**
+	 * 最近傍の頂点を求めるための、頂点を格子状のバケツに分けたものです。
+	 * @author zenjiro
+	 * @since 6.3.0
+	 */
+	private static class NodeGrid {
+		/**
+		 * 格子の左端
+		 */
+		double minX;
+
+		/**
+		 * 格子の上端
+		 */
+		double minY;
+
+		/**
+		 * バケツの大きさ
+		 */
+		double size;
+
+		/**
+		 * 横に並ぶバケツの数
+		 */
+		int columns;
+
+		/**
+		 * 縦に並ぶバケツの数
+		 */
+		int rows;
+
+		/**
+		 * バケツごとの頂点の一覧の開始位置
+		 */
+		int[] starts;
+
+		/**
+		 * バケツごとの頂点番号
+		 */
+		int[] nodes;
+	}
+
+	/**
+	 * グラフを少しずつ組み立てるクラスです。
+	 * @author zenjiro
+	 * @since 6.3.0
+	 */
+	public static class Builder {
+		/**
+		 * 頂点のx座標
+		 */
+		private float[] xs = new float[1024];
+
+		/**
+		 * 頂点のy座標
+		 */
+		private float[] ys = new float[1024];
+
+		/**
+		 * 頂点の数
+		 */
+		private int nodeCount;
+
+		/**
+		 * 座標と頂点番号の対応表
+		 */
+		private final NodeTable nodeTable = new NodeTable(1024);
+
+		/**
+		 * 辺の頂点1
+		 */
+		private int[] firsts = new int[1024];
+
+		/**
+		 * 辺の頂点2
+		 */
+		private int[] lasts = new int[1024];
+
+		/**
+		 * 辺の長さ
+		 */
+		private float[] lengths = new float[1024];
+
+		/**
+		 * 辺の種類
+		 */
+		private byte[] categories = new byte[1024];
+
+		/**
+		 * 辺ごとの、形を表す座標の一覧の開始位置
+		 */
+		private int[] pointOffsets = new int[1025];
+
+		/**
+		 * 辺の数
+		 */
+		private int edgeCount;
+
+		/**
+		 * 辺の形を表す座標
+		 */
+		private float[] points = new float[4096];
+
+		/**
+		 * 辺の形を表す座標の数
+		 */
+		private int pointCount;
+
+		/**
+		 * @return 辺の数
+		 */
+		public int getEdgeCount() {
+			return this.edgeCount;
+		}
+
+		/**
+		 * 頂点を追加します。同じ座標の頂点があればその番号を返します。
+		 * @param x x座標
+		 * @param y y座標
+		 * @return 頂点番号
+		 */
+		int addNode(final float x, final float y) {
+			final int node = this.nodeTable.get((int) x, (int) y);
+			if (node >= 0) {
+				return node;
+			}
+			if (this.nodeCount == this.xs.length) {
+				this.xs = Arrays.copyOf(this.xs, this.nodeCount * 2);
+				this.ys = Arrays.copyOf(this.ys, this.nodeCount * 2);
+			}
+			this.xs[this.nodeCount] = x;
+			this.ys[this.nodeCount] = y;
+			this.nodeTable.put(this.nodeCount, this.xs, this.ys);
+			return this.nodeCount++;
+		}
+
+		/**
+		 * 辺の形の座標を1つ追加します。
+		 * @param x x座標
+		 * @param y y座標
+		 */
+		private void addPoint(final float x, final float y) {
+			if (this.pointCount + 2 > this.points.length) {
+				this.points = Arrays.copyOf(this.points, this.points.length * 2);
+			}
+			this.points[this.pointCount++] = x;
+			this.points[this.pointCount++] = y;
+		}
+
+		/**
+		 * 追加中の辺を確定します。
+		 * @param first 頂点1
+		 * @param last 頂点2
+		 * @param length 長さ
+		 * @param category 辺の種類
+		 */
+		private void addEdge(final int first, final int last, final float length, final Category category) {
+			if (this.edgeCount == this.firsts.length) {
+				this.firsts = Arrays.copyOf(this.firsts, this.edgeCount * 2);
+				this.lasts = Arrays.copyOf(this.lasts, this.edgeCount * 2);
+				this.lengths = Arrays.copyOf(this.lengths, this.edgeCount * 2);
+				this.categories = Arrays.copyOf(this.categories, this.edgeCount * 2);
+				this.pointOffsets = Arrays.copyOf(this.pointOffsets, this.edgeCount * 2 + 1);
+			}
+			this.firsts[this.edgeCount] = first;
+			this.lasts[this.edgeCount] = last;
+			this.lengths[this.edgeCount] = length;
+			this.categories[this.edgeCount] = (byte) category.ordinal();
+			this.pointOffsets[++this.edgeCount] = this.pointCount;
+		}
+
+		/**
+		 * 辺を1本追加します。始点と終点を整数に丸めたものが等しい辺は無視します。
+		 * 形を1回だけ走査して、両端の頂点、長さ、形を記録します。
+		 * @param path 辺
+		 * @param category 辺の種類
+		 */
+		public void add(final Shape path, final Category category) {
+			final PathIterator iterator = path.getPathIterator(null);
+			final float[] coords = new float[6];
+			final int start = this.pointCount;
+			float length = 0;
+			float lastX = 0;
+			float lastY = 0;
+			while (!iterator.isDone()) {
+				final int type = iterator.currentSegment(coords);
+				if (type == PathIterator.SEG_MOVETO || type == PathIterator.SEG_LINETO) {
+					if (type == PathIterator.SEG_LINETO && this.pointCount > start) {
+						length += (float) Point2D.distance(lastX, lastY, coords[0], coords[1]);
+					}
+					lastX = coords[0];
+					lastY = coords[1];
+					this.addPoint(lastX, lastY);
+				}
+				iterator.next();
+			}
+			if (this.pointCount - start < 4
+					|| (int) this.points[start] == (int) lastX && (int) this.points[start + 1] == (int) lastY) {
+				this.pointCount = start;
+				return;
+			}
+			final int first = this.addNode(this.points[start], this.points[start + 1]);
+			final int last = this.addNode(lastX, lastY);
+			this.addEdge(first, last, length, category);
+		}
+
+		/**
+		 * 両端の頂点を指定して辺を1本追加します。両端が同じ頂点なら無視します。
+		 * @param first 頂点1の座標
+		 * @param last 頂点2の座標
+		 * @param path 辺
+		 * @param category 辺の種類
+		 */
+		public void add(final Point2D first, final Point2D last, final Shape path, final Category category) {
+			final int firstNode = this.addNode((float) first.getX(), (float) first.getY());
+			final int lastNode = this.addNode((float) last.getX(), (float) last.getY());
+			if (firstNode == lastNode) {
+				return;
+			}
+			final PathIterator iterator = path.getPathIterator(null);
+			final float[] coords = new float[6];
+			final int start = this.pointCount;
+			float length = 0;
+			while (!iterator.isDone()) {
+				final int type = iterator.currentSegment(coords);
+				if (type == PathIterator.SEG_MOVETO || type == PathIterator.SEG_LINETO) {
+					if (type == PathIterator.SEG_LINETO && this.pointCount > start) {
+						length += (float) Point2D.distance(this.points[this.pointCount - 2],
+								this.points[this.pointCount - 1], coords[0], coords[1]);
+					}
+					this.addPoint(coords[0], coords[1]);
+				}
+				iterator.next();
+			}
+			this.addEdge(firstNode, lastNode, length, category);
+		}
+
+		/**
+		 * 他のグラフの頂点と辺を全て追加します。
+		 * 座標を整数に丸めたものが等しい頂点は1つにまとめます。
+		 * @param graph グラフ
+		 */
+		public void addAll(final RoadGraph graph) {
+			final int[] nodes = new int[graph.getNodeCount()];
+			for (int i = 0; i < nodes.length; i++) {
+				nodes[i] = this.addNode(graph.xs[i], graph.ys[i]);
+			}
+			for (int i = 0; i < graph.getEdgeCount(); i++) {
+				if (nodes[graph.firsts[i]] == nodes[graph.lasts[i]]) {
+					continue;
+				}
+				for (int j = graph.pointOffsets[i]; j < graph.pointOffsets[i + 1]; j += 2) {
+					this.addPoint(graph.points[j], graph.points[j + 1]);
+				}
+				this.addEdge(nodes[graph.firsts[i]], nodes[graph.lasts[i]], graph.lengths[i], graph.getCategory(i));
+			}
+		}
+
+		/**
+		 * グラフを作ります。
+		 * @return グラフ
+		 */
+		public RoadGraph build() {
+			return new RoadGraph(Arrays.copyOf(this.xs, this.nodeCount), Arrays.copyOf(this.ys, this.nodeCount),
+					Arrays.copyOf(this.firsts, this.edgeCount), Arrays.copyOf(this.lasts, this.edgeCount), Arrays
+							.copyOf(this.lengths, this.edgeCount), Arrays.copyOf(this.categories, this.edgeCount),
+					Arrays.copyOf(this.pointOffsets, this.edgeCount + 1), Arrays.copyOf(this.points,
+							this.pointCount));
+		}
+	}
+
+	/**
+	 * グラフを初期化し、頂点ごとに接続する辺の一覧を作ります。
+	 * @param xs 頂点のx座標
+	 * @param ys 頂点のy座標
+	 * @param firsts 辺の頂点1
+	 * @param lasts 辺の頂点2
+	 * @param lengths 辺の長さ
+	 * @param categories 辺の種類
+	 * @param pointOffsets 辺ごとの、形を表す座標の一覧の開始位置
+	 * @param points 辺の形を表す座標
+	 */
+	private RoadGraph(final float[] xs, final float[] ys, final int[] firsts, final int[] lasts,
+			final float[] lengths, final byte[] categories, final int[] pointOffsets, final float[] points) {
+		this.xs = xs;
+		this.ys = ys;
+		this.firsts = firsts;
+		this.lasts = lasts;
+		this.lengths = lengths;
+		this.categories = categories;
+		this.pointOffsets = pointOffsets;
+		this.points = points;
+		this.offsets = new int[xs.length + 1];
+		for (int i = 0; i < firsts.length; i++) {
+			++this.offsets[firsts[i] + 1];
+			++this.offsets[lasts[i] + 1];
+		}
+		for (int i = 0; i < xs.length; i++) {
+			this.offsets[i + 1] += this.offsets[i];
+		}
+		this.adjacentEdges = new int[firsts.length * 2];
+		final int[] positions = Arrays.copyOf(this.offsets, xs.length);
+		for (int i = 0; i < firsts.length; i++) {
+			this.adjacentEdges[positions[firsts[i]]++] = i;
+			this.adjacentEdges[positions[lasts[i]]++] = i;
+		}
+		this.nodeTable = new NodeTable(xs.length);
+		for (int i = 0; i < xs.length; i++) {
+			this.nodeTable.put(i, xs, ys);
+		}
+	}
+
+	/**
+	 * 都道府県のグラフを読み込みます。
+	 * キャッシュファイルがあればそれを読み込み、なければ同梱された道路データから作って保存します。
+	 * @param prefectureId 都道府県コード
+	 * @return グラフ
+	 * @throws IOException 入出力例外
+	 */
+	public static RoadGraph load(final String prefectureId) throws IOException {
+		final File file = RoadGraph.getCacheFile(prefectureId);
+		if (file.exists()) {
+			try {
+				final RoadGraph graph = RoadGraph.read(file);
+				if (graph.isUpToDate()) {
+					return graph;
+				}
+				System.out.println("WARNING: 道路データが変わったので、道路のグラフを作り直します。" + file);
+			} catch (final IOException exception) {
+				System.out.println("WARNING: 道路のグラフのキャッシュが壊れているので作り直します。" + file);
+			}
+		}
+		final RoadGraph ret = RoadGraph.create(prefectureId);
+		file.getParentFile().mkdirs();
+		ret.write(file);
+		return ret;
+	}
+
+	/**
+	 * @param prefectureId 都道府県コード
+	 * @return 都道府県のグラフのキャッシュファイル
+	 */
+	public static File getCacheFile(final String prefectureId) {
+		return new File(Const.RoadGraph.CACHE_DIR + File.separator + Const.RoadGraph.PREFIX + prefectureId
+				+ Const.RoadGraph.SUFFIX);
+	}
+
+	/**
+	 * 同梱された国土数値情報の道路データから都道府県のグラフを作ります。
+	 * 市区町村コードの一覧は、都道府県ごとの市区町村の情報から取得します。
+	 * @param prefectureId 都道府県コード
+	 * @return グラフ
+	 */
+	public static RoadGraph create(final String prefectureId) {
+		final Builder builder = new Builder();
+		final Map<String, long[]> sources = new LinkedHashMap<String, long[]>();
+		final String citiesResource = Const.DIR + Const.Prefecture.CITIES_PREFIX + prefectureId
+				+ Const.Prefecture.CITIES_SUFFIX;
+		sources.put(citiesResource, RoadGraph.getStamp(citiesResource));
+		final InputStream citiesIn = RoadGraph.class.getResourceAsStream(citiesResource);
+		if (citiesIn == null) {
+			System.out.println("WARNING: 市区町村の情報が読み込めませんでした。" + Const.Prefecture.CITIES_PREFIX + prefectureId
+					+ Const.Prefecture.CITIES_SUFFIX);
+			final RoadGraph ret = builder.build();
+			ret.sources = sources;
+			return ret;
+		}
+		for (final String label : ShapeIO.readShapes(citiesIn).values()) {
+			final String[] values = label.split("_");
+			if (values.length != 4) {
+				System.out.println("WARNING: 市区町村名の表記がおかしいです。" + label);
+				continue;
+			}
+			final String resource = Const.DIR + Const.KSJ.ROAD_FINE_PREFIX + values[2] + Const.KSJ.ROAD_SUFFIX;
+			sources.put(resource, RoadGraph.getStamp(resource));
+			final InputStream in = RoadGraph.class.getResourceAsStream(resource);
+			if (in != null) {
+				for (final Map.Entry<Shape, String> entry : ShapeIO.readShapes(in).entrySet()) {
+					builder.add(entry.getKey(), RoadGraph.toCategory(entry.getValue()));
+				}
+			}
+		}
+		final RoadGraph ret = builder.build();
+		ret.sources = sources;
+		return ret;
+	}
+
+	/**
+	 * リソースの大きさと更新時刻を調べます。
+	 * @param resource リソースの名前
+	 * @return 大きさ[byte]と更新時刻[ms]。リソースがなければ {-1, -1}
+	 */
+	private static long[] getStamp(final String resource) {
+		final URL url = RoadGraph.class.getResource(resource);
+		if (url == null) {
+			return new long[] { -1, -1 };
+		}
+		try {
+			final URLConnection connection = url.openConnection();
+			final long[] ret = new long[] { connection.getContentLength(), connection.getLastModified() };
+			connection.getInputStream().close();
+			return ret;
+		} catch (final IOException exception) {
+			return new long[] { -1, -1 };
+		}
+	}
+
+	/**
+	 * @return 元にした道路データが、グラフを作ったときから変わっていないかどうか
+	 */
+	public boolean isUpToDate() {
+		for (final Map.Entry<String, long[]> entry : this.sources.entrySet()) {
+			if (!Arrays.equals(entry.getValue(), RoadGraph.getStamp(entry.getKey()))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * 国土数値情報の道路名から辺の種類を求めます。
+	 * 地図に描画するときの KsjRailway.Railway の分類と同じです。
+	 * @param caption 道路名
+	 * @return 辺の種類
+	 */
+	public static Category toCategory(final String caption) {
+		if (caption.contains("高速")) {
+			return Category.ROAD_HIGHWAY;
+		} else if (caption.startsWith("国道")) {
+			return Category.ROAD_KOKUDO;
+		} else {
+			return Category.ROAD_MAJOR;
+		}
+	}
+
+	/**
+	 * 複数のグラフを1つにまとめます。
+	 * @param graphs グラフの一覧
+	 * @return まとめたグラフ
+	 */
+	public static RoadGraph merge(final Collection<RoadGraph> graphs) {
+		final Builder builder = new Builder();
+		for (final RoadGraph graph : graphs) {
+			builder.addAll(graph);
+		}
+		return builder.build();
+	}
+
+	/**
+	 * ファイルに書き出されたグラフを読み込みます。
+	 * @param file ファイル
+	 * @return グラフ
+	 * @throws IOException 入出力例外
+	 */
+	public static RoadGraph read(final File file) throws IOException {
+		final FileInputStream in = new FileInputStream(file);
+		try {
+			final FileChannel channel = in.getChannel();
+			final ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			if (channel.size() < RoadGraph.HEADER_SIZE || buffer.getInt() != RoadGraph.MAGIC) {
+				throw new IOException("not a road graph file: " + file);
+			}
+			final int nodeCount = buffer.getInt();
+			final int edgeCount = buffer.getInt();
+			final int pointCount = buffer.getInt();
+			final int sourceSize = buffer.getInt();
+			if (channel.size() != RoadGraph.HEADER_SIZE + sourceSize + nodeCount * 8L + edgeCount * 13L
+					+ (edgeCount + 1) * 4L + pointCount * 4L) {
+				throw new IOException("unexpected size of road graph file: " + file);
+			}
+			final Map<String, long[]> sources = new LinkedHashMap<String, long[]>();
+			try {
+				final int sourceCount = buffer.getInt();
+				for (int i = 0; i < sourceCount; i++) {
+					final byte[] bytes = new byte[buffer.getShort() & 0xFFFF];
+					buffer.get(bytes);
+					sources.put(new String(bytes, "UTF-8"), new long[] { buffer.getLong(), buffer.getLong() });
+				}
+			} catch (final BufferUnderflowException exception) {
+				throw new IOException("broken source list in road graph file: " + file);
+			}
+			if (buffer.position() != RoadGraph.HEADER_SIZE + sourceSize) {
+				throw new IOException("broken source list in road graph file: " + file);
+			}
+			final float[] xs = new float[nodeCount];
+			final float[] ys = new float[nodeCount];
+			final int[] firsts = new int[edgeCount];
+			final int[] lasts = new int[edgeCount];
+			final float[] lengths = new float[edgeCount];
+			final byte[] categories = new byte[edgeCount];
+			final int[] pointOffsets = new int[edgeCount + 1];
+			final float[] points = new float[pointCount];
+			buffer.asFloatBuffer().get(xs);
+			buffer.position(buffer.position() + nodeCount * 4);
+			buffer.asFloatBuffer().get(ys);
+			buffer.position(buffer.position() + nodeCount * 4);
+			buffer.asIntBuffer().get(firsts);
+			buffer.position(buffer.position() + edgeCount * 4);
+			buffer.asIntBuffer().get(lasts);
+			buffer.position(buffer.position() + edgeCount * 4);
+			buffer.asFloatBuffer().get(lengths);
+			buffer.position(buffer.position() + edgeCount * 4);
+			buffer.get(categories);
+			buffer.asIntBuffer().get(pointOffsets);
+			buffer.position(buffer.position() + (edgeCount + 1) * 4);
+			buffer.asFloatBuffer().get(points);
+			final RoadGraph ret = new RoadGraph(xs, ys, firsts, lasts, lengths, categories, pointOffsets, points);
+			ret.sources = sources;
+			return ret;
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * グラフを、元にした道路データの大きさと更新時刻とともにファイルに書き出します。
+	 * @param file ファイル
+	 * @throws IOException 入出力例外
+	 */
+	public void write(final File file) throws IOException {
+		final ByteArrayOutputStream sourceBytes = new ByteArrayOutputStream();
+		final DataOutputStream sourceOut = new DataOutputStream(sourceBytes);
+		sourceOut.writeInt(this.sources.size());
+		for (final Map.Entry<String, long[]> entry : this.sources.entrySet()) {
+			final byte[] bytes = entry.getKey().getBytes("UTF-8");
+			sourceOut.writeShort(bytes.length);
+			sourceOut.write(bytes);
+			sourceOut.writeLong(entry.getValue()[0]);
+			sourceOut.writeLong(entry.getValue()[1]);
+		}
+		sourceOut.close();
+		final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+		try {
+			out.writeInt(RoadGraph.MAGIC);
+			out.writeInt(this.xs.length);
+			out.writeInt(this.firsts.length);
+			out.writeInt(this.points.length);
+			out.writeInt(sourceBytes.size());
+			sourceBytes.writeTo(out);
+			for (final float x : this.xs) {
+				out.writeFloat(x);
+			}
+			for (final float y : this.ys) {
+				out.writeFloat(y);
+			}
+			for (final int first : this.firsts) {
+				out.writeInt(first);
+			}
+			for (final int last : this.lasts) {
+				out.writeInt(last);
+			}
+			for (final float length : this.lengths) {
+				out.writeFloat(length);
+			}
+			out.write(this.categories);
+			for (final int offset : this.pointOffsets) {
+				out.writeInt(offset);
+			}
+			for (final float point : this.points) {
+				out.writeFloat(point);
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * @return 頂点の数
+	 */
+	public int getNodeCount() {
+		return this.xs.length;
+	}
+
+	/**
+	 * @return 辺の数
+	 */
+	public int getEdgeCount() {
+		return this.firsts.length;
+	}
+
+	/**
+	 * @param node 頂点番号
+	 * @return x座標
+	 */
+	public double getX(final int node) {
+		return this.xs[node];
+	}
+
+	/**
+	 * @param node 頂点番号
+	 * @return y座標
+	 */
+	public double getY(final int node) {
+		return this.ys[node];
+	}
+
+	/**
+	 * 座標を整数に丸めたものが等しい頂点を探します。
+	 * @param point 点
+	 * @return 頂点番号。見つからなければ-1
+	 */
+	public int getNode(final Point2D point) {
+		return this.nodeTable.get((int) point.getX(), (int) point.getY());
+	}
+
+	/**
+	 * @param node 頂点番号
+	 * @return 頂点に接続する辺の一覧の開始位置
+	 */
+	public int getEdgeStart(final int node) {
+		return this.offsets[node];
+	}
+
+	/**
+	 * @param node 頂点番号
+	 * @return 頂点に接続する辺の一覧の終了位置
+	 */
+	public int getEdgeEnd(final int node) {
+		return this.offsets[node + 1];
+	}
+
+	/**
+	 * @param index 頂点に接続する辺の一覧の位置
+	 * @return 辺の番号
+	 */
+	public int getAdjacentEdge(final int index) {
+		return this.adjacentEdges[index];
+	}
+
+	/**
+	 * @param edge 辺の番号
+	 * @return 頂点1
+	 */
+	public int getFirst(final int edge) {
+		return this.firsts[edge];
+	}
+
+	/**
+	 * @param edge 辺の番号
+	 * @return 頂点2
+	 */
+	public int getLast(final int edge) {
+		return this.lasts[edge];
+	}
+
+	/**
+	 * @param edge 辺の番号
+	 * @return 長さ
+	 */
+	public double getLength(final int edge) {
+		return this.lengths[edge];
+	}
+
+	/**
+	 * @param edge 辺の番号
+	 * @return 辺の種類
+	 */
+	public Category getCategory(final int edge) {
+		return RoadGraph.CATEGORIES[this.categories[edge]];
+	}
+
+	/**
+	 * @param edge 辺の番号
+	 * @return 辺の形を構成する点の数
+	 */
+	public int getPointCount(final int edge) {
+		return (this.pointOffsets[edge + 1] - this.pointOffsets[edge]) / 2;
+	}
+
+	/**
+	 * @param edge 辺の番号
+	 * @param index 辺の形を構成する点の番号
+	 * @return 点のx座標
+	 */
+	public double getPointX(final int edge, final int index) {
+		return this.points[this.pointOffsets[edge] + index * 2];
+	}
+
+	/**
+	 * @param edge 辺の番号
+	 * @param index 辺の形を構成する点の番号
+	 * @return 点のy座標
+	 */
+	public double getPointY(final int edge, final int index) {
+		return this.points[this.pointOffsets[edge] + index * 2 + 1];
+	}
+
+	/**
+	 * 辺の形を作ります。
+	 * @param edge 辺の番号
+	 * @return 辺の形
+	 */
+	public Shape getPath(final int edge) {
+		final GeneralPath ret = new GeneralPath();
+		for (int i = this.pointOffsets[edge]; i < this.pointOffsets[edge + 1]; i += 2) {
+			if (i == this.pointOffsets[edge]) {
+				ret.moveTo(this.points[i], this.points[i + 1]);
+			} else {
+				ret.lineTo(this.points[i], this.points[i + 1]);
+			}
+		}
+		return ret;
+	}
+
+	/**
+	 * 最も近い頂点を求めます。
+	 * 点を含むバケツから外側に向かって調べ、それより近い頂点がありえなくなったら終了します。
+	 * @param point 点
+	 * @return 頂点番号。頂点がなければ-1
+	 */
+	public int getNearestNode(final Point2D point) {
+		if (this.xs.length == 0) {
+			return -1;
+		}
+		final NodeGrid grid = this.getGrid();
+		final double x = point.getX();
+		final double y = point.getY();
+		final int column = Math.max(0, Math.min(grid.columns - 1, (int) Math.floor((x - grid.minX) / grid.size)));
+		final int row = Math.max(0, Math.min(grid.rows - 1, (int) Math.floor((y - grid.minY) / grid.size)));
+		int ret = -1;
+		double minDistanceSq = Double.POSITIVE_INFINITY;
+		final int maxRing = Math.max(grid.columns, grid.rows);
+		for (int ring = 0; ring <= maxRing; ring++) {
+			// 輪の内側までの距離が既に見つかった頂点より遠ければ終了する
+			final double ringDistance = Math.max(0, (ring - 1) * grid.size);
+			if (ret >= 0 && ringDistance * ringDistance > minDistanceSq) {
+				break;
+			}
+			for (int r = row - ring; r <= row + ring; r++) {
+				if (r < 0 || r >= grid.rows) {
+					continue;
+				}
+				final boolean isEdgeRow = r == row - ring || r == row + ring;
+				// 上下の辺の行は全てのバケツ、それ以外の行は左右の端のバケツだけを調べる
+				for (int c = column - ring; c <= column + ring; c += isEdgeRow ? 1 : ring * 2) {
+					if (c >= 0 && c < grid.columns) {
+						final int cell = r * grid.columns + c;
+						for (int i = grid.starts[cell]; i < grid.starts[cell + 1]; i++) {
+							final int node = grid.nodes[i];
+							final double dx = this.xs[node] - x;
+							final double dy = this.ys[node] - y;
+							final double distanceSq = dx * dx + dy * dy;
+							if (distanceSq < minDistanceSq) {
+								minDistanceSq = distanceSq;
+								ret = node;
+							}
+						}
+					}
+				}
+			}
+		}
+		return ret;
+	}
+
+	/**
+	 * @return 最近傍の頂点を求めるための格子
+	 */
+	private NodeGrid getGrid() {
+		NodeGrid ret = this.grid;
+		if (ret == null) {
+			ret = new NodeGrid();
+			float minX = Float.POSITIVE_INFINITY;
+			float minY = Float.POSITIVE_INFINITY;
+			float maxX = Float.NEGATIVE_INFINITY;
+			float maxY = Float.NEGATIVE_INFINITY;
+			for (int i = 0; i < this.xs.length; i++) {
+				minX = Math.min(minX, this.xs[i]);
+				minY = Math.min(minY, this.ys[i]);
+				maxX = Math.max(maxX, this.xs[i]);
+				maxY = Math.max(maxY, this.ys[i]);
+			}
+			ret.minX = minX;
+			ret.minY = minY;
+			// 1つのバケツに平均して数個の頂点が入るようにする
+			ret.size = Math.max(1, Math.sqrt((double) (maxX - minX) * (maxY - minY) / this.xs.length * 4));
+			ret.columns = Math.min(4096, (int) ((maxX - minX) / ret.size) + 1);
+			ret.rows = Math.min(4096, (int) ((maxY - minY) / ret.size) + 1);
+			ret.size = Math.max(ret.size, Math.max((maxX - minX) / ret.columns, (maxY - minY) / ret.rows)
+					* (1 + 1e-9));
+			final int cells = ret.columns * ret.rows;
+			ret.starts = new int[cells + 1];
+			final int[] cellOfNode = new int[this.xs.length];
+			for (int i = 0; i < this.xs.length; i++) {
+				final int column = Math.min(ret.columns - 1, (int) ((this.xs[i] - ret.minX) / ret.size));
+				final int row = Math.min(ret.rows - 1, (int) ((this.ys[i] - ret.minY) / ret.size));
+				cellOfNode[i] = row * ret.columns + column;
+				++ret.starts[cellOfNode[i] + 1];
+			}
+			for (int i = 0; i < cells; i++) {
+				ret.starts[i + 1] += ret.starts[i];
+			}
+			ret.nodes = new int[this.xs.length];
+			final int[] positions = Arrays.copyOf(ret.starts, cells);
+			for (int i = 0; i < this.xs.length; i++) {
+				ret.nodes[positions[cellOfNode[i]]++] = i;
+			}
+			this.grid = ret;
+		}
+		return ret;
+	}
+
+	/**
+	 * 同梱された道路データから都道府県のグラフを作り、キャッシュファイルに保存します。
+	 * @param args 都道府県コードの一覧。省略すると全ての都道府県
+	 * @throws IOException 入出力例外
+	 */
+	public static void main(final String[] args) throws IOException {
+		final String[] ids;
+		if (args.length == 0) {
+			ids = new String[47];
+			for (int i = 0; i < ids.length; i++) {
+				ids[i] = String.format("%02d", i + 1);
+			}
+		} else {
+			ids = args;
+		}
+		for (final String id : ids) {
+			final long start = System.currentTimeMillis();
+			final RoadGraph graph = RoadGraph.create(id);
+			final File file = RoadGraph.getCacheFile(id);
+			file.getParentFile().mkdirs();
+			graph.write(file);
+			System.out.println(file + ": " + graph.getNodeCount() + " nodes, " + graph.getEdgeCount() + " edges, "
+					+ (System.currentTimeMillis() - start) + " ms");
+		}
+	}
+}
@@ -1,19 +1,30 @@
 package route;
 
 import java.awt.Shape;
-import java.awt.geom.AffineTransform;
-import java.awt.geom.PathIterator;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
 import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Formatter;
-import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.PriorityQueue;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import ksj.ShapeIO;
+import map.Const;
+import map.Trace;
+import search.PreparedShape;
 
 /**
  * 最短経路探索を行うクラスです。
@@ -77,113 +88,167 @@ public class Route {
 	}
 
 	/**
-	 * 辺をカプセル化するクラスです。
+	 * カテゴリを指定して速度を取得するためのインターフェイスです。
 	 * @author zenjiro
-	 * @since 5.03
+	 * @since 6.1.0
 	 */
-	private static class Edge {
+	public interface Speed {
 		/**
-		 * 頂点1
+		 * カテゴリを指定して速度を取得します。
+		 * @param category カテゴリ
+		 * @return 速度[m/s]
 		 */
-		String first;
+		public double get(final Category category);
 
 		/**
-		 * 頂点2
+		 * @return 乗物の表記
 		 */
-		String last;
+		public String getVehicle();
+	}
 
+	/**
+	 * 2つの経由地の間の最短経路を表すクラスです。
+	 * @author zenjiro
+	 * @since 6.3.0
+	 */
+	private static class Leg {
 		/**
-		 * 辺
+		 * 最短経路
 		 */
-		Shape path;
+		final List<Shape> route;
 
 		/**
-		 * 長さ
+		 * 経路の長さ[m]
 		 */
-		double length;
+		final double distance;
 
 		/**
-		 * 辺の種類
+		 * 経路の時間[s]
 		 */
-		@SuppressWarnings("unused")
-		Category category;
+		final double time;
 
 		/**
 		 * コンストラクタです。
-		 * @param first 頂点1
-		 * @param last 頂点2
-		 * @param path 辺
-		 * @param length 長さ
-		 * @param category 辺の種類
+		 * @param route 最短経路
+		 * @param distance 経路の長さ[m]
+		 * @param time 経路の時間[s]
 		 */
-		public Edge(final String first, final String last, final Shape path, final double length,
-				final Category category) {
-			this.first = first;
-			this.last = last;
-			this.path = path;
-			this.length = length;
-			this.category = category;
-		}
-
-		@Override
-		public String toString() {
-			return this.first + "--" + this.last;
+		Leg(final List<Shape> route, final double distance, final double time) {
+			this.route = route;
+			this.distance = distance;
+			this.time = time;
 		}
 	}
 
 	/**
-	 * 頂点と値をカプセル化する比較可能なクラスです。
+	 * 区間の探索結果をキャッシュするためのキーです。
 	 * @author zenjiro
-	 * @since 5.03
+	 * @since 6.3.0
 	 */
-	private static class Node implements Comparable<Node> {
+	private static class LegKey {
+		/**
+		 * 始点
+		 */
+		final String start;
+
 		/**
-		 * 頂点
+		 * 終点
 		 */
-		String node;
+		final String goal;
 
 		/**
-		 * 値
+		 * 速度
 		 */
-		double value;
+		final Speed speed;
+
+		/**
+		 * グラフの版
+		 */
+		final int version;
 
 		/**
 		 * コンストラクタです。
-		 * @param node 頂点
-		 * @param value 値
+		 * @param start 始点
+		 * @param goal 終点
+		 * @param speed 速度
+		 * @param version グラフの版
 		 */
-		public Node(final String node, final double value) {
-			this.node = node;
-			this.value = value;
+		LegKey(final String start, final String goal, final Speed speed, final int version) {
+			this.start = start;
+			this.goal = goal;
+			this.speed = speed;
+			this.version = version;
 		}
 
-		public int compareTo(final Node other) {
-			return this.value < other.value ? -1 : (this.value > other.value ? 1 : 0);
+		@Override
+		public boolean equals(final Object object) {
+			if (object instanceof LegKey) {
+				final LegKey other = (LegKey) object;
+				return this.start.equals(other.start) && this.goal.equals(other.goal) && this.speed == other.speed
+						&& this.version == other.version;
+			}
+			return false;
 		}
 
 		@Override
-		public String toString() {
-			return this.node + "(" + this.value + ")";
+		public int hashCode() {
+			return (this.start.hashCode() * 31 + this.goal.hashCode()) * 31 + System.identityHashCode(this.speed)
+					+ this.version;
 		}
 	}
 
 	/**
-	 * カテゴリを指定して速度を取得するためのインターフェイスです。
+	 * 1回の経路探索で求める区間の一覧と、その進み具合を表すクラスです。
 	 * @author zenjiro
-	 * @since 6.1.0
+	 * @since 6.3.0
 	 */
-	public interface Speed {
+	private static class Calculation {
 		/**
-		 * カテゴリを指定して速度を取得します。
-		 * @param category カテゴリ
-		 * @return 速度[m/s]
+		 * 経路探索の世代
 		 */
-		public double get(final Category category);
+		final int generation;
 
 		/**
-		 * @return 乗物の表記
+		 * 区間ごとの探索結果。まだ求まっていない区間は null
 		 */
-		public String getVehicle();
+		final Leg[] legs;
+
+		/**
+		 * 求まっていない区間の数
+		 */
+		final CountDownLatch remaining;
+
+		/**
+		 * 速度
+		 */
+		final Speed speed;
+
+		/**
+		 * 区間の探索が終わるたびに呼び出されるリスナ。なければ null
+		 */
+		final ActionListener listener;
+
+		/**
+		 * コンストラクタです。
+		 * @param generation 経路探索の世代
+		 * @param legCount 区間の数
+		 * @param speed 速度
+		 * @param listener 区間の探索が終わるたびに呼び出されるリスナ
+		 */
+		Calculation(final int generation, final int legCount, final Speed speed, final ActionListener listener) {
+			this.generation = generation;
+			this.legs = new Leg[legCount];
+			this.remaining = new CountDownLatch(legCount);
+			this.speed = speed;
+			this.listener = listener;
+		}
+
+		/**
+		 * @return すべての区間が求まったかどうか
+		 */
+		boolean isDone() {
+			return this.remaining.getCount() == 0;
+		}
 	}
 
 	/**
@@ -191,6 +256,49 @@ public class Route {
 	 */
 	private static Route instance;
 
+	/**
+	 * 区間の探索結果をキャッシュする最大の数
+	 * @since 6.3.0
+	 */
+	private static final int LEG_CACHE_SIZE = 1000;
+
+	/**
+	 * 到達圏を求める時間[分]の一覧
+	 * @since 6.3.0
+	 */
+	public static final double[] ISOCHRONE_MINUTES = { 5, 10, 15 };
+
+	/**
+	 * 到達圏をキャッシュする最大の数
+	 * @since 6.3.0
+	 */
+	private static final int ISOCHRONE_CACHE_SIZE = 100;
+
+	/**
+	 * 区間ごとの経路探索を並列に行うスレッドプール
+	 * @since 6.3.0
+	 */
+	private static final ExecutorService EXECUTOR = Executors.newFixedThreadPool(Runtime.getRuntime()
+			.availableProcessors(), new ThreadFactory() {
+		public Thread newThread(final Runnable runnable) {
+			final Thread thread = new Thread(runnable, "Route");
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+
+	/**
+	 * 経路に沿って都道府県のグラフを読み込むときに、経由地を囲む長方形を広げる幅（仮想座標）
+	 * @since 6.3.0
+	 */
+	private static final double ROUTE_MARGIN = 10000;
+
+	/**
+	 * 都道府県コードと都道府県の領域の対応表
+	 * @since 6.3.0
+	 */
+	private static Map<String, Shape> prefectureShapes;
+
 	/**
 	 * 高速道路優先探索の速度
 	 */
@@ -283,9 +391,76 @@ public class Route {
 	}
 
 	/**
-	 * 頂点をキー、辺の一覧を値とするグラフ
+	 * add(Shape, Category) で追加された辺
+	 * @since 6.3.0
+	 */
+	private RoadGraph.Builder builder;
+
+	/**
+	 * 読み込まれている都道府県コードと都道府県のグラフの対応表
+	 * @since 6.3.0
+	 */
+	private final Map<String, RoadGraph> prefectureGraphs;
+
+	/**
+	 * 追加された辺と都道府県のグラフをまとめたグラフ。作り直す必要があるときは null
+	 * @since 6.3.0
+	 */
+	private RoadGraph graph;
+
+	/**
+	 * 都道府県のグラフを読み込み始めた回数。読み込んでいる間に新しい読み込みが始まっていたら、古い結果を捨てる
+	 * @since 6.3.0
+	 */
+	private int graphLoadCount;
+
+	/**
+	 * グラフの版。グラフを作り直すたびに増えます。
+	 * @since 6.3.0
+	 */
+	private int graphVersion;
+
+	/**
+	 * 区間の探索結果のキャッシュ
+	 * @since 6.3.0
+	 */
+	private final Map<LegKey, Leg> legCache;
+
+	/**
+	 * 経路探索の世代。経由地や速度が変わって以前の探索結果が不要になるたびに増えます。
+	 * @since 6.3.0
 	 */
-	private Map<String, Collection<Edge>> graph;
+	private int generation;
+
+	/**
+	 * 最後に始めた経路探索
+	 * @since 6.3.0
+	 */
+	private volatile Calculation calculation;
+
+	/**
+	 * 到達圏の出発地。到達圏を表示しないときは null
+	 * @since 6.3.0
+	 */
+	private String isochroneCenter;
+
+	/**
+	 * 到達圏の出発地と時間の文字列表現と、速度ごとの到達圏の対応表
+	 * @since 6.3.0
+	 */
+	private final Map<Speed, Map<String, List<Shape>>> isochroneCache;
+
+	/**
+	 * 到達圏（時間の短い順）
+	 * @since 6.3.0
+	 */
+	private volatile List<Shape> isochrones;
+
+	/**
+	 * 都道府県のグラフを使うときの、表示されている範囲（仮想座標）。使わないときは null
+	 * @since 6.3.0
+	 */
+	private Rectangle2D area;
 
 	/**
 	 * 経由地の一覧
@@ -293,9 +468,9 @@ public class Route {
 	private List<String> points;
 
 	/**
-	 * 最短経路
+	 * 最短経路。探索の途中では求まった区間だけを含みます。
 	 */
-	private List<Shape> route;
+	private volatile List<Shape> route;
 
 	/**
 	 * キャッシュされた経由地の一覧
@@ -310,7 +485,7 @@ public class Route {
 	/**
 	 * ルートの文字列
 	 */
-	private String caption;
+	private volatile String caption;
 
 	/**
 	 * 文字列の描画位置（仮想座標）
@@ -321,7 +496,11 @@ public class Route {
 	 * シングルトン用のコンストラクタです。
 	 */
 	private Route() {
-		this.graph = new ConcurrentHashMap<String, Collection<Edge>>();
+		this.builder = new RoadGraph.Builder();
+		this.prefectureGraphs = new ConcurrentHashMap<String, RoadGraph>();
+		this.legCache = new ConcurrentHashMap<LegKey, Leg>();
+		this.isochroneCache = new ConcurrentHashMap<Speed, Map<String, List<Shape>>>();
+		this.isochrones = new ArrayList<Shape>();
 		this.route = new ArrayList<Shape>();
 		this.points = new ArrayList<String>();
 		this.cachedPoints = new ArrayList<Point2D>();
@@ -333,23 +512,9 @@ public class Route {
 	 * @param path 辺
 	 * @param category 辺の種類
 	 */
-	public void add(final Shape path, final Category category) {
-		Point2D first = null;
-		Point2D last = null;
-		final PathIterator iterator = path.getPathIterator(new AffineTransform());
-		while (!iterator.isDone()) {
-			final float[] coords = new float[6];
-			final int type = iterator.currentSegment(coords);
-			if (type == PathIterator.SEG_MOVETO || type == PathIterator.SEG_LINETO) {
-				if (first == null) {
-					first = new Point2D.Double(coords[0], coords[1]);
-				} else {
-					last = new Point2D.Double(coords[0], coords[1]);
-				}
-			}
-			iterator.next();
-		}
-		this.add(this.toString(first), this.toString(last), path, category);
+	public synchronized void add(final Shape path, final Category category) {
+		this.builder.add(path, category);
+		this.graph = null;
 	}
 
 	/**
@@ -359,39 +524,142 @@ public class Route {
 	 * @param path 辺
 	 * @param category 辺の種類
 	 */
-	public void add(final String first, final String last, final Shape path, final Category category) {
-		if (first.equals(last)) {
-			return;
+	public synchronized void add(final String first, final String last, final Shape path, final Category category) {
+		this.builder.add(this.toPoint(first), this.toPoint(last), path, category);
+		this.graph = null;
+	}
+
+	/**
+	 * 表示されている範囲と経由地を含む都道府県のグラフを読み込み、不要になったものを開放します。
+	 * 描画されている道路とは独立に、同梱された道路データから作ったグラフを使います。
+	 * add(Shape, Category) で追加された辺は削除されます。
+	 * @param visibleRectangle 表示されている範囲（仮想座標）
+	 * @throws IOException 入出力例外
+	 * @since 6.3.0
+	 */
+	public void loadGraphs(final Rectangle2D visibleRectangle) throws IOException {
+		synchronized (this) {
+			this.area = visibleRectangle;
+			if (this.builder.getEdgeCount() > 0) {
+				this.builder = new RoadGraph.Builder();
+				this.graph = null;
+			}
 		}
-		double length = 0;
-		final PathIterator iterator = path.getPathIterator(new AffineTransform());
-		Point2D lastPoint = null;
-		while (!iterator.isDone()) {
-			final float[] coords = new float[6];
-			final int type = iterator.currentSegment(coords);
-			final Point2D point = new Point2D.Float(coords[0], coords[1]);
-			if (type == PathIterator.SEG_LINETO) {
-				length += point.distance(lastPoint);
+		this.updateGraphs();
+	}
+
+	/**
+	 * 表示されている範囲と、経由地を囲む長方形に含まれる都道府県のグラフを読み込みます。
+	 * グラフを作るには時間がかかるので、読み込んでいる間はロックを持たず、読み込み終わってから差し替えます。
+	 * @throws IOException 入出力例外
+	 * @since 6.3.0
+	 */
+	private void updateGraphs() throws IOException {
+		final Set<String> ids;
+		final int count;
+		synchronized (this) {
+			if (this.area == null) {
+				return;
 			}
-			lastPoint = point;
-			iterator.next();
+			ids = this.getPrefectureIds();
+			if (ids.equals(this.prefectureGraphs.keySet())) {
+				return;
+			}
+			count = ++this.graphLoadCount;
 		}
-		final Edge edge = new Edge(first, last, path, length, category);
-		for (final String node : new String[] { first, last }) {
-			if (!this.graph.containsKey(node)) {
-				this.graph.put(node, new HashSet<Edge>());
+		final Map<String, RoadGraph> graphs = new TreeMap<String, RoadGraph>();
+		for (final String id : ids) {
+			final RoadGraph graph = this.prefectureGraphs.get(id);
+			graphs.put(id, graph == null ? RoadGraph.load(id) : graph);
+		}
+		synchronized (this) {
+			if (count == this.graphLoadCount && this.area != null) {
+				this.prefectureGraphs.keySet().retainAll(ids);
+				this.prefectureGraphs.putAll(graphs);
+				this.graph = null;
+			}
+		}
+	}
+
+	/**
+	 * @return 表示されている範囲と、経由地を囲む長方形に含まれる都道府県の都道府県コードの一覧
+	 * @since 6.3.0
+	 */
+	private synchronized Set<String> getPrefectureIds() {
+		final Collection<Rectangle2D> areas = new ArrayList<Rectangle2D>();
+		areas.add(this.area);
+		Rectangle2D routeArea = null;
+		for (final String string : this.points) {
+			final Point2D point = this.toPoint(string);
+			if (routeArea == null) {
+				routeArea = new Rectangle2D.Double(point.getX(), point.getY(), 0, 0);
+			} else {
+				routeArea.add(point);
 			}
-			if (!this.graph.get(node).contains(edge)) {
-				this.graph.get(node).add(edge);
+		}
+		if (routeArea != null) {
+			areas.add(new Rectangle2D.Double(routeArea.getX() - Route.ROUTE_MARGIN, routeArea.getY()
+					- Route.ROUTE_MARGIN, routeArea.getWidth() + Route.ROUTE_MARGIN * 2, routeArea.getHeight()
+					+ Route.ROUTE_MARGIN * 2));
+		}
+		final Set<String> ids = new TreeSet<String>();
+		for (final Map.Entry<String, Shape> entry : Route.getPrefectureShapes().entrySet()) {
+			for (final Rectangle2D rectangle : areas) {
+				if (entry.getValue().intersects(rectangle)) {
+					ids.add(entry.getKey());
+				}
+			}
+		}
+		return ids;
+	}
+
+	/**
+	 * @return 都道府県コードと都道府県の領域の対応表
+	 * @since 6.3.0
+	 */
+	private static synchronized Map<String, Shape> getPrefectureShapes() {
+		if (Route.prefectureShapes == null) {
+			final Map<String, Shape> shapes = new TreeMap<String, Shape>();
+			for (final Map.Entry<Shape, String> entry : ShapeIO.readShapes(
+					Route.class.getResourceAsStream(Const.DIR + "prefectures.csv")).entrySet()) {
+				final String[] values = entry.getValue().split("_");
+				if (values.length == 2) {
+					shapes.put(values[0], PreparedShape.prepare(entry.getKey()));
+				} else {
+					System.out.println("WARNING: 都道府県名の表記がおかしいです。" + entry.getValue());
+				}
+			}
+			Route.prefectureShapes = shapes;
+		}
+		return Route.prefectureShapes;
+	}
+
+	/**
+	 * 追加された辺と都道府県のグラフをまとめたグラフを取得します。
+	 * 辺が追加されたり、都道府県のグラフが読み込まれたりしたときだけ作り直します。
+	 * @return グラフ
+	 * @since 6.3.0
+	 */
+	private synchronized RoadGraph getGraph() {
+		if (this.graph == null) {
+			final List<RoadGraph> graphs = new ArrayList<RoadGraph>(new TreeMap<String, RoadGraph>(
+					this.prefectureGraphs).values());
+			if (this.builder.getEdgeCount() > 0) {
+				graphs.add(this.builder.build());
 			}
+			this.graph = graphs.size() == 1 ? graphs.get(0) : RoadGraph.merge(graphs);
+			this.graphVersion++;
+			this.legCache.clear();
+			this.isochroneCache.clear();
 		}
+		return this.graph;
 	}
 
 	/**
 	 * 経由地を追加します。
 	 * @param point 点
 	 */
-	public void addPoint(final Point2D point) {
+	public synchronized void addPoint(final Point2D point) {
 		final String nearestNode = this.getNearestNode(point);
 		if (nearestNode != null) {
 			if (this.points.contains(nearestNode)) {
@@ -416,131 +684,349 @@ public class Route {
 
 	/**
 	 * 最短経路を求め、フィールドに記憶します。
+	 * すべての区間が求まるまで待ちます。
 	 */
 	public void calcRoute() {
-		this.route.clear();
-		this.distance = 0;
-		this.time = 0;
-		String start = null;
-		for (final String string : this.points) {
-			if (start != null) {
-				this.route.addAll(this.calcRoute(start, string));
+		final Calculation calculation = this.startCalculation(null);
+		try {
+			calculation.remaining.await();
+		} catch (final InterruptedException exception) {
+			Thread.currentThread().interrupt();
+		}
+		// 最後の区間を求めたスレッドが反映し終える前に戻らないようにする
+		this.publish(calculation);
+	}
+
+	/**
+	 * 最短経路を求め始め、すぐに戻ります。
+	 * 隣り合う経由地の区間ごとに、キャッシュになければスレッドプールで並列に探索し、
+	 * 区間が求まるたびにそこまでの経路をフィールドに記憶してリスナを呼び出します。
+	 * ルートの文字列は、すべての区間が求まったときに設定されます。
+	 * リスナはスレッドプールのスレッドから呼び出されることがあります。
+	 * @param listener 区間が求まるたびに呼び出されるリスナ。不要なら null
+	 * @since 6.3.0
+	 */
+	public void calcRouteLater(final ActionListener listener) {
+		this.startCalculation(listener);
+	}
+
+	/**
+	 * 経路探索を始めます。
+	 * @param listener 区間が求まるたびに呼び出されるリスナ。不要なら null
+	 * @return 始めた経路探索
+	 * @since 6.3.0
+	 */
+	private Calculation startCalculation(final ActionListener listener) {
+		final RoadGraph graph;
+		final int version;
+		final List<String> points;
+		final Speed speed;
+		final Calculation calculation;
+		try {
+			// since 6.3.0 経由地が表示されている範囲の外にあっても探索できるようにする
+			this.updateGraphs();
+		} catch (final IOException exception) {
+			exception.printStackTrace();
+		}
+		synchronized (this) {
+			graph = this.getGraph();
+			version = this.graphVersion;
+			points = new ArrayList<String>(this.points);
+			speed = this.speed;
+			calculation = new Calculation(++this.generation, Math.max(0, points.size() - 1), speed, listener);
+			this.calculation = calculation;
+			if (this.legCache.size() > Route.LEG_CACHE_SIZE) {
+				this.legCache.clear();
+			}
+			// since 6.3.0 速度やグラフが変わったら到達圏も求め直す
+			if (this.isochroneCenter != null) {
+				this.isochrones = this.calcIsochrones(graph, this.isochroneCenter, speed);
+			}
+		}
+		final List<Runnable> tasks = new ArrayList<Runnable>();
+		for (int i = 0; i < calculation.legs.length; i++) {
+			final int index = i;
+			final LegKey key = new LegKey(points.get(i), points.get(i + 1), speed, version);
+			final Leg leg = this.legCache.get(key);
+			if (leg == null) {
+				tasks.add(new Runnable() {
+					public void run() {
+						Leg leg = null;
+						try {
+							final Object event = Trace.begin(Trace.Kind.ROUTE_LEG); // since 6.3.0
+							leg = Route.this.calcRoute(graph, key.start, key.goal, speed);
+							if (Trace.shouldCommit(event)) {
+								Trace.commit(event, key.start + " - " + key.goal, Route.getSpeedName(speed), leg.route
+										.size(), Trace.countVertices(leg.route), 0);
+							}
+							Route.this.legCache.put(key, leg);
+						} finally {
+							// 例外が発生しても、探索の終わりを待っているスレッドを止めないようにする
+							Route.this.setLeg(calculation, index, leg == null ? new Leg(new ArrayList<Shape>(), 0, 0)
+									: leg);
+						}
+					}
+				});
+			} else {
+				calculation.legs[index] = leg;
+				calculation.remaining.countDown();
 			}
-			start = string;
 		}
-		final String distance;
-		if (this.distance + .5 < 1000) {
-			distance = (int) (this.distance + .5) + "m";
-		} else if (this.distance / 1000 + .05 < 10) {
-			distance = new Formatter().format("%.1fkm", this.distance / 1000).toString();
+		this.publish(calculation);
+		for (final Runnable task : tasks) {
+			Route.EXECUTOR.execute(task);
+		}
+		return calculation;
+	}
+
+	/**
+	 * @param speed 速度
+	 * @return 速度の名前
+	 */
+	private static String getSpeedName(final Speed speed) {
+		if (speed == Route.HIGHWAY_SPEED) {
+			return "highway";
+		} else if (speed == Route.NORMAL_SPEED) {
+			return "normal";
+		} else if (speed == Route.BIKE_SPEED) {
+			return "bike";
+		} else if (speed == Route.WALK_SPEED) {
+			return "walk";
+		}
+		return String.valueOf(speed);
+	}
+
+	/**
+	 * 区間の探索結果を記憶し、そこまでの経路をフィールドに反映します。
+	 * @param calculation 経路探索
+	 * @param index 区間の番号
+	 * @param leg 区間の探索結果
+	 * @since 6.3.0
+	 */
+	private void setLeg(final Calculation calculation, final int index, final Leg leg) {
+		synchronized (calculation) {
+			calculation.legs[index] = leg;
+		}
+		calculation.remaining.countDown();
+		this.publish(calculation);
+	}
+
+	/**
+	 * 求まっている区間をつないだ経路をフィールドに記憶し、リスナを呼び出します。
+	 * より新しい経路探索が始まっていれば何もしません。
+	 * @param calculation 経路探索
+	 * @since 6.3.0
+	 */
+	private void publish(final Calculation calculation) {
+		synchronized (this) {
+			if (calculation.generation != this.generation) {
+				return;
+			}
+			final List<Shape> route = new ArrayList<Shape>();
+			double distance = 0;
+			double time = 0;
+			synchronized (calculation) {
+				for (final Leg leg : calculation.legs) {
+					if (leg != null) {
+						route.addAll(leg.route);
+						distance += leg.distance;
+						time += leg.time;
+					}
+				}
+			}
+			this.route = route;
+			this.distance = distance;
+			this.time = time;
+			this.caption = calculation.isDone() ? this.toCaption(distance, time, calculation.speed) : null;
+		}
+		if (calculation.listener != null) {
+			calculation.listener.actionPerformed(new ActionEvent(this, ActionEvent.ACTION_PERFORMED, "route"));
+		}
+	}
+
+	/**
+	 * @param distance 経路の長さ[m]
+	 * @param time 経路の時間[s]
+	 * @param speed 速度
+	 * @return ルートの文字列
+	 * @since 6.3.0
+	 */
+	private String toCaption(final double distance, final double time, final Speed speed) {
+		final String distanceString;
+		if (distance + .5 < 1000) {
+			distanceString = (int) (distance + .5) + "m";
+		} else if (distance / 1000 + .05 < 10) {
+			distanceString = new Formatter().format("%.1fkm", distance / 1000).toString();
 		} else {
-			distance = (int) (this.distance / 1000 + .5) + "km";
+			distanceString = (int) (distance / 1000 + .5) + "km";
 		}
-		final String time;
-		if (this.time / 60 < 60) {
-			time = (int) (this.time / 60 + .5) + "分";
+		final String timeString;
+		if (time / 60 < 60) {
+			timeString = (int) (time / 60 + .5) + "分";
 		} else {
-			if ((int) (this.time / 60 % 60 + .5) == 0) {
-				time = (int) (this.time / 60 / 60) + "時間";
-			} else if ((int) (this.time / 60 % 60 + .5) == 30) {
-				time = (int) (this.time / 60 / 60) + "時間半";
+			if ((int) (time / 60 % 60 + .5) == 0) {
+				timeString = (int) (time / 60 / 60) + "時間";
+			} else if ((int) (time / 60 % 60 + .5) == 30) {
+				timeString = (int) (time / 60 / 60) + "時間半";
 			} else {
-				time = (int) (this.time / 60 / 60) + "時間" + (int) (this.time / 60 % 60 + .5) + "分";
+				timeString = (int) (time / 60 / 60) + "時間" + (int) (time / 60 % 60 + .5) + "分";
 			}
 		}
-		this.caption = distance + "（" + this.speed.getVehicle() + "で" + time + "）";
+		return distanceString + "（" + speed.getVehicle() + "で" + timeString + "）";
+	}
+
+	/**
+	 * 指定した点に最も近い頂点を出発地として到達圏を求め、フィールドに記憶します。
+	 * 時間は {@link #ISOCHRONE_MINUTES} です。
+	 * @param point 点
+	 * @since 6.3.0
+	 */
+	public synchronized void calcIsochrones(final Point2D point) {
+		this.isochroneCenter = this.getNearestNode(point);
+		this.isochrones = this.isochroneCenter == null ? new ArrayList<Shape>() : this.calcIsochrones(
+				this.getGraph(), this.isochroneCenter, this.speed);
+	}
+
+	/**
+	 * 到達圏を求めます。求めたものはキャッシュします。
+	 * @param graph グラフ
+	 * @param center 出発地
+	 * @param speed 速度
+	 * @return 到達圏（時間の短い順）
+	 * @since 6.3.0
+	 */
+	private List<Shape> calcIsochrones(final RoadGraph graph, final String center, final Speed speed) {
+		if (!this.isochroneCache.containsKey(speed)) {
+			this.isochroneCache.put(speed, new ConcurrentHashMap<String, List<Shape>>());
+		}
+		final Map<String, List<Shape>> cache = this.isochroneCache.get(speed);
+		final String key = center + "_" + Arrays.toString(Route.ISOCHRONE_MINUTES);
+		if (!cache.containsKey(key)) {
+			if (cache.size() > Route.ISOCHRONE_CACHE_SIZE) {
+				cache.clear();
+			}
+			final int node = graph.getNode(this.toPoint(center));
+			if (node < 0) {
+				return new ArrayList<Shape>();
+			}
+			final double[] times = new double[Route.ISOCHRONE_MINUTES.length];
+			for (int i = 0; i < times.length; i++) {
+				times[i] = Route.ISOCHRONE_MINUTES[i] * 60;
+			}
+			cache.put(key, Arrays.asList(Isochrone.calc(graph, node, speed, times)));
+		}
+		return cache.get(key);
+	}
+
+	/**
+	 * @return 到達圏（時間の短い順）。到達圏を表示しないときは空
+	 * @since 6.3.0
+	 */
+	public List<Shape> getIsochrones() {
+		return this.isochrones;
+	}
+
+	/**
+	 * 到達圏をクリアします。
+	 * @since 6.3.0
+	 */
+	public synchronized void clearIsochrones() {
+		this.isochroneCenter = null;
+		this.isochrones = new ArrayList<Shape>();
 	}
 
 	/**
 	 * 求められた経路の長さ[m]
 	 */
-	private double distance;
+	private volatile double distance;
 
 	/**
 	 * 求められた経路の時間[s]
 	 */
-	private double time;
+	private volatile double time;
 
 	/**
 	 * 最短経路を求めます。
+	 * @param graph グラフ
 	 * @param start 始点
 	 * @param goal 終点
+	 * @param speed 速度
 	 * @return 最短経路
 	 */
-	private List<Shape> calcRoute(final String start, final String goal) {
+	private Leg calcRoute(final RoadGraph graph, final String start, final String goal, final Speed speed) {
 		final List<Shape> ret = new ArrayList<Shape>();
-		if (start == null || goal == null || !this.graph.containsKey(start) || !this.graph.containsKey(goal)) {
-			return ret;
+		double distance = 0;
+		double time = 0;
+		if (start == null || goal == null) {
+			return new Leg(ret, distance, time);
+		}
+		final int startNode = graph.getNode(this.toPoint(start));
+		final int goalNode = graph.getNode(this.toPoint(goal));
+		if (startNode < 0 || goalNode < 0) {
+			return new Leg(ret, distance, time);
 		}
-		final Map<String, Edge> parents = new HashMap<String, Edge>();
-		final Map<String, Node> nodes = new HashMap<String, Node>();
-		final Set<Edge> doneEdges = new HashSet<Edge>();
-		final Set<String> doneNodes = new HashSet<String>();
-		final PriorityQueue<Node> queue = new PriorityQueue<Node>();
-		queue.add(new Node(start, 0));
-		while (!queue.isEmpty()) {
-			//			System.out.printf("queue = %s, doneNodes = %s, doneEdges = %s\n", queue, doneNodes, doneEdges);
-			final Node node = queue.poll();
-			//			System.out.println("polled " + node);
-			if (node.node.equals(goal)) {
-				String node2 = goal;
-				double distance = 0;
-				double time = 0;
-				while (parents.containsKey(node2)) {
-					final Edge edge = parents.get(node2);
-					ret.add(edge.path);
-					distance += edge.length;
-					time += edge.length / this.speed.get(edge.category);
-					node2 = (edge.first.equals(node2)) ? edge.last : edge.first;
+		final double[] values = new double[graph.getNodeCount()];
+		Arrays.fill(values, Double.POSITIVE_INFINITY);
+		final int[] parents = new int[graph.getNodeCount()];
+		Arrays.fill(parents, -1);
+		final boolean[] doneNodes = new boolean[graph.getNodeCount()];
+		// since 6.3.0 RouteMatrix、Isochrone と同じく、値を小さくできるヒープを使う
+		final NodeHeap heap = new NodeHeap(graph.getNodeCount());
+		values[startNode] = 0;
+		heap.update(startNode, 0);
+		while (!heap.isEmpty()) {
+			final int node = heap.poll();
+			if (node == goalNode) {
+				int node2 = goalNode;
+				while (parents[node2] >= 0) {
+					final int edge = parents[node2];
+					ret.add(graph.getPath(edge));
+					distance += graph.getLength(edge);
+					time += graph.getLength(edge) / speed.get(graph.getCategory(edge));
+					node2 = graph.getFirst(edge) == node2 ? graph.getLast(edge) : graph.getFirst(edge);
 				}
-				this.distance += distance;
-				this.time += time;
 				break;
 			}
-			doneNodes.add(node.node);
-			if (!this.graph.containsKey(node.node)) {
-				continue;
-			}
-			for (final Edge edge : this.graph.get(node.node)) {
-				doneEdges.add(edge);
-				for (final String node2 : new String[] { edge.first, edge.last }) {
-					if (!doneNodes.contains(node2)) {
-						if (nodes.containsKey(node2) && queue.contains(nodes.get(node2))) {
-							final Node node3 = nodes.get(node2);
-							if (node3.value > node.value + edge.length / this.speed.get(edge.category)) {
-								node3.value = node.value + edge.length / this.speed.get(edge.category);
-								queue.remove(node3);
-								queue.add(node3);
-								parents.put(node2, edge);
-								//								System.out.println("removed and added " + node3);
-							}
-						} else {
-							final Node node3 = new Node(node2, node.value + edge.length / this.speed.get(edge.category));
-							nodes.put(node2, node3);
-							queue.add(node3);
-							parents.put(node2, edge);
-							//							System.out.println("added " + node3);
-						}
+			doneNodes[node] = true;
+			for (int i = graph.getEdgeStart(node); i < graph.getEdgeEnd(node); i++) {
+				final int edge = graph.getAdjacentEdge(i);
+				final int node2 = graph.getFirst(edge) == node ? graph.getLast(edge) : graph.getFirst(edge);
+				if (!doneNodes[node2]) {
+					final double value = values[node] + graph.getLength(edge) / speed.get(graph.getCategory(edge));
+					if (value < values[node2]) {
+						values[node2] = value;
+						parents[node2] = edge;
+						heap.update(node2, value);
 					}
 				}
 			}
 		}
-		return ret;
+		return new Leg(ret, distance, time);
 	}
 
 	/**
 	 * 経路探索のためのグラフをクリアします。
 	 */
-	public void clear() {
-		this.graph.clear();
+	public synchronized void clear() {
+		this.builder = new RoadGraph.Builder();
+		// since 6.3.0 読み込み中のグラフを反映しない
+		this.graphLoadCount++;
+		this.prefectureGraphs.clear();
+		this.area = null;
+		this.graph = null;
 		this.cachedPoints.clear();
 	}
 
 	/**
 	 * ルートと経由地をクリアします。
 	 */
-	public void clearRoute() {
-		this.route.clear();
+	public synchronized void clearRoute() {
+		// since 6.3.0 探索中の区間の結果は捨てる
+		this.generation++;
+		this.calculation = null;
+		this.route = new ArrayList<Shape>();
+		this.isochroneCenter = null;
+		this.isochrones = new ArrayList<Shape>();
 		this.points.clear();
 		this.cachedPoints.clear();
 		this.distance = 0;
@@ -552,17 +1038,9 @@ public class Route {
 	 * @return 最近傍ノード
 	 */
 	public String getNearestNode(final Point2D point) {
-		String ret = null;
-		double minDistance = Double.POSITIVE_INFINITY;
-		for (final String node : this.graph.keySet()) {
-			final Point2D point2 = this.toPoint(node);
-			final double distance = point.distanceSq(point2);
-			if (distance < minDistance) {
-				ret = node;
-				minDistance = distance;
-			}
-		}
-		return ret;
+		final RoadGraph graph = this.getGraph();
+		final int node = graph.getNearestNode(point);
+		return node < 0 ? null : this.toString(new Point2D.Double(graph.getX(node), graph.getY(node)));
 	}
 
 	/**
@@ -592,7 +1070,7 @@ public class Route {
 	 * 経由地の一覧を取得します。これは頻繁に呼び出されるので、キャッシュする必要があります。
 	 * @return 経由地の一覧
 	 */
-	public List<Point2D> getPoints() {
+	public synchronized List<Point2D> getPoints() {
 		if (this.cachedPoints.isEmpty()) {
 			for (final String string : this.points) {
 				this.cachedPoints.add(this.toPoint(string));
@@ -605,7 +1083,8 @@ public class Route {
 	 * @return 最短経路
 	 */
 	public List<Shape> getRoute() {
-		if (this.route.isEmpty()) {
+		final Calculation calculation = this.calculation;
+		if (this.route.isEmpty() && (calculation == null || calculation.isDone())) {
 			this.calcRoute();
 		}
 		return this.route;
@@ -615,7 +1094,7 @@ public class Route {
 	 * 経由地を挿入します。挿入される位置は自動的に決定されます。
 	 * @param point 点
 	 */
-	public void insertPoint(final Point2D point) {
+	public synchronized void insertPoint(final Point2D point) {
 		int index = -1;
 		double minDistance = Double.POSITIVE_INFINITY;
 		for (int i = 1; i < this.points.size(); i++) {
@@ -638,8 +1117,9 @@ public class Route {
 	 * @return 削除したかどうか
 	 */
 	private boolean removeGhostPoint() {
+		final RoadGraph graph = this.getGraph();
 		for (int i = 0; i < this.points.size(); i++) {
-			if (!this.graph.containsKey(this.points.get(i))) {
+			if (graph.getNode(this.toPoint(this.points.get(i))) < 0) {
 				this.points.remove(i);
 				return true;
 			}
@@ -652,7 +1132,7 @@ public class Route {
 	 * @param point 点
 	 * @param radius 削除する地点の最大距離
 	 */
-	public void removeNearestPoint(final Point2D point, final double radius) {
+	public synchronized void removeNearestPoint(final Point2D point, final double radius) {
 		final Point2D nearestPoint = this.getNearestPoint(point, radius);
 		if (nearestPoint != null) {
 			final String string = this.toString(nearestPoint);
@@ -0,0 +1,423 @@
+package route;
+
+import java.awt.geom.Point2D;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import map.UTMUtil;
+import route.Route.Category;
+import route.Route.Speed;
+
+/**
+ * 画面を使わずに、多数の出発地と目的地の間の距離と時間をまとめて求めるクラスです。
+ * 出発地ごとに1回だけ探索し、その出発地からのすべての目的地が求まったところで打ち切ります。
+ * 出発地ごとの探索はスレッドプールで並列に行い、結果は入力の順に書き出します。
+ * @author zenjiro
+ * @since 6.3.0
+ */
+public class RouteMatrix {
+	/**
+	 * 一度に並列に探索する出発地の数
+	 */
+	private static final int BATCH_SIZE = 1000;
+
+	/**
+	 * 1つの出発地から複数の目的地への探索結果です。
+	 * @author zenjiro
+	 * @since 6.3.0
+	 */
+	public static class Result {
+		/**
+		 * 目的地ごとの距離[m]。到達できなければ無限大
+		 */
+		final double[] distances;
+
+		/**
+		 * 目的地ごとの時間[s]。到達できなければ無限大
+		 */
+		final double[] times;
+
+		/**
+		 * コンストラクタです。
+		 * @param targetCount 目的地の数
+		 */
+		Result(final int targetCount) {
+			this.distances = new double[targetCount];
+			this.times = new double[targetCount];
+			Arrays.fill(this.distances, Double.POSITIVE_INFINITY);
+			Arrays.fill(this.times, Double.POSITIVE_INFINITY);
+		}
+
+		/**
+		 * @param index 目的地の番号
+		 * @return 距離[m]。到達できなければ無限大
+		 */
+		public double getDistance(final int index) {
+			return this.distances[index];
+		}
+
+		/**
+		 * @param index 目的地の番号
+		 * @return 時間[s]。到達できなければ無限大
+		 */
+		public double getTime(final int index) {
+			return this.times[index];
+		}
+	}
+
+	/**
+	 * グラフ
+	 */
+	private final RoadGraph graph;
+
+	/**
+	 * 探索を行うスレッドプール
+	 */
+	private final ExecutorService executor;
+
+	/**
+	 * コンストラクタです。
+	 * @param graph グラフ
+	 */
+	public RouteMatrix(final RoadGraph graph) {
+		this.graph = graph;
+		this.executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(),
+				new ThreadFactory() {
+					public Thread newThread(final Runnable runnable) {
+						final Thread thread = new Thread(runnable, "RouteMatrix");
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+	}
+
+	/**
+	 * 点に最も近い頂点を求めます。
+	 * @param point 点（仮想座標）
+	 * @return 頂点番号。頂点がなければ-1
+	 */
+	public int getNode(final Point2D point) {
+		return this.graph.getNearestNode(point);
+	}
+
+	/**
+	 * 1つの出発地から複数の目的地への最短経路の距離と時間を求めます。
+	 * 時間が最短になる経路を求め、その経路の距離も記録します。
+	 * @param source 出発地の頂点番号
+	 * @param targets 目的地の頂点番号の一覧。-1の目的地には到達できないものとする
+	 * @param speed 速度
+	 * @return 探索結果
+	 */
+	public Result search(final int source, final int[] targets, final Speed speed) {
+		final Result ret = new Result(targets.length);
+		if (source < 0) {
+			return ret;
+		}
+		// 辺の種類ごとの1mあたりの時間
+		final double[] costs = new double[Category.values().length];
+		for (final Category category : Category.values()) {
+			costs[category.ordinal()] = 1 / speed.get(category);
+		}
+		final int nodeCount = this.graph.getNodeCount();
+		final double[] times = new double[nodeCount];
+		Arrays.fill(times, Double.POSITIVE_INFINITY);
+		final double[] distances = new double[nodeCount];
+		final boolean[] doneNodes = new boolean[nodeCount];
+		// まだ求まっていない目的地の数を数え、0になったら打ち切る
+		final boolean[] isTarget = new boolean[nodeCount];
+		int remaining = 0;
+		for (final int target : targets) {
+			if (target >= 0 && !isTarget[target]) {
+				isTarget[target] = true;
+				remaining++;
+			}
+		}
+		final NodeHeap heap = new NodeHeap(nodeCount);
+		times[source] = 0;
+		heap.update(source, 0);
+		while (!heap.isEmpty() && remaining > 0) {
+			final int node = heap.poll();
+			doneNodes[node] = true;
+			if (isTarget[node]) {
+				remaining--;
+			}
+			for (int i = this.graph.getEdgeStart(node); i < this.graph.getEdgeEnd(node); i++) {
+				final int edge = this.graph.getAdjacentEdge(i);
+				final int node2 = this.graph.getFirst(edge) == node ? this.graph.getLast(edge) : this.graph
+						.getFirst(edge);
+				if (!doneNodes[node2]) {
+					final double length = this.graph.getLength(edge);
+					final double time = times[node] + length * costs[this.graph.getCategory(edge).ordinal()];
+					if (time < times[node2]) {
+						times[node2] = time;
+						distances[node2] = distances[node] + length;
+						heap.update(node2, time);
+					}
+				}
+			}
+		}
+		for (int i = 0; i < targets.length; i++) {
+			if (targets[i] >= 0 && doneNodes[targets[i]]) {
+				ret.times[i] = times[targets[i]];
+				ret.distances[i] = distances[targets[i]];
+			}
+		}
+		return ret;
+	}
+
+	/**
+	 * 複数の出発地からの探索を並列に行います。
+	 * @param sources 出発地の頂点番号の一覧
+	 * @param targets 出発地ごとの目的地の頂点番号の一覧
+	 * @param speed 速度
+	 * @return 出発地ごとの探索結果
+	 * @throws InterruptedException 割り込み例外
+	 */
+	public List<Result> search(final int[] sources, final int[][] targets, final Speed speed)
+			throws InterruptedException {
+		final List<Callable<Result>> tasks = new ArrayList<Callable<Result>>();
+		for (int i = 0; i < sources.length; i++) {
+			final int index = i;
+			tasks.add(new Callable<Result>() {
+				public Result call() {
+					return RouteMatrix.this.search(sources[index], targets[index], speed);
+				}
+			});
+		}
+		final List<Result> ret = new ArrayList<Result>();
+		for (final Future<Result> future : this.executor.invokeAll(tasks)) {
+			try {
+				ret.add(future.get());
+			} catch (final ExecutionException e) {
+				if (e.getCause() instanceof RuntimeException) {
+					throw (RuntimeException) e.getCause();
+				}
+				throw new IllegalStateException(e.getCause());
+			}
+		}
+		return ret;
+	}
+
+	/**
+	 * 速度の名前から速度を取得します。
+	 * @param name 速度の名前（highway、normal、bike、walk）
+	 * @return 速度
+	 */
+	public static Speed toSpeed(final String name) {
+		if (name.equals("highway")) {
+			return Route.HIGHWAY_SPEED;
+		} else if (name.equals("normal")) {
+			return Route.NORMAL_SPEED;
+		} else if (name.equals("bike")) {
+			return Route.BIKE_SPEED;
+		} else if (name.equals("walk")) {
+			return Route.WALK_SPEED;
+		} else {
+			throw new IllegalArgumentException("unknown speed: " + name);
+		}
+	}
+
+	/**
+	 * 経度,緯度の文字列を仮想座標に変換します。
+	 * @param longitude 経度
+	 * @param latitude 緯度
+	 * @return 仮想座標
+	 */
+	private static Point2D toPoint(final String longitude, final String latitude) {
+		// 仮想座標は南向きが正なので、緯度の符号を反転する
+		return UTMUtil.toUTM(Double.parseDouble(longitude.trim()), -Double.parseDouble(latitude.trim()));
+	}
+
+	/**
+	 * 距離と時間を出力用の文字列にします。到達できなければ空文字列にします。
+	 * @param value 値
+	 * @return 文字列
+	 */
+	private static String format(final double value) {
+		return Double.isInfinite(value) ? "" : String.valueOf(Math.round(value));
+	}
+
+	/**
+	 * 出発地と目的地の組ごとに、距離と時間を求めます。
+	 * 入力の各行は「出発地の経度,緯度,目的地の経度,緯度」で始まり、
+	 * 各行の末尾に速度ごとの「,距離[m],時間[s]」を付け加えて書き出します。
+	 * @param speeds 速度の一覧
+	 * @param in 入力
+	 * @param out 出力
+	 * @return 求めた組の数
+	 * @throws IOException 入出力例外
+	 * @throws InterruptedException 割り込み例外
+	 */
+	public long pairs(final List<Speed> speeds, final BufferedReader in, final PrintWriter out) throws IOException,
+			InterruptedException {
+		long count = 0;
+		final List<String> lines = new ArrayList<String>();
+		final List<int[]> pairs = new ArrayList<int[]>();
+		for (String line = in.readLine(); line != null; line = in.readLine()) {
+			if (line.startsWith("#")) {
+				lines.add(line);
+				pairs.add(null);
+			} else {
+				final String[] items = line.split(",");
+				if (items.length >= 4) {
+					lines.add(line);
+					pairs.add(new int[] { this.getNode(RouteMatrix.toPoint(items[0], items[1])),
+							this.getNode(RouteMatrix.toPoint(items[2], items[3])) });
+				} else {
+					System.out.println("WARNING: invalid line: " + line);
+				}
+			}
+			if (lines.size() == RouteMatrix.BATCH_SIZE) {
+				count += this.writePairs(speeds, lines, pairs, out);
+			}
+		}
+		count += this.writePairs(speeds, lines, pairs, out);
+		return count;
+	}
+
+	/**
+	 * 読み込んだ組の距離と時間を求めて書き出し、行の一覧を空にします。
+	 * @param speeds 速度の一覧
+	 * @param lines 行の一覧
+	 * @param pairs 出発地と目的地の頂点番号の組の一覧。コメント行は null
+	 * @param out 出力
+	 * @return 求めた組の数
+	 * @throws InterruptedException 割り込み例外
+	 */
+	private int writePairs(final List<Speed> speeds, final List<String> lines, final List<int[]> pairs,
+			final PrintWriter out) throws InterruptedException {
+		int count = 0;
+		final int[] sources = new int[pairs.size()];
+		final int[][] targets = new int[pairs.size()][];
+		for (int i = 0; i < pairs.size(); i++) {
+			if (pairs.get(i) == null) {
+				sources[i] = -1;
+				targets[i] = new int[0];
+			} else {
+				sources[i] = pairs.get(i)[0];
+				targets[i] = new int[] { pairs.get(i)[1] };
+				count++;
+			}
+		}
+		final List<List<Result>> results = new ArrayList<List<Result>>();
+		for (final Speed speed : speeds) {
+			results.add(this.search(sources, targets, speed));
+		}
+		for (int i = 0; i < lines.size(); i++) {
+			final StringBuilder line = new StringBuilder(lines.get(i));
+			if (pairs.get(i) != null) {
+				for (final List<Result> result : results) {
+					line.append("," + RouteMatrix.format(result.get(i).getDistance(0)) + ","
+							+ RouteMatrix.format(result.get(i).getTime(0)));
+				}
+			}
+			out.println(line);
+		}
+		lines.clear();
+		pairs.clear();
+		return count;
+	}
+
+	/**
+	 * 地点の一覧のすべての組について、距離と時間を求めます。
+	 * 入力の各行は「経度,緯度」で始まり、行の順に0から番号を付けます。
+	 * 「出発地の番号,目的地の番号,速度の名前,距離[m],時間[s]」の行を、出発地ごとに書き出します。
+	 * @param speeds 速度の名前の一覧
+	 * @param in 入力
+	 * @param out 出力
+	 * @return 求めた組の数
+	 * @throws IOException 入出力例外
+	 * @throws InterruptedException 割り込み例外
+	 */
+	public long matrix(final List<String> speeds, final BufferedReader in, final PrintWriter out)
+			throws IOException, InterruptedException {
+		final List<Integer> nodes = new ArrayList<Integer>();
+		for (String line = in.readLine(); line != null; line = in.readLine()) {
+			if (!line.startsWith("#")) {
+				final String[] items = line.split(",");
+				if (items.length >= 2) {
+					nodes.add(this.getNode(RouteMatrix.toPoint(items[0], items[1])));
+				} else {
+					System.out.println("WARNING: invalid line: " + line);
+				}
+			}
+		}
+		final int[] targets = new int[nodes.size()];
+		for (int i = 0; i < targets.length; i++) {
+			targets[i] = nodes.get(i);
+		}
+		long count = 0;
+		for (int start = 0; start < targets.length; start += RouteMatrix.BATCH_SIZE) {
+			final int end = Math.min(targets.length, start + RouteMatrix.BATCH_SIZE);
+			final int[] sources = Arrays.copyOfRange(targets, start, end);
+			final int[][] targetsList = new int[sources.length][];
+			Arrays.fill(targetsList, targets);
+			for (final String name : speeds) {
+				final List<Result> results = this.search(sources, targetsList, RouteMatrix.toSpeed(name));
+				for (int i = 0; i < results.size(); i++) {
+					for (int j = 0; j < targets.length; j++) {
+						out.println((start + i) + "," + j + "," + name + ","
+								+ RouteMatrix.format(results.get(i).getDistance(j)) + ","
+								+ RouteMatrix.format(results.get(i).getTime(j)));
+						count++;
+					}
+				}
+			}
+			out.flush();
+		}
+		return count;
+	}
+
+	/**
+	 * 都道府県のグラフを読み込み、出発地と目的地の組、または地点の一覧のすべての組について距離と時間を求めます。
+	 * 経度と緯度は世界測地系の度で、「#」で始まる行は読み飛ばします（組の場合はそのまま書き出します）。
+	 * @param args 都道府県コード（カンマ区切り） 速度の名前（カンマ区切り） pairs|matrix 入力ファイル 出力ファイル
+	 * @throws IOException 入出力例外
+	 * @throws InterruptedException 割り込み例外
+	 */
+	public static void main(final String[] args) throws IOException, InterruptedException {
+		if (args.length != 5 || !(args[2].equals("pairs") || args[2].equals("matrix"))) {
+			System.out.println("usage: java route.RouteMatrix 13,14 highway,walk pairs|matrix input.csv output.csv");
+			System.exit(1);
+		}
+		final long start = System.currentTimeMillis();
+		final List<RoadGraph> graphs = new ArrayList<RoadGraph>();
+		for (final String id : args[0].split(",")) {
+			graphs.add(RoadGraph.load(id));
+		}
+		final RouteMatrix matrix = new RouteMatrix(graphs.size() == 1 ? graphs.get(0) : RoadGraph.merge(graphs));
+		System.out.println("loaded in " + (System.currentTimeMillis() - start) + " ms");
+		final List<String> names = Arrays.asList(args[1].split(","));
+		final List<Speed> speeds = new ArrayList<Speed>();
+		for (final String name : names) {
+			speeds.add(RouteMatrix.toSpeed(name));
+		}
+		final BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(args[3]), "SJIS"));
+		final PrintWriter out = new PrintWriter(new File(args[4]), "SJIS");
+		final long count;
+		try {
+			if (args[2].equals("pairs")) {
+				count = matrix.pairs(speeds, in, out);
+			} else {
+				count = matrix.matrix(names, in, out);
+			}
+		} finally {
+			in.close();
+			out.close();
+		}
+		System.out.println(count + " entries in " + (System.currentTimeMillis() - start) + " ms");
+	}
+}
@@ -1,17 +1,24 @@
 package search;
 
-import java.awt.Point;
 import java.awt.Shape;
 import java.awt.geom.Point2D;
 import java.awt.geom.Rectangle2D;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.PriorityQueue;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * cell methodによる検索を行うクラスです。
+ * 複数のスレッドから同時にオブジェクトを追加できます。
+ * セルごとの一覧は追加しかできないので、検索する側はロックを取らずに、ある時点の一覧を読み出します。
  * @author zenjiro
  * Created on 2005/02/08 21:42:46
  */
@@ -21,7 +28,7 @@ public class CellSearch implements Search {
      * @author zenjiro
      * Created on 2005/02/08 22:01:09
      */
-    private class Entry {
+    private static class Entry {
         /**
          * オブジェクト
          */
@@ -32,14 +39,51 @@ public class CellSearch implements Search {
          */
         final String label;
 
+        /**
+         * オブジェクトを囲む長方形の左端
+         * @since 6.3.0
+         */
+        final double minX;
+
+        /**
+         * オブジェクトを囲む長方形の上端
+         * @since 6.3.0
+         */
+        final double minY;
+
+        /**
+         * オブジェクトを囲む長方形の右端
+         * @since 6.3.0
+         */
+        final double maxX;
+
+        /**
+         * オブジェクトを囲む長方形の下端
+         * @since 6.3.0
+         */
+        final double maxY;
+
+        /**
+         * オブジェクトを囲む長方形の幅か高さが0かどうか
+         * @since 6.3.0
+         */
+        final boolean isEmpty;
+
         /**
          * オブジェクトとラベルをカプセル化するクラスを初期化します。
          * @param shape オブジェクト
          * @param label ラベル
          */
         Entry(final Shape shape, final String label) {
-            this.shape = shape;
+            // since 6.3.0 頂点の多いポリゴンは点の包含判定を速くするために準備しておく
+            this.shape = PreparedShape.prepare(shape);
             this.label = label;
+            final Rectangle2D bounds = shape.getBounds2D();
+            this.minX = bounds.getMinX();
+            this.minY = bounds.getMinY();
+            this.maxX = bounds.getMaxX();
+            this.maxY = bounds.getMaxY();
+            this.isEmpty = bounds.isEmpty();
         }
 
         @Override
@@ -48,6 +92,157 @@ public class CellSearch implements Search {
         }
     }
 
+    /**
+     * セルの位置を表すクラスです。
+     * 検索では1つのオブジェクトの座標を書き換えながら使い回し、セルごとにオブジェクトを作りません。
+     * 対応表のキーとして登録したオブジェクトの座標は書き換えません。
+     * @author zenjiro
+     * @since 6.3.0
+     */
+    private static class Cell {
+        /**
+         * x座標
+         */
+        int x;
+
+        /**
+         * y座標
+         */
+        int y;
+
+        /**
+         * セルの位置を初期化します。
+         * @param x x座標
+         * @param y y座標
+         */
+        Cell(final int x, final int y) {
+            this.x = x;
+            this.y = y;
+        }
+
+        @Override
+        public int hashCode() {
+            return this.x * 92821 + this.y;
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            if (obj instanceof Cell) {
+                final Cell cell = (Cell) obj;
+                return this.x == cell.x && this.y == cell.y;
+            }
+            return false;
+        }
+    }
+
+    /**
+     * 1つのセルに含まれるオブジェクトの一覧です。
+     * 追加はこのオブジェクトのロックを取って行います。
+     * 要素を配列に書き込んでから要素数を更新するので、要素数、配列の順に読み出せば、
+     * ロックを取らなくても、その要素数までの要素は全て読み出せます。
+     * @author zenjiro
+     * @since 6.3.0
+     */
+    private static class Bucket {
+        /**
+         * オブジェクトの配列
+         */
+        volatile Entry[] entries = new Entry[4];
+
+        /**
+         * 要素数
+         */
+        volatile int size;
+
+        /**
+         * オブジェクトを追加します。
+         * @param entry オブジェクト
+         */
+        synchronized void add(final Entry entry) {
+            this.ensureCapacity(this.size + 1);
+            this.entries[this.size] = entry;
+            this.size++;
+        }
+
+        /**
+         * オブジェクトをまとめて追加します。
+         * @param list オブジェクトの一覧
+         */
+        synchronized void addAll(final List<Entry> list) {
+            final int size = this.size;
+            this.ensureCapacity(size + list.size());
+            final Entry[] entries = this.entries;
+            for (int i = 0; i < list.size(); i++) {
+                entries[size + i] = list.get(i);
+            }
+            this.size = size + list.size();
+        }
+
+        /**
+         * 必要なら配列を大きくします。
+         * @param capacity 必要な要素数
+         */
+        private void ensureCapacity(final int capacity) {
+            if (capacity > this.entries.length) {
+                final Entry[] entries = new Entry[Math.max(capacity, this.entries.length * 2)];
+                System.arraycopy(this.entries, 0, entries, 0, this.size);
+                this.entries = entries;
+            }
+        }
+    }
+
+    /**
+     * 近傍検索の候補です。
+     * @author zenjiro
+     * @since 6.3.0
+     */
+    private static class Candidate implements Comparable<Candidate> {
+        /**
+         * オブジェクト
+         */
+        final Entry entry;
+
+        /**
+         * 点からの距離
+         */
+        final double distance;
+
+        /**
+         * ポリゴンまでの距離かどうか。偽なら外接矩形までの距離
+         */
+        final boolean isExact;
+
+        /**
+         * 近傍検索の候補を初期化します。
+         * @param entry オブジェクト
+         * @param distance 点からの距離
+         * @param isExact ポリゴンまでの距離かどうか
+         */
+        Candidate(final Entry entry, final double distance, final boolean isExact) {
+            this.entry = entry;
+            this.distance = distance;
+            this.isExact = isExact;
+        }
+
+        /**
+         * 距離の近い順に並べます。
+         * 距離が等しければ、外接矩形までの距離の候補を先にして全て計算し直してから、ラベルの順に確定させます。
+         * こうすると、距離が等しいデータの順が索引の構造によらなくなります。
+         */
+        public int compareTo(final Candidate other) {
+            final int ret = Double.compare(this.distance, other.distance);
+            if (ret != 0) {
+                return ret;
+            } else if (this.isExact != other.isExact) {
+                return this.isExact ? 1 : -1;
+            } else if (this.entry.label == null || other.entry.label == null) {
+                return this.entry.label == null ? (other.entry.label == null ? 0 : -1) : 1;
+            } else {
+                return this.entry.label.compareTo(other.entry.label);
+            }
+        }
+    }
+
     /**
      * セルの幅
      */
@@ -61,7 +256,14 @@ public class CellSearch implements Search {
     /**
      * データ構造
      */
-    private final Map<Point, ArrayList<Entry>> data;
+    private final ConcurrentMap<Cell, Bucket> data;
+
+    /**
+     * オブジェクトが登録されているセルの範囲（左端、上端、右端、下端）。何も登録されていなければ null
+     * 範囲を広げるときは新しい配列を作って置き換えます。
+     * @since 6.3.0
+     */
+    private volatile int[] extent;
 
     /**
      * ノードへのアクセス回数
@@ -81,75 +283,161 @@ public class CellSearch implements Search {
     public CellSearch(final double width, final double height) {
         this.width = width;
         this.height = height;
-        this.data = new ConcurrentHashMap<Point, ArrayList<Entry>>();
+        this.data = new ConcurrentHashMap<Cell, Bucket>();
     }
 
     public void insert(final Shape shape, final String label) {
-        final Rectangle2D bounds = shape.getBounds2D();
-        final int x1 = (int) Math.round(bounds.getMinX() / this.width);
-        final int x2 = (int) Math.round(bounds.getMaxX() / this.width);
-        final int y1 = (int) Math.round(bounds.getMinY() / this.height);
-        final int y2 = (int) Math.round(bounds.getMaxY() / this.height);
         final Entry entry = new Entry(shape, label);
+        final int x1 = (int) Math.round(entry.minX / this.width);
+        final int x2 = (int) Math.round(entry.maxX / this.width);
+        final int y1 = (int) Math.round(entry.minY / this.height);
+        final int y2 = (int) Math.round(entry.maxY / this.height);
+        this.extend(x1, y1, x2, y2);
         for (int y = y1; y <= y2; ++y) {
             for (int x = x1; x <= x2; ++x) {
-                final Rectangle2D cell = new Rectangle2D.Double((x - 0.5) * this.width, (y - 0.5)
-                        * this.height, this.width, this.height);
-                if (shape.intersects(cell)) {
-                    final Point key = new Point(x, y);
-                    if (this.data.containsKey(key)) {
-                        final ArrayList<Entry> list = this.data.get(key);
-                        list.add(entry);
-                    } else {
-                        final ArrayList<Entry> list = new ArrayList<Entry>();
+                if (shape.intersects((x - 0.5) * this.width, (y - 0.5) * this.height, this.width, this.height)) {
+                    this.getBucket(new Cell(x, y)).add(entry);
+                }
+            }
+        }
+    }
+
+    /**
+     * オブジェクトをまとめて追加します。
+     * セルごとに一覧を作ってから追加するので、1つずつ追加するよりロックを取る回数が少なくなります。
+     * 複数のスレッドから同時に呼び出せます。
+     * @param shapes オブジェクトとラベルの対応表
+     * @since 6.3.0
+     */
+    public void insertAll(final Map<? extends Shape, String> shapes) {
+        final Map<Cell, List<Entry>> batch = new HashMap<Cell, List<Entry>>();
+        int minX = Integer.MAX_VALUE;
+        int minY = Integer.MAX_VALUE;
+        int maxX = Integer.MIN_VALUE;
+        int maxY = Integer.MIN_VALUE;
+        for (final Map.Entry<? extends Shape, String> item : shapes.entrySet()) {
+            final Shape shape = item.getKey();
+            final Entry entry = new Entry(shape, item.getValue());
+            final int x1 = (int) Math.round(entry.minX / this.width);
+            final int x2 = (int) Math.round(entry.maxX / this.width);
+            final int y1 = (int) Math.round(entry.minY / this.height);
+            final int y2 = (int) Math.round(entry.maxY / this.height);
+            minX = Math.min(minX, x1);
+            minY = Math.min(minY, y1);
+            maxX = Math.max(maxX, x2);
+            maxY = Math.max(maxY, y2);
+            for (int y = y1; y <= y2; ++y) {
+                for (int x = x1; x <= x2; ++x) {
+                    if (shape.intersects((x - 0.5) * this.width, (y - 0.5) * this.height, this.width,
+                            this.height)) {
+                        final Cell cell = new Cell(x, y);
+                        List<Entry> list = batch.get(cell);
+                        if (list == null) {
+                            list = new ArrayList<Entry>();
+                            batch.put(cell, list);
+                        }
                         list.add(entry);
-                        this.data.put(key, list);
                     }
                 }
             }
         }
+        if (!shapes.isEmpty()) {
+            this.extend(minX, minY, maxX, maxY);
+        }
+        for (final Map.Entry<Cell, List<Entry>> item : batch.entrySet()) {
+            this.getBucket(item.getKey()).addAll(item.getValue());
+        }
+    }
+
+    /**
+     * オブジェクトが登録されているセルの範囲を広げます。
+     * オブジェクトを追加する前に呼び出すので、検索する側が見つけられるオブジェクトは必ずこの範囲に含まれます。
+     * @param x1 左端
+     * @param y1 上端
+     * @param x2 右端
+     * @param y2 下端
+     */
+    private synchronized void extend(final int x1, final int y1, final int x2, final int y2) {
+        final int[] extent = this.extent;
+        if (extent == null) {
+            this.extent = new int[] { x1, y1, x2, y2 };
+        } else if (x1 < extent[0] || y1 < extent[1] || x2 > extent[2] || y2 > extent[3]) {
+            this.extent = new int[] { Math.min(x1, extent[0]), Math.min(y1, extent[1]), Math.max(x2, extent[2]),
+                    Math.max(y2, extent[3]) };
+        }
+    }
+
+    /**
+     * セルの一覧を取得します。なければ作成します。
+     * @param cell セルの位置
+     * @return セルの一覧
+     */
+    private Bucket getBucket(final Cell cell) {
+        final Bucket bucket = this.data.get(cell);
+        if (bucket != null) {
+            return bucket;
+        }
+        final Bucket bucket2 = new Bucket();
+        final Bucket bucket3 = this.data.putIfAbsent(cell, bucket2);
+        return bucket3 == null ? bucket2 : bucket3;
     }
 
     public Set<String> search(final Point2D query) {
         final Set<String> ret = new HashSet<String>();
-        this.nodeAccess = 1;
-        this.shapeAccess = 0;
-        final int x = (int) Math.round(query.getX() / this.width);
-        final int y = (int) Math.round(query.getY() / this.height);
-        final Point key = new Point(x, y);
-        if (this.data.containsKey(key)) {
-            final ArrayList<Entry> list = this.data.get(key);
-            for (final Entry entry : list) {
-                ++this.nodeAccess;
-                if (entry.shape.getBounds2D().contains(query)) {
-                    ++this.shapeAccess;
+        int nodeAccess = 1;
+        int shapeAccess = 0;
+        final double qx = query.getX();
+        final double qy = query.getY();
+        final Bucket bucket = this.data.get(new Cell((int) Math.round(qx / this.width), (int) Math.round(qy
+                / this.height)));
+        if (bucket != null) {
+            final int size = bucket.size;
+            final Entry[] entries = bucket.entries;
+            for (int i = 0; i < size; i++) {
+                final Entry entry = entries[i];
+                ++nodeAccess;
+                if (entry.minX <= qx && qx < entry.maxX && entry.minY <= qy && qy < entry.maxY) {
+                    ++shapeAccess;
                     if (entry.shape.contains(query)) {
                         ret.add(entry.label);
                     }
                 }
             }
         }
+        this.nodeAccess = nodeAccess;
+        this.shapeAccess = shapeAccess;
         return ret;
     }
 
     public Set<String> search(final Rectangle2D query) {
         final Set<String> ret = new HashSet<String>();
-        this.nodeAccess = 1;
-        this.shapeAccess = 1;
-        final int x1 = (int) Math.round(query.getMinX() / this.width);
-        final int x2 = (int) Math.round(query.getMaxX() / this.width);
-        final int y1 = (int) Math.round(query.getMinY() / this.height);
-        final int y2 = (int) Math.round(query.getMaxY() / this.height);
+        int nodeAccess = 1;
+        int shapeAccess = 1;
+        final double minX = query.getMinX();
+        final double minY = query.getMinY();
+        final double maxX = query.getMaxX();
+        final double maxY = query.getMaxY();
+        final int x1 = (int) Math.round(minX / this.width);
+        final int x2 = (int) Math.round(maxX / this.width);
+        final int y1 = (int) Math.round(minY / this.height);
+        final int y2 = (int) Math.round(maxY / this.height);
+        final boolean isEmpty = query.isEmpty();
+        final Cell cell = new Cell(0, 0);
         for (int y = y1; y <= y2; ++y) {
             for (int x = x1; x <= x2; ++x) {
-                final Point key = new Point(x, y);
-                if (this.data.containsKey(key)) {
-                    final ArrayList<Entry> list = this.data.get(key);
-                    for (final Entry entry : list) {
-                        ++this.nodeAccess;
+                cell.x = x;
+                cell.y = y;
+                final Bucket bucket = this.data.get(cell);
+                if (bucket != null) {
+                    final int size = bucket.size;
+                    final Entry[] entries = bucket.entries;
+                    for (int i = 0; i < size; i++) {
+                        final Entry entry = entries[i];
+                        ++nodeAccess;
                         if (!ret.contains(entry.label)) {
-                            if (entry.shape.getBounds2D().intersects(query)) {
-                                ++this.shapeAccess;
+                            if (!isEmpty && !entry.isEmpty && entry.minX < maxX && minX < entry.maxX
+                                    && entry.minY < maxY && minY < entry.maxY) {
+                                ++shapeAccess;
                                 if (entry.shape.intersects(query)) {
                                     ret.add(entry.label);
                                 }
@@ -159,9 +447,138 @@ public class CellSearch implements Search {
                 }
             }
         }
+        this.nodeAccess = nodeAccess;
+        this.shapeAccess = shapeAccess;
+        return ret;
+    }
+
+    public List<String> searchNearest(final Point2D query, final int k) {
+        return this.searchNearest(query, k, Double.POSITIVE_INFINITY);
+    }
+
+    public List<String> searchWithin(final Point2D query, final double distance) {
+        return this.searchNearest(query, Integer.MAX_VALUE, distance);
+    }
+
+    /**
+     * 指定した点を含むセルから外側へセルを調べる範囲を広げながら、近い順にデータを取得します。
+     * まだ調べていないセルにあるポリゴンは、調べた範囲の縁より遠いので、
+     * 縁までの距離より近い候補はその時点で順位が確定します。
+     * 範囲は縁までの距離が最も短い辺の方向に1列ずつ広げるので、セルが細長くても調べる範囲はほぼ正方形になります。
+     * 候補は外接矩形までの距離で順位を付け、順位が確定しそうになったときにポリゴンまでの距離を計算し直します。
+     * @param query 点
+     * @param k 取得するデータの最大数
+     * @param maxDistance 距離の上限
+     * @return 近い順に並べたデータの一覧
+     */
+    private List<String> searchNearest(final Point2D query, final int k, final double maxDistance) {
+        final List<String> ret = new ArrayList<String>();
+        final int[] counts = new int[2];
+        final int[] extent = this.extent;
+        if (extent != null && k > 0) {
+            final double qx = query.getX();
+            final double qy = query.getY();
+            final int cx = (int) Math.round(qx / this.width);
+            final int cy = (int) Math.round(qy / this.height);
+            final Set<String> labels = new HashSet<String>();
+            final Set<Entry> visited = Collections.newSetFromMap(new IdentityHashMap<Entry, Boolean>());
+            final PriorityQueue<Candidate> queue = new PriorityQueue<Candidate>();
+            final Cell cell = new Cell(0, 0);
+            int x1 = cx;
+            int x2 = cx;
+            int y1 = cy;
+            int y2 = cy;
+            this.visit(cell, cx, cx, cy, cy, extent, qx, qy, maxDistance, visited, queue, counts);
+            while (true) {
+                // オブジェクトのあるセルの範囲を覆った辺は、それ以上広げても何も見つからない
+                final double left = x1 <= extent[0] ? Double.POSITIVE_INFINITY : qx - (x1 - 0.5) * this.width;
+                final double right = x2 >= extent[2] ? Double.POSITIVE_INFINITY : (x2 + 0.5) * this.width - qx;
+                final double top = y1 <= extent[1] ? Double.POSITIVE_INFINITY : qy - (y1 - 0.5) * this.height;
+                final double bottom = y2 >= extent[3] ? Double.POSITIVE_INFINITY : (y2 + 0.5) * this.height - qy;
+                final double bound = Math.min(Math.min(left, right), Math.min(top, bottom));
+                // 全ての辺が範囲を覆ったら、距離の上限がなくても広げるのをやめる
+                final boolean isDone = bound > maxDistance || bound == Double.POSITIVE_INFINITY;
+                while (!queue.isEmpty() && ret.size() < k && (isDone || queue.peek().distance <= bound)) {
+                    final Candidate candidate = queue.poll();
+                    if (candidate.isExact) {
+                        if (labels.add(candidate.entry.label)) {
+                            ret.add(candidate.entry.label);
+                        }
+                    } else {
+                        ++counts[1];
+                        final double distance = ShapeDistance.distance(candidate.entry.shape, qx, qy);
+                        if (distance <= maxDistance) {
+                            queue.add(new Candidate(candidate.entry, distance, true));
+                        }
+                    }
+                }
+                if (isDone || ret.size() >= k) {
+                    break;
+                }
+                if (bound == left) {
+                    --x1;
+                    this.visit(cell, x1, x1, y1, y2, extent, qx, qy, maxDistance, visited, queue, counts);
+                } else if (bound == right) {
+                    ++x2;
+                    this.visit(cell, x2, x2, y1, y2, extent, qx, qy, maxDistance, visited, queue, counts);
+                } else if (bound == top) {
+                    --y1;
+                    this.visit(cell, x1, x2, y1, y1, extent, qx, qy, maxDistance, visited, queue, counts);
+                } else {
+                    ++y2;
+                    this.visit(cell, x1, x2, y2, y2, extent, qx, qy, maxDistance, visited, queue, counts);
+                }
+            }
+        }
+        this.nodeAccess = counts[0];
+        this.shapeAccess = counts[1];
         return ret;
     }
 
+    /**
+     * 近傍検索でセルの範囲を調べ、まだ調べていないオブジェクトを候補に加えます。
+     * オブジェクトが登録されているセルの範囲の外は調べません。
+     * @param cell 使い回すセルの位置
+     * @param x1 左端
+     * @param x2 右端
+     * @param y1 上端
+     * @param y2 下端
+     * @param extent オブジェクトが登録されているセルの範囲
+     * @param qx 点のx座標
+     * @param qy 点のy座標
+     * @param maxDistance 距離の上限
+     * @param visited 調べたオブジェクトの集合
+     * @param queue 候補
+     * @param counts ノードへのアクセス回数とポリゴンへのアクセス回数
+     */
+    private void visit(final Cell cell, final int x1, final int x2, final int y1, final int y2, final int[] extent,
+            final double qx, final double qy, final double maxDistance, final Set<Entry> visited,
+            final PriorityQueue<Candidate> queue, final int[] counts) {
+        for (int y = Math.max(y1, extent[1]); y <= Math.min(y2, extent[3]); y++) {
+            for (int x = Math.max(x1, extent[0]); x <= Math.min(x2, extent[2]); x++) {
+                cell.x = x;
+                cell.y = y;
+                ++counts[0];
+                final Bucket bucket = this.data.get(cell);
+                if (bucket != null) {
+                    final int size = bucket.size;
+                    final Entry[] entries = bucket.entries;
+                    for (int i = 0; i < size; i++) {
+                        final Entry entry = entries[i];
+                        ++counts[0];
+                        if (visited.add(entry)) {
+                            final double distance = ShapeDistance.distance(entry.minX, entry.minY, entry.maxX,
+                                    entry.maxY, qx, qy);
+                            if (distance <= maxDistance) {
+                                queue.add(new Candidate(entry, distance, false));
+                            }
+                        }
+                    }
+                }
+            }
+        }
+    }
+
     public int getNodeAccess() {
         return this.nodeAccess;
     }
@@ -0,0 +1,494 @@
+package search;
+
+import java.awt.Rectangle;
+import java.awt.Shape;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.PathIterator;
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+import java.util.Arrays;
+
+/**
+ * 頂点の多いポリゴンの点の包含判定と長方形との交差判定を高速に行うクラスです。
+ * 輪郭の辺を格子状のバケツに分けて記憶し、各バケツの中心の回転数をあらかじめ計算しておきます。
+ * 点の包含判定では、その点を含むバケツの中心から点までの間にある辺だけを調べるので、
+ * 頂点の数によらずほぼ一定の時間で判定できます。
+ * 索引は最初に判定するときに作ります。描画などは元の図形に委ねます。
+ * @author zenjiro
+ * @since 6.3.0
+ */
+public final class PreparedShape implements Shape {
+    /**
+     * 索引を作る辺の数の下限
+     */
+    public static final int MIN_EDGES = 64;
+
+    /**
+     * 曲線を折れ線に近似するときの平坦さ
+     */
+    private static final double FLATNESS = 0.1;
+
+    /**
+     * 1辺あたりのバケツの最大数
+     */
+    private static final int MAX_CELLS = 1024;
+
+    /**
+     * 元の図形
+     */
+    private final Shape shape;
+
+    /**
+     * 元の図形を囲む長方形
+     */
+    private final Rectangle2D bounds;
+
+    /**
+     * 索引
+     */
+    private volatile Index index;
+
+    /**
+     * 辺とバケツの索引です。作った後は変化しません。
+     */
+    private static class Index {
+        /**
+         * 辺の始点と終点のx座標、y座標（辺ごとに4つ）
+         */
+        double[] edges;
+
+        /**
+         * 辺の数
+         */
+        int edgeCount;
+
+        /**
+         * 非ゼロ回転数規則かどうか
+         */
+        boolean isNonZero;
+
+        /**
+         * 索引の左端
+         */
+        double minX;
+
+        /**
+         * 索引の上端
+         */
+        double minY;
+
+        /**
+         * バケツの幅
+         */
+        double width;
+
+        /**
+         * バケツの高さ
+         */
+        double height;
+
+        /**
+         * 横に並ぶバケツの数
+         */
+        int columns;
+
+        /**
+         * 縦に並ぶバケツの数
+         */
+        int rows;
+
+        /**
+         * バケツごとの辺の一覧の開始位置
+         */
+        int[] cellStarts;
+
+        /**
+         * バケツごとの辺の番号
+         */
+        int[] cellEdges;
+
+        /**
+         * バケツの中心の回転数
+         */
+        int[] windings;
+
+        /**
+         * @param x x座標
+         * @return x座標を含むバケツの列
+         */
+        int column(final double x) {
+            return Math.max(0, Math.min(this.columns - 1, (int) Math.floor((x - this.minX) / this.width)));
+        }
+
+        /**
+         * @param y y座標
+         * @return y座標を含むバケツの行
+         */
+        int row(final double y) {
+            return Math.max(0, Math.min(this.rows - 1, (int) Math.floor((y - this.minY) / this.height)));
+        }
+    }
+
+    /**
+     * 索引を作るときに使う、伸長する double の配列です。
+     */
+    private static class DoubleList {
+        /**
+         * 値
+         */
+        double[] coords = new double[64];
+
+        /**
+         * 辺の数
+         */
+        int size;
+
+        /**
+         * 値の数
+         */
+        int length;
+
+        /**
+         * 長さが0でない辺を追加します。
+         * @param x1 始点のx座標
+         * @param y1 始点のy座標
+         * @param x2 終点のx座標
+         * @param y2 終点のy座標
+         */
+        void add(final double x1, final double y1, final double x2, final double y2) {
+            if (x1 != x2 || y1 != y2) {
+                this.addValue(x1);
+                this.addValue(y1);
+                this.addValue(x2);
+                this.addValue(y2);
+                ++this.size;
+            }
+        }
+
+        /**
+         * 値を1つ追加します。
+         * @param value 値
+         */
+        void addValue(final double value) {
+            if (this.length == this.coords.length) {
+                this.coords = Arrays.copyOf(this.coords, this.length * 2);
+            }
+            this.coords[this.length++] = value;
+        }
+
+        /**
+         * @return 値を昇順に並べた配列
+         */
+        double[] toSortedArray() {
+            final double[] ret = Arrays.copyOf(this.coords, this.length);
+            Arrays.sort(ret);
+            return ret;
+        }
+    }
+
+    /**
+     * 図形を包含判定と交差判定のために準備します。
+     * @param shape 図形
+     */
+    public PreparedShape(final Shape shape) {
+        this.shape = shape;
+        this.bounds = shape.getBounds2D();
+    }
+
+    /**
+     * 頂点の多い図形なら準備し、そうでなければそのまま返します。
+     * @param shape 図形
+     * @return 準備した図形、または元の図形
+     */
+    public static Shape prepare(final Shape shape) {
+        if (shape == null || shape instanceof PreparedShape) {
+            return shape;
+        }
+        final PathIterator iterator = shape.getPathIterator(null);
+        int count = 0;
+        while (!iterator.isDone() && count < PreparedShape.MIN_EDGES) {
+            if (iterator.currentSegment(new double[6]) != PathIterator.SEG_MOVETO) {
+                ++count;
+            }
+            iterator.next();
+        }
+        return count < PreparedShape.MIN_EDGES ? shape : new PreparedShape(shape);
+    }
+
+    /**
+     * @return 元の図形
+     */
+    public Shape getShape() {
+        return this.shape;
+    }
+
+    /**
+     * @return 索引
+     */
+    private Index getIndex() {
+        Index ret = this.index;
+        if (ret == null) {
+            synchronized (this) {
+                ret = this.index;
+                if (ret == null) {
+                    ret = PreparedShape.createIndex(this.shape, this.bounds);
+                    this.index = ret;
+                }
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * 索引を作ります。
+     * @param shape 図形
+     * @param bounds 図形を囲む長方形
+     * @return 索引
+     */
+    private static Index createIndex(final Shape shape, final Rectangle2D bounds) {
+        final Index ret = new Index();
+        // 輪郭を辺に分解する。閉じていない輪郭も、塗りつぶしと同じく始点に戻るものとして扱う
+        final DoubleList edges = new DoubleList();
+        final PathIterator iterator = shape.getPathIterator(null, PreparedShape.FLATNESS);
+        ret.isNonZero = iterator.getWindingRule() == PathIterator.WIND_NON_ZERO;
+        final double[] coords = new double[6];
+        double startX = 0;
+        double startY = 0;
+        double lastX = 0;
+        double lastY = 0;
+        while (!iterator.isDone()) {
+            switch (iterator.currentSegment(coords)) {
+            case PathIterator.SEG_MOVETO:
+                edges.add(lastX, lastY, startX, startY);
+                startX = coords[0];
+                startY = coords[1];
+                lastX = startX;
+                lastY = startY;
+                break;
+            case PathIterator.SEG_LINETO:
+                edges.add(lastX, lastY, coords[0], coords[1]);
+                lastX = coords[0];
+                lastY = coords[1];
+                break;
+            case PathIterator.SEG_CLOSE:
+                edges.add(lastX, lastY, startX, startY);
+                lastX = startX;
+                lastY = startY;
+                break;
+            }
+            iterator.next();
+        }
+        edges.add(lastX, lastY, startX, startY);
+        final int edgeCount = edges.size;
+        ret.edges = edges.coords;
+        ret.edgeCount = edgeCount;
+        // 1つのバケツに平均して数本の辺が入るように格子を決める
+        ret.minX = bounds.getMinX();
+        ret.minY = bounds.getMinY();
+        final double w = Math.max(bounds.getWidth(), Double.MIN_VALUE);
+        final double h = Math.max(bounds.getHeight(), Double.MIN_VALUE);
+        final double size = Math.sqrt(w * h / Math.max(1, edgeCount));
+        ret.columns = (int) Math.max(1, Math.min(PreparedShape.MAX_CELLS, Math.ceil(w / size)));
+        ret.rows = (int) Math.max(1, Math.min(PreparedShape.MAX_CELLS, Math.ceil(h / size)));
+        ret.width = w / ret.columns;
+        ret.height = h / ret.rows;
+        // バケツに辺を振り分ける
+        final int cells = ret.columns * ret.rows;
+        final int[] starts = new int[cells + 1];
+        for (int pass = 0; pass < 2; pass++) {
+            final int[] cellEdges = pass == 0 ? null : new int[starts[cells]];
+            final int[] positions = pass == 0 ? null : Arrays.copyOf(starts, cells);
+            for (int i = 0; i < edgeCount; i++) {
+                final int column1 = ret.column(Math.min(ret.edges[i * 4], ret.edges[i * 4 + 2]));
+                final int column2 = ret.column(Math.max(ret.edges[i * 4], ret.edges[i * 4 + 2]));
+                final int row1 = ret.row(Math.min(ret.edges[i * 4 + 1], ret.edges[i * 4 + 3]));
+                final int row2 = ret.row(Math.max(ret.edges[i * 4 + 1], ret.edges[i * 4 + 3]));
+                for (int row = row1; row <= row2; row++) {
+                    for (int column = column1; column <= column2; column++) {
+                        final int cell = row * ret.columns + column;
+                        if (pass == 0) {
+                            ++starts[cell + 1];
+                        } else {
+                            cellEdges[positions[cell]++] = i;
+                        }
+                    }
+                }
+            }
+            if (pass == 0) {
+                for (int cell = 0; cell < cells; cell++) {
+                    starts[cell + 1] += starts[cell];
+                }
+            } else {
+                ret.cellEdges = cellEdges;
+            }
+        }
+        ret.cellStarts = starts;
+        // 行ごとに、中心を通る水平線と上向きの辺、下向きの辺の交点を求め、
+        // 各バケツの中心より右にある交点の数の差を回転数とする
+        ret.windings = new int[cells];
+        final DoubleList[] ups = new DoubleList[ret.rows];
+        final DoubleList[] downs = new DoubleList[ret.rows];
+        for (int i = 0; i < edgeCount; i++) {
+            final double x1 = ret.edges[i * 4];
+            final double y1 = ret.edges[i * 4 + 1];
+            final double x2 = ret.edges[i * 4 + 2];
+            final double y2 = ret.edges[i * 4 + 3];
+            final int row1 = ret.row(Math.min(y1, y2));
+            final int row2 = ret.row(Math.max(y1, y2));
+            for (int row = row1; row <= row2; row++) {
+                final double cy = ret.minY + (row + 0.5) * ret.height;
+                if ((y1 <= cy) != (y2 <= cy)) {
+                    final DoubleList[] lists = y2 > y1 ? ups : downs;
+                    if (lists[row] == null) {
+                        lists[row] = new DoubleList();
+                    }
+                    lists[row].addValue(x1 + (cy - y1) * (x2 - x1) / (y2 - y1));
+                }
+            }
+        }
+        for (int row = 0; row < ret.rows; row++) {
+            final double[] upXs = ups[row] == null ? new double[0] : ups[row].toSortedArray();
+            final double[] downXs = downs[row] == null ? new double[0] : downs[row].toSortedArray();
+            int up = upXs.length;
+            int down = downXs.length;
+            for (int column = ret.columns - 1; column >= 0; column--) {
+                final double cx = ret.minX + (column + 0.5) * ret.width;
+                while (up > 0 && upXs[up - 1] > cx) {
+                    --up;
+                }
+                while (down > 0 && downXs[down - 1] > cx) {
+                    --down;
+                }
+                ret.windings[row * ret.columns + column] = (upXs.length - up) - (downXs.length - down);
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * 索引の中で、点を含むバケツの中心からの回転数の変化を数えて包含判定をします。
+     * @param x x座標
+     * @param y y座標
+     * @return 点を含むかどうか
+     */
+    private boolean containsPoint(final double x, final double y) {
+        if (!(this.bounds.getMinX() <= x && x <= this.bounds.getMaxX() && this.bounds.getMinY() <= y && y <= this.bounds
+                .getMaxY())) {
+            return false;
+        }
+        final Index index = this.getIndex();
+        final int column = index.column(x);
+        final int row = index.row(y);
+        final int cell = row * index.columns + column;
+        final double cx = index.minX + (column + 0.5) * index.width;
+        final double cy = index.minY + (row + 0.5) * index.height;
+        final double[] edges = index.edges;
+        int winding = index.windings[cell];
+        for (int i = index.cellStarts[cell]; i < index.cellStarts[cell + 1]; i++) {
+            final int edge = index.cellEdges[i];
+            final double x1 = edges[edge * 4];
+            final double y1 = edges[edge * 4 + 1];
+            final double x2 = edges[edge * 4 + 2];
+            final double y2 = edges[edge * 4 + 3];
+            // 中心から (x, cy) までの水平な移動で横切る辺
+            if ((y1 <= cy) != (y2 <= cy)) {
+                final double xi = x1 + (cy - y1) * (x2 - x1) / (y2 - y1);
+                final int direction = y2 > y1 ? 1 : -1;
+                if (cx < xi && xi <= x) {
+                    winding -= direction;
+                } else if (x < xi && xi <= cx) {
+                    winding += direction;
+                }
+            }
+            // (x, cy) から (x, y) までの垂直な移動で横切る辺
+            if ((x1 > x) != (x2 > x)) {
+                final double yi = y1 + (x - x1) * (y2 - y1) / (x2 - x1);
+                final int direction = x2 > x1 ? 1 : -1;
+                if (cy < yi && yi <= y) {
+                    winding += direction;
+                } else if (y < yi && yi <= cy) {
+                    winding -= direction;
+                }
+            }
+        }
+        return index.isNonZero ? winding != 0 : (winding & 1) != 0;
+    }
+
+    /**
+     * 長方形と交わる辺があるかどうかを調べます。
+     * @param x 長方形の左端
+     * @param y 長方形の上端
+     * @param w 長方形の幅
+     * @param h 長方形の高さ
+     * @return 交わる辺があるかどうか
+     */
+    private boolean intersectsEdge(final double x, final double y, final double w, final double h) {
+        final Index index = this.getIndex();
+        final Rectangle2D rectangle = new Rectangle2D.Double(x, y, w, h);
+        final int column1 = index.column(x);
+        final int column2 = index.column(x + w);
+        final int row1 = index.row(y);
+        final int row2 = index.row(y + h);
+        final double[] edges = index.edges;
+        for (int row = row1; row <= row2; row++) {
+            for (int column = column1; column <= column2; column++) {
+                final int cell = row * index.columns + column;
+                for (int i = index.cellStarts[cell]; i < index.cellStarts[cell + 1]; i++) {
+                    final int edge = index.cellEdges[i];
+                    if (rectangle.intersectsLine(edges[edge * 4], edges[edge * 4 + 1], edges[edge * 4 + 2],
+                            edges[edge * 4 + 3])) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    public boolean contains(final double x, final double y) {
+        return this.containsPoint(x, y);
+    }
+
+    public boolean contains(final Point2D p) {
+        return this.containsPoint(p.getX(), p.getY());
+    }
+
+    public boolean contains(final double x, final double y, final double w, final double h) {
+        if (w <= 0 || h <= 0 || !this.bounds.contains(x, y, w, h)) {
+            return false;
+        }
+        return this.containsPoint(x + w / 2, y + h / 2) && !this.intersectsEdge(x, y, w, h);
+    }
+
+    public boolean contains(final Rectangle2D r) {
+        return this.contains(r.getX(), r.getY(), r.getWidth(), r.getHeight());
+    }
+
+    public boolean intersects(final double x, final double y, final double w, final double h) {
+        if (w <= 0 || h <= 0 || !this.bounds.intersects(x, y, w, h)) {
+            return false;
+        }
+        // 輪郭と交わらなければ、長方形は全体がポリゴンの内側か外側にある
+        return this.intersectsEdge(x, y, w, h) || this.containsPoint(x + w / 2, y + h / 2);
+    }
+
+    public boolean intersects(final Rectangle2D r) {
+        return this.intersects(r.getX(), r.getY(), r.getWidth(), r.getHeight());
+    }
+
+    public Rectangle getBounds() {
+        return this.shape.getBounds();
+    }
+
+    public Rectangle2D getBounds2D() {
+        return (Rectangle2D) this.bounds.clone();
+    }
+
+    public PathIterator getPathIterator(final AffineTransform at) {
+        return this.shape.getPathIterator(at);
+    }
+
+    public PathIterator getPathIterator(final AffineTransform at, final double flatness) {
+        return this.shape.getPathIterator(at, flatness);
+    }
+}
@@ -0,0 +1,684 @@
+package search;
+
+import java.awt.Shape;
+import java.awt.geom.GeneralPath;
+import java.awt.geom.PathIterator;
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Sort-Tile-Recursive法で一括構築するR-treeによる検索を行うクラスです。
+ * 地図の図葉、都道府県、市区町村など、一度読み込んだら変化しないデータに向いています。
+ * ノードは固定長のページに格納され、ファイルに書き出したものはメモリマップして必要な部分だけ読み込みます。
+ * 構築した後に insert(Shape, String) を呼び出すと、次の検索のときに構築し直します。
+ * @author zenjiro
+ * @since 6.3.0
+ */
+public class RTreeSearch implements Search {
+    /**
+     * ページの大きさ[byte]
+     */
+    public static final int PAGE_SIZE = 4096;
+
+    /**
+     * 1つのノードが持つ子の最大数
+     */
+    public static final int CAPACITY = 100;
+
+    /**
+     * ファイルの先頭に書かれる識別子
+     */
+    private static final int MAGIC = 0x52545231;
+
+    /**
+     * ノードの見出しの大きさ[byte]（葉かどうか、子の数）
+     */
+    private static final int NODE_HEADER_SIZE = 8;
+
+    /**
+     * 子1つあたりの大きさ[byte]（外接矩形、子の番号）
+     */
+    private static final int CHILD_SIZE = 36;
+
+    /**
+     * 近傍検索の候補です。
+     * ノード、外接矩形までの距離しか分かっていないデータ、ポリゴンまでの距離が分かったデータのいずれかです。
+     * @author zenjiro
+     * @since 6.3.0
+     */
+    private static class Candidate implements Comparable<Candidate> {
+        /**
+         * ノードを表す種類
+         */
+        static final int PAGE = 0;
+
+        /**
+         * 外接矩形までの距離しか分かっていないデータを表す種類
+         */
+        static final int BOUNDS = 1;
+
+        /**
+         * ポリゴンまでの距離が分かったデータを表す種類
+         */
+        static final int SHAPE = 2;
+
+        /**
+         * 種類
+         */
+        final int kind;
+
+        /**
+         * ページ番号、またはデータの番号
+         */
+        final int id;
+
+        /**
+         * 点からの距離
+         */
+        final double distance;
+
+        /**
+         * ポリゴンまでの距離が分かったデータのラベル
+         */
+        final String label;
+
+        /**
+         * 近傍検索の候補を初期化します。
+         * @param kind 種類
+         * @param id ページ番号、またはデータの番号
+         * @param distance 点からの距離
+         * @param label ポリゴンまでの距離が分かったデータのラベル。それ以外は null
+         */
+        Candidate(final int kind, final int id, final double distance, final String label) {
+            this.kind = kind;
+            this.id = id;
+            this.distance = distance;
+            this.label = label;
+        }
+
+        /**
+         * 距離の近い順に並べます。
+         * 距離が等しければ、ノード、外接矩形までの距離の候補を先にして全て展開してから、ラベルの順に確定させます。
+         * こうすると、距離が等しいデータの順が索引の構造によらなくなります。
+         */
+        public int compareTo(final Candidate other) {
+            final int ret = Double.compare(this.distance, other.distance);
+            if (ret != 0) {
+                return ret;
+            } else if (this.kind != other.kind) {
+                return this.kind - other.kind;
+            } else if (this.label == null || other.label == null) {
+                return this.label == null ? (other.label == null ? 0 : -1) : 1;
+            } else {
+                return this.label.compareTo(other.label);
+            }
+        }
+    }
+
+    /**
+     * 構築したR-treeです。
+     * 構築し直すときは新しいオブジェクトを作って差し替えるので、検索中に中身が変わることはありません。
+     * @author zenjiro
+     * @since 6.3.0
+     */
+    private static class Tree {
+        /**
+         * ノードを格納するページ。0番目のページは見出しです。
+         */
+        final ByteBuffer pages;
+
+        /**
+         * ノードの数
+         */
+        final int nodeNumber;
+
+        /**
+         * 根のページ番号
+         */
+        final int rootPage;
+
+        /**
+         * 構築したR-treeを初期化します。
+         * @param pages ノードを格納するページ
+         * @param nodeNumber ノードの数
+         * @param rootPage 根のページ番号
+         */
+        Tree(final ByteBuffer pages, final int nodeNumber, final int rootPage) {
+            this.pages = pages;
+            this.nodeNumber = nodeNumber;
+            this.rootPage = rootPage;
+        }
+    }
+
+    /**
+     * まだ構築していないデータのオブジェクト
+     */
+    private final List<Shape> shapes;
+
+    /**
+     * まだ構築していないデータのラベル
+     */
+    private final List<String> labels;
+
+    /**
+     * メモリマップしたファイル。メモリ上にあるときは null
+     */
+    private ByteBuffer file;
+
+    /**
+     * データの位置の表の位置
+     */
+    private int entryTableOffset;
+
+    /**
+     * ファイルの大きさ[byte]
+     */
+    private int fileSize;
+
+    /**
+     * 構築したR-tree。構築していなければ null
+     * 構築済みならロックを取らずに検索できるように、volatile にしています。
+     * 検索はこのフィールドを1回だけ読み、そのオブジェクトだけを参照します。
+     */
+    private volatile Tree tree;
+
+    /**
+     * 最後に終わった検索での、ノードへのアクセス回数
+     */
+    private final AtomicLong nodeAccess = new AtomicLong();
+
+    /**
+     * 最後に終わった検索での、データへのアクセス回数
+     */
+    private final AtomicLong shapeAccess = new AtomicLong();
+
+    /**
+     * 空のR-treeを初期化します。
+     */
+    public RTreeSearch() {
+        this.shapes = new ArrayList<Shape>();
+        this.labels = new ArrayList<String>();
+    }
+
+    /**
+     * ファイルに書き出されたR-treeを開きます。
+     * ファイルはメモリマップされ、検索で参照された部分だけが読み込まれます。
+     * @param file ファイル
+     * @return R-tree
+     * @throws IOException 入出力例外
+     */
+    public static RTreeSearch open(final File file) throws IOException {
+        final FileInputStream in = new FileInputStream(file);
+        try {
+            final FileChannel channel = in.getChannel();
+            final ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt(0) != RTreeSearch.MAGIC) {
+                throw new IOException("not an R-tree file: " + file);
+            }
+            final RTreeSearch ret = new RTreeSearch();
+            ret.file = buffer;
+            ret.entryTableOffset = buffer.getInt(16);
+            ret.fileSize = (int) channel.size();
+            ret.tree = new Tree(buffer, buffer.getInt(4), buffer.getInt(8));
+            return ret;
+        } finally {
+            in.close();
+        }
+    }
+
+    public synchronized void insert(final Shape shape, final String label) {
+        if (this.file != null) {
+            throw new UnsupportedOperationException("ファイルから読み込んだR-treeには追加できません。");
+        }
+        this.shapes.add(PreparedShape.prepare(shape));
+        this.labels.add(label);
+        this.tree = null;
+    }
+
+    /**
+     * Sort-Tile-Recursive法でR-treeを構築します。
+     * 検索するときに構築されていなければ自動的に呼び出されます。
+     * 構築済みならロックを取らずに戻るので、複数のスレッドから同時に検索できます。
+     */
+    public void build() {
+        this.getTree();
+    }
+
+    /**
+     * 構築したR-treeを取得します。構築されていなければ構築します。
+     * @return 構築したR-tree
+     */
+    private Tree getTree() {
+        final Tree ret = this.tree;
+        if (ret != null) {
+            return ret;
+        }
+        synchronized (this) {
+            if (this.tree == null) {
+                this.tree = this.buildTree();
+            }
+            return this.tree;
+        }
+    }
+
+    /**
+     * ノードのページを作ります。
+     * @return 構築したR-tree
+     */
+    private Tree buildTree() {
+        final int size = this.shapes.size();
+        final List<double[]> pageList = new ArrayList<double[]>();
+        final List<int[]> childList = new ArrayList<int[]>();
+        final List<Boolean> leafList = new ArrayList<Boolean>();
+        // 葉の子はデータの番号、それ以外の子はページ番号
+        final double[][] items = new double[size][];
+        for (int i = 0; i < size; i++) {
+            final Rectangle2D bounds = this.shapes.get(i).getBounds2D();
+            items[i] = new double[] { bounds.getMinX(), bounds.getMinY(), bounds.getMaxX(), bounds.getMaxY(), i };
+        }
+        double[][] level = items;
+        boolean isLeaf = true;
+        do {
+            level = RTreeSearch.pack(level, isLeaf, pageList, childList, leafList);
+            isLeaf = false;
+        } while (level.length > 1);
+        final int nodeNumber = pageList.size();
+        final int rootPage = level.length == 0 ? 0 : (int) level[0][4];
+        final ByteBuffer pages = ByteBuffer.allocate((nodeNumber + 1) * RTreeSearch.PAGE_SIZE);
+        pages.putInt(0, RTreeSearch.MAGIC);
+        pages.putInt(4, nodeNumber);
+        pages.putInt(8, rootPage);
+        pages.putInt(12, size);
+        for (int i = 0; i < nodeNumber; i++) {
+            final int offset = (i + 1) * RTreeSearch.PAGE_SIZE;
+            final double[] bounds = pageList.get(i);
+            final int[] children = childList.get(i);
+            pages.putInt(offset, leafList.get(i) ? 1 : 0);
+            pages.putInt(offset + 4, children.length);
+            for (int j = 0; j < children.length; j++) {
+                final int childOffset = offset + RTreeSearch.NODE_HEADER_SIZE + j * RTreeSearch.CHILD_SIZE;
+                pages.putDouble(childOffset, bounds[j * 4]);
+                pages.putDouble(childOffset + 8, bounds[j * 4 + 1]);
+                pages.putDouble(childOffset + 16, bounds[j * 4 + 2]);
+                pages.putDouble(childOffset + 24, bounds[j * 4 + 3]);
+                pages.putInt(childOffset + 32, children[j]);
+            }
+        }
+        return new Tree(pages, nodeNumber, rootPage);
+    }
+
+    /**
+     * 1つの階層を、Sort-Tile-Recursive法でノードに詰め込みます。
+     * @param items 外接矩形と番号の一覧（minX, minY, maxX, maxY, 番号）
+     * @param isLeaf 葉を作るかどうか
+     * @param pageList ノードの子の外接矩形の一覧
+     * @param childList ノードの子の番号の一覧
+     * @param leafList ノードが葉かどうかの一覧
+     * @return 作ったノードの外接矩形とページ番号の一覧
+     */
+    private static double[][] pack(final double[][] items, final boolean isLeaf, final List<double[]> pageList,
+            final List<int[]> childList, final List<Boolean> leafList) {
+        final int leafCount = (items.length + RTreeSearch.CAPACITY - 1) / RTreeSearch.CAPACITY;
+        final int sliceCount = (int) Math.ceil(Math.sqrt(leafCount));
+        final int sliceSize = sliceCount == 0 ? 0 : sliceCount * RTreeSearch.CAPACITY;
+        Arrays.sort(items, new Comparator<double[]>() {
+            public int compare(final double[] o1, final double[] o2) {
+                return Double.compare(o1[0] + o1[2], o2[0] + o2[2]);
+            }
+        });
+        final List<double[]> ret = new ArrayList<double[]>();
+        for (int sliceStart = 0; sliceStart < items.length; sliceStart += sliceSize) {
+            final int sliceEnd = Math.min(sliceStart + sliceSize, items.length);
+            Arrays.sort(items, sliceStart, sliceEnd, new Comparator<double[]>() {
+                public int compare(final double[] o1, final double[] o2) {
+                    return Double.compare(o1[1] + o1[3], o2[1] + o2[3]);
+                }
+            });
+            for (int start = sliceStart; start < sliceEnd; start += RTreeSearch.CAPACITY) {
+                final int end = Math.min(start + RTreeSearch.CAPACITY, sliceEnd);
+                final double[] bounds = new double[(end - start) * 4];
+                final int[] children = new int[end - start];
+                final double[] node = new double[] { Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY,
+                        Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY, pageList.size() + 1 };
+                for (int i = start; i < end; i++) {
+                    final double[] item = items[i];
+                    System.arraycopy(item, 0, bounds, (i - start) * 4, 4);
+                    children[i - start] = (int) item[4];
+                    node[0] = Math.min(node[0], item[0]);
+                    node[1] = Math.min(node[1], item[1]);
+                    node[2] = Math.max(node[2], item[2]);
+                    node[3] = Math.max(node[3], item[3]);
+                }
+                pageList.add(bounds);
+                childList.add(children);
+                leafList.add(isLeaf);
+                ret.add(node);
+            }
+        }
+        return ret.toArray(new double[ret.size()][]);
+    }
+
+    /**
+     * R-treeをファイルに書き出します。
+     * 書き出したファイルは open(File) で開くことができます。
+     * @param file ファイル
+     * @throws IOException 入出力例外
+     */
+    public synchronized void write(final File file) throws IOException {
+        final Tree tree = this.getTree();
+        final int size = this.size();
+        final int[] offsets = new int[size];
+        final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file),
+                RTreeSearch.PAGE_SIZE));
+        int position = 0;
+        try {
+            final byte[] page = new byte[RTreeSearch.PAGE_SIZE];
+            for (int i = 0; i <= tree.nodeNumber; i++) {
+                final ByteBuffer buffer = tree.pages.duplicate();
+                buffer.position(i * RTreeSearch.PAGE_SIZE);
+                buffer.get(page);
+                out.write(page);
+            }
+            position = out.size();
+            for (int i = 0; i < size; i++) {
+                offsets[i] = out.size();
+                final byte[] label = this.getLabel(i).getBytes("UTF-8");
+                out.writeInt(label.length);
+                out.write(label);
+                RTreeSearch.writeShape(this.getShape(i), out);
+            }
+            position = out.size();
+            for (final int offset : offsets) {
+                out.writeInt(offset);
+            }
+        } finally {
+            out.close();
+        }
+        final RandomAccessFile header = new RandomAccessFile(file, "rw");
+        try {
+            header.seek(16);
+            header.writeInt(position);
+        } finally {
+            header.close();
+        }
+    }
+
+    /**
+     * 図形を書き出します。
+     * @param shape 図形
+     * @param out 出力ストリーム
+     * @throws IOException 入出力例外
+     */
+    private static void writeShape(final Shape shape, final DataOutputStream out) throws IOException {
+        final List<float[]> segments = new ArrayList<float[]>();
+        final PathIterator iterator = shape.getPathIterator(null);
+        while (!iterator.isDone()) {
+            final float[] coords = new float[7];
+            coords[6] = iterator.currentSegment(coords);
+            segments.add(coords);
+            iterator.next();
+        }
+        out.writeByte(iterator.getWindingRule());
+        out.writeInt(segments.size());
+        for (final float[] coords : segments) {
+            final int type = (int) coords[6];
+            out.writeByte(type);
+            for (int i = 0; i < RTreeSearch.getCoordsNumber(type); i++) {
+                out.writeFloat(coords[i]);
+            }
+        }
+    }
+
+    /**
+     * @param type 線分の種類
+     * @return 座標の数
+     */
+    private static int getCoordsNumber(final int type) {
+        switch (type) {
+        case PathIterator.SEG_MOVETO:
+        case PathIterator.SEG_LINETO:
+            return 2;
+        case PathIterator.SEG_QUADTO:
+            return 4;
+        case PathIterator.SEG_CUBICTO:
+            return 6;
+        default:
+            return 0;
+        }
+    }
+
+    /**
+     * @return データの数
+     */
+    public int size() {
+        return this.file == null ? this.shapes.size() : this.file.getInt(12);
+    }
+
+    /**
+     * @param index データの番号
+     * @return ラベル
+     */
+    String getLabel(final int index) {
+        if (this.file == null) {
+            return this.labels.get(index);
+        }
+        final int offset = this.file.getInt(this.entryTableOffset + index * 4);
+        final byte[] bytes = new byte[this.file.getInt(offset)];
+        final ByteBuffer buffer = this.file.duplicate();
+        buffer.position(offset + 4);
+        buffer.get(bytes);
+        try {
+            return new String(bytes, "UTF-8");
+        } catch (final IOException exception) {
+            throw new IllegalStateException(exception);
+        }
+    }
+
+    /**
+     * @param index データの番号
+     * @return オブジェクト
+     */
+    Shape getShape(final int index) {
+        if (this.file == null) {
+            return this.shapes.get(index);
+        }
+        final int offset = this.file.getInt(this.entryTableOffset + index * 4);
+        final ByteBuffer buffer = this.file.duplicate();
+        buffer.position(offset + 4 + this.file.getInt(offset));
+        final GeneralPath ret = new GeneralPath(buffer.get());
+        final int segmentCount = buffer.getInt();
+        for (int i = 0; i < segmentCount; i++) {
+            final int type = buffer.get();
+            switch (type) {
+            case PathIterator.SEG_MOVETO:
+                ret.moveTo(buffer.getFloat(), buffer.getFloat());
+                break;
+            case PathIterator.SEG_LINETO:
+                ret.lineTo(buffer.getFloat(), buffer.getFloat());
+                break;
+            case PathIterator.SEG_QUADTO:
+                ret.quadTo(buffer.getFloat(), buffer.getFloat(), buffer.getFloat(), buffer.getFloat());
+                break;
+            case PathIterator.SEG_CUBICTO:
+                ret.curveTo(buffer.getFloat(), buffer.getFloat(), buffer.getFloat(), buffer.getFloat(), buffer
+                        .getFloat(), buffer.getFloat());
+                break;
+            case PathIterator.SEG_CLOSE:
+                ret.closePath();
+                break;
+            }
+        }
+        return ret;
+    }
+
+    public Set<String> search(final Point2D query) {
+        return this.search(new Rectangle2D.Double(query.getX(), query.getY(), 0, 0), query);
+    }
+
+    public Set<String> search(final Rectangle2D query) {
+        return this.search(query, null);
+    }
+
+    /**
+     * 矩形と重なるデータ、または点を含むデータを検索します。
+     * @param rectangle 矩形
+     * @param point 点。矩形で検索するときは null
+     * @return ラベルの一覧
+     */
+    private Set<String> search(final Rectangle2D rectangle, final Point2D point) {
+        final Tree tree = this.getTree();
+        final ByteBuffer pages = tree.pages;
+        final Set<String> ret = new HashSet<String>();
+        int nodeAccess = 0;
+        int shapeAccess = 0;
+        if (tree.nodeNumber == 0) {
+            this.nodeAccess.set(0);
+            this.shapeAccess.set(0);
+            return ret;
+        }
+        final double minX = rectangle.getMinX();
+        final double minY = rectangle.getMinY();
+        final double maxX = rectangle.getMaxX();
+        final double maxY = rectangle.getMaxY();
+        int[] stack = new int[RTreeSearch.CAPACITY];
+        int stackSize = 0;
+        stack[stackSize++] = tree.rootPage;
+        while (stackSize > 0) {
+            final int page = stack[--stackSize];
+            ++nodeAccess;
+            final int offset = page * RTreeSearch.PAGE_SIZE;
+            final boolean isLeaf = pages.getInt(offset) == 1;
+            final int count = pages.getInt(offset + 4);
+            for (int i = 0; i < count; i++) {
+                final int childOffset = offset + RTreeSearch.NODE_HEADER_SIZE + i * RTreeSearch.CHILD_SIZE;
+                if (pages.getDouble(childOffset) <= maxX && pages.getDouble(childOffset + 8) <= maxY
+                        && pages.getDouble(childOffset + 16) >= minX && pages.getDouble(childOffset + 24) >= minY) {
+                    final int child = pages.getInt(childOffset + 32);
+                    if (isLeaf) {
+                        ++shapeAccess;
+                        final Shape shape = this.getShape(child);
+                        if (point == null ? shape.intersects(rectangle) : shape.contains(point)) {
+                            ret.add(this.getLabel(child));
+                        }
+                    } else {
+                        if (stackSize == stack.length) {
+                            stack = Arrays.copyOf(stack, stack.length * 2);
+                        }
+                        stack[stackSize++] = child;
+                    }
+                }
+            }
+        }
+        this.nodeAccess.set(nodeAccess);
+        this.shapeAccess.set(shapeAccess);
+        return ret;
+    }
+
+    public List<String> searchNearest(final Point2D query, final int k) {
+        return this.searchNearest(query, k, Double.POSITIVE_INFINITY);
+    }
+
+    public List<String> searchWithin(final Point2D query, final double distance) {
+        return this.searchNearest(query, Integer.MAX_VALUE, distance);
+    }
+
+    /**
+     * ノードとデータを点からの距離の優先度付きキューで管理し、近い順にデータを取得します。
+     * データは外接矩形までの距離でキューに入れ、取り出されたときにポリゴンまでの距離を計算して入れ直します。
+     * @param query 点
+     * @param k 取得するデータの最大数
+     * @param maxDistance 距離の上限
+     * @return 近い順に並べたデータの一覧
+     */
+    private List<String> searchNearest(final Point2D query, final int k, final double maxDistance) {
+        final Tree tree = this.getTree();
+        final ByteBuffer pages = tree.pages;
+        final List<String> ret = new ArrayList<String>();
+        int nodeAccess = 0;
+        int shapeAccess = 0;
+        if (tree.nodeNumber > 0 && k > 0) {
+            final double qx = query.getX();
+            final double qy = query.getY();
+            final Set<String> labels = new HashSet<String>();
+            final PriorityQueue<Candidate> queue = new PriorityQueue<Candidate>();
+            queue.add(new Candidate(Candidate.PAGE, tree.rootPage, 0, null));
+            while (!queue.isEmpty() && ret.size() < k) {
+                final Candidate candidate = queue.poll();
+                if (candidate.distance > maxDistance) {
+                    break;
+                }
+                switch (candidate.kind) {
+                case Candidate.PAGE:
+                    ++nodeAccess;
+                    final int offset = candidate.id * RTreeSearch.PAGE_SIZE;
+                    final int kind = pages.getInt(offset) == 1 ? Candidate.BOUNDS : Candidate.PAGE;
+                    final int count = pages.getInt(offset + 4);
+                    for (int i = 0; i < count; i++) {
+                        final int childOffset = offset + RTreeSearch.NODE_HEADER_SIZE + i * RTreeSearch.CHILD_SIZE;
+                        final double distance = ShapeDistance.distance(pages.getDouble(childOffset), pages
+                                .getDouble(childOffset + 8), pages.getDouble(childOffset + 16), pages
+                                .getDouble(childOffset + 24), qx, qy);
+                        if (distance <= maxDistance) {
+                            queue.add(new Candidate(kind, pages.getInt(childOffset + 32), distance, null));
+                        }
+                    }
+                    break;
+                case Candidate.BOUNDS:
+                    ++shapeAccess;
+                    final double distance = ShapeDistance.distance(this.getShape(candidate.id), qx, qy);
+                    if (distance <= maxDistance) {
+                        queue.add(new Candidate(Candidate.SHAPE, candidate.id, distance, this
+                                .getLabel(candidate.id)));
+                    }
+                    break;
+                default:
+                    if (labels.add(candidate.label)) {
+                        ret.add(candidate.label);
+                    }
+                }
+            }
+        }
+        this.nodeAccess.set(nodeAccess);
+        this.shapeAccess.set(shapeAccess);
+        return ret;
+    }
+
+    public int getNodeAccess() {
+        return (int) this.nodeAccess.get();
+    }
+
+    public int getShapeAccess() {
+        return (int) this.shapeAccess.get();
+    }
+
+    public int getNodeNumber() {
+        return this.getTree().nodeNumber;
+    }
+
+    /**
+     * ディスクの使用量を取得します。
+     * ファイルから開いたときはファイルの大きさ、メモリ上にあるときはノードのページの大きさを返します。
+     * @return ディスク使用量[byte]
+     */
+    public int getDiskUsage() {
+        final Tree tree = this.getTree();
+        return this.file == null ? (tree.nodeNumber + 1) * RTreeSearch.PAGE_SIZE : this.fileSize;
+    }
+}
@@ -4,6 +4,7 @@ import java.awt.Shape;
 import java.awt.geom.Point2D;
 import java.awt.geom.Rectangle2D;
 import java.util.Collection;
+import java.util.List;
 
 /**
  * 2次元のポリゴンを矩形検索、点検索するためのインターフェイスです。
@@ -32,6 +33,28 @@ public interface Search {
      */
     public Collection<String> search(Rectangle2D r);
     
+    /**
+     * 指定した点に近いポリゴンから順に、対応するデータを最大k個取得します。
+     * 距離はポリゴンの輪郭までの距離で、点を含む閉じたポリゴンまでの距離は0です。
+     * 同じデータに対応するポリゴンが複数あるときは、最も近いものだけを数えます。
+     * 距離が等しいデータはデータの順に並べます。
+     * @param p 点
+     * @param k 取得するデータの最大数
+     * @return 近い順に並べたデータの一覧
+     * @since 6.3.0
+     */
+    public List<String> searchNearest(Point2D p, int k);
+    
+    /**
+     * 指定した点からの距離が指定した距離以下のポリゴンに対応するデータを、近い順に取得します。
+     * 距離の測り方は searchNearest(Point2D, int) と同じです。
+     * @param p 点
+     * @param distance 距離
+     * @return 近い順に並べたデータの一覧
+     * @since 6.3.0
+     */
+    public List<String> searchWithin(Point2D p, double distance);
+    
     /**
      * 直前の検索における、ノードへのアクセス回数を取得します。
      * @return ノードへのアクセス回数
@@ -0,0 +1,88 @@
+package search;
+
+import java.awt.Shape;
+import java.awt.geom.Line2D;
+import java.awt.geom.PathIterator;
+
+/**
+ * 点とポリゴンの距離を計算するクラスです。
+ * @author zenjiro
+ * @since 6.3.0
+ */
+final class ShapeDistance {
+    /**
+     * 曲線を折れ線に近似するときの平坦さ
+     */
+    private static final double FLATNESS = 0.1;
+
+    /**
+     * インスタンスを作りません。
+     */
+    private ShapeDistance() {
+    }
+
+    /**
+     * 点からポリゴンの輪郭までの距離を計算します。
+     * 閉じたポリゴンが点を含むときは0を返します。
+     * 閉じていない折れ線は、始点と終点を結んだ内側を持たないものとして扱います。
+     * @param shape ポリゴン
+     * @param x 点のx座標
+     * @param y 点のy座標
+     * @return 距離
+     */
+    static double distance(final Shape shape, final double x, final double y) {
+        final PathIterator iterator = shape.getPathIterator(null, ShapeDistance.FLATNESS);
+        final double[] coords = new double[6];
+        double minDistanceSq = Double.POSITIVE_INFINITY;
+        double startX = 0;
+        double startY = 0;
+        double lastX = 0;
+        double lastY = 0;
+        boolean isClosed = false;
+        while (!iterator.isDone()) {
+            switch (iterator.currentSegment(coords)) {
+            case PathIterator.SEG_MOVETO:
+                startX = coords[0];
+                startY = coords[1];
+                lastX = startX;
+                lastY = startY;
+                minDistanceSq = Math.min(minDistanceSq, (x - startX) * (x - startX) + (y - startY) * (y - startY));
+                break;
+            case PathIterator.SEG_LINETO:
+                minDistanceSq = Math.min(minDistanceSq, Line2D.ptSegDistSq(lastX, lastY, coords[0], coords[1], x, y));
+                lastX = coords[0];
+                lastY = coords[1];
+                break;
+            case PathIterator.SEG_CLOSE:
+                minDistanceSq = Math.min(minDistanceSq, Line2D.ptSegDistSq(lastX, lastY, startX, startY, x, y));
+                lastX = startX;
+                lastY = startY;
+                isClosed = true;
+                break;
+            }
+            iterator.next();
+        }
+        if (isClosed && minDistanceSq > 0 && shape.contains(x, y)) {
+            return 0;
+        }
+        return Math.sqrt(minDistanceSq);
+    }
+
+    /**
+     * 点から長方形までの距離を計算します。
+     * 長方形が点を含むときは0を返します。
+     * @param minX 長方形の左端
+     * @param minY 長方形の上端
+     * @param maxX 長方形の右端
+     * @param maxY 長方形の下端
+     * @param x 点のx座標
+     * @param y 点のy座標
+     * @return 距離
+     */
+    static double distance(final double minX, final double minY, final double maxX, final double maxY,
+            final double x, final double y) {
+        final double dx = x < minX ? minX - x : (x > maxX ? x - maxX : 0);
+        final double dy = y < minY ? minY - y : (y > maxY ? y - maxY : 0);
+        return Math.sqrt(dx * dx + dy * dy);
+    }
+}
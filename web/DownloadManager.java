@@ -0,0 +1,455 @@
+package web;
+
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipInputStream;
+
+/**
+ * 圧縮ファイルをバックグラウンドでダウンロードするクラスです。
+ * 同時にダウンロードするファイルの数と待ち行列の長さには上限があり、
+ * 同じファイルへの要求は1つにまとめられます。
+ * 待ち行列があふれたときの要求は保留しておき、ダウンロードが終わって空きができたら実行します。
+ * 保留している要求が多すぎるときは、古い要求から取り消します。
+ * 途中で中断されたダウンロードは、次に要求されたときに続きから再開します。
+ * ダウンロードに失敗したファイルは、しばらくの間は要求されても失敗したものとして扱います。
+ * @author zenjiro
+ * @since 6.3.0
+ */
+public class DownloadManager {
+    /**
+     * 同時にダウンロードするファイルの数
+     */
+    public static final int THREADS = 2;
+
+    /**
+     * ダウンロードを待つファイルの数の上限
+     */
+    public static final int QUEUE_SIZE = 16;
+
+    /**
+     * 保留するダウンロードの数の上限
+     */
+    public static final int DEFERRED_SIZE = 64;
+
+    /**
+     * バッファの大きさ[byte]
+     */
+    public static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * ダウンロード中のファイルの接尾語
+     */
+    public static final String PART_SUFFIX = ".part";
+
+    /**
+     * 接続、読み込みのタイムアウト[ms]
+     */
+    public static final int TIMEOUT = 5000;
+
+    /**
+     * ダウンロードに失敗したファイルを、もう一度ダウンロードできるようになるまでの時間[ms]
+     */
+    public static final long RETRY_INTERVAL = 60000;
+
+    /**
+     * インスタンス
+     */
+    private static DownloadManager instance;
+
+    /**
+     * インスタンスを取得します。
+     * @return インスタンス
+     */
+    public static synchronized DownloadManager getInstance() {
+        if (DownloadManager.instance == null) {
+            DownloadManager.instance = new DownloadManager(DownloadManager.THREADS,
+                    DownloadManager.QUEUE_SIZE, DownloadManager.RETRY_INTERVAL);
+        }
+        return DownloadManager.instance;
+    }
+
+    /**
+     * ダウンロードを実行するスレッドプール
+     */
+    private final ThreadPoolExecutor executor;
+
+    /**
+     * ダウンロード中のファイルと、その結果の対応表
+     */
+    private final Map<File, Future<File>> inFlight;
+
+    /**
+     * ダウンロードに失敗したファイルと、失敗した時刻[ms]の対応表
+     */
+    private final Map<File, Long> failed;
+
+    /**
+     * 待ち行列があふれたために保留しているダウンロードの、保存するファイルとダウンロードの対応表（要求された順）
+     */
+    private final Map<File, FutureTask<File>> deferred;
+
+    /**
+     * 保留するダウンロードの数の上限
+     */
+    private final int deferredSize;
+
+    /**
+     * ダウンロードに失敗したファイルを、もう一度ダウンロードできるようになるまでの時間[ms]
+     */
+    private final long retryInterval;
+
+    /**
+     * 圧縮ファイルをダウンロードするクラスを初期化します。
+     * @param threads 同時にダウンロードするファイルの数
+     * @param queueSize ダウンロードを待つファイルの数の上限
+     * @param retryInterval ダウンロードに失敗したファイルを、もう一度ダウンロードできるようになるまでの時間[ms]
+     */
+    public DownloadManager(final int threads, final int queueSize, final long retryInterval) {
+        this(threads, queueSize, retryInterval, DownloadManager.DEFERRED_SIZE);
+    }
+
+    /**
+     * 圧縮ファイルをダウンロードするクラスを初期化します。
+     * @param threads 同時にダウンロードするファイルの数
+     * @param queueSize ダウンロードを待つファイルの数の上限
+     * @param retryInterval ダウンロードに失敗したファイルを、もう一度ダウンロードできるようになるまでの時間[ms]
+     * @param deferredSize 保留するダウンロードの数の上限
+     */
+    public DownloadManager(final int threads, final int queueSize, final long retryInterval,
+            final int deferredSize) {
+        this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>(queueSize), new ThreadFactory() {
+                    public Thread newThread(final Runnable runnable) {
+                        final Thread thread = new Thread(runnable, "DownloadManager");
+                        thread.setDaemon(true);
+                        thread.setPriority(Thread.MIN_PRIORITY);
+                        return thread;
+                    }
+                });
+        this.inFlight = new ConcurrentHashMap<File, Future<File>>();
+        this.failed = new ConcurrentHashMap<File, Long>();
+        this.deferred = new LinkedHashMap<File, FutureTask<File>>();
+        this.deferredSize = deferredSize;
+        this.retryInterval = retryInterval;
+    }
+
+    /**
+     * ファイルのダウンロードを要求します。
+     * このメソッドはすぐに戻ります。
+     * 既に同じファイルをダウンロード中であれば、その結果を返します。
+     * 待ち行列があふれているときは、空きができるまでダウンロードを保留します。
+     * 保留しているダウンロードが上限を超えたときは、最も古いダウンロードを取り消します。
+     * 取り消されたファイルは、もう一度要求すればダウンロードされます。
+     * @param urls ダウンロードするURLの候補。見つからなければ次のURLを試します。
+     * @param file 保存するファイル
+     * @param listener ダウンロードが成功したときに呼び出されるアクションリスナ。null でも構いません。
+     * @return ダウンロードの結果
+     */
+    public Future<File> request(final List<URL> urls, final File file, final ActionListener listener) {
+        final File key = file.getAbsoluteFile();
+        final Future<File> future = this.inFlight.get(key);
+        if (future != null) {
+            return future;
+        }
+        final FutureTask<File> task = new FutureTask<File>(new Callable<File>() {
+            public File call() throws IOException {
+                try {
+                    DownloadManager.this.download(urls, key);
+                    if (listener != null) {
+                        listener.actionPerformed(new ActionEvent(DownloadManager.this, key.hashCode(),
+                                "downloaded " + key));
+                    }
+                    return key;
+                } catch (final IOException exception) {
+                    System.out.println("WARNING: failed to get " + urls + ": " + exception);
+                    DownloadManager.this.failed.put(key, System.currentTimeMillis());
+                    throw exception;
+                } finally {
+                    DownloadManager.this.inFlight.remove(key);
+                    DownloadManager.this.executeDeferred();
+                }
+            }
+        });
+        synchronized (this.inFlight) {
+            if (this.inFlight.containsKey(key)) {
+                return this.inFlight.get(key);
+            }
+            this.inFlight.put(key, task);
+        }
+        this.failed.remove(key);
+        synchronized (this.deferred) {
+            this.deferred.put(key, task);
+        }
+        this.executeDeferred();
+        synchronized (this.deferred) {
+            while (this.deferred.size() > this.deferredSize) {
+                final Iterator<Map.Entry<File, FutureTask<File>>> iterator = this.deferred.entrySet().iterator();
+                final Map.Entry<File, FutureTask<File>> entry = iterator.next();
+                iterator.remove();
+                entry.getValue().cancel(false);
+                synchronized (this.inFlight) {
+                    if (this.inFlight.get(entry.getKey()) == entry.getValue()) {
+                        this.inFlight.remove(entry.getKey());
+                    }
+                }
+                System.out.println("WARNING: cancelled the deferred download of " + entry.getKey());
+            }
+        }
+        return task;
+    }
+
+    /**
+     * 保留しているダウンロードを、待ち行列に空きがある限り要求された順に実行します。
+     */
+    private void executeDeferred() {
+        synchronized (this.deferred) {
+            final Iterator<FutureTask<File>> iterator = this.deferred.values().iterator();
+            while (iterator.hasNext()) {
+                try {
+                    this.executor.execute(iterator.next());
+                } catch (final RejectedExecutionException exception) {
+                    return;
+                }
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * ファイルのダウンロードを要求します。
+     * @param url URL
+     * @param file 保存するファイル
+     * @param listener ダウンロードが成功したときに呼び出されるアクションリスナ。null でも構いません。
+     * @return ダウンロードの結果
+     * @see #request(List, File, ActionListener)
+     */
+    public Future<File> request(final URL url, final File file, final ActionListener listener) {
+        return this.request(Arrays.asList(url), file, listener);
+    }
+
+    /**
+     * @param file ファイル
+     * @return 指定したファイルをダウンロード中かどうか
+     */
+    public boolean isDownloading(final File file) {
+        return this.inFlight.containsKey(file.getAbsoluteFile());
+    }
+
+    /**
+     * 失敗してから一定の時間が経ったファイルは、失敗していないものとして扱います。
+     * @param file ファイル
+     * @return 指定したファイルのダウンロードに最近失敗したかどうか
+     */
+    public boolean isFailed(final File file) {
+        final File key = file.getAbsoluteFile();
+        final Long time = this.failed.get(key);
+        if (time == null) {
+            return false;
+        }
+        if (System.currentTimeMillis() - time >= this.retryInterval) {
+            this.failed.remove(key);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return ダウンロードを待っているファイルの数（保留しているものを含む）
+     */
+    public int getQueueSize() {
+        synchronized (this.deferred) {
+            return this.executor.getQueue().size() + this.deferred.size();
+        }
+    }
+
+    /**
+     * 候補のURLを順に試して、ファイルをダウンロードします。
+     * @param urls URLの候補
+     * @param file 保存するファイル
+     * @throws IOException 入出力例外
+     */
+    void download(final List<URL> urls, final File file) throws IOException {
+        FileNotFoundException notFound = null;
+        for (final URL url : urls) {
+            try {
+                this.download(url, file);
+                return;
+            } catch (final FileNotFoundException exception) {
+                notFound = exception;
+            }
+        }
+        if (notFound != null) {
+            throw notFound;
+        }
+    }
+
+    /**
+     * ファイルをダウンロードし、壊れていないかどうかを確かめてから本来の名前に変更します。
+     * 途中まで保存されたファイルがあれば、続きからダウンロードします。
+     * 壊れていれば、最初からもう一度だけダウンロードします。
+     * @param url URL
+     * @param file 保存するファイル
+     * @throws IOException 入出力例外
+     */
+    private void download(final URL url, final File file) throws IOException {
+        final File part = new File(file.getPath() + DownloadManager.PART_SUFFIX);
+        if (file.getParentFile() != null) {
+            file.getParentFile().mkdirs();
+        }
+        for (int i = 0; i < 2; i++) {
+            this.get(url, part);
+            if (DownloadManager.isValidZip(part)) {
+                if (file.exists()) {
+                    file.delete();
+                }
+                if (!part.renameTo(file)) {
+                    throw new IOException("failed to rename " + part + " to " + file);
+                }
+                return;
+            }
+            System.out.println("WARNING: broken zip file " + part + ", retrying.");
+            part.delete();
+        }
+        throw new ZipException("broken zip file " + url);
+    }
+
+    /**
+     * URLの内容をファイルに追記します。
+     * サーバが範囲指定に対応していなければ、最初から保存し直します。
+     * @param url URL
+     * @param part 保存するファイル
+     * @throws IOException 入出力例外
+     */
+    private void get(final URL url, final File part) throws IOException {
+        final long offset = part.exists() ? part.length() : 0;
+        final URLConnection connection = url.openConnection();
+        connection.setConnectTimeout(DownloadManager.TIMEOUT);
+        connection.setReadTimeout(DownloadManager.TIMEOUT);
+        if (offset > 0) {
+            connection.setRequestProperty("Range", "bytes=" + offset + "-");
+        }
+        boolean isAppend = false;
+        if (connection instanceof HttpURLConnection) {
+            final int code = ((HttpURLConnection) connection).getResponseCode();
+            if (code == HttpURLConnection.HTTP_NOT_FOUND) {
+                throw new FileNotFoundException(url.toString());
+            } else if (code == 416) {
+                // 既に全て受信しているとき
+                ((HttpURLConnection) connection).disconnect();
+                return;
+            } else if (code == HttpURLConnection.HTTP_PARTIAL) {
+                isAppend = offset > 0;
+            } else if (code != HttpURLConnection.HTTP_OK) {
+                throw new IOException("HTTP " + code + ": " + url);
+            }
+        }
+        final long length = connection.getContentLength();
+        final InputStream in = connection.getInputStream();
+        final OutputStream out = new FileOutputStream(part, isAppend);
+        final long written;
+        try {
+            written = DownloadManager.copy(in, out);
+        } finally {
+            in.close();
+            out.close();
+        }
+        if (length >= 0 && written != length) {
+            throw new IOException("expected " + length + " bytes but got " + written + ": " + url);
+        }
+    }
+
+    /**
+     * ストリームの内容を全てコピーします。
+     * @param in 入力ストリーム
+     * @param out 出力ストリーム
+     * @return コピーしたバイト数
+     * @throws IOException 入出力例外
+     */
+    private static long copy(final InputStream in, final OutputStream out) throws IOException {
+        final byte[] buf = new byte[DownloadManager.BUFFER_SIZE];
+        long ret = 0;
+        int size;
+        while ((size = in.read(buf)) != -1) {
+            out.write(buf, 0, size);
+            ret += size;
+        }
+        return ret;
+    }
+
+    /**
+     * 圧縮ファイルの全てのエントリを読み込んで、CRCが一致するかどうかを確かめます。
+     * @param file 圧縮ファイル
+     * @return 壊れていないかどうか
+     */
+    static boolean isValidZip(final File file) {
+        try {
+            final ZipInputStream in = new ZipInputStream(new BufferedInputStream(new FileInputStream(file),
+                    DownloadManager.BUFFER_SIZE));
+            try {
+                final byte[] buf = new byte[DownloadManager.BUFFER_SIZE];
+                int count = 0;
+                ZipEntry entry;
+                while ((entry = in.getNextEntry()) != null) {
+                    if (!entry.isDirectory()) {
+                        while (in.read(buf) != -1) {
+                        }
+                    }
+                    count++;
+                }
+                return count > 0;
+            } finally {
+                in.close();
+            }
+        } catch (final IOException exception) {
+            return false;
+        }
+    }
+
+    /**
+     * 圧縮ファイルの中から、名前が指定した接尾語で終わる最初のエントリを開きます。
+     * 一時ファイルに展開せず、直接読み込むことができます。
+     * @param file 圧縮ファイル
+     * @param suffix エントリ名の接尾語
+     * @return 入力ストリーム。エントリが見つからなければ null
+     * @throws IOException 入出力例外
+     */
+    public static InputStream openEntry(final File file, final String suffix) throws IOException {
+        final ZipInputStream in = new ZipInputStream(new BufferedInputStream(new FileInputStream(file),
+                DownloadManager.BUFFER_SIZE));
+        ZipEntry entry;
+        while ((entry = in.getNextEntry()) != null) {
+            if (entry.getName().endsWith(suffix)) {
+                return in;
+            }
+        }
+        in.close();
+        return null;
+    }
+}